@@ -0,0 +1,37 @@
+package io.twodigits.urlshortener.benchmark;
+
+import io.twodigits.urlshortener.UrlShortenerApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the application without a web server on its own in-memory H2 database.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * @param database name of the in-memory database
+     * @param properties additional properties as {@code name=value}
+     * @return the running application context
+     */
+    static ConfigurableApplicationContext start(String database, String... properties) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:" + database,
+                "--spring.jpa.show-sql=false",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(UrlShortenerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,87 @@
+package io.twodigits.urlshortener.benchmark;
+
+import io.twodigits.urlshortener.cache.RedirectCache;
+import io.twodigits.urlshortener.model.BatchItemResult;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short URL resolution through {@link URLShortenerService#getEncodedUrl(String)}. {@code cold}
+ * drops the link from the redirect cache first, so every call reads the database; {@code warm}
+ * is answered from the cache. {@code unknown} resolves short URLs that do not exist.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedirectBenchmark {
+
+    @Param("10000")
+    public int links;
+
+    private ConfigurableApplicationContext context;
+
+    private URLShortenerService urlShortenerService;
+
+    private RedirectCache redirectCache;
+
+    private String[] shortUrls;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("redirect", "urlshortener.redirect-cache.maximum-size=" + links);
+        urlShortenerService = context.getBean(URLShortenerService.class);
+        redirectCache = context.getBean(RedirectCache.class);
+        List<URLDto> urlDtos = new ArrayList<>(links);
+        for (int i = 0; i < links; i++) {
+            URLDto urlDto = new URLDto();
+            urlDto.setUrl("https://example.com/" + i);
+            urlDto.setUsername("benchmark");
+            urlDtos.add(urlDto);
+        }
+        shortUrls = urlShortenerService.generateShortUrls(urlDtos).stream()
+                .map(BatchItemResult::getUrl)
+                .map(URL::getShortUrl)
+                .toArray(String[]::new);
+        for (String shortUrl : shortUrls) {
+            urlShortenerService.getEncodedUrl(shortUrl);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private String randomShortUrl() {
+        return shortUrls[ThreadLocalRandom.current().nextInt(shortUrls.length)];
+    }
+
+    @Benchmark
+    public Optional<URL> warm() {
+        return urlShortenerService.getEncodedUrl(randomShortUrl());
+    }
+
+    @Benchmark
+    public Optional<URL> cold() {
+        String shortUrl = randomShortUrl();
+        redirectCache.invalidate(shortUrl);
+        return urlShortenerService.getEncodedUrl(shortUrl);
+    }
+
+    @Benchmark
+    public Optional<URL> unknown() {
+        return urlShortenerService.getEncodedUrl("unknown" + ThreadLocalRandom.current().nextInt(links));
+    }
+}
@@ -0,0 +1,57 @@
+package io.twodigits.urlshortener.benchmark;
+
+import io.twodigits.urlshortener.codegen.Base62;
+import io.twodigits.urlshortener.codegen.BlockShortCodeGenerator;
+import io.twodigits.urlshortener.codegen.HashShortCodeGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of deriving a short URL with each strategy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortCodeBenchmark {
+
+    private final HashShortCodeGenerator hashGenerator = new HashShortCodeGenerator();
+
+    private ConfigurableApplicationContext context;
+
+    private BlockShortCodeGenerator blockGenerator;
+
+    private String longUrl;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("shortcode");
+        blockGenerator = context.getBean(BlockShortCodeGenerator.class);
+        longUrl = "https://example.com/articles/" + ThreadLocalRandom.current().nextLong() + "?utm_source=benchmark";
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String hash() {
+        return hashGenerator.generate(longUrl, 0);
+    }
+
+    @Benchmark
+    public String block() {
+        return blockGenerator.generate(longUrl, 0);
+    }
+
+    @Benchmark
+    public String base62() {
+        return Base62.encode(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,108 @@
+package io.twodigits.urlshortener.benchmark;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.ExportFormat;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.model.URLStats;
+import io.twodigits.urlshortener.repo.URLStatsJdbcRepo;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import io.twodigits.urlshortener.stats.StatsCursor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stats retrieval for a link with a given number of clicks: the full list, as a page and
+ * through the legacy list API, the first and a middle keyset page, and a streamed NDJSON export.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class StatsReadBenchmark {
+
+    private static final int INSERT_CHUNK_SIZE = 10_000;
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    public int clicks;
+
+    private ConfigurableApplicationContext context;
+
+    private URLShortenerService urlShortenerService;
+
+    private URL url;
+
+    private String middleCursor;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("statsread" + clicks);
+        urlShortenerService = context.getBean(URLShortenerService.class);
+        URLStatsJdbcRepo urlStatsJdbcRepo = context.getBean(URLStatsJdbcRepo.class);
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://example.com/popular");
+        url = urlShortenerService.generateShortUrl(urlDto).orElseThrow();
+
+        long start = System.currentTimeMillis() - clicks;
+        List<ClickEvent> chunk = new ArrayList<>(INSERT_CHUNK_SIZE);
+        for (int i = 0; i < clicks; i++) {
+            chunk.add(new ClickEvent(url.getId(), url.getShortUrl(), start + i, "Mozilla/5.0 (benchmark)",
+                    "https://referrer.example.com", "10.0.0." + (i % 256)));
+            if (chunk.size() == INSERT_CHUNK_SIZE || i == clicks - 1) {
+                urlStatsJdbcRepo.batchInsert(chunk);
+                chunk.clear();
+            }
+        }
+        LocalDateTime middle = LocalDateTime.ofInstant(Instant.ofEpochMilli(start + clicks / 2), ZoneId.systemDefault());
+        middleCursor = new StatsCursor(middle, 0).encode();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<StatsPage> fullList() {
+        return urlShortenerService.getURLAccessStatisticsByShortUrl(url.getShortUrl());
+    }
+
+    /**
+     * The full list read as projections and wrapped in {@link URLStats} objects sharing the URL,
+     * as the legacy list API returns it, for comparison with {@link #fullList()}
+     */
+    @Benchmark
+    public List<URLStats> fullEntityList() {
+        return urlShortenerService.getURLAccessStatistics(url);
+    }
+
+    @Benchmark
+    public Optional<StatsPage> firstPage() {
+        return urlShortenerService.getURLAccessStatisticsPage(url.getShortUrl(), null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Optional<StatsPage> middlePage() {
+        return urlShortenerService.getURLAccessStatisticsPage(url.getShortUrl(), middleCursor, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        urlShortenerService.exportURLAccessStatistics(url, ExportFormat.NDJSON, OutputStream.nullOutputStream());
+    }
+}
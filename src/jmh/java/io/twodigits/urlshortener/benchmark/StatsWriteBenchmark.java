@@ -0,0 +1,61 @@
+package io.twodigits.urlshortener.benchmark;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.model.URLStats;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of recording clicks: {@code saveURLAccessStatistic} writes one row per call
+ * through JPA, {@code recordURLAccess} hands the click to the batching ingestor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsWriteBenchmark {
+
+    private ConfigurableApplicationContext context;
+
+    private URLShortenerService urlShortenerService;
+
+    private URL url;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("statswrite");
+        urlShortenerService = context.getBean(URLShortenerService.class);
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://example.com/stats");
+        url = urlShortenerService.generateShortUrl(urlDto).orElseThrow();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public URLStats saveURLAccessStatistic() {
+        URLStats stats = new URLStats();
+        stats.setUrl(url);
+        stats.setAccessTime(LocalDateTime.now());
+        stats.setUserAgent("benchmark");
+        stats.setClientIp("127.0.0.1");
+        return urlShortenerService.saveURLAccessStatistic(stats);
+    }
+
+    @Benchmark
+    public void recordURLAccess() {
+        urlShortenerService.recordURLAccess(new ClickEvent(
+                url.getId(), url.getShortUrl(), System.currentTimeMillis(), "benchmark", null, "127.0.0.1"));
+    }
+}
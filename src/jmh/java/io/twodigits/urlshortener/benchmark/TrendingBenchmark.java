@@ -0,0 +1,48 @@
+package io.twodigits.urlshortener.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.TrendingProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.stats.TrendingTracker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of handing clicks to the {@link TrendingTracker} from all cores at once, as the
+ * redirect path does. Clicks are spread over 1,000 links with a few very hot ones, so a
+ * structure with shared counters per link would contend on them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class TrendingBenchmark {
+
+    private TrendingTracker tracker;
+
+    @Setup
+    public void setUp() {
+        tracker = new TrendingTracker(new TrendingProperties(), new ExecutionThreads(new ExecutionProperties()),
+                new SimpleMeterRegistry());
+        tracker.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracker.stop();
+    }
+
+    @Benchmark
+    public void onClick() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long urlId = random.nextInt(4) == 0 ? random.nextInt(5) : random.nextInt(1_000);
+        tracker.onClick(new ClickEvent(urlId, "bench" + urlId, System.currentTimeMillis(), "benchmark", null, "127.0.0.1"));
+    }
+}
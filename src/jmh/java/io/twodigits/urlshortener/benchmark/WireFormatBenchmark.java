@@ -0,0 +1,103 @@
+package io.twodigits.urlshortener.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.luben.zstd.ZstdOutputStream;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.wire.WireFormat;
+import io.twodigits.urlshortener.wire.WireFormats;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cost of encoding and decoding a stats page in each wire format, and of encoding it into
+ * a gzip or zstd response. The payload size of each combination is reported by
+ * {@code WireFormatSizeTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/119.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_1 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.1 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:119.0) Gecko/20100101 Firefox/119.0",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/119.0.6045.66 Mobile Safari/537.36",
+            "Slackbot-LinkExpanding 1.0 (+https://api.slack.com/robots)",
+            "curl/8.4.0"};
+
+    private static final String[] REFERRERS = {
+            null, "https://www.google.com/", "https://t.co/", "https://news.ycombinator.com/", "https://www.reddit.com/r/programming/"};
+
+    @Param({"100", "1000"})
+    public int clicks;
+
+    @Param({"JSON", "CBOR", "SMILE"})
+    public WireFormat format;
+
+    private ObjectMapper mapper;
+
+    private StatsPage page;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new WireFormats(new ObjectMapper().registerModule(new JavaTimeModule())).mapperFor(format);
+        Random random = new Random(42);
+        List<URLStatsView> items = new ArrayList<>(clicks);
+        LocalDateTime accessTime = LocalDateTime.of(2023, 11, 14, 22, 13, 20);
+        for (int i = 0; i < clicks; i++) {
+            accessTime = accessTime.plusNanos(random.nextInt(60_000) * 1_000_000L);
+            items.add(new URLStatsView((long) i + 1, accessTime,
+                    USER_AGENTS[random.nextInt(USER_AGENTS.length)],
+                    REFERRERS[random.nextInt(REFERRERS.length)],
+                    "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256)));
+        }
+        page = new StatsPage("aZ3kP9q", items, null);
+        encoded = mapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return mapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public JsonNode decode() throws IOException {
+        return mapper.readTree(encoded);
+    }
+
+    @Benchmark
+    public int encodeGzip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            mapper.writeValue(gzip, page);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    public int encodeZstd() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream zstd = new ZstdOutputStream(out, 3)) {
+            mapper.writeValue(zstd, page);
+        }
+        return out.size();
+    }
+}
@@ -2,8 +2,15 @@ package io.twodigits.urlshortener;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
-@SpringBootApplication
+/**
+ * R2DBC is only used by the reactive stack, which manages its own connection pool.
+ * A connection factory bean would make Spring Boot skip the JDBC datasource.
+ */
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
+@ConfigurationPropertiesScan
 public class UrlShortenerApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,123 @@
+package io.twodigits.urlshortener.admission;
+
+import io.twodigits.urlshortener.config.AdmissionProperties;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A limit on the requests in flight which adapts to the latency they are served with.
+ * <p>
+ * Requests count themselves in and out and report their latency to striped adders, so
+ * neither the check nor the report contends on a shared counter or allocates; a burst of
+ * threads arriving at once may overshoot the limit by a few requests. Once per window
+ * {@link #adjust()} compares the average latency with the lowest one seen, which stands for
+ * the latency without load: while the average stays within the tolerance the limit grows by
+ * about its square root, beyond it the limit shrinks in proportion. The limit is only raised
+ * when the requests in flight actually came close to it.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    /**
+     * The share of each window's target applied to the limit
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * How fast the latency without load drifts up towards the observed latency, so a
+     * permanently slower service is accepted eventually
+     */
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private final LongAccumulator peakInFlight = new LongAccumulator(Math::max, 0);
+
+    private final LongAdder latencyNanos = new LongAdder();
+
+    private final LongAdder samples = new LongAdder();
+
+    private volatile int limit;
+
+    /**
+     * Only used by the thread calling {@link #adjust()}
+     */
+    private double estimate;
+
+    private double baselineNanos = Double.NaN;
+
+    public AdaptiveConcurrencyLimit(AdmissionProperties.Concurrency properties) {
+        this.minLimit = properties.getMinLimit();
+        this.maxLimit = properties.getMaxLimit();
+        this.tolerance = properties.getTolerance();
+        this.estimate = Math.max(minLimit, Math.min(maxLimit, properties.getInitialLimit()));
+        this.limit = (int) estimate;
+    }
+
+    /**
+     * Count a request in if the limit allows it.
+     *
+     * @return whether the request may proceed; if so, {@link #release(long)} has to follow
+     */
+    public boolean tryAcquire() {
+        long current = inFlight.sum();
+        if (current >= limit) {
+            return false;
+        }
+        inFlight.increment();
+        peakInFlight.accumulate(current + 1);
+        return true;
+    }
+
+    /**
+     * Count a request out.
+     *
+     * @param latencyNanos how long it took
+     */
+    public void release(long latencyNanos) {
+        inFlight.decrement();
+        this.latencyNanos.add(latencyNanos);
+        samples.increment();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Move the limit towards the latencies observed since the last call. Must only be
+     * called by one thread at a time.
+     */
+    public void adjust() {
+        long count = samples.sumThenReset();
+        long total = latencyNanos.sumThenReset();
+        long peak = peakInFlight.getThenReset();
+        if (count == 0) {
+            return;
+        }
+        double average = (double) total / count;
+        if (Double.isNaN(baselineNanos) || average < baselineNanos) {
+            baselineNanos = average;
+        } else {
+            baselineNanos += (average - baselineNanos) * BASELINE_DRIFT;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * baselineNanos / average));
+        double target = estimate * gradient + Math.sqrt(estimate);
+        if (target > estimate && peak < estimate / 2) {
+            // The limit was not what held requests back, so there is nothing to learn about raising it.
+            return;
+        }
+        estimate = Math.max(minLimit, Math.min(maxLimit, estimate + (target - estimate) * SMOOTHING));
+        limit = (int) estimate;
+    }
+}
@@ -0,0 +1,230 @@
+package io.twodigits.urlshortener.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.twodigits.urlshortener.config.AdmissionProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a request is served before it reaches the service.
+ * <p>
+ * A request first takes a token from the bucket of its user when generating, then from the
+ * bucket of its client IP; a batch takes one token per item. A client over its rate is turned
+ * away with 429, and the tokens its users already took are given back. It then enters the {@link AdaptiveConcurrencyLimit} of its route; a route
+ * whose latency has grown beyond the tolerance has lowered its limit, and requests beyond it
+ * are shed with 503 instead of queueing for a database connection. None of the checks allocates or takes a lock.
+ */
+@Slf4j
+@Component
+public class AdmissionControl implements SmartLifecycle {
+
+    /**
+     * Returned by {@link #enter(Route)} if the request is shed
+     */
+    public static final long REJECTED = Long.MIN_VALUE;
+
+    public enum Route {
+        REDIRECT,
+        GENERATE,
+        /**
+         * Batch generation, limited apart from single generate requests as it takes longer
+         */
+        BATCH
+    }
+
+    private final AdmissionProperties properties;
+
+    private final ExecutionThreads executionThreads;
+
+    private final TokenBuckets clientBuckets;
+
+    private final TokenBuckets userBuckets;
+
+    private final Map<Route, AdaptiveConcurrencyLimit> limits = new EnumMap<>(Route.class);
+
+    private final Map<Route, Counter> rateLimited = new EnumMap<>(Route.class);
+
+    private final Map<Route, Counter> overloaded = new EnumMap<>(Route.class);
+
+    private ScheduledExecutorService tuner;
+
+    private volatile boolean running;
+
+    @Autowired
+    public AdmissionControl(AdmissionProperties properties, ExecutionThreads executionThreads, MeterRegistry registry) {
+        this.properties = properties;
+        this.executionThreads = executionThreads;
+        this.clientBuckets = new TokenBuckets(properties.getBuckets(), properties.getClient().getPerSecond(),
+                properties.getClient().getBurst());
+        this.userBuckets = new TokenBuckets(properties.getBuckets(), properties.getUser().getPerSecond(),
+                properties.getUser().getBurst());
+        for (Route route : Route.values()) {
+            AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties.getConcurrency());
+            limits.put(route, limit);
+            String tag = route.name().toLowerCase();
+            Gauge.builder("urlshortener.admission.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                    .description("Requests allowed in flight")
+                    .tag("route", tag)
+                    .register(registry);
+            Gauge.builder("urlshortener.admission.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                    .description("Requests in flight")
+                    .tag("route", tag)
+                    .register(registry);
+            rateLimited.put(route, rejections(registry, tag, "rate_limited"));
+            overloaded.put(route, rejections(registry, tag, "overloaded"));
+        }
+    }
+
+    private static Counter rejections(MeterRegistry registry, String route, String reason) {
+        return Counter.builder("urlshortener.admission.rejected")
+                .description("Requests turned away before reaching the service")
+                .tag("route", route)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * Take a token for a client IP.
+     *
+     * @param route
+     * @param clientIp
+     * @return 0 if the request may proceed, otherwise the nanoseconds until the client may retry
+     */
+    public long tryAcquireClient(Route route, String clientIp) {
+        return tryAcquireClient(route, clientIp, 1);
+    }
+
+    /**
+     * Take several tokens for a client IP, one per item of a batch.
+     *
+     * @param route
+     * @param clientIp
+     * @param tokens
+     * @return 0 if the request may proceed, otherwise the nanoseconds until the client may retry
+     */
+    public long tryAcquireClient(Route route, String clientIp, int tokens) {
+        return tryAcquire(clientBuckets, route, clientIp, tokens);
+    }
+
+    /**
+     * Take a token for a user. Requests without a user are only limited by their client IP.
+     *
+     * @param route
+     * @param username
+     * @return 0 if the request may proceed, otherwise the nanoseconds until the user may retry
+     */
+    public long tryAcquireUser(Route route, String username) {
+        return tryAcquireUser(route, username, 1);
+    }
+
+    /**
+     * Take several tokens for a user, one per item of a batch.
+     *
+     * @param route
+     * @param username
+     * @param tokens
+     * @return 0 if the request may proceed, otherwise the nanoseconds until the user may retry
+     */
+    public long tryAcquireUser(Route route, String username, int tokens) {
+        return tryAcquire(userBuckets, route, username, tokens);
+    }
+
+    /**
+     * Give back tokens taken for a user whose request was turned away by a later check.
+     *
+     * @param username
+     * @param tokens the number of tokens taken by {@link #tryAcquireUser(Route, String, int)}
+     */
+    public void releaseUser(String username, int tokens) {
+        if (properties.isEnabled() && username != null && tokens >= 1) {
+            userBuckets.release(username, tokens);
+        }
+    }
+
+    private long tryAcquire(TokenBuckets buckets, Route route, String key, int tokens) {
+        if (!properties.isEnabled() || key == null || tokens < 1) {
+            return 0;
+        }
+        long wait = buckets.tryAcquire(key, tokens);
+        if (wait > 0) {
+            rateLimited.get(route).increment();
+        }
+        return wait;
+    }
+
+    /**
+     * Enter the concurrency limit of a route.
+     *
+     * @param route
+     * @return a ticket to pass to {@link #exit(Route, long)} once the request is done, or
+     * {@link #REJECTED} if the request has to be shed
+     */
+    public long enter(Route route) {
+        if (!properties.isEnabled()) {
+            return 0;
+        }
+        if (!limits.get(route).tryAcquire()) {
+            overloaded.get(route).increment();
+            return REJECTED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Leave the concurrency limit of a route, reporting the latency of the request.
+     *
+     * @param route
+     * @param ticket as returned by {@link #enter(Route)}
+     */
+    public void exit(Route route, long ticket) {
+        if (properties.isEnabled() && ticket != REJECTED) {
+            limits.get(route).release(System.nanoTime() - ticket);
+        }
+    }
+
+    /**
+     * @param route
+     * @return the current concurrency limit of the route
+     */
+    public int getLimit(Route route) {
+        return limits.get(route).getLimit();
+    }
+
+    private void adjustQuietly() {
+        try {
+            limits.values().forEach(AdaptiveConcurrencyLimit::adjust);
+        } catch (RuntimeException e) {
+            log.error("Failed to adjust concurrency limits", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        long window = properties.getConcurrency().getWindow().toMillis();
+        tuner = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("admission-tuner"));
+        tuner.scheduleWithFixedDelay(this::adjustQuietly, window, window, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        tuner.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
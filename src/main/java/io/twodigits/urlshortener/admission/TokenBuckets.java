@@ -0,0 +1,105 @@
+package io.twodigits.urlshortener.admission;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed set of token buckets which keys are hashed onto.
+ * <p>
+ * Each bucket is a single long in the form of the generic cell rate algorithm: the time at
+ * which the bucket would be full again. A request is admitted while that time lies no more
+ * than the burst ahead of now, and pushes it on by the interval of one token. A request
+ * taking several tokens waits for as many to be available, at most a full bucket, and pushes
+ * the bucket on by all of them, so a batch larger than the burst is paid for by the requests
+ * after it. Tokens taken for a request turned away by a later check can be given back.
+ * Taking tokens is one CAS on the bucket of the key and allocates nothing. Buckets sit on their own cache
+ * lines, so threads serving different clients never touch the same line.
+ */
+public final class TokenBuckets {
+
+    /**
+     * The number of longs in a cache line; only the first of each is used
+     */
+    private static final int STRIDE = 8;
+
+    private final AtomicLongArray buckets;
+
+    private final int mask;
+
+    private final long interval;
+
+    private final long tolerance;
+
+    private final int burst;
+
+    /**
+     * The origin of the times stored in the buckets, so an empty bucket is full at 0
+     */
+    private final long origin = System.nanoTime();
+
+    /**
+     * @param count the number of buckets; rounded up to a power of two
+     * @param perSecond the sustained rate per bucket
+     * @param burst the number of tokens a bucket holds
+     */
+    public TokenBuckets(int count, double perSecond, int burst) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate has to be positive and the burst at least 1");
+        }
+        int size = Integer.highestOneBit(Math.max(count, 2) - 1) << 1;
+        this.buckets = new AtomicLongArray(size * STRIDE);
+        this.mask = size - 1;
+        this.interval = Math.max(1, (long) (1_000_000_000L / perSecond));
+        this.tolerance = interval * (burst - 1);
+        this.burst = burst;
+    }
+
+    private int index(String key) {
+        int hash = key.hashCode() * 0x9e3779b9;
+        return ((hash ^ (hash >>> 16)) & mask) * STRIDE;
+    }
+
+    /**
+     * Take a token from the bucket of a key.
+     *
+     * @param key
+     * @return 0 if a token was taken, otherwise the nanoseconds until one is available
+     */
+    public long tryAcquire(String key) {
+        return tryAcquire(key, 1);
+    }
+
+    /**
+     * Take several tokens from the bucket of a key at once.
+     *
+     * @param key
+     * @param tokens the number of tokens, at least 1
+     * @return 0 if the tokens were taken, otherwise the nanoseconds until enough are available
+     */
+    public long tryAcquire(String key, int tokens) {
+        int index = index(key);
+        long needed = interval * (Math.min(tokens, burst) - 1);
+        long now = System.nanoTime() - origin;
+        while (true) {
+            long full = buckets.get(index);
+            long start = Math.max(full, now);
+            long ahead = start - now + needed;
+            if (ahead > tolerance) {
+                return ahead - tolerance;
+            }
+            if (buckets.compareAndSet(index, full, start + interval * tokens)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Give back tokens taken by {@link #tryAcquire(String, int)} for a request which was not
+     * served after all.
+     *
+     * @param key
+     * @param tokens the number of tokens taken
+     */
+    public void release(String key, int tokens) {
+        buckets.addAndGet(index(key), -interval * tokens);
+    }
+}
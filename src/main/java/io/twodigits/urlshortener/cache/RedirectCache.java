@@ -0,0 +1,171 @@
+package io.twodigits.urlshortener.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.twodigits.urlshortener.config.RedirectCacheProperties;
+import io.twodigits.urlshortener.model.URL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache in front of short URL resolution.
+ * <p>
+ * Caffeine's W-TinyLFU policy keeps the frequently requested links resident, so a small
+ * skewed working set of hot links is served without a database query. Only resolved URLs
+ * are cached; unknown short URLs always go to the loader.
+ * <p>
+ * States read outside of {@link #get} are cached with a stamp taken before the read, so a
+ * state which has been changed or invalidated while it was read is not cached afterwards.
+ */
+@Component
+public class RedirectCache implements MeterBinder {
+
+    /**
+     * The number of stamps the short URLs are spread over
+     */
+    private static final int STAMP_STRIPES = 1024;
+
+    private final Cache<String, URL> cache;
+
+    /**
+     * Counts the changes and invalidations of the short URLs of each stripe
+     */
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+    @Autowired
+    public RedirectCache(RedirectCacheProperties properties) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.isEnabled() ? properties.getMaximumSize() : 0)
+                .expireAfterWrite(properties.getExpireAfterWrite())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the URL for a short URL, loading and caching it on a miss.
+     *
+     * @param shortUrl
+     * @param loader resolves the short URL if it is not cached
+     * @return the URL the short URL directs to
+     */
+    public Optional<URL> get(String shortUrl, Function<String, Optional<URL>> loader) {
+        if (shortUrl == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.get(shortUrl, key -> loader.apply(key).map(RedirectCache::copyOf).orElse(null)));
+    }
+
+    /**
+     * Get the URL for a short URL without loading it on a miss.
+     *
+     * @param shortUrl
+     * @return the cached URL, or empty if the short URL is not cached
+     */
+    public Optional<URL> getIfPresent(String shortUrl) {
+        return shortUrl == null ? Optional.empty() : Optional.ofNullable(cache.getIfPresent(shortUrl));
+    }
+
+    /**
+     * Store the current state of a URL, replacing any cached entry for its short URL.
+     *
+     * @param url
+     */
+    public void put(URL url) {
+        if (url != null && url.getShortUrl() != null) {
+            stamps.incrementAndGet(stripe(url.getShortUrl()));
+            cache.put(url.getShortUrl(), copyOf(url));
+        }
+    }
+
+    /**
+     * Take the stamp of a short URL before reading its state for {@link #putIfAbsent(URL, long)}.
+     *
+     * @param shortUrl
+     * @return the stamp
+     */
+    public long stamp(String shortUrl) {
+        return shortUrl == null ? 0 : stamps.get(stripe(shortUrl));
+    }
+
+    /**
+     * Store the state of a URL unless its short URL is cached already, or has been changed or
+     * invalidated since the stamp was taken.
+     *
+     * @param url
+     * @param stamp taken before the state was read
+     */
+    public void putIfAbsent(URL url, long stamp) {
+        if (url == null || url.getShortUrl() == null) {
+            return;
+        }
+        int stripe = stripe(url.getShortUrl());
+        // Invalidations change the stamp before they remove the entry, so they remove one stored here.
+        cache.asMap().computeIfAbsent(url.getShortUrl(), key -> stamps.get(stripe) == stamp ? copyOf(url) : null);
+    }
+
+    /**
+     * Remove a short URL from the cache.
+     *
+     * @param shortUrl
+     */
+    public void invalidate(String shortUrl) {
+        if (shortUrl != null) {
+            stamps.incrementAndGet(stripe(shortUrl));
+            cache.invalidate(shortUrl);
+        }
+    }
+
+    /**
+     * Get the most frequently requested cached URLs, as judged by the eviction policy.
+     *
+     * @param limit the maximum number of URLs returned
+     * @return the cached URLs, hottest first
+     */
+    public List<URL> hottest(int limit) {
+        return cache.policy().eviction()
+                .map(eviction -> List.copyOf(eviction.hottest(limit).values()))
+                .orElseGet(List::of);
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the cache
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "redirect");
+    }
+
+    private static int stripe(String shortUrl) {
+        int hash = shortUrl.hashCode();
+        return (hash ^ (hash >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    /**
+     * Cached entries are shared between requests, so they are kept apart from
+     * the instances owned by a persistence context.
+     */
+    private static URL copyOf(URL url) {
+        URL copy = new URL();
+        copy.setId(url.getId());
+        copy.setLongUrl(url.getLongUrl());
+        copy.setShortUrl(url.getShortUrl());
+        copy.setUsername(url.getUsername());
+        copy.setRedirectType(url.getRedirectType());
+        copy.setCacheMaxAge(url.getCacheMaxAge());
+        copy.setModifiedAt(url.getModifiedAt());
+        return copy;
+    }
+}
@@ -0,0 +1,145 @@
+package io.twodigits.urlshortener.cache;
+
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact binary file of cached URLs, hottest first.
+ * <p>
+ * The file holds a header with the time it was taken and the number of entries, the entries
+ * as length-prefixed UTF-8 strings, and a CRC32 of everything before it. It is written to a
+ * temporary file which then replaces the previous snapshot, so a reader never sees a torn file.
+ */
+record RedirectCacheSnapshot(Instant takenAt, List<URL> urls) {
+
+    private static final int MAGIC = 0x52434353;
+
+    private static final int VERSION = 2;
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final int NULL_VALUE = -1;
+
+    /**
+     * Write the snapshot, replacing the file atomically.
+     *
+     * @param file
+     */
+    void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(out), new CRC32());
+                DataOutputStream data = new DataOutputStream(checked);
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeLong(takenAt.toEpochMilli());
+                data.writeInt(urls.size());
+                for (URL url : urls) {
+                    data.writeLong(url.getId() == null ? 0 : url.getId());
+                    writeString(data, url.getShortUrl());
+                    writeString(data, url.getLongUrl());
+                    writeString(data, url.getUsername());
+                    data.writeShort(url.getRedirectType() == null ? NULL_VALUE : url.getRedirectType().getStatus());
+                    data.writeInt(url.getCacheMaxAge() == null ? NULL_VALUE : url.getCacheMaxAge());
+                    data.writeLong(url.getModifiedAt() == null ? NULL_VALUE : url.getModifiedAt());
+                }
+                data.flush();
+                data.writeLong(checked.getChecksum().getValue());
+                data.flush();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Read a snapshot written by {@link #write(Path)}.
+     *
+     * @param file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is damaged
+     */
+    static RedirectCacheSnapshot read(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(in), new CRC32());
+            DataInputStream data = new DataInputStream(checked);
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                throw new IOException("Not a redirect cache snapshot of version " + VERSION);
+            }
+            Instant takenAt = Instant.ofEpochMilli(data.readLong());
+            int count = data.readInt();
+            if (count < 0) {
+                throw new IOException("Invalid entry count " + count);
+            }
+            List<URL> urls = new ArrayList<>(Math.min(count, 100_000));
+            for (int i = 0; i < count; i++) {
+                URL url = new URL();
+                url.setId(data.readLong());
+                url.setShortUrl(readString(data));
+                url.setLongUrl(readString(data));
+                url.setUsername(readString(data));
+                short status = data.readShort();
+                int cacheMaxAge = data.readInt();
+                long modifiedAt = data.readLong();
+                try {
+                    url.setRedirectType(status == NULL_VALUE ? null : RedirectType.ofStatus(status));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                url.setCacheMaxAge(cacheMaxAge == NULL_VALUE ? null : cacheMaxAge);
+                url.setModifiedAt(modifiedAt == NULL_VALUE ? null : modifiedAt);
+                urls.add(url);
+            }
+            long expected = checked.getChecksum().getValue();
+            if (data.readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            return new RedirectCacheSnapshot(takenAt, urls);
+        }
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > 1 << 20) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
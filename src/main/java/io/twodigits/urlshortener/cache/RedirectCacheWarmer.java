@@ -0,0 +1,196 @@
+package io.twodigits.urlshortener.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.twodigits.urlshortener.config.WarmStartProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.storage.URLStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the redirect cache warm across restarts.
+ * <p>
+ * The hottest entries of the {@link RedirectCache} are written to a snapshot file periodically
+ * and on shutdown. On startup the snapshot is loaded in the background; its short URLs are
+ * looked up again in the storage, so links deleted or changed since the snapshot was taken
+ * are never served from it. Until the load has finished this indicator reports
+ * {@code OUT_OF_SERVICE}, which keeps the readiness probe from going green.
+ */
+@Slf4j
+@Component
+public class RedirectCacheWarmer implements SmartLifecycle, HealthIndicator {
+
+    /**
+     * The number of short URLs looked up with one query
+     */
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
+    private final RedirectCache redirectCache;
+
+    private final URLStorage urlStorage;
+
+    private final WarmStartProperties properties;
+
+    private final ExecutionThreads executionThreads;
+
+    private final Timer loadTimer;
+
+    private volatile boolean loading;
+
+    private volatile int loaded;
+
+    private volatile Duration loadTime;
+
+    private volatile boolean running;
+
+    private ScheduledExecutorService snapshotWriter;
+
+    @Autowired
+    public RedirectCacheWarmer(RedirectCache redirectCache, URLStorage urlStorage, WarmStartProperties properties,
+                               ExecutionThreads executionThreads, MeterRegistry registry) {
+        this.redirectCache = redirectCache;
+        this.urlStorage = urlStorage;
+        this.properties = properties;
+        this.executionThreads = executionThreads;
+        this.loadTimer = Timer.builder("urlshortener.warmstart.load")
+                .description("Time taken to load the redirect cache snapshot")
+                .register(registry);
+        Gauge.builder("urlshortener.warmstart.entries", this, warmer -> warmer.loaded)
+                .description("Links loaded into the redirect cache from the snapshot")
+                .register(registry);
+    }
+
+    @Override
+    public Health health() {
+        if (loading) {
+            return Health.outOfService().withDetail("loading", properties.getFile().toString()).build();
+        }
+        Health.Builder health = Health.up().withDetail("entries", loaded);
+        return loadTime == null ? health.build() : health.withDetail("loadTime", loadTime.toString()).build();
+    }
+
+    /**
+     * @return true while the snapshot is being loaded
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Load the snapshot into the redirect cache.
+     *
+     * @return the number of links loaded
+     */
+    int load() throws IOException {
+        long start = System.nanoTime();
+        RedirectCacheSnapshot snapshot = RedirectCacheSnapshot.read(properties.getFile());
+        List<URL> urls = snapshot.urls();
+        int count = 0;
+        for (int from = 0; from < urls.size() && running; from += LOOKUP_CHUNK_SIZE) {
+            List<URL> chunk = urls.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, urls.size()));
+            // Taken before the read, so links changed or deleted while it runs are not cached.
+            Map<String, Long> stamps = new HashMap<>();
+            for (URL url : chunk) {
+                stamps.put(url.getShortUrl(), redirectCache.stamp(url.getShortUrl()));
+            }
+            for (URL url : urlStorage.findByShortUrls(List.copyOf(stamps.keySet()))) {
+                redirectCache.putIfAbsent(url, stamps.get(url.getShortUrl()));
+                count++;
+            }
+        }
+        loaded = count;
+        loadTime = Duration.ofNanos(System.nanoTime() - start);
+        loadTimer.record(loadTime);
+        log.info("Loaded {} of {} links from the redirect cache snapshot taken at {} in {} ms", count, urls.size(),
+                snapshot.takenAt(), loadTime.toMillis());
+        return count;
+    }
+
+    /**
+     * Write the hottest cached links to the snapshot file.
+     *
+     * @return the number of links written
+     */
+    int snapshot() throws IOException {
+        List<URL> hottest = redirectCache.hottest(properties.getMaxEntries());
+        if (hottest.isEmpty()) {
+            return 0;
+        }
+        new RedirectCacheSnapshot(Instant.now(), hottest).write(properties.getFile());
+        log.debug("Wrote {} links to the redirect cache snapshot", hottest.size());
+        return hottest.size();
+    }
+
+    private void loadQuietly() {
+        try {
+            load();
+        } catch (NoSuchFileException e) {
+            log.info("No redirect cache snapshot in {}, starting cold", properties.getFile());
+        } catch (IOException | DataAccessException e) {
+            log.warn("Failed to load the redirect cache snapshot, starting cold", e);
+        } finally {
+            loading = false;
+        }
+    }
+
+    private void snapshotQuietly() {
+        // Writing the snapshot before it has been loaded would replace it with a colder one.
+        if (loading) {
+            return;
+        }
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write the redirect cache snapshot", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (Files.exists(properties.getFile())) {
+            loading = true;
+            executionThreads.threadFactory("redirect-cache-warmer").newThread(this::loadQuietly).start();
+        }
+        long interval = properties.getSnapshotInterval().toMillis();
+        snapshotWriter = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("redirect-cache-snapshot"));
+        snapshotWriter.scheduleWithFixedDelay(this::snapshotQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdownNow();
+            snapshotQuietly();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,105 @@
+package io.twodigits.urlshortener.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.twodigits.urlshortener.config.UserCountCacheProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cached number of URLs per user.
+ * <p>
+ * A count is loaded once and then kept up to date by the service, which adds and subtracts
+ * the URLs it creates and deletes instead of counting again. Users whose count is not
+ * cached are left alone by these updates and counted on their next read. A count expires
+ * a fixed time after it has been loaded; the updates do not extend its lifetime, so the
+ * drift from changes of other nodes is bounded even for users who keep creating URLs.
+ */
+@Component
+public class UserUrlCounts implements MeterBinder {
+
+    private final Cache<String, Long> cache;
+
+    @Autowired
+    public UserUrlCounts(UserCountCacheProperties properties) {
+        this(properties, Ticker.systemTicker());
+    }
+
+    UserUrlCounts(UserCountCacheProperties properties, Ticker ticker) {
+        long expireAfterLoad = properties.getExpireAfterWrite().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<String, Long>() {
+                    @Override
+                    public long expireAfterCreate(String username, Long count, long currentTime) {
+                        return expireAfterLoad;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String username, Long count, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String username, Long count, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the number of URLs of a user, counting and caching them on a miss.
+     *
+     * @param username
+     * @param loader counts the URLs of the user if the count is not cached
+     * @return the number of URLs
+     */
+    public long get(String username, ToLongFunction<String> loader) {
+        if (username == null) {
+            return 0;
+        }
+        return cache.get(username, loader::applyAsLong);
+    }
+
+    /**
+     * Change the cached count of a user, if there is one.
+     *
+     * @param username
+     * @param delta the number of URLs the user gained, negative if they lost some
+     */
+    public void add(String username, long delta) {
+        if (username != null && delta != 0) {
+            // A load racing with the change may or may not have counted it already; the
+            // expiry, which the change leaves as it is, bounds how long such an off-by-one is served.
+            cache.asMap().computeIfPresent(username, (user, count) -> Math.max(count + delta, 0));
+        }
+    }
+
+    /**
+     * Drop the cached count of a user, so it is counted on the next read. Used for changes
+     * made by other nodes, which may or may not have been counted already.
+     *
+     * @param username
+     */
+    public void invalidate(String username) {
+        if (username != null) {
+            cache.invalidate(username);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "user-count");
+    }
+}
@@ -0,0 +1,206 @@
+package io.twodigits.urlshortener.clicklog;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary encoding of clicks.
+ * <p>
+ * Numbers are written as unsigned LEB128 varints and strings as their UTF-8 length plus one
+ * followed by the bytes, zero standing for null. A record of a segment is prefixed with its
+ * length, so it can be read from its position alone:
+ * <pre>
+ * length | id | urlId | accessTime | userAgent | referrer | clientIp
+ * </pre>
+ * The clicks of one URL in a compacted segment are ordered by access time and ID and split
+ * into chunks, which can be read on their own. The strings of a chunk are written once into
+ * a dictionary and referenced by index plus one, IDs and access times as the difference to
+ * the previous click of the chunk:
+ * <pre>
+ * dictionarySize | string... | count | (zigzag(idDelta) | zigzag(timeDelta) | userAgent | referrer | clientIp)...
+ * </pre>
+ */
+final class ClickCodec {
+
+    private ClickCodec() {
+    }
+
+    /**
+     * A byte array output stream whose buffer can be used without copying it.
+     */
+    static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeTo(Buffer target) {
+            target.write(buf, 0, count);
+        }
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (!in.hasArray()) {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * Append a record of a segment, prefixed with its length.
+     *
+     * @param record
+     * @param scratch a buffer the record body is assembled in
+     * @param out
+     */
+    static void writeRecord(ClickRecord record, Buffer scratch, Buffer out) {
+        scratch.reset();
+        scratch.writeVarLong(record.id());
+        scratch.writeVarLong(record.urlId());
+        scratch.writeVarLong(record.accessTime());
+        scratch.writeString(record.userAgent());
+        scratch.writeString(record.referrer());
+        scratch.writeString(record.clientIp());
+        out.writeVarLong(scratch.size());
+        scratch.writeTo(out);
+    }
+
+    /**
+     * Read a record of a segment, including its length prefix.
+     *
+     * @param in
+     * @return the record, or null if the buffer does not hold all of it
+     */
+    static ClickRecord readRecord(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        if (in.remaining() < length) {
+            return null;
+        }
+        return new ClickRecord(readVarLong(in), readVarLong(in), readVarLong(in),
+                readString(in), readString(in), readString(in));
+    }
+
+    /**
+     * @param in
+     * @return the length of the record at the position of the buffer, including its prefix
+     */
+    static int recordLength(ByteBuffer in) {
+        int start = in.position();
+        int length = (int) readVarLong(in);
+        return in.position() - start + length;
+    }
+
+    /**
+     * Append a chunk of the clicks of a URL to a compacted segment.
+     *
+     * @param records the clicks of the chunk ordered by access time and ID
+     * @param out
+     */
+    static void writeChunk(List<ClickRecord> records, Buffer out) {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (ClickRecord record : records) {
+            for (String value : new String[]{record.userAgent(), record.referrer(), record.clientIp()}) {
+                if (value != null && dictionary.putIfAbsent(value, strings.size()) == null) {
+                    strings.add(value);
+                }
+            }
+        }
+        out.writeVarLong(strings.size());
+        strings.forEach(out::writeString);
+        out.writeVarLong(records.size());
+        long id = 0;
+        long accessTime = 0;
+        for (ClickRecord record : records) {
+            out.writeVarLong(zigZag(record.id() - id));
+            out.writeVarLong(zigZag(record.accessTime() - accessTime));
+            out.writeVarLong(reference(dictionary, record.userAgent()));
+            out.writeVarLong(reference(dictionary, record.referrer()));
+            out.writeVarLong(reference(dictionary, record.clientIp()));
+            id = record.id();
+            accessTime = record.accessTime();
+        }
+    }
+
+    /**
+     * Read a chunk of the clicks of a URL from a compacted segment.
+     *
+     * @param urlId
+     * @param in a buffer positioned at the chunk
+     * @param into the list the clicks are added to
+     */
+    static void readChunk(long urlId, ByteBuffer in, List<ClickRecord> into) {
+        String[] strings = new String[(int) readVarLong(in) + 1];
+        for (int i = 1; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+        long count = readVarLong(in);
+        long id = 0;
+        long accessTime = 0;
+        for (long i = 0; i < count; i++) {
+            id += unZigZag(readVarLong(in));
+            accessTime += unZigZag(readVarLong(in));
+            into.add(new ClickRecord(id, urlId, accessTime,
+                    strings[(int) readVarLong(in)], strings[(int) readVarLong(in)], strings[(int) readVarLong(in)]));
+        }
+    }
+
+    private static long reference(Map<String, Integer> dictionary, String value) {
+        return value == null ? 0 : dictionary.get(value) + 1;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,30 @@
+package io.twodigits.urlshortener.clicklog;
+
+import io.twodigits.urlshortener.config.ClickStoreProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+
+/**
+ * Replaces the stats table as the {@link io.twodigits.urlshortener.stats.ClickStore} when
+ * {@code urlshortener.stats.store.engine} is {@code log}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "urlshortener.stats.store.engine", havingValue = "log")
+public class ClickLogConfig {
+
+    /**
+     * Primary, so it is injected wherever a ClickStore is asked for, although the stats
+     * table repository is one as well. Closed when the context shuts down.
+     */
+    @Bean
+    @Primary
+    public SegmentedClickLog segmentedClickLog(ClickStoreProperties properties, ExecutionThreads executionThreads)
+            throws IOException {
+        return SegmentedClickLog.open(properties.getLog(), executionThreads);
+    }
+}
@@ -0,0 +1,41 @@
+package io.twodigits.urlshortener.clicklog;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URLStatsView;
+
+import java.sql.Timestamp;
+import java.util.Comparator;
+
+/**
+ * A click as it is kept in the log, with the ID it has been assigned on append.
+ */
+record ClickRecord(long id, long urlId, long accessTime, String userAgent, String referrer, String clientIp) {
+
+    /**
+     * The order in which the clicks of a URL are returned, the same as for the stats table
+     */
+    static final Comparator<ClickRecord> ACCESS_ORDER =
+            Comparator.comparingLong(ClickRecord::accessTime).thenComparingLong(ClickRecord::id);
+
+    static ClickRecord of(long id, ClickEvent event) {
+        return new ClickRecord(id, event.getUrlId(), event.getAccessTime(), event.getUserAgent(),
+                event.getReferrer(), event.getClientIp());
+    }
+
+    /**
+     * @param accessTime
+     * @param id
+     * @return whether the click comes after the given one in {@link #ACCESS_ORDER}
+     */
+    boolean isAfter(long accessTime, long id) {
+        return this.accessTime > accessTime || this.accessTime == accessTime && this.id > id;
+    }
+
+    /**
+     * The access time is converted like the JDBC driver converts it, so both stores
+     * return the same local time for a click.
+     */
+    URLStatsView toView() {
+        return new URLStatsView(id, new Timestamp(accessTime).toLocalDateTime(), userAgent, referrer, clientIp);
+    }
+}
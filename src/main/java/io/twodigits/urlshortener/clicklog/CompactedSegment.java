@@ -0,0 +1,363 @@
+package io.twodigits.urlshortener.clicklog;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Clicks folded out of sealed segments whose access times fall into one period, grouped
+ * into one block per URL.
+ * <p>
+ * The block of a URL holds its clicks ordered by access time and ID, split into chunks
+ * which are preceded by a table of the first click and the length of every chunk, so a
+ * page is read starting at the chunk its cursor falls into:
+ * <pre>
+ * (firstAccessTime (long) | firstId (long) | length (int))... | chunk...
+ * </pre>
+ * The blocks are followed by a footer listing the offset, length and chunk count of the
+ * block of every URL, ordered by URL ID, and a fixed-size trailer:
+ * <pre>
+ * block... | period (long) | minAccessTime (long) | maxAccessTime (long) | urlCount (int) |
+ * (urlId (long) | offset (long) | length (int) | chunkCount (int))... |
+ * footerOffset (long) | crc32 of the footer (int) | magic (int)
+ * </pre>
+ * A compacted segment is written once to a temporary file and moved into place, so it is
+ * never seen incomplete. Which compacted segments are current is recorded by the {@link Manifest}.
+ */
+final class CompactedSegment implements Closeable {
+
+    private static final int MAGIC = 0x434c4b54;
+
+    private static final int TRAILER = 16;
+
+    private static final int CHUNK_ENTRY = 20;
+
+    /**
+     * The number of clicks per chunk, the most a page reads beyond its cursor and limit
+     */
+    private static final int CHUNK_SIZE = 256;
+
+    private static final String PREFIX = "compacted-";
+
+    private static final String SUFFIX = ".dat";
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final long period;
+
+    private final long minAccessTime;
+
+    private final long maxAccessTime;
+
+    private final long[] urlIds;
+
+    private final long[] offsets;
+
+    private final int[] lengths;
+
+    private final int[] chunkCounts;
+
+    private CompactedSegment(Path path, FileChannel channel, long period, long minAccessTime, long maxAccessTime,
+                             long[] urlIds, long[] offsets, int[] lengths, int[] chunkCounts) {
+        this.path = path;
+        this.channel = channel;
+        this.period = period;
+        this.minAccessTime = minAccessTime;
+        this.maxAccessTime = maxAccessTime;
+        this.urlIds = urlIds;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.chunkCounts = chunkCounts;
+    }
+
+    /**
+     * @param directory
+     * @param lastSegment the sequence number of the newest segment folded by the compaction writing the file
+     * @param index the number of the file among those written by the compaction
+     */
+    static Path path(Path directory, long lastSegment, int index) {
+        return directory.resolve(String.format("%s%020d-%06d%s", PREFIX, lastSegment, index, SUFFIX));
+    }
+
+    /**
+     * @param path
+     * @return whether the file is a compacted segment
+     */
+    static boolean isCompacted(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    static CompactedSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < TRAILER) {
+                throw new IOException("Compacted click segment " + path + " is truncated");
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER, TRAILER);
+            long footerOffset = trailer.getLong();
+            int checksum = trailer.getInt();
+            if (trailer.getInt() != MAGIC || footerOffset < 0 || footerOffset > size - TRAILER) {
+                throw new IOException(path + " is no compacted click segment");
+            }
+            ByteBuffer footer = read(channel, footerOffset, (int) (size - TRAILER - footerOffset));
+            CRC32 crc = new CRC32();
+            crc.update(footer.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Footer of compacted click segment " + path + " is corrupt");
+            }
+            long period = footer.getLong();
+            long minAccessTime = footer.getLong();
+            long maxAccessTime = footer.getLong();
+            int count = footer.getInt();
+            long[] urlIds = new long[count];
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            int[] chunkCounts = new int[count];
+            for (int i = 0; i < count; i++) {
+                urlIds[i] = footer.getLong();
+                offsets[i] = footer.getLong();
+                lengths[i] = footer.getInt();
+                chunkCounts[i] = footer.getInt();
+            }
+            return new CompactedSegment(path, channel, period, minAccessTime, maxAccessTime,
+                    urlIds, offsets, lengths, chunkCounts);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param path
+     * @param period the start of the period the access times of the clicks fall into
+     */
+    static Writer writer(Path path, long period) throws IOException {
+        return new Writer(path, period);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * @return the start of the period the access times of the clicks fall into
+     */
+    long period() {
+        return period;
+    }
+
+    long minAccessTime() {
+        return minAccessTime;
+    }
+
+    long maxAccessTime() {
+        return maxAccessTime;
+    }
+
+    /**
+     * @return the IDs of all URLs with clicks in the compacted segment, in ascending order; not to be modified
+     */
+    long[] urlIds() {
+        return urlIds;
+    }
+
+    /**
+     * Add all clicks of a URL to a list, ordered by access time and ID.
+     *
+     * @param urlId
+     * @param into
+     * @throws IOException
+     */
+    void read(long urlId, List<ClickRecord> into) throws IOException {
+        int index = Arrays.binarySearch(urlIds, urlId);
+        if (index < 0) {
+            return;
+        }
+        ByteBuffer block = read(channel, offsets[index], lengths[index]);
+        block.position(chunkCounts[index] * CHUNK_ENTRY);
+        for (int i = 0; i < chunkCounts[index]; i++) {
+            ClickCodec.readChunk(urlId, block, into);
+        }
+    }
+
+    /**
+     * Add the clicks of a URL following a given click to a list, ordered by access time and ID.
+     * Only the chunks from the one the given click falls into on are read.
+     *
+     * @param urlId
+     * @param afterTime
+     * @param afterId
+     * @param limit the maximum number of clicks to add
+     * @param into
+     * @throws IOException
+     */
+    void read(long urlId, long afterTime, long afterId, int limit, List<ClickRecord> into) throws IOException {
+        int index = Arrays.binarySearch(urlIds, urlId);
+        if (index < 0) {
+            return;
+        }
+        int chunks = chunkCounts[index];
+        ByteBuffer table = read(channel, offsets[index], chunks * CHUNK_ENTRY);
+        // The last chunk starting at or before the given click, which may hold clicks following it
+        int low = 0;
+        int high = chunks - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            long accessTime = table.getLong(middle * CHUNK_ENTRY);
+            long id = table.getLong(middle * CHUNK_ENTRY + 8);
+            if (accessTime < afterTime || accessTime == afterTime && id <= afterId) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        long offset = offsets[index] + (long) chunks * CHUNK_ENTRY;
+        for (int i = 0; i < low; i++) {
+            offset += table.getInt(i * CHUNK_ENTRY + 16);
+        }
+        List<ClickRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+        int added = 0;
+        for (int i = low; i < chunks && added < limit; i++) {
+            int length = table.getInt(i * CHUNK_ENTRY + 16);
+            chunk.clear();
+            ClickCodec.readChunk(urlId, read(channel, offset, length), chunk);
+            offset += length;
+            for (ClickRecord record : chunk) {
+                if (added < limit && record.isAfter(afterTime, afterId)) {
+                    into.add(record);
+                    added++;
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of compacted click segment");
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Writes a compacted segment block by block; the blocks have to be appended in ascending URL ID order.
+     */
+    static final class Writer implements Closeable {
+
+        private final long period;
+
+        private final FileOutputStream file;
+
+        private final DataOutputStream out;
+
+        private final ClickCodec.Buffer chunks = new ClickCodec.Buffer(1 << 16);
+
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+
+        private long position;
+
+        private int count;
+
+        private long minAccessTime = Long.MAX_VALUE;
+
+        private long maxAccessTime = Long.MIN_VALUE;
+
+        private Writer(Path path, long period) throws IOException {
+            this.period = period;
+            this.file = new FileOutputStream(path.toFile());
+            this.out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+        }
+
+        /**
+         * @param urlId
+         * @param records the clicks of the URL ordered by access time and ID
+         * @throws IOException
+         */
+        void append(long urlId, List<ClickRecord> records) throws IOException {
+            if (records.isEmpty()) {
+                return;
+            }
+            int chunkCount = (records.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            ByteBuffer table = ByteBuffer.allocate(chunkCount * CHUNK_ENTRY);
+            chunks.reset();
+            for (int from = 0; from < records.size(); from += CHUNK_SIZE) {
+                List<ClickRecord> chunk = records.subList(from, Math.min(records.size(), from + CHUNK_SIZE));
+                int start = chunks.size();
+                ClickCodec.writeChunk(chunk, chunks);
+                table.putLong(chunk.get(0).accessTime()).putLong(chunk.get(0).id()).putInt(chunks.size() - start);
+            }
+            out.write(table.array());
+            chunks.writeTo(out);
+            int length = table.capacity() + chunks.size();
+            indexOut.writeLong(urlId);
+            indexOut.writeLong(position);
+            indexOut.writeInt(length);
+            indexOut.writeInt(chunkCount);
+            position += length;
+            count++;
+            minAccessTime = Math.min(minAccessTime, records.get(0).accessTime());
+            maxAccessTime = Math.max(maxAccessTime, records.get(records.size() - 1).accessTime());
+        }
+
+        /**
+         * @return whether no block has been appended
+         */
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * Write the footer and force the file to disk.
+         *
+         * @throws IOException
+         */
+        void finish() throws IOException {
+            ByteBuffer footer = ByteBuffer.allocate(28 + index.size());
+            footer.putLong(period).putLong(minAccessTime).putLong(maxAccessTime).putInt(count)
+                    .put(index.toByteArray()).flip();
+            CRC32 crc = new CRC32();
+            crc.update(footer.duplicate());
+            out.write(footer.array(), 0, footer.limit());
+            out.writeLong(position);
+            out.writeInt((int) crc.getValue());
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getFD().sync();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
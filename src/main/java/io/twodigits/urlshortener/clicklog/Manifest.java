@@ -0,0 +1,98 @@
+package io.twodigits.urlshortener.clicklog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The state a compaction leaves the log in: the newest segment folded so far, the highest
+ * click ID ever folded and the names of the current compacted segments.
+ * <pre>
+ * magic (int) | lastSegment (long) | maxId (long) | fileCount (int) | (nameLength (int) | name)... | crc32 (int)
+ * </pre>
+ * A compaction replaces the manifest atomically once all its compacted segments are written,
+ * so a crash leaves either the state before or after it.
+ *
+ * @param lastSegment the sequence number of the newest segment folded into the compacted segments
+ * @param maxId the highest click ID folded so far, kept when its click is dropped
+ * @param files the file names of the current compacted segments
+ */
+record Manifest(long lastSegment, long maxId, List<String> files) {
+
+    private static final int MAGIC = 0x434c4b4d;
+
+    private static final String NAME = "manifest.dat";
+
+    static final Manifest EMPTY = new Manifest(0, 0, List.of());
+
+    /**
+     * @param directory
+     * @return the manifest of the log in the directory, {@link #EMPTY} if it has never been compacted
+     * @throws IOException
+     */
+    static Manifest read(Path directory) throws IOException {
+        Path path = directory.resolve(NAME);
+        if (!Files.exists(path)) {
+            return EMPTY;
+        }
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (content.remaining() < 8) {
+            throw new IOException("Click log manifest " + path + " is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content.duplicate().limit(content.limit() - 4));
+        if (content.getInt() != MAGIC || (int) crc.getValue() != content.getInt(content.limit() - 4)) {
+            throw new IOException("Click log manifest " + path + " is corrupt");
+        }
+        long lastSegment = content.getLong();
+        long maxId = content.getLong();
+        int count = content.getInt();
+        List<String> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[content.getInt()];
+            content.get(name);
+            files.add(new String(name, StandardCharsets.UTF_8));
+        }
+        return new Manifest(lastSegment, maxId, List.copyOf(files));
+    }
+
+    /**
+     * Replace the manifest of the log in a directory.
+     *
+     * @param directory
+     * @throws IOException
+     */
+    void write(Path directory) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(content);
+        out.writeInt(MAGIC);
+        out.writeLong(lastSegment);
+        out.writeLong(maxId);
+        out.writeInt(files.size());
+        for (String file : files) {
+            byte[] name = file.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        Path target = directory.resolve(NAME);
+        Path temporary = target.resolveSibling(NAME + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            content.writeTo(file);
+            file.getFD().sync();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,213 @@
+package io.twodigits.urlshortener.clicklog;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A file clicks are appended to.
+ * <p>
+ * Every append writes one frame holding a batch of records:
+ * <pre>
+ * payloadLength (int) | crc32 of the payload (int) | record...
+ * </pre>
+ * Only the newest segment is appended to. Once it is full it is sealed: forced to disk,
+ * mapped read-only and never written again.
+ */
+@Slf4j
+final class Segment implements Closeable {
+
+    static final int FRAME_HEADER = 8;
+
+    private static final String PREFIX = "segment-";
+
+    private static final String SUFFIX = ".log";
+
+    /**
+     * The number of bytes read at once for a record of the segment being appended to,
+     * enough for most records
+     */
+    private static final int READ_AHEAD = 256;
+
+    private final long sequence;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private long size;
+
+    private MappedByteBuffer sealed;
+
+    @FunctionalInterface
+    interface RecordHandler {
+        void accept(long offset, ClickRecord record);
+    }
+
+    private Segment(long sequence, Path path, FileChannel channel, long size) {
+        this.sequence = sequence;
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    static Path path(Path directory, long sequence) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+    }
+
+    /**
+     * @param path
+     * @return the sequence number of a segment file, or -1 if the file is no segment
+     */
+    static long sequence(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static Segment create(Path directory, long sequence) throws IOException {
+        Path path = path(directory, sequence);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(sequence, path, channel, 0);
+    }
+
+    /**
+     * Open a segment left by an earlier run and seal it. A frame which is incomplete or
+     * does not match its checksum, as left by a crash during an append, is cut off together
+     * with everything after it.
+     *
+     * @param path
+     * @param handler receives every record of the segment with its offset
+     * @return the sealed segment
+     * @throws IOException
+     */
+    static Segment recover(Path path, RecordHandler handler) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        MappedByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        CRC32 crc = new CRC32();
+        int end = 0;
+        while (content.remaining() >= FRAME_HEADER) {
+            int length = content.getInt();
+            int checksum = content.getInt();
+            if (length < 0 || length > content.remaining()) {
+                break;
+            }
+            ByteBuffer payload = content.slice(content.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            int payloadStart = content.position();
+            while (payload.hasRemaining()) {
+                handler.accept(payloadStart + payload.position(), ClickCodec.readRecord(payload));
+            }
+            content.position(payloadStart + length);
+            end = content.position();
+        }
+        if (end < fileSize) {
+            log.warn("Cutting {} bytes of incomplete clicks off {}", fileSize - end, path);
+            channel.truncate(end);
+        }
+        Segment segment = new Segment(sequence(path), path, channel, end);
+        segment.seal();
+        return segment;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Write a frame at the end of the segment. If the write fails, the segment is cut back
+     * to where the frame started, so later frames do not follow a broken one.
+     *
+     * @param frame
+     * @return the offset the frame has been written at
+     * @throws IOException
+     */
+    long append(ByteBuffer frame) throws IOException {
+        long offset = size;
+        try {
+            long position = offset;
+            while (frame.hasRemaining()) {
+                position += channel.write(frame, position);
+            }
+            size = position;
+            return offset;
+        } catch (IOException e) {
+            channel.truncate(offset);
+            throw e;
+        }
+    }
+
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Force the segment to disk and map it for reading; the channel is closed.
+     */
+    void seal() throws IOException {
+        channel.force(true);
+        sealed = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        channel.close();
+    }
+
+    /**
+     * @param offset the offset of a record as passed to a {@link RecordHandler}
+     * @return the record at the offset
+     * @throws IOException
+     */
+    ClickRecord read(long offset) throws IOException {
+        if (sealed != null) {
+            return ClickCodec.readRecord(sealed.duplicate().position((int) offset));
+        }
+        ByteBuffer in = read(offset, READ_AHEAD);
+        int length = ClickCodec.recordLength(in.duplicate());
+        if (length > in.limit()) {
+            in = read(offset, length);
+        }
+        return ClickCodec.readRecord(in);
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,728 @@
+package io.twodigits.urlshortener.clicklog;
+
+import io.twodigits.urlshortener.config.ClickStoreProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.stats.ClickStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link ClickStore} appending clicks to segment files instead of inserting rows.
+ * <p>
+ * Every batch of clicks becomes one checksummed frame, written with a single sequential
+ * write and one fsync, at the end of the newest segment. When a segment reaches its size
+ * it is sealed and a new one is started. An in-memory index keeps the positions of the
+ * clicks of every URL in the segments ordered by access time, so a page of clicks reads
+ * only the records following its cursor.
+ * <p>
+ * A background compaction folds sealed segments into compacted segments and deletes them.
+ * Each compacted segment holds the clicks of one period of access times, per URL ordered
+ * by access time, so a page seeks to its cursor there as well. A compaction writes the
+ * folded clicks of a period to a new compacted segment, and merges all compacted segments
+ * of a period into one once the period is over, so every click is rewritten at most
+ * twice. Periods older than the retention are dropped; their counts stay in the click
+ * rollups. On startup the compacted segments of the {@link Manifest} and all segments
+ * after them are read back, cutting off a frame torn by a crash.
+ */
+@Slf4j
+public class SegmentedClickLog implements ClickStore, Closeable {
+
+    /**
+     * Offsets within a segment are kept in the lower 32 bits of a position
+     */
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * The number of clicks read at once when streaming the clicks of a URL
+     */
+    private static final int STREAM_PAGE = 1_000;
+
+    private static final Comparator<CompactedSegment> BY_MIN_ACCESS_TIME =
+            Comparator.comparingLong(CompactedSegment::minAccessTime);
+
+    private final Path directory;
+
+    private final long segmentSize;
+
+    private final int compactionThreshold;
+
+    private final long periodMillis;
+
+    private final long retentionMillis;
+
+    /**
+     * Guards the index and the set of segments; appends and compactions only take it to
+     * publish their results, reads hold it while they read
+     */
+    private final StampedLock lock = new StampedLock();
+
+    private final Map<Long, Positions> index = new HashMap<>();
+
+    private final TreeMap<Long, Segment> sealed = new TreeMap<>();
+
+    /**
+     * The current compacted segments ordered by their earliest access time; replaced, never modified
+     */
+    private List<CompactedSegment> compacted = List.of();
+
+    private Manifest manifest = Manifest.EMPTY;
+
+    private Segment active;
+
+    /**
+     * Held by compactions only, so appends go on while one runs
+     */
+    private final Object compactionMonitor = new Object();
+
+    // The following fields are only used by appends, which are synchronized on the log.
+
+    private long nextId = 1;
+
+    private final ClickCodec.Buffer frame = new ClickCodec.Buffer(1 << 16);
+
+    private final ClickCodec.Buffer scratch = new ClickCodec.Buffer(1 << 10);
+
+    private final CRC32 crc = new CRC32();
+
+    private ScheduledExecutorService scheduler;
+
+    private SegmentedClickLog(Path directory, long segmentSize, int compactionThreshold, long periodMillis,
+                              long retentionMillis) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.periodMillis = periodMillis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Open the log in a directory, recovering the clicks left by an earlier run, and
+     * schedule the compaction.
+     *
+     * @param properties
+     * @param executionThreads
+     * @return the log, to be closed on shutdown
+     * @throws IOException
+     */
+    public static SegmentedClickLog open(ClickStoreProperties.Log properties, ExecutionThreads executionThreads)
+            throws IOException {
+        long segmentSize = properties.getSegmentSize().toBytes();
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("The segment size has to be between 1 byte and 1GB");
+        }
+        if (properties.getPeriod().toMillis() <= 0 || properties.getRetention().isNegative()) {
+            throw new IllegalArgumentException("The period has to be positive and the retention must not be negative");
+        }
+        SegmentedClickLog clickLog = new SegmentedClickLog(properties.getDirectory(), segmentSize,
+                Math.max(1, properties.getCompactionThreshold()), properties.getPeriod().toMillis(),
+                properties.getRetention().toMillis());
+        clickLog.recover();
+        clickLog.scheduler = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("click-log-compactor"));
+        long interval = properties.getCompactionInterval().toMillis();
+        clickLog.scheduler.scheduleWithFixedDelay(clickLog::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        return clickLog;
+    }
+
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        manifest = Manifest.read(directory);
+        nextId = manifest.maxId() + 1;
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.sorted().toList();
+        }
+        // Compacted segments missing from the manifest and the segments it lists as folded are
+        // left over by a compaction which stopped before or after it replaced the manifest.
+        Set<String> current = new HashSet<>(manifest.files());
+        List<CompactedSegment> opened = new ArrayList<>();
+        for (Path file : files) {
+            if (CompactedSegment.isCompacted(file)) {
+                if (current.contains(file.getFileName().toString())) {
+                    opened.add(CompactedSegment.open(file));
+                } else {
+                    Files.delete(file);
+                }
+            } else if (file.getFileName().toString().endsWith(".tmp")) {
+                Files.delete(file);
+            }
+        }
+        opened.sort(BY_MIN_ACCESS_TIME);
+        compacted = List.copyOf(opened);
+        long lastSequence = manifest.lastSegment();
+        for (Path file : files) {
+            long sequence = Segment.sequence(file);
+            if (sequence < 0) {
+                continue;
+            }
+            if (sequence <= manifest.lastSegment()) {
+                Files.delete(file);
+                continue;
+            }
+            Segment segment = Segment.recover(file, (offset, record) -> {
+                addToIndex(record.urlId(), record.accessTime(), record.id(), position(sequence, offset));
+                nextId = Math.max(nextId, record.id() + 1);
+            });
+            lastSequence = sequence;
+            if (segment.size() == 0) {
+                segment.delete();
+            } else {
+                sealed.put(sequence, segment);
+            }
+        }
+        active = Segment.create(directory, lastSequence + 1);
+        log.info("Recovered click log with {} compacted and {} sealed segments from {} in {} ms", compacted.size(),
+                sealed.size(), directory, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Override
+    public void batchInsert(List<ClickEvent> events) {
+        append(events);
+    }
+
+    @Override
+    public void insert(ClickEvent event) {
+        append(List.of(event));
+    }
+
+    /**
+     * Append a batch of clicks as one frame. The clicks are durable when the method returns.
+     */
+    private synchronized void append(List<ClickEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        frame.reset();
+        frame.write(new byte[Segment.FRAME_HEADER], 0, Segment.FRAME_HEADER);
+        int[] recordOffsets = new int[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            recordOffsets[i] = frame.size();
+            ClickCodec.writeRecord(ClickRecord.of(nextId + i, events.get(i)), scratch, frame);
+        }
+        ByteBuffer buffer = frame.asByteBuffer();
+        crc.reset();
+        crc.update(buffer.duplicate().position(Segment.FRAME_HEADER));
+        buffer.putInt(0, buffer.remaining() - Segment.FRAME_HEADER);
+        buffer.putInt(4, (int) crc.getValue());
+
+        long frameOffset;
+        Segment segment;
+        try {
+            if (active.size() > 0 && active.size() + buffer.remaining() > segmentSize) {
+                roll();
+            }
+            segment = active;
+            frameOffset = segment.append(buffer);
+            segment.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append " + events.size() + " clicks", e);
+        }
+        long firstId = nextId;
+        nextId += events.size();
+
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < events.size(); i++) {
+                ClickEvent event = events.get(i);
+                addToIndex(event.getUrlId(), event.getAccessTime(), firstId + i,
+                        position(segment.sequence(), frameOffset + recordOffsets[i]));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void roll() throws IOException {
+        Segment next = Segment.create(directory, active.sequence() + 1);
+        long stamp = lock.writeLock();
+        try {
+            active.seal();
+            sealed.put(active.sequence(), active);
+            active = next;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<URLStatsView> findAll(long urlId) {
+        return toViews(read(urlId, Long.MIN_VALUE, Long.MIN_VALUE, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public List<URLStatsView> findPage(long urlId, LocalDateTime afterTime, long afterId, int limit) {
+        long after = afterTime == null ? Long.MIN_VALUE : Timestamp.valueOf(afterTime).getTime();
+        return toViews(read(urlId, after, afterId, limit));
+    }
+
+    /**
+     * The clicks are read page by page, so the log is never held for all of them.
+     */
+    @Override
+    public void stream(long urlId, Consumer<URLStatsView> consumer) {
+        long afterTime = Long.MIN_VALUE;
+        long afterId = Long.MIN_VALUE;
+        List<ClickRecord> page;
+        do {
+            page = read(urlId, afterTime, afterId, STREAM_PAGE);
+            for (ClickRecord record : page) {
+                consumer.accept(record.toView());
+            }
+            if (!page.isEmpty()) {
+                afterTime = page.get(page.size() - 1).accessTime();
+                afterId = page.get(page.size() - 1).id();
+            }
+        } while (page.size() == STREAM_PAGE);
+    }
+
+    private static List<URLStatsView> toViews(List<ClickRecord> records) {
+        List<URLStatsView> views = new ArrayList<>(records.size());
+        for (ClickRecord record : records) {
+            views.add(record.toView());
+        }
+        return views;
+    }
+
+    /**
+     * Read the clicks of a URL following a given click. Every compacted segment and the
+     * index yield at most the limit of clicks after the given one, which are merged.
+     *
+     * @return the clicks ordered by access time and ID
+     */
+    private List<ClickRecord> read(long urlId, long afterTime, long afterId, int limit) {
+        List<ClickRecord> records = new ArrayList<>();
+        long stamp = lock.readLock();
+        try {
+            for (CompactedSegment segment : compacted) {
+                if (records.size() == limit && segment.minAccessTime() > records.get(limit - 1).accessTime()) {
+                    break;
+                }
+                if (segment.maxAccessTime() >= afterTime) {
+                    segment.read(urlId, afterTime, afterId, limit, records);
+                    truncate(records, limit);
+                }
+            }
+            Positions positions = index.get(urlId);
+            if (positions != null) {
+                int end = (int) Math.min(positions.size(), (long) positions.after(afterTime, afterId) + limit);
+                for (int i = positions.after(afterTime, afterId); i < end; i++) {
+                    long position = positions.position(i);
+                    records.add(segment(sequence(position)).read(offset(position)));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the clicks of URL " + urlId, e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        truncate(records, limit);
+        return records;
+    }
+
+    private static void truncate(List<ClickRecord> records, int limit) {
+        records.sort(ClickRecord.ACCESS_ORDER);
+        if (records.size() > limit) {
+            records.subList(limit, records.size()).clear();
+        }
+    }
+
+    private Segment segment(long sequence) {
+        return sequence == active.sequence() ? active : sealed.get(sequence);
+    }
+
+    /**
+     * @return the number of sealed segments not yet folded into compacted segments
+     */
+    public int getSealedSegmentCount() {
+        long stamp = lock.readLock();
+        try {
+            return sealed.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the number of compacted segments
+     */
+    public int getCompactedSegmentCount() {
+        long stamp = lock.readLock();
+        try {
+            return compacted.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Fold all sealed segments into compacted segments and delete them.
+     * <p>
+     * The folded clicks are grouped by the period of their access time. Only periods which
+     * receive clicks or are over are written: the clicks of an ongoing period go to a new
+     * compacted segment, while the compacted segments of a past period are merged into one.
+     * Compacted segments of periods older than the retention are deleted, and clicks older
+     * than it are not carried over when a period is merged.
+     *
+     * @return false if there was no sealed segment
+     * @throws IOException
+     */
+    public boolean compact() throws IOException {
+        synchronized (compactionMonitor) {
+            long start = System.nanoTime();
+            List<CompactedSegment> previous;
+            Map<Long, Segment> folded;
+            Map<Long, Positions> foldedPositions = new HashMap<>();
+            long stamp = lock.readLock();
+            try {
+                if (sealed.isEmpty()) {
+                    return false;
+                }
+                previous = compacted;
+                folded = new HashMap<>(sealed);
+                long limit = position(sealed.lastKey() + 1, 0);
+                index.forEach((urlId, positions) -> {
+                    Positions below = positions.below(limit);
+                    if (below.size() > 0) {
+                        foldedPositions.put(urlId, below);
+                    }
+                });
+            } finally {
+                lock.unlockRead(stamp);
+            }
+
+            long lastSegment = folded.keySet().stream().mapToLong(Long::longValue).max().orElseThrow();
+            long now = System.currentTimeMillis();
+            long cutoff = retentionMillis == 0 ? Long.MIN_VALUE : now - retentionMillis;
+            long maxId = manifest.maxId();
+            TreeSet<Long> periods = new TreeSet<>();
+            Set<Long> periodsWithClicks = new HashSet<>();
+            for (Positions positions : foldedPositions.values()) {
+                for (int i = 0; i < positions.size(); i++) {
+                    periodsWithClicks.add(period(positions.time(i)));
+                    maxId = Math.max(maxId, positions.id(i));
+                }
+            }
+            periods.addAll(periodsWithClicks);
+            previous.forEach(segment -> periods.add(segment.period()));
+
+            List<CompactedSegment> written = new ArrayList<>();
+            List<CompactedSegment> replaced = new ArrayList<>();
+            try {
+                for (long period : periods) {
+                    List<CompactedSegment> runs = previous.stream().filter(segment -> segment.period() == period).toList();
+                    boolean withClicks = periodsWithClicks.contains(period);
+                    long end = period + periodMillis;
+                    if (end <= cutoff) {
+                        replaced.addAll(runs);
+                    } else if (end <= now && runs.size() + (withClicks ? 1 : 0) > 1) {
+                        CompactedSegment merged = write(lastSegment, written.size(), period, runs, folded,
+                                foldedPositions, cutoff);
+                        if (merged != null) {
+                            written.add(merged);
+                        }
+                        replaced.addAll(runs);
+                    } else if (withClicks) {
+                        CompactedSegment added = write(lastSegment, written.size(), period, List.of(), folded,
+                                foldedPositions, cutoff);
+                        if (added != null) {
+                            written.add(added);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                for (CompactedSegment segment : written) {
+                    segment.delete();
+                }
+                throw e;
+            }
+
+            List<CompactedSegment> next = new ArrayList<>(previous);
+            next.removeAll(replaced);
+            next.addAll(written);
+            next.sort(BY_MIN_ACCESS_TIME);
+            Manifest nextManifest = new Manifest(lastSegment, maxId,
+                    next.stream().map(segment -> segment.path().getFileName().toString()).toList());
+            try {
+                nextManifest.write(directory);
+            } catch (IOException e) {
+                for (CompactedSegment segment : written) {
+                    segment.delete();
+                }
+                throw e;
+            }
+
+            long limit = position(lastSegment + 1, 0);
+            stamp = lock.writeLock();
+            try {
+                compacted = List.copyOf(next);
+                manifest = nextManifest;
+                sealed.keySet().removeAll(folded.keySet());
+                index.values().removeIf(positions -> positions.removeBelow(limit) == 0);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            for (CompactedSegment segment : replaced) {
+                segment.delete();
+            }
+            for (Segment segment : folded.values()) {
+                segment.delete();
+            }
+            log.info("Compacted {} segments into {} new compacted segments, replacing {}, in {} ms", folded.size(),
+                    written.size(), replaced.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return true;
+        }
+    }
+
+    /**
+     * Write the clicks of one period, taken from compacted segments and folded segments, to a
+     * new compacted segment.
+     *
+     * @return the compacted segment, or null if no click of the period is newer than the cutoff
+     */
+    private CompactedSegment write(long lastSegment, int number, long period, List<CompactedSegment> runs,
+                                   Map<Long, Segment> folded, Map<Long, Positions> foldedPositions,
+                                   long cutoff) throws IOException {
+        long end = period + periodMillis;
+        long[] urlIds = LongStream.concat(
+                        runs.stream().flatMapToLong(segment -> Arrays.stream(segment.urlIds())),
+                        foldedPositions.entrySet().stream()
+                                .filter(entry -> entry.getValue().first(period) < entry.getValue().first(end))
+                                .mapToLong(Map.Entry::getKey))
+                .sorted()
+                .distinct()
+                .toArray();
+        Path target = CompactedSegment.path(directory, lastSegment, number);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean empty;
+        try (CompactedSegment.Writer writer = CompactedSegment.writer(temporary, period)) {
+            List<ClickRecord> records = new ArrayList<>();
+            for (long urlId : urlIds) {
+                records.clear();
+                for (CompactedSegment run : runs) {
+                    run.read(urlId, records);
+                }
+                Positions positions = foldedPositions.get(urlId);
+                if (positions != null) {
+                    for (int i = positions.first(period); i < positions.first(end); i++) {
+                        long position = positions.position(i);
+                        records.add(folded.get(sequence(position)).read(offset(position)));
+                    }
+                }
+                records.removeIf(record -> record.accessTime() < cutoff);
+                records.sort(ClickRecord.ACCESS_ORDER);
+                writer.append(urlId, records);
+            }
+            writer.finish();
+            empty = writer.isEmpty();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        if (empty) {
+            Files.delete(temporary);
+            return null;
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        return CompactedSegment.open(target);
+    }
+
+    /**
+     * @return the start of the period an access time falls into
+     */
+    private long period(long accessTime) {
+        return Math.floorDiv(accessTime, periodMillis) * periodMillis;
+    }
+
+    private void compactQuietly() {
+        if (getSealedSegmentCount() < compactionThreshold) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to compact the click log", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            long stamp = lock.writeLock();
+            try {
+                active.close();
+                for (CompactedSegment segment : compacted) {
+                    segment.close();
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private void addToIndex(long urlId, long accessTime, long id, long position) {
+        index.computeIfAbsent(urlId, key -> new Positions()).add(accessTime, id, position);
+    }
+
+    private static long position(long sequence, long offset) {
+        return sequence << 32 | offset;
+    }
+
+    private static long sequence(long position) {
+        return position >>> 32;
+    }
+
+    private static long offset(long position) {
+        return position & 0xFFFFFFFFL;
+    }
+
+    /**
+     * The positions of the clicks of one URL with their access times and IDs, ordered by
+     * access time and ID. Clicks are stamped on arrival, so they are appended nearly in
+     * that order and an insert rarely moves more than a few entries.
+     */
+    private static final class Positions {
+
+        private long[] times = new long[2];
+
+        private long[] ids = new long[2];
+
+        private long[] positions = new long[2];
+
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        long time(int index) {
+            return times[index];
+        }
+
+        long id(int index) {
+            return ids[index];
+        }
+
+        long position(int index) {
+            return positions[index];
+        }
+
+        void add(long time, long id, long position) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            int index = size++;
+            while (index > 0 && (times[index - 1] > time || times[index - 1] == time && ids[index - 1] > id)) {
+                times[index] = times[index - 1];
+                ids[index] = ids[index - 1];
+                positions[index] = positions[index - 1];
+                index--;
+            }
+            times[index] = time;
+            ids[index] = id;
+            positions[index] = position;
+        }
+
+        /**
+         * @return the index of the first click following the given one
+         */
+        int after(long time, long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] > time || times[middle] == time && ids[middle] > id) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the first click accessed at or after the given time
+         */
+        int first(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] >= time) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return a copy holding only the positions below the limit
+         */
+        Positions below(long limit) {
+            Positions below = new Positions();
+            for (int i = 0; i < size; i++) {
+                if (positions[i] < limit) {
+                    below.add(times[i], ids[i], positions[i]);
+                }
+            }
+            return below;
+        }
+
+        /**
+         * @return the number of positions left
+         */
+        int removeBelow(long limit) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (positions[i] >= limit) {
+                    times[kept] = times[i];
+                    ids[kept] = ids[i];
+                    positions[kept] = positions[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            return size;
+        }
+    }
+}
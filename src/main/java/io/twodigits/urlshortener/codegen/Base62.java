@@ -0,0 +1,59 @@
+package io.twodigits.urlshortener.codegen;
+
+/**
+ * Renders non-negative numbers with the digits 0-9, A-Z and a-z.
+ */
+public final class Base62 {
+
+    private static final char[] DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private static final int RADIX = DIGITS.length;
+
+    private Base62() {
+    }
+
+    /**
+     * @param value a non-negative number
+     * @return the base62 representation of the number
+     */
+    public static String encode(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        char[] buffer = new char[11];
+        int position = buffer.length;
+        do {
+            buffer[--position] = DIGITS[(int) (value % RADIX)];
+            value /= RADIX;
+        } while (value > 0);
+        return new String(buffer, position, buffer.length - position);
+    }
+
+    /**
+     * @param encoded a string created by {@link #encode(long)}
+     * @return the number it represents
+     */
+    public static long decode(String encoded) {
+        if (encoded.isEmpty()) {
+            throw new IllegalArgumentException("Empty value");
+        }
+        long value = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            value = Math.multiplyExact(value, RADIX) + digit(encoded.charAt(i));
+        }
+        return value;
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 36;
+        }
+        throw new IllegalArgumentException("Not a base62 digit: " + c);
+    }
+}
@@ -0,0 +1,87 @@
+package io.twodigits.urlshortener.codegen;
+
+import io.twodigits.urlshortener.config.ShortCodeProperties;
+import io.twodigits.urlshortener.config.StorageProperties;
+import io.twodigits.urlshortener.storage.URLStorage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Predicate;
+
+/**
+ * Numbers short URLs with IDs leased in blocks from a database sequence (hi/lo).
+ * <p>
+ * Each value of the sequence reserves {@code blockSize} consecutive IDs for this node,
+ * so only one in {@code blockSize} short URLs costs a database round trip, and nodes
+ * sharing the database never hand out the same ID. IDs are rendered in base62, which
+ * keeps short URLs at six characters or less for the first 56 billion links.
+ * <p>
+ * The memory storage engine keeps its URLs apart from the database, so the sequence may start
+ * over while the URLs it numbered are still stored. With that engine, short URLs which are taken
+ * are skipped, and so are whole blocks whose last short URL is taken.
+ */
+@Component
+@ConditionalOnProperty(name = "urlshortener.short-code.strategy", havingValue = "block", matchIfMissing = true)
+public class BlockShortCodeGenerator implements ShortCodeGenerator {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int blockSize;
+
+    private final Predicate<String> taken;
+
+    private long next;
+
+    private long limit;
+
+    @Autowired
+    public BlockShortCodeGenerator(JdbcTemplate jdbcTemplate, ShortCodeProperties properties,
+                                   StorageProperties storageProperties, URLStorage urlStorage) {
+        this(jdbcTemplate, properties, storageProperties.getEngine() == StorageProperties.Engine.MEMORY
+                ? shortUrl -> urlStorage.findByShortUrl(shortUrl).isPresent()
+                : shortUrl -> false);
+    }
+
+    /**
+     * @param jdbcTemplate
+     * @param properties
+     * @param taken whether a short URL is stored already
+     */
+    BlockShortCodeGenerator(JdbcTemplate jdbcTemplate, ShortCodeProperties properties, Predicate<String> taken) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockSize = properties.getBlockSize();
+        this.taken = taken;
+        jdbcTemplate.execute("create sequence if not exists short_code_block_seq start with 1");
+    }
+
+    /**
+     * The attempt is ignored: IDs are never handed out twice, so a collision can only be
+     * caused by a short URL of another strategy and the next ID resolves it. IDs whose
+     * rendering is a {@link #RESERVED reserved path} or taken are skipped.
+     */
+    @Override
+    public String generate(String longUrl, int attempt) {
+        String shortUrl;
+        do {
+            shortUrl = Base62.encode(nextId());
+        } while (RESERVED.contains(shortUrl) || taken.test(shortUrl));
+        return shortUrl;
+    }
+
+    /**
+     * @return the next unused ID
+     */
+    public synchronized long nextId() {
+        while (next == limit) {
+            long hi = jdbcTemplate.queryForObject("select next value for short_code_block_seq", Long.class);
+            next = hi * blockSize;
+            limit = next + blockSize;
+            if (taken.test(Base62.encode(limit - 1))) {
+                next = limit;
+            }
+        }
+        return next++;
+    }
+}
@@ -0,0 +1,30 @@
+package io.twodigits.urlshortener.codegen;
+
+import com.google.common.hash.Hashing;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Derives the short URL from a murmur3 hash of the long URL. The first attempt gives the
+ * same short URL as earlier versions of the service; after a collision the long URL is
+ * salted with the attempt number.
+ */
+@Component
+@ConditionalOnProperty(name = "urlshortener.short-code.strategy", havingValue = "hash")
+public class HashShortCodeGenerator implements ShortCodeGenerator {
+
+    /**
+     * {@code murmur3_32} is deprecated in favour of {@code murmur3_32_fixed}, which only differs for
+     * unpaired surrogates; it is kept so that existing long URLs keep hashing to the same short URL.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public String generate(String longUrl, int attempt) {
+        String input = attempt == 0 ? longUrl : longUrl + '#' + attempt;
+        return Hashing.murmur3_32()
+                .hashString(input, StandardCharsets.UTF_8)
+                .toString();
+    }
+}
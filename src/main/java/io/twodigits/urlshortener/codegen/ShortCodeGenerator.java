@@ -0,0 +1,29 @@
+package io.twodigits.urlshortener.codegen;
+
+import java.util.Set;
+
+/**
+ * Creates the short URL for a long URL.
+ * <p>
+ * The strategy is selected with {@code urlshortener.short-code.strategy}. Uniqueness is
+ * enforced by the database; when a generated short URL is already taken the caller asks
+ * again with an increased attempt number.
+ */
+public interface ShortCodeGenerator {
+
+    /**
+     * First path segments served by something other than the redirect, which a short URL must not be.
+     */
+    Set<String> RESERVED = Set.of("actuator", "delete", "deleteby", "error", "findurl", "generate", "h2",
+            "stats", "trending", "url", "urlsby");
+
+    /**
+     * Generate a short URL.
+     *
+     * @param longUrl the URL the short URL will direct to
+     * @param attempt 0 for the first try, incremented after every collision
+     * @return the short URL
+     */
+    String generate(String longUrl, int attempt);
+
+}
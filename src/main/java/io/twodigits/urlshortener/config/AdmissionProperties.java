@@ -0,0 +1,78 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.admission")
+public class AdmissionProperties {
+
+    /**
+     * Whether redirects and generate requests are rate limited and shed under overload
+     */
+    private boolean enabled = true;
+
+    /**
+     * The number of token buckets per kind of client; rounded up to a power of two. Clients
+     * are hashed onto the buckets, so clients sharing a bucket share its rate.
+     */
+    private int buckets = 16_384;
+
+    /**
+     * The rate of redirects and generate requests per client IP
+     */
+    private final Rate client = new Rate(100, 200);
+
+    /**
+     * The rate of generate requests per username
+     */
+    private final Rate user = new Rate(20, 50);
+
+    private final Concurrency concurrency = new Concurrency();
+
+    @Data
+    public static class Rate {
+
+        /**
+         * The sustained number of requests per second
+         */
+        private double perSecond;
+
+        /**
+         * The number of requests which may arrive at once after a quiet period
+         */
+        private int burst;
+
+        public Rate(double perSecond, int burst) {
+            this.perSecond = perSecond;
+            this.burst = burst;
+        }
+    }
+
+    @Data
+    public static class Concurrency {
+
+        /**
+         * The number of requests per route allowed in flight before any latency is observed
+         */
+        private int initialLimit = 64;
+
+        private int minLimit = 8;
+
+        private int maxLimit = 1_000;
+
+        /**
+         * How many times the latency without load the average latency may grow to before
+         * the limit is lowered
+         */
+        private double tolerance = 2.0;
+
+        /**
+         * How often the limit is adjusted to the latencies observed since
+         */
+        private Duration window = Duration.ofMillis(200);
+
+    }
+}
@@ -0,0 +1,62 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.stats.ingestion")
+public class ClickIngestionProperties {
+
+    /**
+     * What happens to a click when the queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * The redirect waits until the writer has made room in the queue
+         */
+        BLOCK,
+        /**
+         * The click is discarded
+         */
+        DROP,
+        /**
+         * Above the sample threshold only one in sampleRate clicks is queued, the rest are discarded
+         */
+        SAMPLE
+    }
+
+    /**
+     * The maximum number of clicks waiting to be written
+     */
+    private int queueCapacity = 65_536;
+
+    /**
+     * The maximum number of clicks written in one JDBC batch
+     */
+    private int batchSize = 500;
+
+    /**
+     * How long the writer waits for a batch to fill up before writing it anyway
+     */
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    /**
+     * The fill ratio of the queue above which the SAMPLE policy starts discarding clicks
+     */
+    private double sampleThreshold = 0.75;
+
+    /**
+     * One in this many clicks is kept by the SAMPLE policy above the threshold
+     */
+    private int sampleRate = 10;
+
+    /**
+     * How long a graceful shutdown waits for the queue to be drained
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(30);
+
+}
@@ -0,0 +1,17 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.stats.rollup")
+public class ClickRollupProperties {
+
+    /**
+     * How often the in-memory click counters are merged into the rollup tables
+     */
+    private Duration flushInterval = Duration.ofSeconds(5);
+
+}
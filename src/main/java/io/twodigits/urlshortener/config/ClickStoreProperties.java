@@ -0,0 +1,71 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.stats.store")
+public class ClickStoreProperties {
+
+    public enum Engine {
+        /**
+         * Every click is a row of the stats table
+         */
+        DATABASE,
+        /**
+         * Clicks are appended to segment files on disk. They refer to URLs by ID, so the URLs
+         * have to be kept as long as the log. The reactive stack reads the stats table
+         * directly and refuses to start with this engine.
+         */
+        LOG
+    }
+
+    /**
+     * Where the raw clicks are stored
+     */
+    private Engine engine = Engine.DATABASE;
+
+    private final Log log = new Log();
+
+    @Data
+    public static class Log {
+
+        /**
+         * The directory holding the segment files
+         */
+        private Path directory = Path.of("data", "click-log");
+
+        /**
+         * The size at which a segment is sealed and a new one is started; at most 1GB
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+
+        /**
+         * The number of sealed segments which are folded into the compacted segment at once
+         */
+        private int compactionThreshold = 4;
+
+        /**
+         * How often the sealed segments are counted to decide on a compaction
+         */
+        private Duration compactionInterval = Duration.ofMinutes(1);
+
+        /**
+         * The span of access times whose clicks are compacted together. The clicks of an
+         * ongoing period are added as new compacted segments, which are merged into one once
+         * the period is over
+         */
+        private Duration period = Duration.ofDays(1);
+
+        /**
+         * How long raw clicks are kept; compactions drop older ones, whose counts stay in the
+         * click rollups. Zero, the default, keeps them forever
+         */
+        private Duration retention = Duration.ZERO;
+
+    }
+}
@@ -0,0 +1,45 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.compression")
+public class CompressionProperties {
+
+    /**
+     * Whether responses are compressed for clients accepting gzip or zstd
+     */
+    private boolean enabled = true;
+
+    /**
+     * The content types of the responses which are compressed
+     */
+    private List<String> mimeTypes = new ArrayList<>(List.of(
+            "application/json",
+            "application/x-ndjson",
+            "text/csv",
+            "application/cbor",
+            "application/cbor-seq",
+            "application/x-jackson-smile"));
+
+    /**
+     * Responses shorter than this are sent as they are, they would not get much smaller
+     */
+    private DataSize minResponseSize = DataSize.ofKilobytes(2);
+
+    /**
+     * The gzip level from 1, fastest, to 9, smallest
+     */
+    private int gzipLevel = 6;
+
+    /**
+     * The zstd level from 1, fastest, to 19, smallest; zstd is only offered if its native library loads
+     */
+    private int zstdLevel = 3;
+
+}
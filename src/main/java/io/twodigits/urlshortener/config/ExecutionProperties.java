@@ -0,0 +1,37 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.execution")
+public class ExecutionProperties {
+
+    public enum Mode {
+        /**
+         * Requests run on Tomcat's pool of platform threads
+         */
+        PLATFORM,
+        /**
+         * Requests and background work run on virtual threads, falling back to
+         * platform threads on runtimes without virtual thread support
+         */
+        VIRTUAL
+    }
+
+    private Mode mode = Mode.PLATFORM;
+
+    /**
+     * The maximum number of connections handed out at once in VIRTUAL mode, 0 for the
+     * maximum size of the connection pool
+     */
+    private int databaseConcurrency = 0;
+
+    /**
+     * How long a thread waits for a database permit before the request fails
+     */
+    private Duration databaseAcquireTimeout = Duration.ofSeconds(5);
+
+}
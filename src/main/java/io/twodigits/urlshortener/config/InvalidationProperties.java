@@ -0,0 +1,46 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.invalidation")
+public class InvalidationProperties {
+
+    /**
+     * Whether changed and deleted URLs are announced to the other nodes sharing the database,
+     * and their announcements applied to the local caches. Only needed with several nodes.
+     */
+    private boolean enabled = false;
+
+    /**
+     * How often the url_change table is read for changes of other nodes
+     */
+    private Duration pollInterval = Duration.ofMillis(50);
+
+    /**
+     * The maximum number of changes read by one query
+     */
+    private int pollBatchSize = 1_000;
+
+    /**
+     * How long a missing change ID is waited for before it is taken to be rolled back.
+     * Changes committed out of ID order within this time are still applied.
+     */
+    private Duration settleTime = Duration.ofSeconds(5);
+
+    /**
+     * How long changes are kept in the url_change table
+     */
+    private Duration retention = Duration.ofHours(1);
+
+    /**
+     * The file the ID of the last applied change is kept in, so a restarting node replays
+     * the changes it missed; one per node, like the URL index
+     */
+    private Path cursorFile = Path.of("data", "invalidation.cursor");
+
+}
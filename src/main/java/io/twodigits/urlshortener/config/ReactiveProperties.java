@@ -0,0 +1,46 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.reactive")
+public class ReactiveProperties {
+
+    /**
+     * Whether redirect, generate and stats are also served by the reactive stack
+     */
+    private boolean enabled = false;
+
+    /**
+     * The address the reactive server binds to
+     */
+    private String host = "0.0.0.0";
+
+    /**
+     * The port of the reactive server, 0 for a random port
+     */
+    private int port = 8081;
+
+    /**
+     * The R2DBC URL of the database shared with the JDBC datasource
+     */
+    private String url = "r2dbc:h2:mem:///testdb";
+
+    private String username;
+
+    private String password;
+
+    /**
+     * The maximum number of R2DBC connections
+     */
+    private int maxConnections = 20;
+
+    /**
+     * How long a request waits for an R2DBC connection
+     */
+    private Duration connectionAcquireTimeout = Duration.ofSeconds(5);
+
+}
@@ -0,0 +1,27 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.redirect-cache")
+public class RedirectCacheProperties {
+
+    /**
+     * Whether resolved short URLs are kept in the in-process cache
+     */
+    private boolean enabled = true;
+
+    /**
+     * The maximum number of short URLs held by the cache
+     */
+    private long maximumSize = 10_000;
+
+    /**
+     * How long a resolved short URL may be served from the cache
+     */
+    private Duration expireAfterWrite = Duration.ofMinutes(10);
+
+}
@@ -0,0 +1,24 @@
+package io.twodigits.urlshortener.config;
+
+import io.twodigits.urlshortener.model.RedirectType;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.redirect")
+public class RedirectProperties {
+
+    /**
+     * How short URLs without a redirect type of their own redirect
+     */
+    private RedirectType type = RedirectType.FOUND;
+
+    /**
+     * For how long clients and caches may reuse the redirects of short URLs without a max age
+     * of their own. Zero makes them ask again every time, so every click is counted.
+     */
+    private Duration maxAge = Duration.ZERO;
+
+}
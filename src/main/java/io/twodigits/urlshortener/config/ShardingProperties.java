@@ -0,0 +1,73 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.sharding")
+public class ShardingProperties {
+
+    /**
+     * The databases the URLs and their clicks are spread over
+     */
+    private List<Shard> shards = new ArrayList<>();
+
+    /**
+     * The number of points each shard takes on the hash ring; more points even out the
+     * number of slots per shard. Changing it moves slots between the shards.
+     */
+    private int virtualNodes = 64;
+
+    /**
+     * The maximum number of connections to each shard
+     */
+    private int maxPoolSize = 10;
+
+    /**
+     * The number of rows copied with one batch while a slot moves to another shard
+     */
+    private int moveBatchSize = 1_000;
+
+    /**
+     * How long the rows of a moved slot are kept on the shard it moved away from, so reads
+     * which were routed there just before the move still find them
+     */
+    private Duration moveGracePeriod = Duration.ofSeconds(1);
+
+    /**
+     * Whether this node moves slots on start when shards have been added to the configuration.
+     * Only one node of a deployment needs to; the others follow the moves.
+     */
+    private boolean rebalanceOnStart = false;
+
+    /**
+     * How long a node moving slots keeps others from moving slots at the same time. It is
+     * extended after every slot, so it has to exceed the time it takes to move one.
+     */
+    private Duration rebalanceLease = Duration.ofMinutes(1);
+
+    /**
+     * How often the owners of the slots are read, so slots moved by other nodes are followed
+     */
+    private Duration ownerRefreshInterval = Duration.ofSeconds(1);
+
+    @Data
+    public static class Shard {
+
+        /**
+         * Places the shard on the hash ring, so it must not change once rows have been stored
+         */
+        private String name;
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+    }
+}
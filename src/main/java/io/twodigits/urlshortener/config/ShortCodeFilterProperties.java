@@ -0,0 +1,32 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.short-code-filter")
+public class ShortCodeFilterProperties {
+
+    /**
+     * Whether lookups of short URLs which definitely do not exist skip the database
+     */
+    private boolean enabled = true;
+
+    /**
+     * The number of short URLs the filter is sized for; it grows on the next rebuild when exceeded
+     */
+    private long expectedInsertions = 1_000_000;
+
+    /**
+     * The probability that an unknown short URL still reaches the database
+     */
+    private double falsePositiveRate = 0.01;
+
+    /**
+     * How often the filter is rebuilt to forget deleted short URLs
+     */
+    private Duration rebuildInterval = Duration.ofHours(6);
+
+}
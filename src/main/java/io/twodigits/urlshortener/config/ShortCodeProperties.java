@@ -0,0 +1,28 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.short-code")
+public class ShortCodeProperties {
+
+    public enum Strategy {
+        /**
+         * Hash the long URL, retrying with a salt on collisions
+         */
+        HASH,
+        /**
+         * Number URLs from blocks of IDs leased from the database and render them in base62
+         */
+        BLOCK
+    }
+
+    private Strategy strategy = Strategy.BLOCK;
+
+    /**
+     * The number of IDs leased from the database at once by the BLOCK strategy
+     */
+    private int blockSize = 1_000;
+
+}
@@ -0,0 +1,67 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.storage")
+public class StorageProperties {
+
+    public enum Engine {
+        /**
+         * URLs are stored in the relational database through JPA
+         */
+        JPA,
+        /**
+         * URLs are held in memory and made durable with a snapshot and an operation log.
+         * Click statistics still go to the database; the reactive stack reads URLs from the
+         * database directly and refuses to start with this engine. The block short code
+         * strategy leases its IDs from a database sequence; if the database does not outlive
+         * the engine's files, it skips the short URLs which are taken.
+         */
+        MEMORY,
+        /**
+         * URLs and their clicks are spread over the databases configured with
+         * {@code urlshortener.sharding.shards}, by the hash of their short URL. The reactive
+         * stack reads the urls table of the main database directly and refuses to start
+         * with this engine.
+         */
+        SHARDED
+    }
+
+    /**
+     * Where URLs are stored
+     */
+    private Engine engine = Engine.JPA;
+
+    private final Memory memory = new Memory();
+
+    @Data
+    public static class Memory {
+
+        /**
+         * The directory holding the snapshot and the operation log
+         */
+        private Path directory = Path.of("data", "url-store");
+
+        /**
+         * The number of URLs the tables are sized for initially
+         */
+        private int initialCapacity = 1 << 16;
+
+        /**
+         * How often a snapshot is written and the operation log started anew
+         */
+        private Duration snapshotInterval = Duration.ofMinutes(5);
+
+        /**
+         * How often the operation log is forced to disk. Every change is handed to the
+         * operating system right away, so only a machine crash loses changes made since.
+         */
+        private Duration syncInterval = Duration.ofSeconds(1);
+
+    }
+}
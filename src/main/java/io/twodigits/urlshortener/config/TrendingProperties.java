@@ -0,0 +1,40 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.stats.trending")
+public class TrendingProperties {
+
+    /**
+     * The number of links ranked per window, which is also the largest top-K served
+     */
+    private int capacity = 100;
+
+    /**
+     * The number of counters per row of a count-min sketch; rounded up to a power of two.
+     * A count is overestimated by at most e / width of all clicks in the window.
+     */
+    private int sketchWidth = 4096;
+
+    /**
+     * The number of rows of a count-min sketch. The overestimate stays within its bound
+     * with a probability of 1 - e^-depth.
+     */
+    private int sketchDepth = 4;
+
+    /**
+     * The number of clicks each stripe of the click buffer holds; rounded up to a power of
+     * two. Clicks arriving at a full stripe are dropped from the ranking.
+     */
+    private int bufferSize = 1024;
+
+    /**
+     * How often the click buffer is drained into the sketches when it does not fill up first
+     */
+    private Duration drainInterval = Duration.ofMillis(250);
+
+}
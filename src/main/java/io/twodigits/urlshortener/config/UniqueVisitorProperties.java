@@ -0,0 +1,30 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.stats.uniques")
+public class UniqueVisitorProperties {
+
+    /**
+     * The base-2 logarithm of the number of registers of a sketch, between 4 and 16. A sketch
+     * takes 2^precision bytes and its estimates have a relative standard error of
+     * 1.04 / sqrt(2^precision). Stored sketches of another precision cannot be merged, so
+     * it must not change once sketches have been written.
+     */
+    private int precision = 12;
+
+    /**
+     * How often changed sketches are merged into the visitor_sketch table
+     */
+    private Duration flushInterval = Duration.ofSeconds(10);
+
+    /**
+     * The maximum number of days a unique visitor count may span
+     */
+    private int maxDays = 366;
+
+}
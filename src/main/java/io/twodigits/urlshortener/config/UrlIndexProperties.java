@@ -0,0 +1,38 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.index")
+public class UrlIndexProperties {
+
+    /**
+     * Whether short URLs are resolved through the memory-mapped index before the database
+     */
+    private boolean enabled = false;
+
+    /**
+     * The directory holding the index and data files
+     */
+    private Path directory = Path.of("data", "url-index");
+
+    /**
+     * The number of slots of a new index, rounded up to a power of two; the index doubles when it fills up
+     */
+    private int initialCapacity = 1 << 20;
+
+    /**
+     * The share of used slots at which the index is doubled
+     */
+    private double maxLoadFactor = 0.7;
+
+    /**
+     * The size of the regions the data file is mapped in; no record can be larger
+     */
+    private DataSize dataRegionSize = DataSize.ofMegabytes(64);
+
+}
@@ -0,0 +1,24 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.user-count-cache")
+public class UserCountCacheProperties {
+
+    /**
+     * The maximum number of users whose URL count is cached
+     */
+    private long maximumSize = 10_000;
+
+    /**
+     * How long a counted value is kept before it is counted again, measured from the count
+     * and not extended by the increments applied to it. Bounds the drift from URLs changed
+     * by other nodes, which the increments of this node do not see.
+     */
+    private Duration expireAfterWrite = Duration.ofMinutes(10);
+
+}
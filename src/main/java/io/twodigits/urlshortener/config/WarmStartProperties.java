@@ -0,0 +1,33 @@
+package io.twodigits.urlshortener.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "urlshortener.warm-start")
+public class WarmStartProperties {
+
+    /**
+     * Whether the hottest cached links are persisted and loaded into the redirect cache on startup
+     */
+    private boolean enabled = true;
+
+    /**
+     * The file the snapshot is written to
+     */
+    private Path file = Path.of("data", "redirect-cache.snapshot");
+
+    /**
+     * The maximum number of links kept in the snapshot, hottest first
+     */
+    private int maxEntries = 1_000;
+
+    /**
+     * How often the snapshot is written; it is also written on shutdown
+     */
+    private Duration snapshotInterval = Duration.ofMinutes(1);
+
+}
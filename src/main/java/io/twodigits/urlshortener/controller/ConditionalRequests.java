@@ -0,0 +1,61 @@
+package io.twodigits.urlshortener.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+
+import java.util.Enumeration;
+
+/**
+ * Conditional GET for responses whose validators are known before their body is built, so that
+ * a request for an unchanged resource is answered without building the body at all.
+ * <p>
+ * If-None-Match decides when it is present and If-Modified-Since is only looked at without it.
+ * Entity tags are compared weakly, as GET allows.
+ */
+final class ConditionalRequests {
+
+    /**
+     * A last modification time which is not known
+     */
+    static final long UNKNOWN = -1;
+
+    private ConditionalRequests() {
+    }
+
+    /**
+     * @param request
+     * @param eTag the quoted entity tag of the current representation
+     * @param lastModified its last modification time in milliseconds since the epoch, or {@link #UNKNOWN}
+     * @return whether the client already holds the current representation
+     */
+    static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        Enumeration<String> ifNoneMatch = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.hasMoreElements()) {
+            String opaqueTag = opaqueTag(eTag);
+            while (ifNoneMatch.hasMoreElements()) {
+                for (String candidate : ifNoneMatch.nextElement().split(",")) {
+                    String tag = candidate.trim();
+                    if (tag.equals("*") || opaqueTag(tag).equals(opaqueTag)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        if (lastModified == UNKNOWN) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates only have seconds.
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
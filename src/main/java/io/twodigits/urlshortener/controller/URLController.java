@@ -1,42 +1,132 @@
 package io.twodigits.urlshortener.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import io.twodigits.urlshortener.admission.AdmissionControl;
+import io.twodigits.urlshortener.admission.AdmissionControl.Route;
+import io.twodigits.urlshortener.model.BatchItemResult;
+import io.twodigits.urlshortener.model.ClickBucket;
+import io.twodigits.urlshortener.model.ClickCount;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.ClickGranularity;
+import io.twodigits.urlshortener.model.ExportFormat;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.TrendingLink;
+import io.twodigits.urlshortener.model.TrendingWindow;
 import io.twodigits.urlshortener.model.URL;
 import io.twodigits.urlshortener.model.URLDto;
-import io.twodigits.urlshortener.model.URLStats;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.model.UniqueVisitors;
+import io.twodigits.urlshortener.service.RedirectPolicy;
 import io.twodigits.urlshortener.service.URLShortenerService;
+import io.twodigits.urlshortener.wire.WireFormat;
+import io.twodigits.urlshortener.wire.WireFormats;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping
 public class URLController {
 
+    private static final int MAX_STATS_PAGE_SIZE = 1_000;
+
+    private static final int MAX_URL_PAGE_SIZE = 1_000;
+
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final String APPLICATION_CBOR_SEQ_VALUE = "application/cbor-seq";
+
+    private static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    /**
+     * The number of items of a streamed batch request handed to the service at once
+     */
+    private static final int BATCH_STREAM_CHUNK_SIZE = 1_000;
+
     private final URLShortenerService urlShortenerService;
 
+    private final WireFormats wireFormats;
+
+    private final AdmissionControl admissionControl;
+
+    private final RedirectPolicy redirectPolicy;
+
     @Autowired
-    public URLController(URLShortenerService urlShortenerService) {this.urlShortenerService = urlShortenerService;}
+    public URLController(URLShortenerService urlShortenerService, WireFormats wireFormats,
+                         AdmissionControl admissionControl, RedirectPolicy redirectPolicy) {
+        this.urlShortenerService = urlShortenerService;
+        this.wireFormats = wireFormats;
+        this.admissionControl = admissionControl;
+        this.redirectPolicy = redirectPolicy;
+    }
 
     @GetMapping("/findurl/{shortUrl}")
-    public Optional<URL> getLongUrlByShortUrl(@PathVariable String shortUrl) {
-        return urlShortenerService.getLongUrlByShortUrl(shortUrl);
+    public ResponseEntity<URL> getLongUrlByShortUrl(@PathVariable String shortUrl, HttpServletRequest request) {
+        return conditionally(urlShortenerService.getLongUrlByShortUrl(shortUrl), request);
     }
 
+    /**
+     * Streams all URLs of the user as one array in the format the client accepts best, so the
+     * listing is never held in memory.
+     */
     @GetMapping("/urlsby/{user}")
-    public List<URL> getUrlsByUser(@PathVariable String user) {
-        return urlShortenerService.listURLsOfUser(user);
+    public void getUrlsByUser(@PathVariable String user,
+                              @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                              HttpServletResponse response) throws IOException {
+        WireFormat format = wireFormats.negotiate(accept);
+        response.setContentType(format.getMediaType().toString());
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        try (SequenceWriter urls = wireFormats.mapperFor(format).writer().writeValuesAsArray(response.getOutputStream())) {
+            urlShortenerService.forEachURLOfUser(user, url -> {
+                try {
+                    urls.write(url);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @GetMapping("/urlsby/{user}/page")
+    public ResponseEntity<?> getUrlsByUserPage(@PathVariable String user,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = "100") int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_URL_PAGE_SIZE));
+        try {
+            return ResponseEntity.ok(urlShortenerService.getURLsOfUserPage(user, cursor, pageSize));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/url/{id}")
-    public Optional<URL> getUrlById(@PathVariable String id) {
-        return urlShortenerService.getURLById(id);
+    public ResponseEntity<URL> getUrlById(@PathVariable String id, HttpServletRequest request) {
+        return conditionally(urlShortenerService.getURLById(id), request);
     }
 
     @GetMapping("/url/{user}/{id}")
@@ -46,32 +136,250 @@ public class URLController {
 
     @GetMapping("/{shortUrl}")
     public ResponseEntity<?> urlRedirect(@PathVariable String shortUrl, HttpServletRequest request) {
-        Optional<URL> urlToRedirect = urlShortenerService.getEncodedUrl(shortUrl);
-        if (urlToRedirect.isPresent()) {
-            URLStats statistics = new URLStats();
-            statistics.setUrl(urlToRedirect.get());
-            statistics.setAccessTime(LocalDateTime.now());
-            statistics.setUserAgent(request.getHeader("User-Agent"));
-            statistics.setReferrer(request.getHeader("Referrer"));
-            statistics.setClientIp(request.getRemoteAddr());
-            urlShortenerService.saveURLAccessStatistic(statistics);
+        long wait = admissionControl.tryAcquireClient(Route.REDIRECT, request.getRemoteAddr());
+        if (wait > 0) {
+            return tooManyRequests(wait);
+        }
+        long ticket = admissionControl.enter(Route.REDIRECT);
+        if (ticket == AdmissionControl.REJECTED) {
+            return overloaded();
+        }
+        try {
+            Optional<URL> urlToRedirect = urlShortenerService.getEncodedUrl(shortUrl);
+            if (urlToRedirect.isPresent()) {
+                urlShortenerService.recordURLAccess(new ClickEvent(
+                        urlToRedirect.get().getId(),
+                        shortUrl,
+                        System.currentTimeMillis(),
+                        request.getHeader("User-Agent"),
+                        request.getHeader("Referrer"),
+                        request.getRemoteAddr()));
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("Location", urlToRedirect.get().getLongUrl());
-            return new ResponseEntity<>(headers, HttpStatus.FOUND);
-        } else {
-            return new ResponseEntity<>("URL not found", HttpStatus.NOT_FOUND);
+                HttpHeaders headers = new HttpHeaders();
+                headers.add("Location", urlToRedirect.get().getLongUrl());
+                headers.setCacheControl(redirectPolicy.cacheControlOf(urlToRedirect.get()));
+                return new ResponseEntity<>(headers, redirectPolicy.statusOf(urlToRedirect.get()));
+            } else {
+                return new ResponseEntity<>("URL not found", HttpStatus.NOT_FOUND);
+            }
+        } finally {
+            admissionControl.exit(Route.REDIRECT, ticket);
         }
     }
 
+    /**
+     * The version of the statistics is the one of the URL and its click count, so a client
+     * holding the current statistics is answered without reading them. Clicks are counted
+     * before they are stored, and raw clicks may have been dropped by retention or never been
+     * stored, so statistics holding a different number of rows than were counted are given a
+     * version made of the number of rows and the ID of the last one instead. Clients holding
+     * such a version are answered after the rows have been read.
+     * <p>
+     * The page is built in full, since its version depends on the number of rows in it;
+     * {@code /stats/{shortUrl}/export} streams the rows instead.
+     */
     @GetMapping("/stats/{shortUrl}")
-    public List<URLStats> getUrlStatistics(@PathVariable String shortUrl) {
-        return urlShortenerService.getURLAccessStatisticsByShortUrl(shortUrl);
+    public ResponseEntity<StatsPage> getUrlStatistics(@PathVariable String shortUrl, HttpServletRequest request) {
+        Optional<URL> url = urlShortenerService.getEncodedUrl(shortUrl);
+        if (url.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        long clicks = urlShortenerService.getClickCount(shortUrl).map(ClickCount::getClicks).orElse(0L);
+        String eTag = "W/\"" + url.get().getId() + "-" + versionOf(url.get()) + "-" + clicks + "\"";
+        if (ConditionalRequests.isNotModified(request, eTag, ConditionalRequests.UNKNOWN)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .build();
+        }
+        Optional<StatsPage> stats = urlShortenerService.getURLAccessStatisticsByShortUrl(shortUrl);
+        if (stats.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        List<URLStatsView> items = stats.get().getItems();
+        if (items.size() != clicks) {
+            Long lastId = items.isEmpty() ? null : items.get(items.size() - 1).getId();
+            eTag = "W/\"" + url.get().getId() + "-" + versionOf(url.get()) + "-r" + items.size() + "-" + lastId + "\"";
+            if (ConditionalRequests.isNotModified(request, eTag, ConditionalRequests.UNKNOWN)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(eTag)
+                        .cacheControl(CacheControl.noCache())
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .build();
+            }
+        }
+        long lastModified = versionOf(url.get());
+        LocalDateTime lastClick = items.isEmpty() ? null : items.get(items.size() - 1).getAccessTime();
+        if (lastClick != null) {
+            lastModified = Math.max(lastModified, lastClick.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(stats.get());
+    }
+
+    @GetMapping("/stats/{shortUrl}/page")
+    public ResponseEntity<?> getUrlStatisticsPage(@PathVariable String shortUrl,
+                                                  @RequestParam(required = false) String cursor,
+                                                  @RequestParam(defaultValue = "100") int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_STATS_PAGE_SIZE));
+        Optional<StatsPage> page;
+        try {
+            page = urlShortenerService.getURLAccessStatisticsPage(shortUrl, cursor, pageSize);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        return page.<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> new ResponseEntity<>("URL not found", HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping("/stats/{shortUrl}/export")
+    public ResponseEntity<StreamingResponseBody> exportUrlStatistics(@PathVariable String shortUrl,
+                                                                     @RequestParam(defaultValue = "NDJSON") ExportFormat format) {
+        Optional<URL> url = urlShortenerService.getEncodedUrl(shortUrl);
+        if (url.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> urlShortenerService.exportURLAccessStatistics(url.get(), format, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .body(body);
+    }
+
+    @GetMapping("/stats/{shortUrl}/total")
+    public ResponseEntity<ClickCount> getUrlClickCount(@PathVariable String shortUrl) {
+        return ResponseEntity.of(urlShortenerService.getClickCount(shortUrl));
+    }
+
+    @GetMapping("/stats/{shortUrl}/buckets")
+    public List<ClickBucket> getUrlClickBuckets(@PathVariable String shortUrl,
+                                                @RequestParam(defaultValue = "HOUR") ClickGranularity granularity,
+                                                @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                                @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        return urlShortenerService.getClickBuckets(shortUrl, granularity, from, to);
+    }
+
+    @GetMapping("/stats/{shortUrl}/uniques")
+    public ResponseEntity<?> getUrlUniqueVisitors(@PathVariable String shortUrl,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        Optional<UniqueVisitors> uniques;
+        try {
+            uniques = urlShortenerService.getUniqueVisitors(shortUrl, from, to);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        return uniques.<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> new ResponseEntity<>("URL not found", HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping("/trending")
+    public List<TrendingLink> getTrendingUrls(@RequestParam(defaultValue = "FIVE_MINUTES") TrendingWindow window,
+                                              @RequestParam(defaultValue = "10") int limit) {
+        return urlShortenerService.getTrendingUrls(window, limit);
     }
 
     @PostMapping("/generate")
-    public Optional<URL> generateShortUrl(@RequestBody URLDto urlDto) {
-       return urlShortenerService.generateShortUrl(urlDto);
+    public ResponseEntity<?> generateShortUrl(@RequestBody URLDto urlDto, HttpServletRequest request) {
+        // The user is checked first, so a request turned away for its user does not use up
+        // a token of its client as well; one turned away for its client gives the user's back
+        long wait = admissionControl.tryAcquireUser(Route.GENERATE, urlDto.getUsername());
+        if (wait == 0) {
+            wait = admissionControl.tryAcquireClient(Route.GENERATE, request.getRemoteAddr());
+            if (wait > 0) {
+                admissionControl.releaseUser(urlDto.getUsername(), 1);
+            }
+        }
+        if (wait > 0) {
+            return tooManyRequests(wait);
+        }
+        long ticket = admissionControl.enter(Route.GENERATE);
+        if (ticket == AdmissionControl.REJECTED) {
+            return overloaded();
+        }
+        try {
+            return ResponseEntity.ok(urlShortenerService.generateShortUrl(urlDto).orElse(null));
+        } finally {
+            admissionControl.exit(Route.GENERATE, ticket);
+        }
+    }
+
+    @PostMapping(value = "/generate/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public ResponseEntity<?> generateShortUrls(@RequestBody List<URLDto> urlDtos, HttpServletRequest request) {
+        long wait = tryAcquireBatch(urlDtos, request.getRemoteAddr());
+        if (wait > 0) {
+            return tooManyRequests(wait);
+        }
+        long ticket = admissionControl.enter(Route.BATCH);
+        if (ticket == AdmissionControl.REJECTED) {
+            return overloaded();
+        }
+        try {
+            return ResponseEntity.ok(urlShortenerService.generateShortUrls(urlDtos));
+        } finally {
+            admissionControl.exit(Route.BATCH, ticket);
+        }
+    }
+
+    /**
+     * Create short URLs for a stream of newline delimited JSON items, or a CBOR sequence, and
+     * answer in the same format. The items are read, stored and answered chunk by chunk, so the
+     * size of the request is not limited by memory.
+     * <p>
+     * Every chunk is charged to the rate of its users and client before it is stored; the
+     * items of a chunk over the rate are answered as {@link BatchItemResult.Status#RATE_LIMITED}.
+     */
+    @PostMapping(value = "/generate/batch",
+            consumes = {APPLICATION_NDJSON_VALUE, APPLICATION_CBOR_SEQ_VALUE},
+            produces = {APPLICATION_NDJSON_VALUE, APPLICATION_CBOR_SEQ_VALUE})
+    public void generateShortUrlsFromStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        WireFormat format = wireFormats.ofSequence(request.getContentType());
+        long ticket = admissionControl.enter(Route.BATCH);
+        if (ticket == AdmissionControl.REJECTED) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return;
+        }
+        try {
+            writeBatchResults(format, request, response);
+        } finally {
+            admissionControl.exit(Route.BATCH, ticket);
+        }
+    }
+
+    private void writeBatchResults(WireFormat format, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(format.getSequenceMediaType().toString());
+        ObjectWriter writer = wireFormats.mapperFor(format).writer();
+        if (format == WireFormat.JSON) {
+            writer = writer.withRootValueSeparator("\n");
+        }
+        try (MappingIterator<URLDto> items = wireFormats.mapperFor(format).readerFor(URLDto.class).readValues(request.getInputStream());
+             SequenceWriter results = writer.writeValues(response.getOutputStream())) {
+            List<URLDto> chunk = new ArrayList<>(BATCH_STREAM_CHUNK_SIZE);
+            int offset = 0;
+            while (items.hasNextValue()) {
+                chunk.add(items.nextValue());
+                if (chunk.size() == BATCH_STREAM_CHUNK_SIZE || !items.hasNextValue()) {
+                    if (tryAcquireBatch(chunk, request.getRemoteAddr()) > 0) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            results.write(BatchItemResult.rateLimited(offset + i));
+                        }
+                    } else {
+                        for (BatchItemResult result : urlShortenerService.generateShortUrls(chunk)) {
+                            results.write(result.withIndex(offset + result.getIndex()));
+                        }
+                    }
+                    results.flush();
+                    offset += chunk.size();
+                    chunk.clear();
+                }
+            }
+        }
     }
 
     @DeleteMapping("/delete/{id}")
@@ -84,4 +392,77 @@ public class URLController {
         urlShortenerService.deleteUrlOfUserById(user, id);
     }
 
+    /**
+     * Charge a batch to the rate of its users and its client, one token per item. A batch
+     * turned away gives back the tokens its users already took.
+     *
+     * @return 0 if the batch may proceed, otherwise the nanoseconds until it may be retried
+     */
+    private long tryAcquireBatch(List<URLDto> urlDtos, String clientIp) {
+        Map<String, Integer> itemsPerUser = new HashMap<>();
+        for (URLDto urlDto : urlDtos) {
+            if (urlDto != null && urlDto.getUsername() != null) {
+                itemsPerUser.merge(urlDto.getUsername(), 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<String, Integer>> charged = new ArrayList<>(itemsPerUser.size());
+        long wait = 0;
+        for (Map.Entry<String, Integer> items : itemsPerUser.entrySet()) {
+            wait = admissionControl.tryAcquireUser(Route.GENERATE, items.getKey(), items.getValue());
+            if (wait > 0) {
+                break;
+            }
+            charged.add(items);
+        }
+        if (wait == 0) {
+            wait = admissionControl.tryAcquireClient(Route.GENERATE, clientIp, urlDtos.size());
+        }
+        if (wait > 0) {
+            for (Map.Entry<String, Integer> items : charged) {
+                admissionControl.releaseUser(items.getKey(), items.getValue());
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * @return the modification time of the URL, 0 for URLs stored without one
+     */
+    private static long versionOf(URL url) {
+        return url.getModifiedAt() == null ? 0 : url.getModifiedAt();
+    }
+
+    /**
+     * Answer with a URL and its version, or with 304 if the client already holds that version.
+     * Clients have to revalidate before reusing the URL. The entity tag is weak, as it names the
+     * version in every format and content coding.
+     */
+    private static ResponseEntity<URL> conditionally(Optional<URL> found, HttpServletRequest request) {
+        if (found.isEmpty()) {
+            return ResponseEntity.ok().build();
+        }
+        URL url = found.get();
+        String eTag = "W/\"" + url.getId() + "-" + versionOf(url) + "\"";
+        long lastModified = url.getModifiedAt() == null ? ConditionalRequests.UNKNOWN : url.getModifiedAt();
+        boolean notModified = ConditionalRequests.isNotModified(request, eTag, lastModified);
+        ResponseEntity.BodyBuilder response = notModified ? ResponseEntity.status(HttpStatus.NOT_MODIFIED) : ResponseEntity.ok();
+        response.eTag(eTag).cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT);
+        if (lastModified != ConditionalRequests.UNKNOWN) {
+            response.lastModified(lastModified);
+        }
+        return notModified ? response.build() : response.body(url);
+    }
+
+    private static ResponseEntity<String> tooManyRequests(long waitNanos) {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(seconds))
+                .body("Too many requests");
+    }
+
+    private static ResponseEntity<String> overloaded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Service overloaded");
+    }
 }
@@ -0,0 +1,75 @@
+package io.twodigits.urlshortener.execution;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.ExecutionProperties.Mode;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceUnwrapper;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Switches request handling and database access to the VIRTUAL execution mode when
+ * {@code urlshortener.execution.mode=virtual}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "urlshortener.execution.mode", havingValue = "virtual")
+public class ExecutionConfig {
+
+    /**
+     * Hikari's default, which it only fills in once the pool has been started
+     */
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    /**
+     * Tomcat runs every request on a new virtual thread instead of its bounded worker pool.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutionThreads executionThreads) {
+        return protocolHandler -> {
+            if (executionThreads.isVirtual()) {
+                ThreadFactory threadFactory = executionThreads.threadFactory("http");
+                protocolHandler.setExecutor(task -> threadFactory.newThread(task).start());
+            }
+        };
+    }
+
+    /**
+     * Wraps the datasource in a {@link ConcurrencyLimitedDataSource} sized to the connection pool.
+     * The properties are bound from the environment because post processors are created before
+     * configuration properties beans.
+     */
+    @Bean
+    public static BeanPostProcessor databaseConcurrencyLimiter(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof ConcurrencyLimitedDataSource) {
+                    return bean;
+                }
+                ExecutionProperties properties = Binder.get(environment)
+                        .bind("urlshortener.execution", ExecutionProperties.class)
+                        .orElseGet(ExecutionProperties::new);
+                if (properties.getMode() != Mode.VIRTUAL) {
+                    return bean;
+                }
+                int concurrency = properties.getDatabaseConcurrency();
+                if (concurrency <= 0) {
+                    HikariDataSource hikari = DataSourceUnwrapper.unwrap(dataSource, HikariDataSource.class);
+                    concurrency = hikari == null ? 0 : hikari.getMaximumPoolSize();
+                }
+                if (concurrency <= 0) {
+                    concurrency = DEFAULT_POOL_SIZE;
+                }
+                return new ConcurrencyLimitedDataSource(dataSource, concurrency, properties.getDatabaseAcquireTimeout());
+            }
+        };
+    }
+}
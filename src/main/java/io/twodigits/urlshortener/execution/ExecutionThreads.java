@@ -0,0 +1,51 @@
+package io.twodigits.urlshortener.execution;
+
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.ExecutionProperties.Mode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads of the service according to the configured execution mode.
+ */
+@Slf4j
+@Component
+public class ExecutionThreads {
+
+    private final boolean virtual;
+
+    @Autowired
+    public ExecutionThreads(ExecutionProperties properties) {
+        boolean wantsVirtual = properties.getMode() == Mode.VIRTUAL;
+        if (wantsVirtual && !VirtualThreads.isSupported()) {
+            log.warn("Virtual threads are not supported by Java {}, using platform threads",
+                    Runtime.version().feature());
+        }
+        this.virtual = wantsVirtual && VirtualThreads.isSupported();
+    }
+
+    /**
+     * @return whether work runs on virtual threads
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Create a factory for threads named prefix-0, prefix-1, ...
+     *
+     * @param prefix
+     * @return the thread factory
+     */
+    public ThreadFactory threadFactory(String prefix) {
+        if (virtual) {
+            return VirtualThreads.factory(prefix + "-");
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return task -> new Thread(task, prefix + "-" + counter.getAndIncrement());
+    }
+}
@@ -0,0 +1,55 @@
+package io.twodigits.urlshortener.execution;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads while the service is still compiled for Java 17. The
+ * Java 21 API is looked up reflectively, so the same build runs on both runtimes.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = lookup();
+
+    private VirtualThreads() {
+    }
+
+    private static Method lookup() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            // Fails on Java 19 and 20 unless preview features are enabled.
+            ofVirtual.invoke(null);
+            return ofVirtual;
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the runtime can create virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Create a factory for virtual threads named prefix0, prefix1, ...
+     *
+     * @param prefix
+     * @return the thread factory
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21");
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available", e);
+        }
+    }
+}
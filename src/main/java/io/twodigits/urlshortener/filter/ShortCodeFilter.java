@@ -0,0 +1,178 @@
+package io.twodigits.urlshortener.filter;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.twodigits.urlshortener.config.ShortCodeFilterProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.storage.URLStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bloom filter of all existing short URLs, used to answer lookups of unknown short URLs
+ * without a database query.
+ * <p>
+ * The filter is built from the stored URLs in the background after startup; until then
+ * every short URL passes. Short URLs must be added after they have been stored. A Bloom
+ * filter cannot forget entries, so deleted short URLs keep passing until the next periodic
+ * rebuild, which also resizes the filter when more short URLs exist than it was sized for.
+ */
+@Slf4j
+@Component
+public class ShortCodeFilter implements SmartLifecycle {
+
+    private final URLStorage urlStorage;
+
+    private final ShortCodeFilterProperties properties;
+
+    private final ExecutionThreads executionThreads;
+
+    private final Counter rejectedCounter;
+
+    private final Counter passedCounter;
+
+    private final AtomicLong lastRebuildMillis = new AtomicLong();
+
+    private volatile BloomFilter<CharSequence> filter;
+
+    /**
+     * The filter being built, which receives all additions made while the rebuild runs
+     */
+    private volatile BloomFilter<CharSequence> building;
+
+    private ScheduledExecutorService rebuilder;
+
+    private volatile boolean running;
+
+    @Autowired
+    public ShortCodeFilter(URLStorage urlStorage, ShortCodeFilterProperties properties,
+                           ExecutionThreads executionThreads, MeterRegistry registry) {
+        this.urlStorage = urlStorage;
+        this.properties = properties;
+        this.executionThreads = executionThreads;
+        this.rejectedCounter = Counter.builder("urlshortener.filter.rejected")
+                .description("Lookups of unknown short URLs answered without a database query")
+                .register(registry);
+        this.passedCounter = Counter.builder("urlshortener.filter.passed")
+                .description("Lookups of short URLs which may exist and are resolved through the cache or database")
+                .register(registry);
+        Gauge.builder("urlshortener.filter.false.positive.rate", properties, ShortCodeFilterProperties::getFalsePositiveRate)
+                .description("The configured false positive rate")
+                .register(registry);
+        Gauge.builder("urlshortener.filter.expected.false.positive.rate", this,
+                        f -> f.filter == null ? 1.0 : f.filter.expectedFpp())
+                .description("The false positive rate expected from the current fill of the filter")
+                .register(registry);
+        Gauge.builder("urlshortener.filter.rebuild.time", lastRebuildMillis, AtomicLong::get)
+                .description("Duration of the last rebuild")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    /**
+     * Check whether a short URL may exist. A false answer is definite.
+     *
+     * @param shortUrl
+     * @return false if the short URL definitely does not exist
+     */
+    public boolean mightContain(String shortUrl) {
+        BloomFilter<CharSequence> current = filter;
+        if (current == null || !properties.isEnabled() || shortUrl == null) {
+            return true;
+        }
+        if (current.mightContain(shortUrl)) {
+            passedCounter.increment();
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    /**
+     * Add a short URL which has been stored.
+     *
+     * @param shortUrl
+     */
+    public void put(String shortUrl) {
+        if (shortUrl == null) {
+            return;
+        }
+        // Read the filter being built first: a rebuild publishes the new filter before it
+        // clears building, so an addition which misses building finds the new filter below,
+        // and one which saw no rebuild at all was stored before the rebuild read the storage.
+        BloomFilter<CharSequence> next = building;
+        if (next != null) {
+            next.put(shortUrl);
+        }
+        BloomFilter<CharSequence> current = filter;
+        if (current != null) {
+            current.put(shortUrl);
+        }
+    }
+
+    /**
+     * Build a new filter from all stored short URLs and replace the current one.
+     */
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        long count = urlStorage.count();
+        long size = Math.max(properties.getExpectedInsertions(), count * 2);
+        BloomFilter<CharSequence> next = BloomFilter.create(
+                Funnels.stringFunnel(StandardCharsets.UTF_8), size, properties.getFalsePositiveRate());
+        // Additions from now on go to both filters, everything stored before is read below.
+        building = next;
+        urlStorage.forEach(url -> {
+            if (url.getShortUrl() != null) {
+                next.put(url.getShortUrl());
+            }
+        });
+        filter = next;
+        building = null;
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        lastRebuildMillis.set(millis);
+        log.info("Rebuilt short URL filter with {} entries in {} ms", count, millis);
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            building = null;
+            log.error("Failed to rebuild short URL filter", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (properties.isEnabled()) {
+            long interval = properties.getRebuildInterval().toMillis();
+            rebuilder = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("short-code-filter-rebuilder"));
+            rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, 0, interval, TimeUnit.MILLISECONDS);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
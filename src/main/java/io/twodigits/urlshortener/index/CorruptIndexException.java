@@ -0,0 +1,14 @@
+package io.twodigits.urlshortener.index;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the files of a {@link MappedUrlIndex} cannot be trusted, e.g. because
+ * the index was not closed cleanly.
+ */
+public class CorruptIndexException extends IOException {
+
+    public CorruptIndexException(String message) {
+        super(message);
+    }
+}
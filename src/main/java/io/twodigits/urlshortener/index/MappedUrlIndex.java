@@ -0,0 +1,552 @@
+package io.twodigits.urlshortener.index;
+
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent hash index from short URL to URL, kept entirely in memory-mapped files.
+ * <p>
+ * The data file is append-only: every stored URL is written as a record of its ID, short URL,
+ * long URL, username, redirect status, cache max age and modification time. The index file is
+ * an open-addressing table with linear probing whose slots hold a 64 bit hash of the short URL
+ * and the offset of its latest record; deleted entries leave a tombstone. Neither the table nor
+ * the records live on the heap, so millions of entries add nothing to garbage collection.
+ * <p>
+ * Writers are serialized; readers never lock. A record is complete before the slot pointing to it
+ * is published, and a lookup always compares the short URL of the record it lands on.
+ * <p>
+ * The index header records whether the files were closed cleanly. An index that was open when the
+ * process died is rejected by {@link #open(Path, double)} and has to be rebuilt.
+ */
+public class MappedUrlIndex implements Closeable {
+
+    static final String INDEX_FILE = "urls.idx";
+
+    static final String DATA_FILE = "urls.dat";
+
+    private static final String RESIZE_FILE = "urls.idx.resize";
+
+    private static final long MAGIC = 0x55524c4944583031L;
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int SLOT_SIZE = 16;
+
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int STATE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+    private static final int USED_OFFSET = 24;
+    private static final int REGION_SIZE_OFFSET = 28;
+    private static final int DATA_END_OFFSET = 32;
+    private static final int CHECKSUM_OFFSET = 40;
+
+    private static final int STATE_CLEAN = 1;
+    private static final int STATE_OPEN = 2;
+
+    /**
+     * Slot offsets are stored plus one, so that a zeroed slot is empty
+     */
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final long NULL_ID = Long.MIN_VALUE;
+
+    private static final int NULL_VALUE = -1;
+
+    /**
+     * The redirect status, cache max age and modification time after the username
+     */
+    private static final int POLICY_SIZE = 2 + 4 + 8;
+
+    private final Path directory;
+
+    private final double maxLoadFactor;
+
+    private final int regionSize;
+
+    private final FileChannel dataChannel;
+
+    private volatile Table table;
+
+    private volatile MappedByteBuffer[] regions;
+
+    private long dataEnd;
+
+    private int size;
+
+    private int used;
+
+    private boolean closed;
+
+    private record Table(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+    }
+
+    private MappedUrlIndex(Path directory, double maxLoadFactor, int regionSize, FileChannel dataChannel, Table table,
+                           long dataEnd, int size, int used) throws IOException {
+        this.directory = directory;
+        this.maxLoadFactor = maxLoadFactor;
+        this.regionSize = regionSize;
+        this.dataChannel = dataChannel;
+        this.table = table;
+        this.dataEnd = dataEnd;
+        this.size = size;
+        this.used = used;
+        int mapped = (int) Math.max(1, (dataChannel.size() + regionSize - 1) / regionSize);
+        MappedByteBuffer[] initial = new MappedByteBuffer[mapped];
+        for (int i = 0; i < mapped; i++) {
+            initial[i] = mapRegion(i);
+        }
+        this.regions = initial;
+    }
+
+    /**
+     * Create an empty index, replacing any index in the directory.
+     *
+     * @param directory
+     * @param initialCapacity the number of slots, rounded up to a power of two
+     * @param regionSize the size of the regions the data file is mapped in
+     * @param maxLoadFactor the share of used slots at which the table is doubled
+     * @return the open index
+     */
+    public static MappedUrlIndex create(Path directory, int initialCapacity, int regionSize, double maxLoadFactor)
+            throws IOException {
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(INDEX_FILE));
+        Files.deleteIfExists(directory.resolve(DATA_FILE));
+        int capacity = 16;
+        while (capacity < Math.min(initialCapacity, MAX_CAPACITY)) {
+            capacity <<= 1;
+        }
+        Table table = newTable(directory.resolve(INDEX_FILE), capacity, regionSize);
+        FileChannel dataChannel = FileChannel.open(directory.resolve(DATA_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new MappedUrlIndex(directory, maxLoadFactor, regionSize, dataChannel, table, 0, 0, 0);
+    }
+
+    /**
+     * Open an index which has been closed cleanly.
+     *
+     * @param directory
+     * @param maxLoadFactor the share of used slots at which the table is doubled
+     * @return the open index
+     * @throws NoSuchFileException if there is no index in the directory
+     * @throws CorruptIndexException if the index cannot be trusted
+     */
+    public static MappedUrlIndex open(Path directory, double maxLoadFactor) throws IOException {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        Path dataFile = directory.resolve(DATA_FILE);
+        if (!Files.exists(indexFile) || !Files.exists(dataFile)) {
+            throw new NoSuchFileException(indexFile.toString());
+        }
+        FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel dataChannel = null;
+        try {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new CorruptIndexException("Index file is truncated");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            if (buffer.getLong(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+                throw new CorruptIndexException("Not an index file of version " + VERSION);
+            }
+            if (buffer.getInt(STATE_OFFSET) != STATE_CLEAN) {
+                throw new CorruptIndexException("Index was not closed cleanly");
+            }
+            if (buffer.getLong(CHECKSUM_OFFSET) != checksum(buffer)) {
+                throw new CorruptIndexException("Index header checksum mismatch");
+            }
+            int capacity = buffer.getInt(CAPACITY_OFFSET);
+            int regionSize = buffer.getInt(REGION_SIZE_OFFSET);
+            long dataEnd = buffer.getLong(DATA_END_OFFSET);
+            if (Integer.bitCount(capacity) != 1 || fileSize != HEADER_SIZE + (long) capacity * SLOT_SIZE || regionSize <= 0) {
+                throw new CorruptIndexException("Index file does not match its header");
+            }
+            dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (dataChannel.size() < dataEnd) {
+                throw new CorruptIndexException("Data file is truncated");
+            }
+            buffer.putInt(STATE_OFFSET, STATE_OPEN);
+            buffer.force();
+            return new MappedUrlIndex(directory, maxLoadFactor, regionSize, dataChannel,
+                    new Table(channel, buffer, capacity), dataEnd, buffer.getInt(SIZE_OFFSET), buffer.getInt(USED_OFFSET));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (dataChannel != null) {
+                dataChannel.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param shortUrl
+     * @return the URL stored for the short URL, or null if there is none
+     */
+    public URL get(String shortUrl) {
+        byte[] key = shortUrl.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key);
+        Table current = table;
+        int mask = current.capacity() - 1;
+        int index = (int) hash & mask;
+        for (int probe = 0; probe < current.capacity(); probe++) {
+            int slot = HEADER_SIZE + index * SLOT_SIZE;
+            long offset = current.buffer().getLong(slot + 8);
+            VarHandle.acquireFence();
+            if (offset == EMPTY) {
+                return null;
+            }
+            if (offset != DELETED && current.buffer().getLong(slot) == hash) {
+                URL url = read(offset - 1, key);
+                if (url != null) {
+                    return url;
+                }
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Store a URL under its short URL, replacing an earlier entry. Once the table has reached its
+     * maximum capacity and load factor, or has no empty slot left, new short URLs are rejected.
+     *
+     * @param url
+     * @return false if the URL is too large to be stored or the table is full
+     */
+    public synchronized boolean put(URL url) throws IOException {
+        ensureOpen();
+        byte[] key = url.getShortUrl().getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key);
+        Table current = table;
+        int mask = current.capacity() - 1;
+        int index = (int) hash & mask;
+        int free = -1;
+        int empty = -1;
+        for (int probe = 0; probe < current.capacity(); probe++) {
+            int slot = HEADER_SIZE + index * SLOT_SIZE;
+            long slotOffset = current.buffer().getLong(slot + 8);
+            if (slotOffset == EMPTY) {
+                empty = slot;
+                break;
+            }
+            if (slotOffset == DELETED) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (current.buffer().getLong(slot) == hash && read(slotOffset - 1, key) != null) {
+                long offset = append(url, key);
+                if (offset < 0) {
+                    return false;
+                }
+                current.buffer().putLong(slot + 8, offset + 1);
+                writeHeader();
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        if (free < 0 && (empty < 0 || (current.capacity() >= MAX_CAPACITY && used >= current.capacity() * maxLoadFactor))) {
+            return false;
+        }
+        long offset = append(url, key);
+        if (offset < 0) {
+            return false;
+        }
+        int slot;
+        if (free >= 0) {
+            slot = free;
+        } else {
+            slot = empty;
+            used++;
+        }
+        current.buffer().putLong(slot, hash);
+        VarHandle.releaseFence();
+        current.buffer().putLong(slot + 8, offset + 1);
+        size++;
+        writeHeader();
+        if (used > current.capacity() * maxLoadFactor && current.capacity() < MAX_CAPACITY) {
+            resize(current.capacity() * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the entry of a short URL. The record stays in the data file.
+     *
+     * @param shortUrl
+     * @return true if there was an entry
+     */
+    public synchronized boolean remove(String shortUrl) {
+        ensureOpen();
+        byte[] key = shortUrl.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key);
+        Table current = table;
+        int mask = current.capacity() - 1;
+        int index = (int) hash & mask;
+        for (int probe = 0; probe < current.capacity(); probe++) {
+            int slot = HEADER_SIZE + index * SLOT_SIZE;
+            long offset = current.buffer().getLong(slot + 8);
+            if (offset == EMPTY) {
+                return false;
+            }
+            if (offset != DELETED && current.buffer().getLong(slot) == hash && read(offset - 1, key) != null) {
+                current.buffer().putLong(slot + 8, DELETED);
+                size--;
+                writeHeader();
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots of the table
+     */
+    public int capacity() {
+        return table.capacity();
+    }
+
+    /**
+     * Flush both files and mark the index as cleanly closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+        Table current = table;
+        current.buffer().putInt(STATE_OFFSET, STATE_CLEAN);
+        current.buffer().putLong(CHECKSUM_OFFSET, checksum(current.buffer()));
+        current.buffer().force();
+        current.channel().close();
+        dataChannel.close();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Index is closed");
+        }
+    }
+
+    /**
+     * Append a record to the data file. Records never span two regions.
+     *
+     * @return the offset of the record, or -1 if it does not fit into a region
+     */
+    private long append(URL url, byte[] key) throws IOException {
+        byte[] longUrl = bytes(url.getLongUrl());
+        byte[] username = bytes(url.getUsername());
+        int length = 4 + 8 + 4 + key.length + 4 + length(longUrl) + 4 + length(username) + POLICY_SIZE;
+        if (length > regionSize) {
+            return -1;
+        }
+        long offset = dataEnd;
+        if (offset % regionSize + length > regionSize) {
+            offset = (offset / regionSize + 1) * regionSize;
+        }
+        MappedByteBuffer region = region((int) (offset / regionSize));
+        int position = (int) (offset % regionSize);
+        region.putInt(position, length);
+        region.putLong(position + 4, url.getId() == null ? NULL_ID : url.getId());
+        position = putBytes(region, position + 12, key);
+        position = putBytes(region, position, longUrl);
+        position = putBytes(region, position, username);
+        region.putShort(position, (short) (url.getRedirectType() == null ? NULL_VALUE : url.getRedirectType().getStatus()));
+        region.putInt(position + 2, url.getCacheMaxAge() == null ? NULL_VALUE : url.getCacheMaxAge());
+        region.putLong(position + 6, url.getModifiedAt() == null ? NULL_VALUE : url.getModifiedAt());
+        VarHandle.releaseFence();
+        dataEnd = offset + length;
+        return offset;
+    }
+
+    /**
+     * Read a record if it belongs to the given short URL.
+     */
+    private URL read(long offset, byte[] key) {
+        MappedByteBuffer[] mapped = regions;
+        int regionIndex = (int) (offset / regionSize);
+        if (regionIndex >= mapped.length) {
+            return null;
+        }
+        MappedByteBuffer region = mapped[regionIndex];
+        int position = (int) (offset % regionSize);
+        int keyLength = region.getInt(position + 12);
+        if (keyLength != key.length) {
+            return null;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (region.get(position + 16 + i) != key[i]) {
+                return null;
+            }
+        }
+        URL url = new URL();
+        long id = region.getLong(position + 4);
+        url.setId(id == NULL_ID ? null : id);
+        url.setShortUrl(new String(key, StandardCharsets.UTF_8));
+        position += 16 + keyLength;
+        int longUrlLength = region.getInt(position);
+        url.setLongUrl(getString(region, position + 4, longUrlLength));
+        position += 4 + Math.max(0, longUrlLength);
+        int usernameLength = region.getInt(position);
+        url.setUsername(getString(region, position + 4, usernameLength));
+        position += 4 + Math.max(0, usernameLength);
+        short status = region.getShort(position);
+        int cacheMaxAge = region.getInt(position + 2);
+        long modifiedAt = region.getLong(position + 6);
+        url.setRedirectType(status == NULL_VALUE ? null : RedirectType.ofStatus(status));
+        url.setCacheMaxAge(cacheMaxAge == NULL_VALUE ? null : cacheMaxAge);
+        url.setModifiedAt(modifiedAt == NULL_VALUE ? null : modifiedAt);
+        return url;
+    }
+
+    private MappedByteBuffer region(int index) throws IOException {
+        MappedByteBuffer[] mapped = regions;
+        if (index < mapped.length) {
+            return mapped[index];
+        }
+        MappedByteBuffer[] grown = Arrays.copyOf(mapped, index + 1);
+        for (int i = mapped.length; i <= index; i++) {
+            grown[i] = mapRegion(i);
+        }
+        regions = grown;
+        return grown[index];
+    }
+
+    private MappedByteBuffer mapRegion(int index) throws IOException {
+        return dataChannel.map(FileChannel.MapMode.READ_WRITE, (long) index * regionSize, regionSize);
+    }
+
+    /**
+     * Move all entries into a table of the given capacity. Tombstones are dropped; the new table
+     * replaces the index file atomically, and readers still probing the old table finish on it.
+     */
+    private void resize(int capacity) throws IOException {
+        Table old = table;
+        Path resizeFile = directory.resolve(RESIZE_FILE);
+        Files.deleteIfExists(resizeFile);
+        Table resized = newTable(resizeFile, capacity, regionSize);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.capacity(); i++) {
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            long offset = old.buffer().getLong(slot + 8);
+            if (offset == EMPTY || offset == DELETED) {
+                continue;
+            }
+            long hash = old.buffer().getLong(slot);
+            int index = (int) hash & mask;
+            while (resized.buffer().getLong(HEADER_SIZE + index * SLOT_SIZE + 8) != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            resized.buffer().putLong(HEADER_SIZE + index * SLOT_SIZE, hash);
+            resized.buffer().putLong(HEADER_SIZE + index * SLOT_SIZE + 8, offset);
+        }
+        used = size;
+        VarHandle.releaseFence();
+        table = resized;
+        writeHeader();
+        resized.buffer().force();
+        Files.move(resizeFile, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        old.channel().close();
+    }
+
+    private static Table newTable(Path file, int capacity, int regionSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        buffer.putLong(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(STATE_OFFSET, STATE_OPEN);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(REGION_SIZE_OFFSET, regionSize);
+        return new Table(channel, buffer, capacity);
+    }
+
+    private void writeHeader() {
+        MappedByteBuffer buffer = table.buffer();
+        buffer.putInt(SIZE_OFFSET, size);
+        buffer.putInt(USED_OFFSET, used);
+        buffer.putLong(DATA_END_OFFSET, dataEnd);
+    }
+
+    private static long checksum(MappedByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, CHECKSUM_OFFSET));
+        return crc.getValue();
+    }
+
+    /**
+     * FNV-1a followed by the murmur3 finalizer, so that the low bits used for the slot are well mixed.
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static int putBytes(MappedByteBuffer region, int position, byte[] value) {
+        if (value == null) {
+            region.putInt(position, NULL_LENGTH);
+            return position + 4;
+        }
+        region.putInt(position, value.length);
+        region.put(position + 4, value);
+        return position + 4 + value.length;
+    }
+
+    private static String getString(MappedByteBuffer region, int position, int length) {
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        region.get(position, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,294 @@
+package io.twodigits.urlshortener.index;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.twodigits.urlshortener.config.UrlIndexProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.storage.URLStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves short URLs from a {@link MappedUrlIndex} without going through Hibernate.
+ * <p>
+ * On start the index files are opened as they are, unless they are missing, were not closed
+ * cleanly or hold a different number of URLs than the database. In that case the index is
+ * rebuilt from the database in the background. As long as the index is unavailable every
+ * lookup misses, so callers fall back to JPA; they do the same for short URLs the index does
+ * not know, e.g. those created by another node.
+ */
+@Slf4j
+@Component
+public class UrlIndex implements SmartLifecycle {
+
+    private final URLStorage urlStorage;
+
+    private final UrlIndexProperties properties;
+
+    private final ExecutionThreads executionThreads;
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    private volatile MappedUrlIndex index;
+
+    /**
+     * The index being rebuilt, which receives all changes made while the rebuild runs
+     */
+    private volatile MappedUrlIndex building;
+
+    /**
+     * Short URLs stored or deleted while the rebuild runs, whose older state must not be added by it.
+     * Also guards reading index and building together, so that a change is not lost between them
+     * when a rebuild publishes its index.
+     */
+    private final Set<String> changedWhileBuilding = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running;
+
+    private Thread rebuilder;
+
+    @Autowired
+    public UrlIndex(URLStorage urlStorage, UrlIndexProperties properties, ExecutionThreads executionThreads,
+                    MeterRegistry registry) {
+        this.urlStorage = urlStorage;
+        this.properties = properties;
+        this.executionThreads = executionThreads;
+        this.hitCounter = Counter.builder("urlshortener.index.lookups").tag("result", "hit").register(registry);
+        this.missCounter = Counter.builder("urlshortener.index.lookups").tag("result", "miss").register(registry);
+        Gauge.builder("urlshortener.index.entries", this, i -> {
+                    MappedUrlIndex current = i.index;
+                    return current == null ? 0 : current.size();
+                })
+                .description("Short URLs held by the memory-mapped index")
+                .register(registry);
+    }
+
+    /**
+     * @return true if lookups are served from the index
+     */
+    public boolean isAvailable() {
+        return index != null;
+    }
+
+    /**
+     * @param shortUrl
+     * @return the URL, or empty if the index is unavailable or does not know the short URL
+     */
+    public Optional<URL> get(String shortUrl) {
+        MappedUrlIndex current = index;
+        if (current == null || shortUrl == null) {
+            return Optional.empty();
+        }
+        URL url;
+        try {
+            url = current.get(shortUrl);
+        } catch (RuntimeException e) {
+            disable(current, e);
+            return Optional.empty();
+        }
+        (url == null ? missCounter : hitCounter).increment();
+        return Optional.ofNullable(url);
+    }
+
+    /**
+     * Add a URL which has been stored.
+     *
+     * @param url
+     */
+    public void put(URL url) {
+        if (url == null || url.getShortUrl() == null) {
+            return;
+        }
+        MappedUrlIndex current;
+        synchronized (changedWhileBuilding) {
+            current = index;
+            MappedUrlIndex next = building;
+            if (next != null) {
+                changedWhileBuilding.add(url.getShortUrl());
+                try {
+                    next.put(url);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to add {} to the index being rebuilt", url.getShortUrl(), e);
+                }
+            }
+        }
+        if (current != null) {
+            try {
+                current.put(url);
+            } catch (IOException | RuntimeException e) {
+                disable(current, e);
+            }
+        }
+    }
+
+    /**
+     * Remove a short URL which has been deleted.
+     *
+     * @param shortUrl
+     */
+    public void remove(String shortUrl) {
+        if (shortUrl == null) {
+            return;
+        }
+        MappedUrlIndex current;
+        synchronized (changedWhileBuilding) {
+            current = index;
+            MappedUrlIndex next = building;
+            if (next != null) {
+                changedWhileBuilding.add(shortUrl);
+                next.remove(shortUrl);
+            }
+        }
+        if (current != null) {
+            try {
+                current.remove(shortUrl);
+            } catch (RuntimeException e) {
+                disable(current, e);
+            }
+        }
+    }
+
+    /**
+     * Stop serving from an index which failed, so that lookups go to the database.
+     * A restart rebuilds it, because it is not closed cleanly.
+     */
+    private void disable(MappedUrlIndex failed, Exception e) {
+        if (index == failed) {
+            index = null;
+            log.error("Memory-mapped URL index failed, resolving short URLs through the database", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            MappedUrlIndex opened = MappedUrlIndex.open(properties.getDirectory(), properties.getMaxLoadFactor());
+            long stored = urlStorage.count();
+            if (opened.size() == stored) {
+                index = opened;
+                log.info("Opened URL index with {} entries", stored);
+                return;
+            }
+            log.warn("URL index holds {} entries but the database {}, rebuilding it", opened.size(), stored);
+            opened.close();
+        } catch (NoSuchFileException e) {
+            log.info("No URL index in {}, building it", properties.getDirectory());
+        } catch (IOException e) {
+            log.warn("URL index in {} cannot be used, rebuilding it: {}", properties.getDirectory(), e.getMessage());
+        }
+        rebuilder = executionThreads.threadFactory("url-index-rebuilder").newThread(this::rebuildQuietly);
+        rebuilder.start();
+    }
+
+    /**
+     * Drop the index and rebuild it from the database in the background, as it may hold URLs
+     * other nodes changed while this one was down. Lookups go to the database meanwhile; an
+     * index being built already reads the current URLs and is kept.
+     */
+    public void rebuildInBackground() {
+        MappedUrlIndex current = index;
+        if (!running || current == null) {
+            return;
+        }
+        index = null;
+        try {
+            current.close();
+        } catch (IOException e) {
+            log.warn("Failed to close URL index before rebuilding it", e);
+        }
+        rebuilder = executionThreads.threadFactory("url-index-rebuilder").newThread(this::rebuildQuietly);
+        rebuilder.start();
+    }
+
+    /**
+     * Build a new index from all stored URLs.
+     */
+    void rebuild() throws IOException {
+        long start = System.nanoTime();
+        MappedUrlIndex next = MappedUrlIndex.create(properties.getDirectory(), properties.getInitialCapacity(),
+                (int) properties.getDataRegionSize().toBytes(), properties.getMaxLoadFactor());
+        // Changes from now on go to the new index, everything stored before is read below.
+        building = next;
+        try {
+            urlStorage.forEach(url -> {
+                if (!running) {
+                    throw new IllegalStateException("Shutting down");
+                }
+                synchronized (changedWhileBuilding) {
+                    if (!changedWhileBuilding.contains(url.getShortUrl())) {
+                        try {
+                            next.put(url);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (changedWhileBuilding) {
+                building = null;
+                changedWhileBuilding.clear();
+            }
+            next.close();
+            throw e;
+        }
+        synchronized (changedWhileBuilding) {
+            index = next;
+            building = null;
+            changedWhileBuilding.clear();
+        }
+        log.info("Built URL index with {} entries in {} ms", next.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to build URL index, resolving short URLs through the database", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (rebuilder != null) {
+            try {
+                rebuilder.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        MappedUrlIndex current = index;
+        index = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.warn("Failed to close URL index, it will be rebuilt on the next start", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
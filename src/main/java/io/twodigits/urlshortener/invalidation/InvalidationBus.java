@@ -0,0 +1,422 @@
+package io.twodigits.urlshortener.invalidation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.twodigits.urlshortener.cache.RedirectCache;
+import io.twodigits.urlshortener.cache.UserUrlCounts;
+import io.twodigits.urlshortener.config.InvalidationProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.filter.ShortCodeFilter;
+import io.twodigits.urlshortener.index.UrlIndex;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.UrlChange;
+import io.twodigits.urlshortener.repo.UrlChangeJdbcRepo;
+import io.twodigits.urlshortener.repo.UrlChangeJdbcRepo.Row;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the caches of several nodes sharing one database consistent.
+ * <p>
+ * The service publishes every short URL it creates, updates or deletes from within the
+ * transaction writing the URL, see {@link #transactionally(Supplier)}. The changes of a
+ * transaction are collected, so a short URL changing several times is written once, and
+ * inserted into the url_change table in one batch right before the transaction commits, so
+ * they are committed or rolled back with the write they announce. With the sharded and the
+ * memory engine the URLs are not stored in the main database, so their changes are committed
+ * right after the write instead. Every node polls the table for changes published by the
+ * others and applies them to its {@link RedirectCache}, {@link UrlIndex},
+ * {@link ShortCodeFilter} and {@link UserUrlCounts}; the local caches of the publishing node
+ * are updated by the service right away.
+ * <p>
+ * The ID of a change is its version: a node remembers the highest ID it has read and asks
+ * for newer ones only. IDs are assigned on insert but become visible on commit, so a change
+ * may show up after a higher one; IDs skipped this way are looked up again until they appear
+ * or the settle time has passed. Applying a change only ever evicts or adds, so applying it
+ * twice does no harm.
+ * <p>
+ * The ID below which all changes have been applied is kept in the cursor file. A node
+ * restarting within the retention replays the changes published while it was down, which
+ * its persisted {@link UrlIndex} may have missed; otherwise the index is rebuilt.
+ */
+@Slf4j
+@Component
+public class InvalidationBus implements SmartLifecycle {
+
+    /**
+     * The maximum number of skipped IDs looked up again; more are only expected after
+     * mass rollbacks, whose changes never appear anyway
+     */
+    private static final int MAX_GAPS = 1_024;
+
+    private static final long CLEANUP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int CURSOR_MAGIC = 0x55524343;
+
+    private final UrlChangeJdbcRepo urlChangeJdbcRepo;
+
+    private final RedirectCache redirectCache;
+
+    private final UrlIndex urlIndex;
+
+    private final ShortCodeFilter shortCodeFilter;
+
+    private final UserUrlCounts userUrlCounts;
+
+    private final InvalidationProperties properties;
+
+    private final ExecutionThreads executionThreads;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final String node = UUID.randomUUID().toString();
+
+    /**
+     * Skipped IDs and the {@link System#nanoTime()} they have been noticed at
+     */
+    private final TreeMap<Long, Long> gaps = new TreeMap<>();
+
+    private final Counter published;
+
+    private final Counter coalesced;
+
+    private final Counter applied;
+
+    private final Timer lag;
+
+    private long cursor;
+
+    private long lastCleanup;
+
+    /**
+     * The cursor last written to the cursor file
+     */
+    private long savedCursor = -1;
+
+    private ScheduledExecutorService poller;
+
+    private volatile boolean running;
+
+    private record PendingChange(UrlChange.Kind kind, String shortUrl, String username) {
+    }
+
+    @Autowired
+    public InvalidationBus(UrlChangeJdbcRepo urlChangeJdbcRepo, RedirectCache redirectCache, UrlIndex urlIndex,
+                           ShortCodeFilter shortCodeFilter, UserUrlCounts userUrlCounts,
+                           InvalidationProperties properties, ExecutionThreads executionThreads,
+                           PlatformTransactionManager transactionManager, MeterRegistry registry) {
+        this.urlChangeJdbcRepo = urlChangeJdbcRepo;
+        this.redirectCache = redirectCache;
+        this.urlIndex = urlIndex;
+        this.shortCodeFilter = shortCodeFilter;
+        this.userUrlCounts = userUrlCounts;
+        this.properties = properties;
+        this.executionThreads = executionThreads;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.published = Counter.builder("urlshortener.invalidation.published")
+                .description("Changes written to the url_change table")
+                .register(registry);
+        this.coalesced = Counter.builder("urlshortener.invalidation.coalesced")
+                .description("Changes merged into one already published by the same transaction")
+                .register(registry);
+        this.applied = Counter.builder("urlshortener.invalidation.applied")
+                .description("Changes of other nodes applied to the local caches")
+                .register(registry);
+        this.lag = Timer.builder("urlshortener.invalidation.lag")
+                .description("Time from publishing a change on one node to applying it on another")
+                .register(registry);
+    }
+
+    /**
+     * @return the ID this node marks its changes with
+     */
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * Run a write of URLs in a transaction of the main database if changes are exchanged, so
+     * the changes it publishes are committed with it.
+     *
+     * @param write
+     * @return the result of the write
+     */
+    public <T> T transactionally(Supplier<T> write) {
+        return properties.isEnabled() ? transactionTemplate.execute(status -> write.get()) : write.get();
+    }
+
+    /**
+     * Announce a change of a short URL to the other nodes. Within a transaction the change is
+     * written when the transaction commits, otherwise right away.
+     *
+     * @param kind
+     * @param url the URL as it was before an update or deletion, or as it has been created
+     */
+    public void publish(UrlChange.Kind kind, URL url) {
+        if (!properties.isEnabled() || url == null || url.getShortUrl() == null) {
+            return;
+        }
+        PendingChange change = new PendingChange(kind, url.getShortUrl(), url.getUsername());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            insert(List.of(change));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<PendingChange> pending = (Set<PendingChange>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Set<PendingChange> outbox = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, outbox);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    insert(outbox);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(InvalidationBus.this);
+                }
+            });
+            pending = outbox;
+        }
+        if (!pending.add(change)) {
+            coalesced.increment();
+        }
+    }
+
+    private void insert(Collection<PendingChange> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<UrlChange> changes = new ArrayList<>(pending.size());
+        for (PendingChange change : pending) {
+            UrlChange urlChange = new UrlChange();
+            urlChange.setKind(change.kind());
+            urlChange.setShortUrl(change.shortUrl());
+            urlChange.setUsername(change.username());
+            urlChange.setNode(node);
+            urlChange.setCreatedAt(now);
+            changes.add(urlChange);
+        }
+        urlChangeJdbcRepo.insertAll(changes);
+        published.increment(changes.size());
+    }
+
+    /**
+     * Apply the changes other nodes published since the last poll.
+     *
+     * @return the number of changes read, at most the poll batch size for the newer ones
+     *         plus the skipped ones which have appeared
+     */
+    public int poll() {
+        // Guards the cursor and the gaps; publishing goes on meanwhile.
+        synchronized (gaps) {
+            long now = System.nanoTime();
+            long settleNanos = properties.getSettleTime().toNanos();
+            gaps.values().removeIf(noticed -> now - noticed > settleNanos);
+            int read = 0;
+            if (!gaps.isEmpty()) {
+                for (Row row : urlChangeJdbcRepo.findByIds(gaps.keySet())) {
+                    gaps.remove(row.id());
+                    apply(row);
+                    read++;
+                }
+            }
+            List<Row> rows = urlChangeJdbcRepo.findAfter(cursor, properties.getPollBatchSize());
+            for (Row row : rows) {
+                for (long missing = Math.max(cursor + 1, row.id() - MAX_GAPS);
+                     missing < row.id() && gaps.size() < MAX_GAPS; missing++) {
+                    gaps.put(missing, now);
+                }
+                cursor = row.id();
+                apply(row);
+            }
+            return read + rows.size();
+        }
+    }
+
+    private void apply(Row row) {
+        if (node.equals(row.node())) {
+            return;
+        }
+        switch (row.kind()) {
+            case CREATED -> shortCodeFilter.put(row.shortUrl());
+            case CHANGED -> {
+                redirectCache.invalidate(row.shortUrl());
+                urlIndex.remove(row.shortUrl());
+            }
+        }
+        userUrlCounts.invalidate(row.username());
+        applied.increment();
+        lag.record(Math.max(System.currentTimeMillis() - row.createdAt(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Delete the changes which are older than the retention.
+     */
+    void cleanUp() {
+        int deleted = urlChangeJdbcRepo.deleteCreatedBefore(System.currentTimeMillis() - properties.getRetention().toMillis());
+        log.debug("Deleted {} changes from the url_change table", deleted);
+    }
+
+    /**
+     * Read the changes until a batch is not full, so a node catches up after a pause.
+     */
+    private void catchUp() {
+        while (poll() >= properties.getPollBatchSize()) {
+            log.debug("Read a full batch of URL changes, polling again");
+        }
+    }
+
+    private void pollQuietly() {
+        try {
+            catchUp();
+            saveCursor();
+            long now = System.currentTimeMillis();
+            if (now - lastCleanup >= CLEANUP_INTERVAL_MILLIS) {
+                lastCleanup = now;
+                cleanUp();
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to poll URL changes", e);
+        }
+    }
+
+    /**
+     * @return the ID below which all changes have been applied
+     */
+    private long appliedCursor() {
+        synchronized (gaps) {
+            return gaps.isEmpty() ? cursor : Math.min(cursor, gaps.firstKey() - 1);
+        }
+    }
+
+    /**
+     * Write the applied cursor to the cursor file if it has moved, replacing the file atomically.
+     */
+    private void saveCursor() {
+        long applied = appliedCursor();
+        if (applied == savedCursor) {
+            return;
+        }
+        Path file = properties.getCursorFile().toAbsolutePath();
+        try {
+            Files.createDirectories(file.getParent());
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                DataOutputStream data = new DataOutputStream(out);
+                data.writeInt(CURSOR_MAGIC);
+                data.writeLong(applied);
+                data.writeLong(System.currentTimeMillis());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            savedCursor = applied;
+        } catch (IOException e) {
+            log.warn("Failed to save the URL change cursor to {}", file, e);
+        }
+    }
+
+    /**
+     * @return the cursor of the cursor file, or empty if there is none or the changes following
+     *         it may have been deleted since it was saved
+     */
+    private OptionalLong loadCursor() {
+        Path file = properties.getCursorFile();
+        try (InputStream in = Files.newInputStream(file)) {
+            DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != CURSOR_MAGIC) {
+                log.warn("{} is no URL change cursor", file);
+                return OptionalLong.empty();
+            }
+            long applied = data.readLong();
+            long savedAt = data.readLong();
+            // Changes committed up to the settle time after the cursor was saved may be older.
+            long retained = properties.getRetention().minus(properties.getSettleTime()).toMillis();
+            if (System.currentTimeMillis() - savedAt >= retained) {
+                log.info("URL change cursor in {} is older than the retention", file);
+                return OptionalLong.empty();
+            }
+            return OptionalLong.of(applied);
+        } catch (NoSuchFileException e) {
+            return OptionalLong.empty();
+        } catch (IOException e) {
+            log.warn("Failed to read the URL change cursor from {}", file, e);
+            return OptionalLong.empty();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!properties.isEnabled()) {
+            return;
+        }
+        OptionalLong saved = loadCursor();
+        synchronized (gaps) {
+            // Only the persisted URL index outlives a restart; all other caches start empty.
+            cursor = saved.orElseGet(urlChangeJdbcRepo::findMaxId);
+        }
+        if (saved.isPresent()) {
+            log.info("Replaying URL changes published after {} while this node was down", cursor);
+            catchUp();
+        } else {
+            log.info("No URL changes retained since this node last ran, rebuilding the URL index");
+            urlIndex.rebuildInBackground();
+        }
+        saveCursor();
+        long pollInterval = properties.getPollInterval().toMillis();
+        poller = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("invalidation-poller"));
+        poller.scheduleWithFixedDelay(this::pollQuietly, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        log.info("Exchanging URL changes with other nodes as node {}", node);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (poller == null) {
+            return;
+        }
+        poller.shutdown();
+        try {
+            poller.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveCursor();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,48 @@
+package io.twodigits.urlshortener.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the number of SQL statements each request needed as {@code urlshortener.db.queries},
+ * tagged with the same URI template as {@code http.server.requests}.
+ */
+public class QueryCountFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry registry;
+
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public QueryCountFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryCounter.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            int queries = QueryCounter.stop();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            summaries.computeIfAbsent(pattern == null ? "UNKNOWN" : pattern.toString(), uri ->
+                            DistributionSummary.builder("urlshortener.db.queries")
+                                    .description("SQL statements prepared while handling a request")
+                                    .tag("uri", uri)
+                                    .publishPercentileHistogram()
+                                    .register(registry))
+                    .record(queries);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.twodigits.urlshortener.metrics;
+
+/**
+ * Counts the SQL statements prepared by the current thread while a count is active,
+ * i.e. during an HTTP request. Statements of background threads are not counted.
+ */
+public final class QueryCounter {
+
+    private static final ThreadLocal<Count> COUNT = ThreadLocal.withInitial(Count::new);
+
+    private QueryCounter() {
+    }
+
+    /**
+     * Start counting on the current thread.
+     */
+    public static void start() {
+        Count count = COUNT.get();
+        count.active = true;
+        count.value = 0;
+    }
+
+    /**
+     * Stop counting on the current thread.
+     *
+     * @return the number of statements prepared since {@link #start()}
+     */
+    public static int stop() {
+        Count count = COUNT.get();
+        count.active = false;
+        return count.value;
+    }
+
+    static void increment() {
+        Count count = COUNT.get();
+        if (count.active) {
+            count.value++;
+        }
+    }
+
+    private static final class Count {
+
+        private boolean active;
+
+        private int value;
+    }
+}
@@ -0,0 +1,56 @@
+package io.twodigits.urlshortener.model;
+
+import lombok.Value;
+import lombok.With;
+
+/**
+ * The outcome for one URL of a batch generation request.
+ */
+@Value
+public class BatchItemResult {
+
+    public enum Status {
+        CREATED,
+        /**
+         * The item did not contain a URL
+         */
+        REJECTED,
+        /**
+         * The item could not be stored
+         */
+        FAILED,
+        /**
+         * The item was not processed, as its client or user exceeded their rate
+         */
+        RATE_LIMITED
+    }
+
+    /**
+     * The position of the item in the request
+     */
+    @With
+    int index;
+
+    Status status;
+
+    /**
+     * The URL which has been created, null unless the status is CREATED
+     */
+    URL url;
+
+    public static BatchItemResult created(int index, URL url) {
+        return new BatchItemResult(index, Status.CREATED, url);
+    }
+
+    public static BatchItemResult rejected(int index) {
+        return new BatchItemResult(index, Status.REJECTED, null);
+    }
+
+    public static BatchItemResult failed(int index) {
+        return new BatchItemResult(index, Status.FAILED, null);
+    }
+
+    public static BatchItemResult rateLimited(int index) {
+        return new BatchItemResult(index, Status.RATE_LIMITED, null);
+    }
+}
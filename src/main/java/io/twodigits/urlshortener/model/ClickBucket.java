@@ -0,0 +1,14 @@
+package io.twodigits.urlshortener.model;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+@Value
+public class ClickBucket {
+
+    Instant bucketStart;
+
+    long clicks;
+
+}
@@ -0,0 +1,12 @@
+package io.twodigits.urlshortener.model;
+
+import lombok.Value;
+
+@Value
+public class ClickCount {
+
+    String shortUrl;
+
+    long clicks;
+
+}
@@ -0,0 +1,46 @@
+package io.twodigits.urlshortener.model;
+
+import lombok.Value;
+
+import java.sql.Timestamp;
+
+/**
+ * A single access to a short URL, as recorded on the redirect path.
+ * <p>
+ * Unlike {@link URLStats} it only carries the ID of the URL, so it can be queued
+ * and written in batches without touching the persistence context.
+ */
+@Value
+public class ClickEvent {
+
+    /**
+     * The ID of the URL which has been accessed
+     */
+    long urlId;
+
+    /**
+     * The short URL which has been accessed
+     */
+    String shortUrl;
+
+    /**
+     * The time of the access in milliseconds since the epoch
+     */
+    long accessTime;
+
+    String userAgent;
+
+    String referrer;
+
+    String clientIp;
+
+    /**
+     * @param stats a statistic whose URL has an ID
+     * @return the click the statistic describes
+     */
+    public static ClickEvent of(URLStats stats) {
+        return new ClickEvent(stats.getUrl().getId(), stats.getUrl().getShortUrl(),
+                stats.getAccessTime() == null ? System.currentTimeMillis() : Timestamp.valueOf(stats.getAccessTime()).getTime(),
+                stats.getUserAgent(), stats.getReferrer(), stats.getClientIp());
+    }
+}
@@ -0,0 +1,36 @@
+package io.twodigits.urlshortener.model;
+
+import java.time.Duration;
+
+/**
+ * The size of the time buckets clicks are rolled up into.
+ */
+public enum ClickGranularity {
+
+    MINUTE(Duration.ofMinutes(1)),
+    HOUR(Duration.ofHours(1)),
+    DAY(Duration.ofDays(1));
+
+    private final long millis;
+
+    ClickGranularity(Duration length) {
+        this.millis = length.toMillis();
+    }
+
+    /**
+     * @return the length of a bucket in milliseconds
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Get the start of the bucket a point in time falls into.
+     *
+     * @param epochMillis
+     * @return the start of the bucket in milliseconds since the epoch
+     */
+    public long bucketStart(long epochMillis) {
+        return Math.floorDiv(epochMillis, millis) * millis;
+    }
+}
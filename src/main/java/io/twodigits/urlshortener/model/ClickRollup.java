@@ -0,0 +1,43 @@
+package io.twodigits.urlshortener.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * The number of clicks a URL received within one time bucket.
+ */
+@Entity
+@Table(name = "click_rollup")
+@IdClass(ClickRollup.Key.class)
+@Data
+public class ClickRollup {
+
+    @Id
+    private Long urlId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private ClickGranularity granularity;
+
+    /**
+     * The start of the bucket in milliseconds since the epoch
+     */
+    @Id
+    private Long bucketStart;
+
+    private long clicks;
+
+    @Data
+    public static class Key implements Serializable {
+
+        private Long urlId;
+
+        private ClickGranularity granularity;
+
+        private Long bucketStart;
+
+    }
+}
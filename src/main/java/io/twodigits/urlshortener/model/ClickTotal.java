@@ -0,0 +1,21 @@
+package io.twodigits.urlshortener.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * The number of clicks a URL received since it has been created.
+ */
+@Entity
+@Table(name = "click_total")
+@Data
+public class ClickTotal {
+
+    @Id
+    private Long urlId;
+
+    private long clicks;
+
+}
@@ -0,0 +1,23 @@
+package io.twodigits.urlshortener.model;
+
+/**
+ * The formats the access statistics of a short URL can be exported in. The binary formats
+ * are sequences of one CBOR or Smile value per row.
+ */
+public enum ExportFormat {
+
+    NDJSON("application/x-ndjson"),
+    CSV("text/csv"),
+    CBOR("application/cbor-seq"),
+    SMILE("application/x-jackson-smile");
+
+    private final String contentType;
+
+    ExportFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,43 @@
+package io.twodigits.urlshortener.model;
+
+/**
+ * How a short URL redirects to its long URL.
+ * <p>
+ * Permanent redirects may be remembered by browsers and caches for longer than the
+ * Cache-Control header allows and are then no longer seen, or counted, by the service.
+ * The 307 and 308 variants keep the method and body of the request.
+ */
+public enum RedirectType {
+
+    MOVED_PERMANENTLY(301),
+    FOUND(302),
+    TEMPORARY_REDIRECT(307),
+    PERMANENT_REDIRECT(308);
+
+    private final int status;
+
+    RedirectType(int status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the HTTP status code of the redirect
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @param status
+     * @return the redirect type with the HTTP status code
+     * @throws IllegalArgumentException if no redirect type has the status code
+     */
+    public static RedirectType ofStatus(int status) {
+        for (RedirectType type : values()) {
+            if (type.status == status) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Not a redirect status: " + status);
+    }
+}
@@ -0,0 +1,22 @@
+package io.twodigits.urlshortener.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One page of the access statistics of a short URL, ordered by access time.
+ */
+@Value
+public class StatsPage {
+
+    String shortUrl;
+
+    List<URLStatsView> items;
+
+    /**
+     * The cursor to pass to get the next page, null if this is the last page
+     */
+    String nextCursor;
+
+}
@@ -0,0 +1,15 @@
+package io.twodigits.urlshortener.model;
+
+import lombok.Value;
+
+@Value
+public class TrendingLink {
+
+    String shortUrl;
+
+    /**
+     * The estimated number of clicks within the window; never less than the true number
+     */
+    long clicks;
+
+}
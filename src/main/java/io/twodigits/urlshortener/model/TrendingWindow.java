@@ -0,0 +1,38 @@
+package io.twodigits.urlshortener.model;
+
+import java.time.Duration;
+
+/**
+ * The sliding time windows trending links are ranked over.
+ * <p>
+ * A window is made up of a fixed number of slots and moves on slot by slot, so it
+ * covers between {@code (slots - 1) / slots} and all of its length.
+ */
+public enum TrendingWindow {
+
+    FIVE_MINUTES(Duration.ofMinutes(5), 10),
+    ONE_HOUR(Duration.ofHours(1), 12);
+
+    private final long slotMillis;
+
+    private final int slots;
+
+    TrendingWindow(Duration length, int slots) {
+        this.slotMillis = length.toMillis() / slots;
+        this.slots = slots;
+    }
+
+    /**
+     * @return the length of a slot in milliseconds
+     */
+    public long getSlotMillis() {
+        return slotMillis;
+    }
+
+    /**
+     * @return the number of slots the window is made up of
+     */
+    public int getSlots() {
+        return slots;
+    }
+}
@@ -1,17 +1,28 @@
 package io.twodigits.urlshortener.model;
 
 import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name="urls")
+@Table(name="urls", indexes = @Index(name = "idx_urls_username_id", columnList = "username, id"))
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class URL {
+
+    /**
+     * The number of IDs reserved by each value of the ID sequence
+     */
+    public static final int ID_ALLOCATION_SIZE = 500;
+
     /**
      * The unique ID of an URL
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "urls_seq")
+    @SequenceGenerator(name = "urls_seq", sequenceName = "urls_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     /**
      * The URL for which a short URL is provided
@@ -21,6 +32,7 @@ public class URL {
     /**
      * The short URL created for the original long URL
      */
+    @Column(unique = true)
     private String shortUrl;
 
     /**
@@ -28,4 +40,25 @@ public class URL {
      */
     private String username;
 
+    /**
+     * How the short URL redirects, null for the configured default
+     */
+    @Enumerated(EnumType.STRING)
+    private RedirectType redirectType;
+
+    /**
+     * For how many seconds clients and caches may reuse the redirect, null for the configured default
+     */
+    private Integer cacheMaxAge;
+
+    /**
+     * When the URL was last saved, in milliseconds since the epoch. It grows with every save,
+     * so it also serves as the version of the URL.
+     */
+    private Long modifiedAt;
+
+    public URL(Long id, String longUrl, String shortUrl, String username) {
+        this(id, longUrl, shortUrl, username, null, null, null);
+    }
+
 }
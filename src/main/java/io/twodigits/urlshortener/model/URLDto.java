@@ -9,4 +9,14 @@ public class URLDto {
 
     private String username;
 
+    /**
+     * How the short URL redirects, null for the configured default
+     */
+    private RedirectType redirectType;
+
+    /**
+     * For how many seconds clients and caches may reuse the redirect, null for the configured default
+     */
+    private Integer cacheMaxAge;
+
 }
@@ -0,0 +1,27 @@
+package io.twodigits.urlshortener.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One page of the URLs of a user, ordered by ID.
+ */
+@Value
+public class URLPage {
+
+    String username;
+
+    List<URL> items;
+
+    /**
+     * The number of URLs of the user across all pages
+     */
+    long total;
+
+    /**
+     * The cursor to pass to get the next page, null if this is the last page
+     */
+    String nextCursor;
+
+}
@@ -7,16 +7,20 @@ import java.time.LocalDateTime;
 
 
 @Entity
-@Table(name="stats")
+@Table(name="stats", indexes = @Index(name = "idx_stats_url_time", columnList = "short_url, accessTime, id"))
 @Data
 public class URLStats {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /**
+     * Not enforced as a foreign key, because the URL may be held by a storage engine
+     * other than the database
+     */
     @ManyToOne
-    @JoinColumn(name = "short_url", nullable = false)
+    @JoinColumn(name = "short_url", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private URL url;
 
     private LocalDateTime accessTime;
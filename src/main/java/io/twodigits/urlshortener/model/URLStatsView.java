@@ -0,0 +1,23 @@
+package io.twodigits.urlshortener.model;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * A read-only row of the stats table without the URL it belongs to.
+ */
+@Value
+public class URLStatsView {
+
+    Long id;
+
+    LocalDateTime accessTime;
+
+    String userAgent;
+
+    String referrer;
+
+    String clientIp;
+
+}
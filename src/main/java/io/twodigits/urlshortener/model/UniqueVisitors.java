@@ -0,0 +1,43 @@
+package io.twodigits.urlshortener.model;
+
+import lombok.Value;
+
+import java.time.LocalDate;
+
+/**
+ * The approximate number of distinct visitors of a short URL. A visitor is a combination
+ * of client IP and user agent.
+ */
+@Value
+public class UniqueVisitors {
+
+    String shortUrl;
+
+    /**
+     * The first day counted (UTC), null if all visitors since the URL has been created are counted
+     */
+    LocalDate from;
+
+    /**
+     * The last day counted (UTC), null if all visitors since the URL has been created are counted
+     */
+    LocalDate to;
+
+    long estimate;
+
+    /**
+     * The relative standard error of the estimate
+     */
+    double standardError;
+
+    /**
+     * The lower bound of the 95% confidence interval of the number of visitors
+     */
+    long lowerBound;
+
+    /**
+     * The upper bound of the 95% confidence interval of the number of visitors
+     */
+    long upperBound;
+
+}
@@ -0,0 +1,54 @@
+package io.twodigits.urlshortener.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * A change of a short URL published by one node for the others, so they can update their
+ * caches. The ID orders the changes and serves as their version.
+ */
+@Entity
+@Table(name = "url_change", indexes = @Index(name = "idx_url_change_created_at", columnList = "createdAt"))
+@Data
+public class UrlChange {
+
+    public enum Kind {
+        /**
+         * The short URL has been created
+         */
+        CREATED,
+        /**
+         * The short URL has been updated or deleted
+         */
+        CHANGED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String shortUrl;
+
+    /**
+     * The user the URL belonged to
+     */
+    private String username;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Kind kind;
+
+    /**
+     * The ID of the node which published the change
+     */
+    @Column(nullable = false, length = 36)
+    private String node;
+
+    /**
+     * When the change has been published in milliseconds since the epoch
+     */
+    @Column(nullable = false)
+    private Long createdAt;
+
+}
@@ -0,0 +1,46 @@
+package io.twodigits.urlshortener.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * The HyperLogLog sketch of the visitors of a URL, either within one day or since the
+ * URL has been created.
+ */
+@Entity
+@Table(name = "visitor_sketch")
+@IdClass(VisitorSketch.Key.class)
+@Data
+public class VisitorSketch {
+
+    /**
+     * The day of the sketch holding all visitors of a URL
+     */
+    public static final long ALL_TIME = -1;
+
+    @Id
+    private Long urlId;
+
+    /**
+     * The start of the day in milliseconds since the epoch (UTC), or {@link #ALL_TIME}
+     */
+    @Id
+    private Long dayStart;
+
+    /**
+     * The registers of the sketch
+     */
+    @Column(nullable = false, length = 1 << 16)
+    private byte[] registers;
+
+    @Data
+    public static class Key implements Serializable {
+
+        private Long urlId;
+
+        private Long dayStart;
+
+    }
+}
@@ -0,0 +1,69 @@
+package io.twodigits.urlshortener.reactive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.twodigits.urlshortener.cache.RedirectCache;
+import io.twodigits.urlshortener.config.ClickStoreProperties;
+import io.twodigits.urlshortener.config.ReactiveProperties;
+import io.twodigits.urlshortener.config.StorageProperties;
+import io.twodigits.urlshortener.filter.ShortCodeFilter;
+import io.twodigits.urlshortener.service.RedirectPolicy;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import io.twodigits.urlshortener.stats.ClickDispatcher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+/**
+ * Sets up the reactive stack when {@code urlshortener.reactive.enabled=true}.
+ * The servlet stack and {@link URLShortenerService} are not affected.
+ * <p>
+ * The reactive stack reads the urls and stats tables directly, so it refuses to start unless
+ * URLs are stored with the JPA engine and clicks with the database engine.
+ */
+@Configuration
+@ConditionalOnProperty(name = "urlshortener.reactive.enabled", havingValue = "true")
+public class ReactiveConfig {
+
+    @Bean
+    public ReactiveDatabase reactiveDatabase(ReactiveProperties properties, StorageProperties storageProperties,
+                                             ClickStoreProperties clickStoreProperties) {
+        if (storageProperties.getEngine() != StorageProperties.Engine.JPA) {
+            throw new IllegalStateException("The reactive stack reads URLs from the database and cannot be combined "
+                    + "with urlshortener.storage.engine=" + storageProperties.getEngine().name().toLowerCase());
+        }
+        if (clickStoreProperties.getEngine() != ClickStoreProperties.Engine.DATABASE) {
+            throw new IllegalStateException("The reactive stack reads clicks from the database and cannot be combined "
+                    + "with urlshortener.stats.store.engine=" + clickStoreProperties.getEngine().name().toLowerCase());
+        }
+        return new ReactiveDatabase(properties);
+    }
+
+    @Bean
+    public ReactiveURLShortenerService reactiveURLShortenerService(URLShortenerService urlShortenerService,
+                                                                   ReactiveDatabase reactiveDatabase,
+                                                                   RedirectCache redirectCache,
+                                                                   ShortCodeFilter shortCodeFilter,
+                                                                   ClickDispatcher clickDispatcher) {
+        return new ReactiveURLShortenerService(urlShortenerService,
+                new ReactiveURLRepo(reactiveDatabase.getClient()),
+                new ReactiveURLStatsRepo(reactiveDatabase.getClient()),
+                redirectCache, shortCodeFilter, clickDispatcher);
+    }
+
+    @Bean
+    public ReactiveServer reactiveServer(ReactiveURLShortenerService reactiveURLShortenerService, RedirectPolicy redirectPolicy,
+                                         ReactiveProperties properties, ObjectMapper objectMapper) {
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .build();
+        ReactiveURLHandler handler = new ReactiveURLHandler(reactiveURLShortenerService, redirectPolicy);
+        return new ReactiveServer(RouterFunctions.toHttpHandler(handler.routes(), strategies), properties);
+    }
+}
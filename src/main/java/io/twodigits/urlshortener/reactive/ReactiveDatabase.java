@@ -0,0 +1,47 @@
+package io.twodigits.urlshortener.reactive;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.twodigits.urlshortener.config.ReactiveProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.util.StringUtils;
+
+/**
+ * The R2DBC connection pool of the reactive stack.
+ * <p>
+ * The pool is deliberately not exposed as a {@link io.r2dbc.spi.ConnectionFactory} bean,
+ * because Spring Boot does not configure a JDBC datasource next to one.
+ */
+public class ReactiveDatabase implements DisposableBean {
+
+    private final ConnectionPool pool;
+
+    private final DatabaseClient client;
+
+    public ReactiveDatabase(ReactiveProperties properties) {
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(properties.getUrl()).mutate();
+        if (StringUtils.hasText(properties.getUsername())) {
+            options.option(ConnectionFactoryOptions.USER, properties.getUsername());
+        }
+        if (properties.getPassword() != null) {
+            options.option(ConnectionFactoryOptions.PASSWORD, properties.getPassword());
+        }
+        this.pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options.build()))
+                .maxSize(properties.getMaxConnections())
+                .maxAcquireTime(properties.getConnectionAcquireTimeout())
+                .build());
+        this.client = DatabaseClient.create(pool);
+    }
+
+    public DatabaseClient getClient() {
+        return client;
+    }
+
+    @Override
+    public void destroy() {
+        pool.dispose();
+    }
+}
@@ -0,0 +1,61 @@
+package io.twodigits.urlshortener.reactive;
+
+import io.twodigits.urlshortener.config.ReactiveProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * A Reactor Netty server running next to the servlet container. Requests are handled on
+ * a few event loop threads, so an idle or slow connection costs a channel, not a thread.
+ */
+@Slf4j
+public class ReactiveServer implements SmartLifecycle {
+
+    private final HttpHandler httpHandler;
+
+    private final ReactiveProperties properties;
+
+    private volatile DisposableServer server;
+
+    public ReactiveServer(HttpHandler httpHandler, ReactiveProperties properties) {
+        this.httpHandler = httpHandler;
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        server = HttpServer.create()
+                .host(properties.getHost())
+                .port(properties.getPort())
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+        log.info("Reactive server started on port {}", server.port());
+    }
+
+    @Override
+    public void stop() {
+        server.disposeNow();
+        server = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * @return the port the server is bound to
+     * @throws IllegalStateException if the server is not running
+     */
+    public int getPort() {
+        DisposableServer current = server;
+        if (current == null) {
+            throw new IllegalStateException("Reactive server is not running");
+        }
+        return current.port();
+    }
+}
@@ -0,0 +1,93 @@
+package io.twodigits.urlshortener.reactive;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.service.RedirectPolicy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * The endpoints of the reactive stack. Paths and status codes follow
+ * {@link io.twodigits.urlshortener.controller.URLController}; stats rows are returned
+ * without the URL they belong to and streamed as they are read.
+ */
+public class ReactiveURLHandler {
+
+    private static final int MAX_STATS_PAGE_SIZE = 1_000;
+
+    private final ReactiveURLShortenerService urlShortenerService;
+
+    private final RedirectPolicy redirectPolicy;
+
+    public ReactiveURLHandler(ReactiveURLShortenerService urlShortenerService, RedirectPolicy redirectPolicy) {
+        this.urlShortenerService = urlShortenerService;
+        this.redirectPolicy = redirectPolicy;
+    }
+
+    public RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route()
+                .POST("/generate", this::generateShortUrl)
+                .GET("/stats/{shortUrl}/page", this::getUrlStatisticsPage)
+                .GET("/stats/{shortUrl}", this::getUrlStatistics)
+                .GET("/{shortUrl}", this::urlRedirect)
+                .build();
+    }
+
+    Mono<ServerResponse> urlRedirect(ServerRequest request) {
+        String shortUrl = request.pathVariable("shortUrl");
+        return urlShortenerService.getEncodedUrl(shortUrl)
+                .flatMap(url -> {
+                    urlShortenerService.recordURLAccess(new ClickEvent(
+                            url.getId(),
+                            shortUrl,
+                            System.currentTimeMillis(),
+                            request.headers().firstHeader("User-Agent"),
+                            request.headers().firstHeader("Referrer"),
+                            request.remoteAddress().map(InetSocketAddress::getAddress).map(InetAddress::getHostAddress).orElse(null)));
+                    // Passed on as stored, like the servlet stack does, as long URLs are not validated.
+                    return ServerResponse.status(redirectPolicy.statusOf(url))
+                            .header(HttpHeaders.LOCATION, url.getLongUrl())
+                            .cacheControl(redirectPolicy.cacheControlOf(url))
+                            .build();
+                })
+                .switchIfEmpty(ServerResponse.status(HttpStatus.NOT_FOUND).bodyValue("URL not found"));
+    }
+
+    Mono<ServerResponse> getUrlStatistics(ServerRequest request) {
+        return urlShortenerService.getEncodedUrl(request.pathVariable("shortUrl"))
+                .flatMap(url -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(urlShortenerService.getURLAccessStatistics(url), URLStatsView.class))
+                .switchIfEmpty(ServerResponse.status(HttpStatus.NOT_FOUND).bodyValue("URL not found"));
+    }
+
+    Mono<ServerResponse> getUrlStatisticsPage(ServerRequest request) {
+        return Mono.defer(() -> {
+                    int size = request.queryParam("size").map(Integer::parseInt).orElse(100);
+                    int pageSize = Math.max(1, Math.min(size, MAX_STATS_PAGE_SIZE));
+                    return urlShortenerService.getURLAccessStatisticsPage(
+                            request.pathVariable("shortUrl"), request.queryParam("cursor").orElse(null), pageSize);
+                })
+                .flatMap(page -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(page))
+                .switchIfEmpty(ServerResponse.status(HttpStatus.NOT_FOUND).bodyValue("URL not found"))
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> ServerResponse.status(HttpStatus.BAD_REQUEST).bodyValue(e.getMessage()));
+    }
+
+    Mono<ServerResponse> generateShortUrl(ServerRequest request) {
+        return request.bodyToMono(URLDto.class)
+                .flatMap(urlShortenerService::generateShortUrl)
+                .flatMap(url -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(url))
+                .switchIfEmpty(ServerResponse.ok().build());
+    }
+}
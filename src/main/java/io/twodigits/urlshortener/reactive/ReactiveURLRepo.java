@@ -0,0 +1,45 @@
+package io.twodigits.urlshortener.reactive;
+
+import io.r2dbc.spi.Readable;
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking reads of the urls table. URLs are only written through
+ * {@link io.twodigits.urlshortener.service.URLShortenerService}.
+ */
+public class ReactiveURLRepo {
+
+    private final DatabaseClient client;
+
+    public ReactiveURLRepo(DatabaseClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @param shortUrl
+     * @return the URL with the short URL, or empty if there is none
+     */
+    public Mono<URL> findByShortUrl(String shortUrl) {
+        return client.sql("select id, long_url, short_url, username, redirect_type, cache_max_age, modified_at "
+                        + "from urls where short_url = :shortUrl")
+                .bind("shortUrl", shortUrl)
+                .map(ReactiveURLRepo::toUrl)
+                .one();
+    }
+
+    private static URL toUrl(Readable row) {
+        URL url = new URL();
+        url.setId(row.get("id", Long.class));
+        url.setLongUrl(row.get("long_url", String.class));
+        url.setShortUrl(row.get("short_url", String.class));
+        url.setUsername(row.get("username", String.class));
+        String redirectType = row.get("redirect_type", String.class);
+        url.setRedirectType(redirectType == null ? null : RedirectType.valueOf(redirectType));
+        url.setCacheMaxAge(row.get("cache_max_age", Integer.class));
+        url.setModifiedAt(row.get("modified_at", Long.class));
+        return url;
+    }
+}
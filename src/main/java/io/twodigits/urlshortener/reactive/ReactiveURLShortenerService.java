@@ -0,0 +1,117 @@
+package io.twodigits.urlshortener.reactive;
+
+import io.twodigits.urlshortener.cache.RedirectCache;
+import io.twodigits.urlshortener.filter.ShortCodeFilter;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import io.twodigits.urlshortener.stats.ClickDispatcher;
+import io.twodigits.urlshortener.stats.StatsCursor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The redirect, generate and stats operations of {@link URLShortenerService} for the reactive
+ * stack. Redirects and stats are read from the database without blocking; new links are stored
+ * through {@link URLShortenerService}, so the storage engine, the indexes, the per-user counts and
+ * the other nodes see them as they see links of the servlet stack. It shares the redirect cache,
+ * the short URL filter and the click listeners with the servlet stack, so both see the same links
+ * and clicks.
+ */
+public class ReactiveURLShortenerService {
+
+    private final URLShortenerService urlShortenerService;
+
+    private final ReactiveURLRepo urlRepo;
+
+    private final ReactiveURLStatsRepo urlStatsRepo;
+
+    private final RedirectCache redirectCache;
+
+    private final ShortCodeFilter shortCodeFilter;
+
+    private final ClickDispatcher clickDispatcher;
+
+    public ReactiveURLShortenerService(URLShortenerService urlShortenerService, ReactiveURLRepo urlRepo,
+                                       ReactiveURLStatsRepo urlStatsRepo, RedirectCache redirectCache,
+                                       ShortCodeFilter shortCodeFilter, ClickDispatcher clickDispatcher) {
+        this.urlShortenerService = urlShortenerService;
+        this.urlRepo = urlRepo;
+        this.urlStatsRepo = urlStatsRepo;
+        this.redirectCache = redirectCache;
+        this.shortCodeFilter = shortCodeFilter;
+        this.clickDispatcher = clickDispatcher;
+    }
+
+    /**
+     * Resolve a short URL. Hot links are answered from the redirect cache without
+     * leaving the calling thread. A link read while it is changed or deleted is not cached.
+     *
+     * @param shortUrl
+     * @return the URL, or empty if the short URL is unknown
+     */
+    public Mono<URL> getEncodedUrl(String shortUrl) {
+        if (!shortCodeFilter.mightContain(shortUrl)) {
+            return Mono.empty();
+        }
+        return redirectCache.getIfPresent(shortUrl)
+                .map(Mono::just)
+                .orElseGet(() -> Mono.defer(() -> {
+                    long stamp = redirectCache.stamp(shortUrl);
+                    return urlRepo.findByShortUrl(shortUrl).doOnNext(url -> redirectCache.putIfAbsent(url, stamp));
+                }));
+    }
+
+    /**
+     * Create a short URL. Storing it blocks, so it runs off the event loop.
+     *
+     * @param urlDto
+     * @return the stored URL, or empty if the DTO has no URL or a negative cache max age, or no
+     *         free short URL was found
+     */
+    public Mono<URL> generateShortUrl(URLDto urlDto) {
+        return Mono.fromCallable(() -> urlShortenerService.generateShortUrl(urlDto))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * Pass a click to the click listeners. The listeners never block a reactive thread.
+     *
+     * @param event
+     */
+    public void recordURLAccess(ClickEvent event) {
+        clickDispatcher.dispatch(event);
+    }
+
+    /**
+     * @param url resolved through {@link #getEncodedUrl(String)}
+     * @return every stats row of the URL, in access time order
+     */
+    public Flux<URLStatsView> getURLAccessStatistics(URL url) {
+        return urlStatsRepo.findAll(url.getId());
+    }
+
+    /**
+     * Get a page of the stats rows of a short URL.
+     *
+     * @param shortUrl
+     * @param cursor the cursor of the previous page, null or empty for the first page
+     * @param size the maximum number of rows
+     * @return the page, or empty if the short URL is unknown
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public Mono<StatsPage> getURLAccessStatisticsPage(String shortUrl, String cursor, int size) {
+        StatsCursor after = cursor == null || cursor.isEmpty() ? null : StatsCursor.decode(cursor);
+        return getEncodedUrl(shortUrl).flatMap(url -> (after == null
+                ? urlStatsRepo.findPage(url.getId(), null, 0, size)
+                : urlStatsRepo.findPage(url.getId(), after.getAccessTime(), after.getId(), size))
+                .collectList()
+                .map(items -> new StatsPage(url.getShortUrl(), items,
+                        items.size() < size ? null : StatsCursor.after(items.get(items.size() - 1)).encode())));
+    }
+}
@@ -0,0 +1,72 @@
+package io.twodigits.urlshortener.reactive;
+
+import io.r2dbc.spi.Readable;
+import io.twodigits.urlshortener.model.URLStatsView;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+
+/**
+ * Non-blocking reads of the stats table. Rows are emitted as they arrive and only
+ * as fast as the subscriber requests them.
+ */
+public class ReactiveURLStatsRepo {
+
+    private static final String SELECT_VIEW_SQL =
+            "select id, access_time, user_agent, referrer, client_ip from stats where short_url = :urlId";
+
+    private final DatabaseClient client;
+
+    public ReactiveURLStatsRepo(DatabaseClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @param urlId
+     * @return every stats row of the URL, in access time order
+     */
+    public Flux<URLStatsView> findAll(long urlId) {
+        return client.sql(SELECT_VIEW_SQL + " order by access_time, id")
+                .bind("urlId", urlId)
+                .map(ReactiveURLStatsRepo::toView)
+                .all();
+    }
+
+    /**
+     * Get the stats rows of a URL ordered by access time and ID, starting after a given row.
+     *
+     * @param urlId
+     * @param afterTime access time of the last row already seen, null for the first page
+     * @param afterId ID of the last row already seen
+     * @param limit the maximum number of rows
+     * @return the rows of the page
+     */
+    public Flux<URLStatsView> findPage(long urlId, LocalDateTime afterTime, long afterId, int limit) {
+        if (afterTime == null) {
+            return client.sql(SELECT_VIEW_SQL + " order by access_time, id limit :limit")
+                    .bind("urlId", urlId)
+                    .bind("limit", limit)
+                    .map(ReactiveURLStatsRepo::toView)
+                    .all();
+        }
+        return client.sql(SELECT_VIEW_SQL +
+                        " and (access_time > :afterTime or (access_time = :afterTime and id > :afterId))" +
+                        " order by access_time, id limit :limit")
+                .bind("urlId", urlId)
+                .bind("afterTime", afterTime)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveURLStatsRepo::toView)
+                .all();
+    }
+
+    private static URLStatsView toView(Readable row) {
+        return new URLStatsView(
+                row.get("id", Long.class),
+                row.get("access_time", LocalDateTime.class),
+                row.get("user_agent", String.class),
+                row.get("referrer", String.class),
+                row.get("client_ip", String.class));
+    }
+}
@@ -0,0 +1,99 @@
+package io.twodigits.urlshortener.repo;
+
+import io.twodigits.urlshortener.model.ClickGranularity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JDBC access to the click_total and click_rollup tables. Counters are only ever
+ * incremented, so pending deltas are merged into the stored values.
+ */
+@Repository
+public class ClickRollupJdbcRepo {
+
+    private static final String MERGE_TOTAL_SQL =
+            "merge into click_total t using (select cast(? as bigint) url_id, cast(? as bigint) clicks) d " +
+            "on t.url_id = d.url_id " +
+            "when matched then update set clicks = t.clicks + d.clicks " +
+            "when not matched then insert (url_id, clicks) values (d.url_id, d.clicks)";
+
+    private static final String MERGE_BUCKET_SQL =
+            "merge into click_rollup r using (select cast(? as bigint) url_id, cast(? as varchar(8)) granularity, " +
+            "cast(? as bigint) bucket_start, cast(? as bigint) clicks) d " +
+            "on r.url_id = d.url_id and r.granularity = d.granularity and r.bucket_start = d.bucket_start " +
+            "when matched then update set clicks = r.clicks + d.clicks " +
+            "when not matched then insert (url_id, granularity, bucket_start, clicks) " +
+            "values (d.url_id, d.granularity, d.bucket_start, d.clicks)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public ClickRollupJdbcRepo(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * A number of clicks to add to one bucket of a URL.
+     */
+    public record BucketDelta(long urlId, ClickGranularity granularity, long bucketStart, long clicks) {
+    }
+
+    /**
+     * Add click deltas to the totals of a set of URLs.
+     *
+     * @param deltas clicks to add by URL ID
+     */
+    public void mergeTotals(Map<Long, Long> deltas) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((urlId, clicks) -> args.add(new Object[]{urlId, clicks}));
+        jdbcTemplate.batchUpdate(MERGE_TOTAL_SQL, args);
+    }
+
+    /**
+     * Add click deltas to time buckets.
+     *
+     * @param deltas
+     */
+    public void mergeBuckets(List<BucketDelta> deltas) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        for (BucketDelta delta : deltas) {
+            args.add(new Object[]{delta.urlId(), delta.granularity().name(), delta.bucketStart(), delta.clicks()});
+        }
+        jdbcTemplate.batchUpdate(MERGE_BUCKET_SQL, args);
+    }
+
+    /**
+     * @param urlId
+     * @return the stored number of clicks of a URL
+     */
+    public long findTotal(long urlId) {
+        List<Long> totals = jdbcTemplate.queryForList("select clicks from click_total where url_id = ?", Long.class, urlId);
+        return totals.isEmpty() ? 0 : totals.get(0);
+    }
+
+    /**
+     * Get the stored buckets of a URL whose start lies within a range.
+     *
+     * @param urlId
+     * @param granularity
+     * @param fromBucket inclusive start of the first bucket
+     * @param toBucket inclusive start of the last bucket
+     * @return clicks by bucket start, in ascending order
+     */
+    public TreeMap<Long, Long> findBuckets(long urlId, ClickGranularity granularity, long fromBucket, long toBucket) {
+        TreeMap<Long, Long> buckets = new TreeMap<>();
+        jdbcTemplate.query("select bucket_start, clicks from click_rollup " +
+                        "where url_id = ? and granularity = ? and bucket_start between ? and ?",
+                rs -> {
+                    buckets.put(rs.getLong(1), rs.getLong(2));
+                },
+                urlId, granularity.name(), fromBucket, toBucket);
+        return buckets;
+    }
+}
@@ -0,0 +1,47 @@
+package io.twodigits.urlshortener.repo;
+
+import io.twodigits.urlshortener.model.URL;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Inserts many URLs at once. The inserts are sent as JDBC batches (see
+ * {@code hibernate.jdbc.batch_size}) and IDs come from the pooled sequence of {@link URL}.
+ */
+@Repository
+public class URLBatchRepo {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public URLBatchRepo(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Insert a list of new URLs in one transaction. If any of them cannot be stored,
+     * none of them are.
+     *
+     * @param urls
+     * @return the stored URLs with their IDs
+     */
+    public List<URL> insertAll(List<URL> urls) {
+        return transactionTemplate.execute(status -> {
+            for (URL url : urls) {
+                entityManager.persist(url);
+            }
+            entityManager.flush();
+            entityManager.clear();
+            return urls;
+        });
+    }
+}
@@ -2,15 +2,31 @@ package io.twodigits.urlshortener.repo;
 
 import io.twodigits.urlshortener.model.URL;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * The lookups by short URL and by user are the hot read paths. They return unmanaged copies
+ * built by the query itself, so no entity is hydrated, snapshotted for dirty checking or kept
+ * in a persistence context; use {@link #findById(Object)} to get a URL which is to be changed.
+ */
 @Repository
-public interface URLRepo extends JpaRepository <URL, String> {
+public interface URLRepo extends JpaRepository <URL, Long> {
 
-    Optional<URL> findByShortUrl(String shortURL);
-    List<URL> findByUsername(String username);
+    String SELECT_DETACHED = "select new io.twodigits.urlshortener.model.URL(u.id, u.longUrl, u.shortUrl, u.username, "
+            + "u.redirectType, u.cacheMaxAge, u.modifiedAt) from URL u";
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_DETACHED + " where u.shortUrl = :shortUrl")
+    Optional<URL> findByShortUrl(@Param("shortUrl") String shortURL);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_DETACHED + " where u.username = :username order by u.id")
+    List<URL> findByUsername(@Param("username") String username);
 
 }
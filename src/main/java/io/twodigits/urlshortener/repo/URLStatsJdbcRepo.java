@@ -0,0 +1,149 @@
+package io.twodigits.urlshortener.repo;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.stats.ClickStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Plain JDBC access to the stats table for the paths where going through
+ * the persistence context costs too much. This is the {@link ClickStore} unless
+ * another engine is configured.
+ */
+@Repository
+public class URLStatsJdbcRepo implements ClickStore {
+
+    private static final String INSERT_SQL =
+            "insert into stats (short_url, access_time, user_agent, referrer, client_ip) values (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_VIEW_SQL =
+            "select id, access_time, user_agent, referrer, client_ip from stats where short_url = ?";
+
+    private static final RowMapper<URLStatsView> VIEW_MAPPER = (rs, rowNum) -> toView(rs);
+
+    /**
+     * Rows fetched per round trip while streaming an export
+     */
+    private static final int STREAM_FETCH_SIZE = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public URLStatsJdbcRepo(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Insert a list of clicks as a single JDBC batch.
+     *
+     * @param events
+     */
+    @Override
+    public void batchInsert(List<ClickEvent> events) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), URLStatsJdbcRepo::bind);
+    }
+
+    /**
+     * Insert a single click.
+     *
+     * @param event
+     */
+    @Override
+    public void insert(ClickEvent event) {
+        jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, event));
+    }
+
+    private static void bind(PreparedStatement ps, ClickEvent event) throws SQLException {
+        ps.setLong(1, event.getUrlId());
+        ps.setTimestamp(2, new Timestamp(event.getAccessTime()));
+        ps.setString(3, event.getUserAgent());
+        ps.setString(4, event.getReferrer());
+        ps.setString(5, event.getClientIp());
+    }
+
+    @Override
+    public List<URLStatsView> findAll(long urlId) {
+        return jdbcTemplate.query(SELECT_VIEW_SQL + " order by access_time, id", VIEW_MAPPER, urlId);
+    }
+
+    /**
+     * Get the stats rows of a URL ordered by access time and ID, starting after a given row.
+     *
+     * @param urlId
+     * @param afterTime access time of the last row already seen, null for the first page
+     * @param afterId ID of the last row already seen
+     * @param limit the maximum number of rows
+     * @return the rows of the page
+     */
+    @Override
+    public List<URLStatsView> findPage(long urlId, LocalDateTime afterTime, long afterId, int limit) {
+        if (afterTime == null) {
+            return jdbcTemplate.query(SELECT_VIEW_SQL + " order by access_time, id limit ?", VIEW_MAPPER, urlId, limit);
+        }
+        Timestamp after = Timestamp.valueOf(afterTime);
+        return jdbcTemplate.query(SELECT_VIEW_SQL +
+                        " and (access_time > ? or (access_time = ? and id > ?)) order by access_time, id limit ?",
+                VIEW_MAPPER, urlId, after, after, afterId, limit);
+    }
+
+    /**
+     * Pass every stats row of a URL to a consumer, in access time order. The rows are read
+     * through a forward-only cursor, so memory use does not depend on the number of rows.
+     *
+     * @param urlId
+     * @param consumer
+     */
+    @Override
+    public void stream(long urlId, Consumer<URLStatsView> consumer) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            setLazyQueryExecution(connection, true);
+            try (PreparedStatement ps = connection.prepareStatement(SELECT_VIEW_SQL + " order by access_time, id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                ps.setLong(1, urlId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(toView(rs));
+                    }
+                }
+            } finally {
+                setLazyQueryExecution(connection, false);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * H2 materializes a whole result before returning the first row unless lazy execution
+     * is enabled for the session.
+     */
+    private static void setLazyQueryExecution(Connection connection, boolean lazy) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("set lazy_query_execution " + lazy);
+        }
+    }
+
+    private static URLStatsView toView(ResultSet rs) throws SQLException {
+        Timestamp accessTime = rs.getTimestamp(2);
+        return new URLStatsView(
+                rs.getLong(1),
+                accessTime == null ? null : accessTime.toLocalDateTime(),
+                rs.getString(3),
+                rs.getString(4),
+                rs.getString(5));
+    }
+}
@@ -2,12 +2,27 @@ package io.twodigits.urlshortener.repo;
 
 import io.twodigits.urlshortener.model.URL;
 import io.twodigits.urlshortener.model.URLStats;
+import io.twodigits.urlshortener.model.URLStatsView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 @Repository
 public interface URLStatsRepo extends JpaRepository<URLStats, Long> {
     List<URLStats> findByUrl(URL url);
+
+    /**
+     * Get the access statistics of a URL without loading the URL for every row.
+     *
+     * @param urlId
+     * @return the rows, ordered by access time
+     */
+    @Transactional(readOnly = true)
+    @Query("select new io.twodigits.urlshortener.model.URLStatsView(s.id, s.accessTime, s.userAgent, s.referrer, s.clientIp)"
+            + " from URLStats s where s.url.id = :urlId order by s.accessTime, s.id")
+    List<URLStatsView> findViewsByUrlId(@Param("urlId") Long urlId);
 }
@@ -0,0 +1,89 @@
+package io.twodigits.urlshortener.repo;
+
+import io.twodigits.urlshortener.model.UrlChange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDBC access to the url_change table.
+ */
+@Repository
+public class UrlChangeJdbcRepo {
+
+    private static final String SELECT = "select id, short_url, username, kind, node, created_at from url_change ";
+
+    private static final RowMapper<Row> ROW_MAPPER = (rs, rowNum) -> new Row(rs.getLong(1), rs.getString(2),
+            rs.getString(3), UrlChange.Kind.valueOf(rs.getString(4)), rs.getString(5), rs.getLong(6));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public UrlChangeJdbcRepo(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * A stored change.
+     */
+    public record Row(long id, String shortUrl, String username, UrlChange.Kind kind, String node, long createdAt) {
+    }
+
+    /**
+     * Insert changes in one batch; their IDs are assigned by the database.
+     *
+     * @param changes changes without ID
+     */
+    public void insertAll(List<UrlChange> changes) {
+        jdbcTemplate.batchUpdate("insert into url_change (short_url, username, kind, node, created_at) values (?, ?, ?, ?, ?)",
+                changes, changes.size(), (ps, change) -> {
+                    ps.setString(1, change.getShortUrl());
+                    ps.setString(2, change.getUsername());
+                    ps.setString(3, change.getKind().name());
+                    ps.setString(4, change.getNode());
+                    ps.setLong(5, change.getCreatedAt());
+                });
+    }
+
+    /**
+     * @param afterId exclusive lower bound of the IDs
+     * @param limit the maximum number of changes returned
+     * @return the changes ordered by ID
+     */
+    public List<Row> findAfter(long afterId, int limit) {
+        return jdbcTemplate.query(SELECT + "where id > ? order by id limit ?", ROW_MAPPER, afterId, limit);
+    }
+
+    /**
+     * @param ids
+     * @return the changes with one of the IDs, ordered by ID
+     */
+    public List<Row> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        return jdbcTemplate.query(SELECT + "where id in (" + placeholders + ") order by id", ROW_MAPPER, ids.toArray());
+    }
+
+    /**
+     * @return the highest ID, or 0 if there are no changes
+     */
+    public long findMaxId() {
+        Long max = jdbcTemplate.queryForObject("select max(id) from url_change", Long.class);
+        return max == null ? 0 : max;
+    }
+
+    /**
+     * @param createdBefore exclusive upper bound of the publication time in milliseconds since the epoch
+     * @return the number of changes deleted
+     */
+    public int deleteCreatedBefore(long createdBefore) {
+        return jdbcTemplate.update("delete from url_change where created_at < ?", createdBefore);
+    }
+}
@@ -0,0 +1,85 @@
+package io.twodigits.urlshortener.repo;
+
+import io.twodigits.urlshortener.stats.HyperLogLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * JDBC access to the visitor_sketch table. Sketches are only ever merged into the
+ * stored ones, register by register.
+ */
+@Repository
+public class VisitorSketchJdbcRepo {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public VisitorSketchJdbcRepo(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * The registers of a sketch to merge into the stored sketch of a URL and day.
+     */
+    public record SketchDelta(long urlId, long dayStart, byte[] registers) {
+    }
+
+    /**
+     * Merge sketches into the stored ones in one transaction. The stored rows are locked
+     * while they are merged, in key order, so nodes flushing the same sketches neither lose
+     * each other's registers nor deadlock.
+     *
+     * @param deltas
+     */
+    public void merge(List<SketchDelta> deltas) {
+        List<SketchDelta> sorted = new ArrayList<>(deltas);
+        sorted.sort(Comparator.comparingLong(SketchDelta::urlId).thenComparingLong(SketchDelta::dayStart));
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Object[]> inserts = new ArrayList<>();
+            List<Object[]> updates = new ArrayList<>();
+            for (SketchDelta delta : sorted) {
+                List<byte[]> stored = jdbcTemplate.query(
+                        "select registers from visitor_sketch where url_id = ? and day_start = ? for update",
+                        (rs, rowNum) -> rs.getBytes(1), delta.urlId(), delta.dayStart());
+                if (stored.isEmpty()) {
+                    inserts.add(new Object[]{delta.urlId(), delta.dayStart(), delta.registers()});
+                } else {
+                    HyperLogLog merged = HyperLogLog.fromByteArray(stored.get(0));
+                    merged.merge(delta.registers());
+                    updates.add(new Object[]{merged.toByteArray(), delta.urlId(), delta.dayStart()});
+                }
+            }
+            if (!inserts.isEmpty()) {
+                jdbcTemplate.batchUpdate("insert into visitor_sketch (url_id, day_start, registers) values (?, ?, ?)",
+                        inserts);
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate("update visitor_sketch set registers = ? where url_id = ? and day_start = ?",
+                        updates);
+            }
+        });
+    }
+
+    /**
+     * Get the stored sketches of a URL whose day lies within a range.
+     *
+     * @param urlId
+     * @param fromDay inclusive start of the first day
+     * @param toDay inclusive start of the last day
+     * @return the registers of the sketches
+     */
+    public List<byte[]> findRegisters(long urlId, long fromDay, long toDay) {
+        return jdbcTemplate.query("select registers from visitor_sketch where url_id = ? and day_start between ? and ?",
+                (rs, rowNum) -> rs.getBytes(1), urlId, fromDay, toDay);
+    }
+}
@@ -0,0 +1,47 @@
+package io.twodigits.urlshortener.service;
+
+import io.twodigits.urlshortener.config.RedirectProperties;
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how a short URL redirects: the status code and for how long the redirect may be
+ * reused, taken from the URL or the configured defaults.
+ * <p>
+ * A redirect which may be reused is marked public, so shared caches in front of the service
+ * answer repeated clicks without asking it; those clicks are not counted.
+ */
+@Component
+public class RedirectPolicy {
+
+    private final RedirectProperties properties;
+
+    @Autowired
+    public RedirectPolicy(RedirectProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @param url
+     * @return the status code to redirect with
+     */
+    public HttpStatus statusOf(URL url) {
+        RedirectType type = url.getRedirectType() == null ? properties.getType() : url.getRedirectType();
+        return HttpStatus.valueOf(type.getStatus());
+    }
+
+    /**
+     * @param url
+     * @return the Cache-Control header of the redirect
+     */
+    public CacheControl cacheControlOf(URL url) {
+        long maxAge = url.getCacheMaxAge() == null ? properties.getMaxAge().toSeconds() : url.getCacheMaxAge();
+        return maxAge > 0 ? CacheControl.maxAge(maxAge, TimeUnit.SECONDS).cachePublic() : CacheControl.noCache();
+    }
+}
@@ -1,21 +1,67 @@
 package io.twodigits.urlshortener.service;
 
+import io.twodigits.urlshortener.model.BatchItemResult;
+import io.twodigits.urlshortener.model.ClickBucket;
+import io.twodigits.urlshortener.model.ClickCount;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.ClickGranularity;
+import io.twodigits.urlshortener.model.ExportFormat;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.TrendingLink;
+import io.twodigits.urlshortener.model.TrendingWindow;
 import io.twodigits.urlshortener.model.URL;
 import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.model.URLPage;
 import io.twodigits.urlshortener.model.URLStats;
+import io.twodigits.urlshortener.model.UniqueVisitors;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface URLShortenerService {
     /**
-     * Get a list of all URLs that belong to a user.
+     * Get a list of all URLs that belong to a user. The list is unbounded; prefer
+     * {@link #getURLsOfUserPage} or {@link #forEachURLOfUser} for users with many URLs.
      *
      * @param username
      * @return a list of URLs
      */
     List<URL> listURLsOfUser(String username);
 
+    /**
+     * Get one page of the URLs of a user, ordered by ID.
+     *
+     * @param username
+     * @param cursor the cursor returned with the previous page, null for the first page
+     * @param size the maximum number of URLs on the page
+     * @return the page with the cached number of URLs of the user
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    URLPage getURLsOfUserPage(String username, String cursor, int size);
+
+    /**
+     * Pass all URLs of a user to an action in the order of their IDs, without loading
+     * all of them at once.
+     *
+     * @param username
+     * @param action
+     */
+    void forEachURLOfUser(String username, Consumer<URL> action);
+
+    /**
+     * Get the number of URLs of a user. The count is cached and kept up to date as URLs
+     * are created and deleted.
+     *
+     * @param username
+     * @return the number of URLs
+     */
+    long countURLsOfUser(String username);
+
     /**
      * Get a long URL from a short URL generated by the service.
      *
@@ -28,13 +74,24 @@ public interface URLShortenerService {
      * Add a new URL to the collection of URLs for a user.
      *
      * @param urlDto
-     * @return The URL object which has been created
+     * @return The URL object which has been created, or empty if the DTO has no URL or a
+     *         negative cache max age
      */
 
     Optional<URL> generateShortUrl(URLDto urlDto);
 
     /**
-     * Save the URL object into the repo.
+     * Add many new URLs at once. Short URLs are generated in parallel and the URLs are
+     * stored in JDBC batches.
+     *
+     * @param urlDtos
+     * @return one result per item, in the order of the items
+     */
+    List<BatchItemResult> generateShortUrls(List<URLDto> urlDtos);
+
+    /**
+     * Save the URL object into the repo, stamping it with a modification time greater
+     * than the one it had before.
      *
      * @param url
      */
@@ -82,11 +139,21 @@ public interface URLShortenerService {
     void deleteUrlById(String id);
 
     /**
-     * Save a new URLStats object in the repo.
+     * Store an access statistic right away, bypassing the asynchronous ingestion, and
+     * count it like a recorded click.
+     *
      * @param stats
+     * @return the passed statistic
      */
     URLStats saveURLAccessStatistic(URLStats stats);
 
+    /**
+     * Record an access to a short URL. The statistic is written asynchronously.
+     *
+     * @param event
+     */
+    void recordURLAccess(ClickEvent event);
+
     /**
      * Get a list of all the URL access statistics stored for a URL.
      *
@@ -96,10 +163,76 @@ public interface URLShortenerService {
     List<URLStats> getURLAccessStatistics(URL url);
 
     /**
-     * Get a list of all the URL access statistics stored for a short URL.
+     * Get all the URL access statistics stored for a short URL, ordered by access time.
+     * @param shortUrl
+     * @return the statistics as a single page, or empty if the short URL does not exist
+     */
+    Optional<StatsPage> getURLAccessStatisticsByShortUrl(String shortUrl);
+
+    /**
+     * Get one page of the URL access statistics stored for a short URL, ordered by access time.
+     *
+     * @param shortUrl
+     * @param cursor the nextCursor of the previous page, null for the first page
+     * @param size the maximum number of statistics on the page
+     * @return the page, empty if the short URL does not exist
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    Optional<StatsPage> getURLAccessStatisticsPage(String shortUrl, String cursor, int size);
+
+    /**
+     * Write all the URL access statistics stored for a URL to a stream, without
+     * loading them into memory.
+     *
+     * @param url
+     * @param format
+     * @param out
+     * @throws IOException
+     */
+    void exportURLAccessStatistics(URL url, ExportFormat format, OutputStream out) throws IOException;
+
+
+    /**
+     * Get the number of times a short URL has been accessed, from the pre-aggregated counters.
+     *
      * @param shortUrl
-     * @return a list of URLStats
+     * @return the click count, empty if the short URL does not exist
+     */
+    Optional<ClickCount> getClickCount(String shortUrl);
+
+    /**
+     * Get the number of times a short URL has been accessed per time bucket, from the
+     * pre-aggregated counters.
+     *
+     * @param shortUrl
+     * @param granularity
+     * @param from
+     * @param to
+     * @return the buckets with at least one click in ascending order
+     */
+    List<ClickBucket> getClickBuckets(String shortUrl, ClickGranularity granularity, Instant from, Instant to);
+
+    /**
+     * Get the approximate number of distinct visitors of a short URL, from sketches kept per day.
+     * Without a range, all visitors since the URL has been created are counted; a missing end
+     * of the range defaults to today and a missing start to the end.
+     *
+     * @param shortUrl
+     * @param from the first day (UTC), may be null
+     * @param to the last day (UTC), may be null
+     * @return the count with its error bound, empty if the short URL does not exist
+     * @throws IllegalArgumentException if the range is empty or too long
+     */
+    Optional<UniqueVisitors> getUniqueVisitors(String shortUrl, LocalDate from, LocalDate to);
+
+    /**
+     * Get the short URLs clicked most often within a sliding window, from streaming sketches.
+     * The ranking lags the clicks by up to the drain interval of the trending tracker.
+     *
+     * @param window
+     * @param limit the number of short URLs
+     * @return the short URLs with their estimated clicks, most clicked first
      */
-    List<URLStats> getURLAccessStatisticsByShortUrl(String shortUrl);
+    List<TrendingLink> getTrendingUrls(TrendingWindow window, int limit);
 
 }
@@ -1,124 +1,461 @@
 package io.twodigits.urlshortener.service;
 
-import com.google.common.hash.Hashing;
+import io.micrometer.core.annotation.Timed;
+import io.twodigits.urlshortener.cache.RedirectCache;
+import io.twodigits.urlshortener.cache.UserUrlCounts;
+import io.twodigits.urlshortener.codegen.ShortCodeGenerator;
+import io.twodigits.urlshortener.filter.ShortCodeFilter;
+import io.twodigits.urlshortener.index.UrlIndex;
+import io.twodigits.urlshortener.invalidation.InvalidationBus;
+import io.twodigits.urlshortener.model.BatchItemResult;
+import io.twodigits.urlshortener.model.ClickBucket;
+import io.twodigits.urlshortener.model.ClickCount;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.ClickGranularity;
+import io.twodigits.urlshortener.model.ExportFormat;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.TrendingLink;
+import io.twodigits.urlshortener.model.TrendingWindow;
 import io.twodigits.urlshortener.model.URL;
 import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.model.URLPage;
 import io.twodigits.urlshortener.model.URLStats;
-import io.twodigits.urlshortener.repo.URLRepo;
-import io.twodigits.urlshortener.repo.URLStatsRepo;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.model.UrlChange;
+import io.twodigits.urlshortener.model.UniqueVisitors;
+import io.twodigits.urlshortener.stats.ClickCounters;
+import io.twodigits.urlshortener.stats.ClickDispatcher;
+import io.twodigits.urlshortener.stats.ClickStatsExporter;
+import io.twodigits.urlshortener.stats.ClickStore;
+import io.twodigits.urlshortener.stats.StatsCursor;
+import io.twodigits.urlshortener.stats.TrendingTracker;
+import io.twodigits.urlshortener.stats.UniqueVisitorCounter;
+import io.twodigits.urlshortener.storage.URLCursor;
+import io.twodigits.urlshortener.storage.URLStorage;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
+/**
+ * Every public method is timed as {@code urlshortener.service}, tagged with the method name
+ * and the exception thrown, if any.
+ */
+@Slf4j
 @Component
+@Timed(value = URLShortenerServiceImpl.METRIC_NAME, histogram = true)
 public class URLShortenerServiceImpl implements URLShortenerService {
 
-    private final URLRepo urlRepo;
+    static final String METRIC_NAME = "urlshortener.service";
 
-    private final URLStatsRepo urlStatsRepo;
+    /**
+     * How often a short URL is generated again when the generated one is already taken
+     */
+    private static final int MAX_ENCODE_ATTEMPTS = 5;
+
+    /**
+     * The number of URLs of a batch stored in one transaction
+     */
+    private static final int BATCH_CHUNK_SIZE = 1_000;
+
+    /**
+     * The number of standard errors either side of an estimate covering 95% of the true values
+     */
+    private static final double Z_95 = 1.96;
+
+    private final URLStorage urlStorage;
+
+    private final ClickStore clickStore;
+
+    private final RedirectCache redirectCache;
+
+    private final ClickDispatcher clickDispatcher;
+
+    private final ClickCounters clickCounters;
+
+    private final ClickStatsExporter clickStatsExporter;
+
+    private final ShortCodeGenerator shortCodeGenerator;
+
+    private final ShortCodeFilter shortCodeFilter;
+
+    private final UrlIndex urlIndex;
+
+    private final UniqueVisitorCounter uniqueVisitorCounter;
+
+    private final TrendingTracker trendingTracker;
+
+    private final UserUrlCounts userUrlCounts;
+
+    private final InvalidationBus invalidationBus;
 
     @Autowired
-    public URLShortenerServiceImpl(URLRepo urlRepo, URLStatsRepo urlStatsRepo) {
-        this.urlRepo = urlRepo;
-        this.urlStatsRepo = urlStatsRepo;
+    public URLShortenerServiceImpl(URLStorage urlStorage, ClickStore clickStore, RedirectCache redirectCache,
+                                   ClickDispatcher clickDispatcher, ClickCounters clickCounters,
+                                   ClickStatsExporter clickStatsExporter, ShortCodeGenerator shortCodeGenerator,
+                                   ShortCodeFilter shortCodeFilter, UrlIndex urlIndex,
+                                   UniqueVisitorCounter uniqueVisitorCounter, TrendingTracker trendingTracker,
+                                   UserUrlCounts userUrlCounts, InvalidationBus invalidationBus) {
+        this.urlStorage = urlStorage;
+        this.clickStore = clickStore;
+        this.redirectCache = redirectCache;
+        this.clickDispatcher = clickDispatcher;
+        this.clickCounters = clickCounters;
+        this.clickStatsExporter = clickStatsExporter;
+        this.shortCodeGenerator = shortCodeGenerator;
+        this.shortCodeFilter = shortCodeFilter;
+        this.urlIndex = urlIndex;
+        this.uniqueVisitorCounter = uniqueVisitorCounter;
+        this.trendingTracker = trendingTracker;
+        this.userUrlCounts = userUrlCounts;
+        this.invalidationBus = invalidationBus;
     }
 
     @Override
     public List<URL> listURLsOfUser (String username) {
-        return urlRepo.findByUsername(username);
+        return urlStorage.findByUsername(username);
+    }
+
+    @Override
+    public URLPage getURLsOfUserPage(String username, String cursor, int size) {
+        long afterId = cursor == null || cursor.isEmpty() ? 0 : URLCursor.decode(cursor).getId();
+        List<URL> items = urlStorage.findByUsername(username, afterId, size);
+        String nextCursor = items.size() < size ? null : URLCursor.after(items.get(items.size() - 1)).encode();
+        return new URLPage(username, items, countURLsOfUser(username), nextCursor);
+    }
+
+    @Override
+    public void forEachURLOfUser(String username, Consumer<URL> action) {
+        urlStorage.forEachOfUser(username, action);
+    }
+
+    @Override
+    public long countURLsOfUser(String username) {
+        return userUrlCounts.get(username, urlStorage::countByUsername);
     }
 
     @Override
     public Optional<URL> getLongUrlByShortUrl(String shortUrl) {
-        return urlRepo.findByShortUrl(shortUrl);
+        return getEncodedUrl(shortUrl);
     }
 
     @Override
     public Optional<URL> generateShortUrl(URLDto urlDto) {
 
-        if(StringUtils.hasText(urlDto.getUrl())) {
-            String encodedUrl = encodeUrl(urlDto.getUrl());
-            URL urlToPersist = new URL();
-            urlToPersist.setLongUrl(urlDto.getUrl());
-            urlToPersist.setUsername(urlDto.getUsername());
-            urlToPersist.setShortUrl(encodedUrl);
-            URL urlToRet = saveShortUrl(urlToPersist);
-
-            if (urlToRet != null) {
-                return Optional.of(urlToRet);
+        if(isValid(urlDto)) {
+            for (int attempt = 0; attempt < MAX_ENCODE_ATTEMPTS; attempt++) {
+                URL urlToPersist = newURL(urlDto);
+                urlToPersist.setShortUrl(shortCodeGenerator.generate(urlDto.getUrl(), attempt));
+                try {
+                    return Optional.ofNullable(saveShortUrl(urlToPersist));
+                } catch (DataIntegrityViolationException e) {
+                    log.debug("Short URL {} is already taken", urlToPersist.getShortUrl());
+                }
             }
-            return Optional.empty();
+            log.warn("No free short URL found for {} after {} attempts", urlDto.getUrl(), MAX_ENCODE_ATTEMPTS);
         }
         return Optional.empty();
     }
 
-    private String encodeUrl(String url) {
-        String encodedUrl = "";
-        encodedUrl = Hashing.murmur3_32()
-                .hashString(url, StandardCharsets.UTF_8)
-                .toString();
-        return encodedUrl;
+    private static boolean isValid(URLDto urlDto) {
+        return StringUtils.hasText(urlDto.getUrl()) && (urlDto.getCacheMaxAge() == null || urlDto.getCacheMaxAge() >= 0);
+    }
+
+    private static URL newURL(URLDto urlDto) {
+        URL url = new URL();
+        url.setLongUrl(urlDto.getUrl());
+        url.setUsername(urlDto.getUsername());
+        url.setRedirectType(urlDto.getRedirectType());
+        url.setCacheMaxAge(urlDto.getCacheMaxAge());
+        return url;
+    }
+
+    @Override
+    public List<BatchItemResult> generateShortUrls(List<URLDto> urlDtos) {
+        BatchItemResult[] results = new BatchItemResult[urlDtos.size()];
+        URL[] urls = new URL[urlDtos.size()];
+        IntStream.range(0, urlDtos.size()).parallel().forEach(i -> {
+            URLDto urlDto = urlDtos.get(i);
+            if (urlDto == null || !isValid(urlDto)) {
+                results[i] = BatchItemResult.rejected(i);
+                return;
+            }
+            URL url = newURL(urlDto);
+            url.setModifiedAt(System.currentTimeMillis());
+            url.setShortUrl(shortCodeGenerator.generate(urlDto.getUrl(), 0));
+            urls[i] = url;
+        });
+
+        for (int start = 0; start < urls.length; start += BATCH_CHUNK_SIZE) {
+            int end = Math.min(start + BATCH_CHUNK_SIZE, urls.length);
+            List<URL> chunk = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                if (urls[i] != null) {
+                    chunk.add(urls[i]);
+                }
+            }
+            if (chunk.isEmpty()) {
+                continue;
+            }
+            try {
+                invalidationBus.transactionally(() -> {
+                    urlStorage.saveAll(chunk);
+                    chunk.forEach(url -> invalidationBus.publish(UrlChange.Kind.CREATED, url));
+                    return null;
+                });
+                for (int i = start; i < end; i++) {
+                    if (urls[i] != null) {
+                        shortCodeFilter.put(urls[i].getShortUrl());
+                        urlIndex.put(urls[i]);
+                        userUrlCounts.add(urls[i].getUsername(), 1);
+                        results[i] = BatchItemResult.created(i, urls[i]);
+                    }
+                }
+            } catch (DataIntegrityViolationException e) {
+                // A short URL of the chunk is taken, store the chunk item by item with retries.
+                log.debug("Batch insert of {} URLs failed, falling back to single inserts", chunk.size());
+                for (int i = start; i < end; i++) {
+                    if (urls[i] != null) {
+                        int index = i;
+                        results[i] = generateShortUrl(urlDtos.get(i))
+                                .map(url -> BatchItemResult.created(index, url))
+                                .orElseGet(() -> BatchItemResult.failed(index));
+                    }
+                }
+            }
+        }
+        return List.of(results);
     }
 
     @Override
     public URL saveShortUrl(URL url) {
-        return urlRepo.save(url);
+        // Only an update can move a URL away from a user.
+        Optional<URL> previous = url.getId() == null ? Optional.empty() : urlStorage.findById(url.getId());
+        long now = System.currentTimeMillis();
+        url.setModifiedAt(previous.map(URL::getModifiedAt).map(modifiedAt -> Math.max(now, modifiedAt + 1)).orElse(now));
+        URL savedUrl = invalidationBus.transactionally(() -> {
+            URL saved = urlStorage.save(url);
+            if (saved != null) {
+                previous.ifPresent(u -> invalidationBus.publish(UrlChange.Kind.CHANGED, u));
+                if (previous.isEmpty() || !Objects.equals(previous.get().getUsername(), saved.getUsername())
+                        || !saved.getShortUrl().equals(previous.get().getShortUrl())) {
+                    invalidationBus.publish(UrlChange.Kind.CREATED, saved);
+                }
+            }
+            return saved;
+        });
+        if (savedUrl != null) {
+            shortCodeFilter.put(savedUrl.getShortUrl());
+            String previousShortUrl = previous.map(URL::getShortUrl).orElse(null);
+            if (previousShortUrl != null && !previousShortUrl.equals(savedUrl.getShortUrl())) {
+                redirectCache.invalidate(previousShortUrl);
+                urlIndex.remove(previousShortUrl);
+            }
+            urlIndex.put(savedUrl);
+            String previousUser = previous.map(URL::getUsername).orElse(null);
+            boolean moved = previous.isEmpty() || !Objects.equals(previousUser, savedUrl.getUsername());
+            if (moved) {
+                userUrlCounts.add(previousUser, -1);
+                userUrlCounts.add(savedUrl.getUsername(), 1);
+            }
+        }
+        redirectCache.put(savedUrl);
+        return savedUrl;
     }
 
     @Override
     public Optional<URL> getEncodedUrl(String url) {
-        return urlRepo.findByShortUrl(url);
+        if (!shortCodeFilter.mightContain(url)) {
+            return Optional.empty();
+        }
+        return redirectCache.get(url, this::loadEncodedUrl);
+    }
+
+    /**
+     * Resolve a short URL from the memory-mapped index, falling back to the database
+     * for short URLs the index does not know, e.g. while it is being rebuilt.
+     */
+    private Optional<URL> loadEncodedUrl(String shortUrl) {
+        Optional<URL> indexed = urlIndex.get(shortUrl);
+        if (indexed.isPresent()) {
+            return indexed;
+        }
+        Optional<URL> stored = urlStorage.findByShortUrl(shortUrl);
+        stored.ifPresent(urlIndex::put);
+        return stored;
     }
 
     @Override
     public Optional<URL> getURLOfUserById(String user, String id) {
-        Optional<URL> url = urlRepo.findById(id)
-                .filter(u -> u.getUsername().equals(user));
+        Optional<URL> url = findById(id)
+                .filter(u -> user.equals(u.getUsername()));
         if (url.isEmpty()) {
-            System.out.println("URL does not belong to user: " + user);
+            log.debug("URL {} does not belong to user {}", id, user);
         }
         return url;
     }
 
     @Override
     public Optional<URL> getURLById(String id) {
-        return urlRepo.findById(id);
+        return findById(id);
+    }
+
+    private Optional<URL> findById(String id) {
+        OptionalLong parsed = parseId(id);
+        return parsed.isPresent() ? urlStorage.findById(parsed.getAsLong()) : Optional.empty();
+    }
+
+    /**
+     * IDs are numeric; any other ID cannot belong to a URL.
+     */
+    private static OptionalLong parseId(String id) {
+        try {
+            return OptionalLong.of(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
     }
 
     @Override
     public void deleteUrlOfUserById(String user, String id) {
-        Optional<URL> url = urlRepo.findById(id)
-                .filter(u -> u.getUsername().equals(user));
+        Optional<URL> url = findById(id)
+                .filter(u -> user.equals(u.getUsername()));
         if (url.isPresent()) {
-            urlRepo.deleteById(id);
+            invalidationBus.transactionally(() -> {
+                parseId(id).ifPresent(urlStorage::deleteById);
+                invalidationBus.publish(UrlChange.Kind.CHANGED, url.get());
+                return null;
+            });
+            redirectCache.invalidate(url.get().getShortUrl());
+            urlIndex.remove(url.get().getShortUrl());
+            userUrlCounts.add(user, -1);
         } else {
-            System.out.println("URL does not belong to user: " + user);
+            log.debug("URL {} does not belong to user {}", id, user);
         }
     }
 
     @Override
     public void deleteUrlById(String id) {
-        urlRepo.deleteById(id);
+        Optional<URL> url = findById(id);
+        invalidationBus.transactionally(() -> {
+            parseId(id).ifPresent(urlStorage::deleteById);
+            url.ifPresent(u -> invalidationBus.publish(UrlChange.Kind.CHANGED, u));
+            return null;
+        });
+        url.ifPresent(u -> {
+            redirectCache.invalidate(u.getShortUrl());
+            urlIndex.remove(u.getShortUrl());
+            userUrlCounts.add(u.getUsername(), -1);
+        });
     }
 
+    /**
+     * The statistic is stored like a recorded click, so it ends up in whichever
+     * {@link ClickStore} is configured, and added to the click counters, so totals and
+     * rollups include it; no ID is assigned to the passed object.
+     */
     @Override
     public URLStats saveURLAccessStatistic(URLStats stats) {
-        return urlStatsRepo.save(stats);
+        ClickEvent event = ClickEvent.of(stats);
+        clickStore.insert(event);
+        clickCounters.onClick(event);
+        return stats;
+    }
+
+    @Override
+    public void recordURLAccess(ClickEvent event) {
+        clickDispatcher.dispatch(event);
     }
 
     @Override
     public List<URLStats> getURLAccessStatistics(URL url) {
-        return urlStatsRepo.findByUrl(url);
+        List<URLStatsView> views = clickStore.findAll(url.getId());
+        List<URLStats> stats = new ArrayList<>(views.size());
+        for (URLStatsView view : views) {
+            stats.add(toStats(url, view));
+        }
+        return stats;
+    }
+
+    private static URLStats toStats(URL url, URLStatsView view) {
+        URLStats stats = new URLStats();
+        stats.setId(view.getId());
+        stats.setUrl(url);
+        stats.setAccessTime(view.getAccessTime());
+        stats.setUserAgent(view.getUserAgent());
+        stats.setReferrer(view.getReferrer());
+        stats.setClientIp(view.getClientIp());
+        return stats;
+    }
+
+    @Override
+    public Optional<StatsPage> getURLAccessStatisticsByShortUrl(String shortUrl) {
+        return getEncodedUrl(shortUrl)
+                .map(url -> new StatsPage(url.getShortUrl(), clickStore.findAll(url.getId()), null));
+    }
+
+    @Override
+    public Optional<StatsPage> getURLAccessStatisticsPage(String shortUrl, String cursor, int size) {
+        StatsCursor after = cursor == null || cursor.isEmpty() ? null : StatsCursor.decode(cursor);
+        return getEncodedUrl(shortUrl).map(url -> {
+            List<URLStatsView> items = after == null
+                    ? clickStore.findPage(url.getId(), null, 0, size)
+                    : clickStore.findPage(url.getId(), after.getAccessTime(), after.getId(), size);
+            String nextCursor = items.size() < size ? null : StatsCursor.after(items.get(items.size() - 1)).encode();
+            return new StatsPage(url.getShortUrl(), items, nextCursor);
+        });
+    }
+
+    @Override
+    public void exportURLAccessStatistics(URL url, ExportFormat format, OutputStream out) throws IOException {
+        clickStatsExporter.export(url.getId(), format, out);
+    }
+
+    @Override
+    public Optional<ClickCount> getClickCount(String shortUrl) {
+        return getEncodedUrl(shortUrl)
+                .map(url -> new ClickCount(url.getShortUrl(), clickCounters.getTotal(url.getId())));
+    }
+
+    @Override
+    public List<ClickBucket> getClickBuckets(String shortUrl, ClickGranularity granularity, Instant from, Instant to) {
+        return getEncodedUrl(shortUrl)
+                .map(url -> clickCounters.getBuckets(url.getId(), granularity, from, to))
+                .orElseGet(Collections::emptyList);
+    }
+
+    @Override
+    public Optional<UniqueVisitors> getUniqueVisitors(String shortUrl, LocalDate from, LocalDate to) {
+        LocalDate last = to == null && from != null ? LocalDate.now(ZoneOffset.UTC) : to;
+        LocalDate first = from == null ? last : from;
+        return getEncodedUrl(shortUrl).map(url -> {
+            long estimate = first == null
+                    ? uniqueVisitorCounter.estimate(url.getId())
+                    : uniqueVisitorCounter.estimate(url.getId(), first, last);
+            double standardError = uniqueVisitorCounter.getStandardError();
+            double margin = estimate * standardError * Z_95;
+            return new UniqueVisitors(url.getShortUrl(), first, last, estimate, standardError,
+                    Math.max(0, (long) Math.floor(estimate - margin)), (long) Math.ceil(estimate + margin));
+        });
     }
 
     @Override
-    public List<URLStats> getURLAccessStatisticsByShortUrl(String shortUrl) {
-        Optional<URL> urlOpt = urlRepo.findByShortUrl(shortUrl);
-        return urlOpt.map(this::getURLAccessStatistics).orElseGet(Collections::emptyList);
+    public List<TrendingLink> getTrendingUrls(TrendingWindow window, int limit) {
+        return trendingTracker.getTop(window, limit);
     }
 }
@@ -0,0 +1,88 @@
+package io.twodigits.urlshortener.shard;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of slots onto shards.
+ * <p>
+ * Rows are not placed on the ring one by one: every short URL hashes to one of
+ * {@link #SLOTS} slots, and the slots are placed on the ring. Each shard takes a number of
+ * points on the ring and owns the slots up to each of its points, so adding a shard only
+ * takes slots away from the others, about a fair share of them, and never moves a slot
+ * between two shards which were there before. A slot is the unit in which rows move.
+ * <p>
+ * The slot of a URL is also encoded in its ID, so lookups by ID find the shard without
+ * knowing the short URL, and so are the clicks of the URL.
+ */
+final class HashRing {
+
+    /**
+     * The number of slots; it is encoded in the IDs and must never change
+     */
+    static final int SLOTS = 1024;
+
+    private static final HashFunction HASH = Hashing.murmur3_32_fixed();
+
+    private final TreeMap<Integer, String> points = new TreeMap<>();
+
+    /**
+     * @param shards the names of the shards
+     * @param virtualNodes the number of points of each shard
+     */
+    HashRing(Collection<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Every shard needs at least one point on the ring");
+        }
+        for (String shard : shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // Collisions are decided by name, so every node builds the same ring.
+                points.merge(HASH.hashString(shard + "#" + i, StandardCharsets.UTF_8).asInt(), shard,
+                        (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    /**
+     * @param slot
+     * @return the name of the shard owning the slot
+     */
+    String ownerOf(int slot) {
+        int position = HASH.hashInt(slot).asInt();
+        Map.Entry<Integer, String> point = points.ceilingEntry(position);
+        return (point == null ? points.firstEntry() : point).getValue();
+    }
+
+    /**
+     * @param shortUrl
+     * @return the slot of the short URL
+     */
+    static int slotOf(String shortUrl) {
+        return Math.floorMod(HASH.hashString(shortUrl, StandardCharsets.UTF_8).asInt(), SLOTS);
+    }
+
+    /**
+     * @param id the ID of a URL
+     * @return the slot the URL has been created in
+     */
+    static int slotOf(long id) {
+        return (int) Math.floorMod(id, (long) SLOTS);
+    }
+
+    /**
+     * @param sequence a number not used for any other ID
+     * @param slot
+     * @return an ID encoding the slot
+     */
+    static long id(long sequence, int slot) {
+        return sequence * SLOTS + slot;
+    }
+}
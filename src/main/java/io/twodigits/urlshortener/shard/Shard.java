@@ -0,0 +1,168 @@
+package io.twodigits.urlshortener.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.twodigits.urlshortener.config.ShardingProperties;
+import io.twodigits.urlshortener.repo.URLStatsJdbcRepo;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One of the databases holding a share of the URLs and their clicks.
+ * <p>
+ * Its urls and stats tables look like the ones of the main database, plus the slot of each
+ * row. The slot of a click is computed from the ID of its URL, which is stored in the
+ * short_url column like in the main database.
+ * <p>
+ * The slot_fence table tells for every slot whether it has moved away from the shard. Writers
+ * lock the row of their slot until they commit, so a move waits for them before it copies the
+ * rows, and writers routed to the shard afterwards find out that they have to go elsewhere.
+ */
+final class Shard implements Closeable {
+
+    /**
+     * The columns of the urls table, in the order they are copied between shards
+     */
+    static final String URL_COLUMNS = "id, long_url, short_url, username, redirect_type, cache_max_age, modified_at, slot";
+
+    private static final String[] SCHEMA = {
+            "create table if not exists urls (id bigint primary key, long_url varchar(255), "
+                    + "short_url varchar(255) unique, username varchar(255), redirect_type varchar(32), "
+                    + "cache_max_age int, modified_at bigint, slot int not null)",
+            "alter table urls add column if not exists redirect_type varchar(32)",
+            "alter table urls add column if not exists cache_max_age int",
+            "alter table urls add column if not exists modified_at bigint",
+            "create index if not exists idx_urls_username_id on urls (username, id)",
+            "create index if not exists idx_urls_slot on urls (slot)",
+            "create table if not exists stats (id bigint generated by default as identity primary key, "
+                    + "short_url bigint not null, access_time timestamp(6), user_agent varchar(255), "
+                    + "referrer varchar(255), client_ip varchar(255), "
+                    + "slot int generated always as (mod(short_url, " + HashRing.SLOTS + ")))",
+            "create index if not exists idx_stats_url_time on stats (short_url, access_time, id)",
+            "create index if not exists idx_stats_slot on stats (slot)",
+            "create table if not exists slot_fence (slot int primary key, moved boolean not null)"
+    };
+
+    private final String name;
+
+    private final HikariDataSource dataSource;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final URLStatsJdbcRepo clicks;
+
+    private Shard(String name, HikariDataSource dataSource) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.clicks = new URLStatsJdbcRepo(jdbcTemplate);
+    }
+
+    /**
+     * Connect to a shard and create its tables if they do not exist.
+     *
+     * @param properties
+     * @param maxPoolSize
+     * @return the shard
+     */
+    static Shard open(ShardingProperties.Shard properties, int maxPoolSize) {
+        if (properties.getName() == null || properties.getUrl() == null) {
+            throw new IllegalArgumentException("A shard needs a name and a URL");
+        }
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(properties.getUrl())
+                .username(properties.getUsername())
+                .password(properties.getPassword())
+                .build();
+        dataSource.setPoolName("shard-" + properties.getName());
+        dataSource.setMaximumPoolSize(maxPoolSize);
+        Shard shard = new Shard(properties.getName(), dataSource);
+        try {
+            for (String statement : SCHEMA) {
+                shard.jdbcTemplate.execute(statement);
+            }
+            shard.createFences();
+        } catch (RuntimeException e) {
+            shard.close();
+            throw e;
+        }
+        return shard;
+    }
+
+    private void createFences() {
+        if (jdbcTemplate.queryForObject("select count(*) from slot_fence", Integer.class) == HashRing.SLOTS) {
+            return;
+        }
+        List<Object[]> slots = new ArrayList<>(HashRing.SLOTS);
+        for (int slot = 0; slot < HashRing.SLOTS; slot++) {
+            slots.add(new Object[]{slot, slot});
+        }
+        try {
+            jdbcTemplate.batchUpdate("insert into slot_fence (slot, moved) "
+                    + "select ?, false where not exists (select 1 from slot_fence where slot = ?)", slots);
+        } catch (DataIntegrityViolationException e) {
+            // Another node created them at the same time.
+        }
+    }
+
+    /**
+     * Lock the fence of a slot until the current transaction ends, so the slot cannot move
+     * away from this shard meanwhile.
+     *
+     * @param slot
+     * @return whether the slot has moved away from this shard, so it must not be written to
+     */
+    boolean lockFence(int slot) {
+        return jdbcTemplate.queryForObject("select moved from slot_fence where slot = ? for update", Boolean.class, slot);
+    }
+
+    /**
+     * Mark a slot as moved away from this shard or back to it, waiting for the writers which
+     * hold its fence.
+     *
+     * @param slot
+     * @param moved
+     */
+    void setFence(int slot, boolean moved) {
+        jdbcTemplate.update("update slot_fence set moved = ? where slot = ?", moved, slot);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    TransactionTemplate getTransactionTemplate() {
+        return transactionTemplate;
+    }
+
+    /**
+     * @return the clicks stored on this shard
+     */
+    URLStatsJdbcRepo getClicks() {
+        return clicks;
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
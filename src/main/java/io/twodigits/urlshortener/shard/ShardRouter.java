@@ -0,0 +1,636 @@
+package io.twodigits.urlshortener.shard;
+
+import io.twodigits.urlshortener.config.ShardingProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Knows which shard owns which slot and moves slots when shards are added.
+ * <p>
+ * The owner of every slot is kept in the shard_slot table of the main database, so all
+ * nodes and restarts agree on it while the owners differ from the {@link HashRing}, e.g.
+ * after a shard has been added. A rebalance then moves one slot after the other to the
+ * shard the ring assigns it to:
+ * <ol>
+ * <li>Writes to the slot wait while its rows are copied to the new shard and the owner is
+ * switched. Writes to all other slots and all reads go on.</li>
+ * <li>Reads routed to the old shard just before the switch still find the rows there, as
+ * they are only deleted from it after a grace period.</li>
+ * <li>A move which is interrupted is started over, so it is safe to stop a node at any time.</li>
+ * </ol>
+ * Only one node moves slots at a time: a rebalance holds the lease in the shard_rebalance_lease
+ * table, extending it after every slot, and a node only rebalances on start if
+ * {@code rebalance-on-start} is set. Every owner has a version, which a move increases only
+ * if it is still the one the move started from. Every node re-reads the owners periodically
+ * and takes over those with a newer version, so it follows moves made by other nodes.
+ * <p>
+ * Writes of other nodes are fenced on the shards: every write locks the fence of its slots on
+ * the shards it writes to within its transactions there, and a move marks the slot as moved
+ * away on the old shard before it copies the rows. A write which finds its slot moved away
+ * is rolled back and retried once the node has read the new owner. A move which was
+ * interrupted leaves its slot fenced; writers reopen it after waiting for the length of the
+ * rebalance lease, once they can take the lease themselves.
+ */
+@Slf4j
+public class ShardRouter implements SmartLifecycle, Closeable {
+
+    /**
+     * The number of IDs reserved by each value of the ID sequence
+     */
+    private static final int ID_BLOCK_SIZE = 1_000;
+
+    private static final String SELECT_URLS_SQL = "select " + Shard.URL_COLUMNS + " from urls where slot = ?";
+
+    private static final String INSERT_URL_SQL = "insert into urls (" + Shard.URL_COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_STATS_SQL =
+            "select short_url, access_time, user_agent, referrer, client_ip from stats where slot = ? order by access_time, id";
+
+    private static final String INSERT_STATS_SQL =
+            "insert into stats (short_url, access_time, user_agent, referrer, client_ip) values (?, ?, ?, ?, ?)";
+
+    /**
+     * How long a write waits before it retries when its slot is moving to another shard
+     */
+    private static final long FENCED_RETRY_MILLIS = 20;
+
+    private final ShardingProperties properties;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ExecutionThreads executionThreads;
+
+    private final ExecutorService scatterExecutor;
+
+    private volatile Map<String, Shard> shards;
+
+    private final AtomicReferenceArray<Shard> owners = new AtomicReferenceArray<>(HashRing.SLOTS);
+
+    /**
+     * The version of the owner of every slot, changed under the write lock of the slot
+     */
+    private final long[] versions = new long[HashRing.SLOTS];
+
+    /**
+     * The ID this node holds the rebalance lease with
+     */
+    private final String node = UUID.randomUUID().toString();
+
+    private final ReentrantReadWriteLock[] slotLocks = new ReentrantReadWriteLock[HashRing.SLOTS];
+
+    private long nextId;
+
+    private long idLimit;
+
+    private ExecutorService rebalancer;
+
+    private ScheduledExecutorService refresher;
+
+    private volatile boolean running;
+
+    private record Move(int slot, Shard source) {
+    }
+
+    /**
+     * Thrown within the transactions of a write which found a slot moved away from its shard
+     */
+    private static final class SlotMovedException extends RuntimeException {
+
+        private final int slot;
+
+        private final Shard shard;
+
+        SlotMovedException(int slot, Shard shard) {
+            super("Slot " + slot + " has moved away from shard " + shard, null, false, false);
+            this.slot = slot;
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * Connect to the configured shards and load the owners of the slots.
+     *
+     * @param properties
+     * @param jdbcTemplate the main database
+     * @param executionThreads
+     * @throws IllegalStateException if a slot is owned by a shard which is not configured
+     */
+    public ShardRouter(ShardingProperties properties, JdbcTemplate jdbcTemplate, ExecutionThreads executionThreads) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.executionThreads = executionThreads;
+        for (int slot = 0; slot < HashRing.SLOTS; slot++) {
+            slotLocks[slot] = new ReentrantReadWriteLock();
+        }
+        Map<String, Shard> opened = new LinkedHashMap<>();
+        try {
+            for (ShardingProperties.Shard shard : properties.getShards()) {
+                if (opened.containsKey(shard.getName())) {
+                    throw new IllegalArgumentException("Shard " + shard.getName() + " is configured twice");
+                }
+                opened.put(shard.getName(), Shard.open(shard, properties.getMaxPoolSize()));
+            }
+            this.shards = opened;
+            jdbcTemplate.execute("create sequence if not exists shard_url_seq start with 1");
+            jdbcTemplate.execute("create table if not exists shard_slot (slot int primary key, shard varchar(64) not null)");
+            jdbcTemplate.execute("alter table shard_slot add column if not exists version bigint default 0 not null");
+            jdbcTemplate.execute("create table if not exists shard_rebalance_lease (id int primary key, holder varchar(36), "
+                    + "expires_at bigint not null)");
+            createLease();
+            loadOwners();
+        } catch (RuntimeException e) {
+            opened.values().forEach(Shard::close);
+            throw e;
+        }
+        this.scatterExecutor = Executors.newCachedThreadPool(executionThreads.threadFactory("shard-scatter"));
+    }
+
+    private void createLease() {
+        try {
+            jdbcTemplate.update("insert into shard_rebalance_lease (id, holder, expires_at) "
+                    + "select 1, null, 0 where not exists (select 1 from shard_rebalance_lease where id = 1)");
+        } catch (DataIntegrityViolationException e) {
+            // Another node created it at the same time.
+        }
+    }
+
+    private void loadOwners() {
+        HashRing ring = new HashRing(shards.keySet(), properties.getVirtualNodes());
+        String[] stored = new String[HashRing.SLOTS];
+        jdbcTemplate.query("select slot, shard, version from shard_slot", rs -> {
+            stored[rs.getInt(1)] = rs.getString(2);
+            versions[rs.getInt(1)] = rs.getLong(3);
+        });
+        List<Object[]> missing = new ArrayList<>();
+        for (int slot = 0; slot < HashRing.SLOTS; slot++) {
+            if (stored[slot] == null) {
+                stored[slot] = ring.ownerOf(slot);
+                missing.add(new Object[]{slot, stored[slot]});
+            }
+        }
+        if (!missing.isEmpty()) {
+            try {
+                jdbcTemplate.batchUpdate("insert into shard_slot (slot, shard) values (?, ?)", missing);
+            } catch (DataIntegrityViolationException e) {
+                // Another node assigned the slots at the same time.
+                loadOwners();
+                return;
+            }
+        }
+        for (int slot = 0; slot < HashRing.SLOTS; slot++) {
+            Shard owner = shards.get(stored[slot]);
+            if (owner == null) {
+                throw new IllegalStateException("Slot " + slot + " is owned by shard " + stored[slot] + ", which is not configured");
+            }
+            owners.set(slot, owner);
+        }
+    }
+
+    /**
+     * Take over the owners other nodes have moved slots to since they were last read.
+     *
+     * @return the number of slots whose owner changed
+     */
+    synchronized int refreshOwners() {
+        int[] changed = {0};
+        List<String> unknown = new ArrayList<>();
+        jdbcTemplate.query("select slot, shard, version from shard_slot", rs -> {
+            int slot = rs.getInt(1);
+            long version = rs.getLong(3);
+            if (version <= versions[slot]) {
+                return;
+            }
+            Shard owner = shards.get(rs.getString(2));
+            if (owner == null) {
+                unknown.add(rs.getString(2));
+                return;
+            }
+            Lock lock = slotLocks[slot].writeLock();
+            lock.lock();
+            try {
+                owners.set(slot, owner);
+                versions[slot] = version;
+            } finally {
+                lock.unlock();
+            }
+            changed[0]++;
+        });
+        if (!unknown.isEmpty()) {
+            log.error("{} slots have been moved to shards which are not configured: {}", unknown.size(),
+                    unknown.stream().distinct().toList());
+        }
+        if (changed[0] > 0) {
+            log.info("Took over {} slots moved by other nodes, slots per shard: {}", changed[0], getSlotCounts());
+        }
+        return changed[0];
+    }
+
+    /**
+     * Take or extend the rebalance lease.
+     *
+     * @return whether this node holds the lease
+     */
+    private boolean holdLease() {
+        long now = System.currentTimeMillis();
+        return jdbcTemplate.update("update shard_rebalance_lease set holder = ?, expires_at = ? "
+                        + "where id = 1 and (holder is null or holder = ? or expires_at < ?)",
+                node, now + properties.getRebalanceLease().toMillis(), node, now) == 1;
+    }
+
+    private void releaseLease() {
+        jdbcTemplate.update("update shard_rebalance_lease set holder = null, expires_at = 0 where id = 1 and holder = ?", node);
+    }
+
+    /**
+     * @param slot
+     * @return the shard holding the rows of the slot
+     */
+    Shard ownerOf(int slot) {
+        return owners.get(slot);
+    }
+
+    /**
+     * @return the number of slots each shard owns
+     */
+    public Map<String, Integer> getSlotCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        shards.keySet().forEach(name -> counts.put(name, 0));
+        for (int slot = 0; slot < HashRing.SLOTS; slot++) {
+            counts.merge(owners.get(slot).getName(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * @return whether every slot is owned by the shard the hash ring assigns it to
+     */
+    public boolean isBalanced() {
+        HashRing ring = new HashRing(shards.keySet(), properties.getVirtualNodes());
+        for (int slot = 0; slot < HashRing.SLOTS; slot++) {
+            if (!owners.get(slot).getName().equals(ring.ownerOf(slot))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param slot
+     * @return a new URL ID encoding the slot
+     */
+    synchronized long nextId(int slot) {
+        if (nextId == idLimit) {
+            long hi = jdbcTemplate.queryForObject("select next value for shard_url_seq", Long.class);
+            nextId = hi * ID_BLOCK_SIZE;
+            idLimit = nextId + ID_BLOCK_SIZE;
+        }
+        return HashRing.id(nextId++, slot);
+    }
+
+    /**
+     * Write to the shards owning some slots while none of the slots moves. The action runs
+     * within one transaction per owning shard, and is run again if another node has moved
+     * one of the slots away in the meantime.
+     *
+     * @param slots
+     * @param action
+     * @return the result of the action
+     * @throws IllegalStateException if a slot is still moving after the rebalance lease has run out
+     */
+    <T> T writing(int[] slots, Supplier<T> action) {
+        int[] sorted = Arrays.stream(slots).sorted().distinct().toArray();
+        long deadline = System.nanoTime() + properties.getRebalanceLease().toNanos();
+        while (true) {
+            try {
+                return writingOnce(sorted, action);
+            } catch (SlotMovedException e) {
+                if (System.nanoTime() - deadline > 0) {
+                    if (!reopenAbandoned(e.slot, e.shard)) {
+                        throw new IllegalStateException("Slot " + e.slot + " is still moving away from shard " + e.shard);
+                    }
+                    deadline = System.nanoTime() + properties.getRebalanceLease().toNanos();
+                    continue;
+                }
+                try {
+                    Thread.sleep(FENCED_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while slot " + e.slot + " moves", interrupted);
+                }
+                refreshOwners();
+            }
+        }
+    }
+
+    private <T> T writingOnce(int[] sorted, Supplier<T> action) {
+        List<Lock> locked = new ArrayList<>(sorted.length);
+        try {
+            // Always in slot order, so writers of several slots do not deadlock.
+            for (int slot : sorted) {
+                Lock lock = slotLocks[slot].readLock();
+                lock.lock();
+                locked.add(lock);
+            }
+            List<Shard> involved = Arrays.stream(sorted).mapToObj(owners::get).distinct().toList();
+            return inTransactions(involved, () -> {
+                for (int slot : sorted) {
+                    Shard owner = owners.get(slot);
+                    if (owner.lockFence(slot)) {
+                        throw new SlotMovedException(slot, owner);
+                    }
+                }
+                return action.get();
+            });
+        } finally {
+            for (int i = locked.size() - 1; i >= 0; i--) {
+                locked.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * Reopen a slot which a move left fenced on the shard still owning it, e.g. because the
+     * node moving it stopped, unless another node is moving slots.
+     *
+     * @return whether the slot can be written to again
+     */
+    private synchronized boolean reopenAbandoned(int slot, Shard shard) {
+        if (!holdLease()) {
+            return false;
+        }
+        try {
+            refreshOwners();
+            if (owners.get(slot) == shard) {
+                log.warn("Reopening slot {} on shard {}, which an interrupted move left fenced", slot, shard);
+                shard.setFence(slot, false);
+            }
+            return true;
+        } finally {
+            releaseLease();
+        }
+    }
+
+    /**
+     * Run a query on every shard at the same time.
+     *
+     * @param query
+     * @return the results, in the order of the shards
+     */
+    <T> List<T> scatter(Function<Shard, T> query) {
+        List<Shard> all = List.copyOf(shards.values());
+        if (all.size() == 1) {
+            return List.of(query.apply(all.get(0)));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(all.size());
+        for (Shard shard : all) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), scatterExecutor));
+        }
+        List<T> results = new ArrayList<>(all.size());
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return all shards
+     */
+    List<Shard> getShards() {
+        return List.copyOf(shards.values());
+    }
+
+    /**
+     * Run an action within one transaction per shard. The transactions are committed one
+     * after the other once the action has completed, and all of them are rolled back if it
+     * fails; only a commit failing after others have succeeded leaves the shards apart.
+     *
+     * @param involved the shards the action writes to
+     * @param action
+     * @return the result of the action
+     */
+    <T> T inTransactions(List<Shard> involved, Supplier<T> action) {
+        return inTransactions(involved, 0, action);
+    }
+
+    private static <T> T inTransactions(List<Shard> involved, int index, Supplier<T> action) {
+        if (index == involved.size()) {
+            return action.get();
+        }
+        return involved.get(index).getTransactionTemplate().execute(status -> inTransactions(involved, index + 1, action));
+    }
+
+    /**
+     * Connect to another shard and move the slots the hash ring now assigns to it.
+     *
+     * @param shard
+     * @return the number of slots moved
+     */
+    public synchronized int addShard(ShardingProperties.Shard shard) {
+        if (shards.containsKey(shard.getName())) {
+            throw new IllegalArgumentException("Shard " + shard.getName() + " already exists");
+        }
+        Map<String, Shard> extended = new LinkedHashMap<>(shards);
+        extended.put(shard.getName(), Shard.open(shard, properties.getMaxPoolSize()));
+        shards = extended;
+        return rebalance();
+    }
+
+    /**
+     * Move every slot which is not owned by the shard the hash ring assigns it to, unless
+     * another node holds the rebalance lease.
+     *
+     * @return the number of slots moved
+     */
+    public synchronized int rebalance() {
+        if (!holdLease()) {
+            log.info("Another node is moving slots, not rebalancing");
+            return 0;
+        }
+        try {
+            // Moves of other nodes which have not been read yet must not be undone.
+            refreshOwners();
+            return moveSlots();
+        } finally {
+            releaseLease();
+        }
+    }
+
+    private int moveSlots() {
+        HashRing ring = new HashRing(shards.keySet(), properties.getVirtualNodes());
+        long start = System.nanoTime();
+        List<Move> moves = new ArrayList<>();
+        for (int slot = 0; slot < HashRing.SLOTS && !Thread.currentThread().isInterrupted(); slot++) {
+            Shard source = owners.get(slot);
+            Shard target = shards.get(ring.ownerOf(slot));
+            if (source != target) {
+                if (!holdLease()) {
+                    log.warn("Lost the rebalance lease, stopping after {} slots", moves.size());
+                    break;
+                }
+                if (move(slot, source, target)) {
+                    moves.add(new Move(slot, source));
+                }
+            }
+        }
+        if (moves.isEmpty()) {
+            return 0;
+        }
+        try {
+            Thread.sleep(properties.getMoveGracePeriod().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (holdLease()) {
+            for (Move move : moves) {
+                move.source().getJdbcTemplate().update("delete from urls where slot = ?", move.slot());
+                move.source().getJdbcTemplate().update("delete from stats where slot = ?", move.slot());
+            }
+        } else {
+            log.warn("Lost the rebalance lease, keeping the rows of {} moved slots on their old shards", moves.size());
+        }
+        log.info("Moved {} slots in {} ms, slots per shard: {}", moves.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), getSlotCounts());
+        return moves.size();
+    }
+
+    /**
+     * @return whether the owner has been switched; not if another node has moved the slot meanwhile
+     */
+    private boolean move(int slot, Shard source, Shard target) {
+        Lock lock = slotLocks[slot].writeLock();
+        lock.lock();
+        try {
+            // Waits for the writes of other nodes to the slot; later ones are turned away.
+            source.setFence(slot, true);
+            try {
+                // Rows left behind by an interrupted move; as the lease is held, no other node is moving the slot.
+                target.getJdbcTemplate().update("delete from urls where slot = ?", slot);
+                target.getJdbcTemplate().update("delete from stats where slot = ?", slot);
+                copy(source, target, SELECT_URLS_SQL, INSERT_URL_SQL, slot);
+                copy(source, target, SELECT_STATS_SQL, INSERT_STATS_SQL, slot);
+                target.setFence(slot, false);
+            } catch (RuntimeException e) {
+                source.setFence(slot, false);
+                throw e;
+            }
+            int switched = jdbcTemplate.update("update shard_slot set shard = ?, version = version + 1 where slot = ? and version = ?",
+                    target.getName(), slot, versions[slot]);
+            if (switched == 0) {
+                // The fence stays, the slot has moved away from the source or writers reopen it.
+                log.warn("Slot {} has been moved by another node, not moving it", slot);
+                return false;
+            }
+            owners.set(slot, target);
+            versions[slot]++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copy the rows of a slot in batches. The selected columns are inserted in their order.
+     */
+    private void copy(Shard source, Shard target, String selectSql, String insertSql, int slot) {
+        List<Object[]> batch = new ArrayList<>(properties.getMoveBatchSize());
+        source.getJdbcTemplate().query(selectSql, rs -> {
+            Object[] row = new Object[rs.getMetaData().getColumnCount()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = rs.getObject(i + 1);
+            }
+            batch.add(row);
+            if (batch.size() == properties.getMoveBatchSize()) {
+                target.getJdbcTemplate().batchUpdate(insertSql, batch);
+                batch.clear();
+            }
+        }, slot);
+        if (!batch.isEmpty()) {
+            target.getJdbcTemplate().batchUpdate(insertSql, batch);
+        }
+    }
+
+    private void rebalanceQuietly() {
+        try {
+            rebalance();
+        } catch (RuntimeException e) {
+            log.error("Failed to move slots between shards", e);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refreshOwners();
+        } catch (RuntimeException e) {
+            log.error("Failed to read the owners of the slots", e);
+        }
+    }
+
+    /**
+     * Starts re-reading the owners of the slots, and moving slots in the background if this
+     * node rebalances on start and shards have been added to the configuration.
+     */
+    @Override
+    public void start() {
+        running = true;
+        long refreshInterval = properties.getOwnerRefreshInterval().toMillis();
+        refresher = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("shard-owner-refresher"));
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        if (properties.isRebalanceOnStart() && !isBalanced()) {
+            rebalancer = Executors.newSingleThreadExecutor(executionThreads.threadFactory("shard-rebalancer"));
+            rebalancer.execute(this::rebalanceQuietly);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        if (rebalancer != null) {
+            rebalancer.shutdownNow();
+            try {
+                rebalancer.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void close() {
+        scatterExecutor.shutdown();
+        shards.values().forEach(Shard::close);
+    }
+}
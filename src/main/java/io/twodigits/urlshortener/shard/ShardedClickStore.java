@@ -0,0 +1,70 @@
+package io.twodigits.urlshortener.shard;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.stats.ClickStore;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Stores the clicks of a URL in the stats table of the shard owning the slot encoded in the
+ * ID of the URL, which is the shard of the URL unless its short URL has been changed since.
+ * All clicks of a URL are on one shard, so reads of a URL go to that shard only.
+ */
+public class ShardedClickStore implements ClickStore {
+
+    private final ShardRouter router;
+
+    public ShardedClickStore(ShardRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public void batchInsert(List<ClickEvent> events) {
+        int[] slots = new int[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            slots[i] = HashRing.slotOf(events.get(i).getUrlId());
+        }
+        router.writing(slots, () -> {
+            Map<Shard, List<ClickEvent>> byShard = new LinkedHashMap<>();
+            for (int i = 0; i < events.size(); i++) {
+                byShard.computeIfAbsent(router.ownerOf(slots[i]), shard -> new ArrayList<>()).add(events.get(i));
+            }
+            byShard.forEach((shard, shardEvents) -> shard.getClicks().batchInsert(shardEvents));
+            return null;
+        });
+    }
+
+    @Override
+    public void insert(ClickEvent event) {
+        int slot = HashRing.slotOf(event.getUrlId());
+        router.writing(new int[]{slot}, () -> {
+            router.ownerOf(slot).getClicks().insert(event);
+            return null;
+        });
+    }
+
+    private Shard shardOf(long urlId) {
+        return router.ownerOf(HashRing.slotOf(urlId));
+    }
+
+    @Override
+    public List<URLStatsView> findAll(long urlId) {
+        return shardOf(urlId).getClicks().findAll(urlId);
+    }
+
+    @Override
+    public List<URLStatsView> findPage(long urlId, LocalDateTime afterTime, long afterId, int limit) {
+        return shardOf(urlId).getClicks().findPage(urlId, afterTime, afterId, limit);
+    }
+
+    @Override
+    public void stream(long urlId, Consumer<URLStatsView> consumer) {
+        shardOf(urlId).getClicks().stream(urlId, consumer);
+    }
+}
@@ -0,0 +1,364 @@
+package io.twodigits.urlshortener.shard;
+
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.storage.URLStorage;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Stores URLs in the urls tables of several shards, on the shard owning the slot of their
+ * short URL. Lookups by short URL and by ID go to one shard; the listings of a user are
+ * gathered from all shards at once and merged by ID.
+ * <p>
+ * A URL whose short URL is changed to one of another slot moves to the shard of that slot,
+ * so it is no longer found on the shard its ID points to; lookups of such IDs, like those of
+ * IDs which do not exist, ask all shards. Its clicks stay where they are.
+ * <p>
+ * While a slot moves, its rows are on two shards for a moment; listings only take rows from
+ * the shard owning their slot, counts may include them twice.
+ */
+public class ShardedURLStorage implements URLStorage {
+
+    private static final String SELECT_SQL = "select " + Shard.URL_COLUMNS + " from urls";
+
+    private static final String INSERT_SQL = "insert into urls (" + Shard.URL_COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final RowMapper<SlottedURL> URL_MAPPER = (rs, rowNum) -> {
+        String redirectType = rs.getString(5);
+        return new SlottedURL(new URL(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                redirectType == null ? null : RedirectType.valueOf(redirectType),
+                rs.getObject(6, Integer.class), rs.getObject(7, Long.class)), rs.getInt(8));
+    };
+
+    /**
+     * The number of short URLs looked up with one query
+     */
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
+    /**
+     * The number of URLs read per shard and query while visiting the URLs of a user
+     */
+    private static final int LISTING_CHUNK_SIZE = 1_000;
+
+    /**
+     * The number of URLs read per query while streaming all URLs of a shard. The stream is
+     * read in pages by ID rather than through a cursor, as H2 materializes a whole result
+     * before returning its first row whatever the fetch size.
+     */
+    private static final int STREAM_CHUNK_SIZE = 1_000;
+
+    private static final Comparator<URL> BY_ID = Comparator.comparing(URL::getId);
+
+    private final ShardRouter router;
+
+    private record SlottedURL(URL url, int slot) {
+    }
+
+    public ShardedURLStorage(ShardRouter router) {
+        this.router = router;
+    }
+
+    private static int slotOf(String shortUrl) {
+        return shortUrl == null ? 0 : HashRing.slotOf(shortUrl);
+    }
+
+    /**
+     * @return whether the row is one the shard is responsible for, and not one of a slot
+     *         which has moved away from it or towards it
+     */
+    private boolean owns(Shard shard, SlottedURL row) {
+        return router.ownerOf(row.slot()) == shard;
+    }
+
+    private static Object[] values(long id, URL url, int slot) {
+        return new Object[]{id, url.getLongUrl(), url.getShortUrl(), url.getUsername(),
+                url.getRedirectType() == null ? null : url.getRedirectType().name(), url.getCacheMaxAge(),
+                url.getModifiedAt(), slot};
+    }
+
+    private static void insert(Shard shard, long id, URL url, int slot) {
+        shard.getJdbcTemplate().update(INSERT_SQL, values(id, url, slot));
+    }
+
+    @Override
+    public URL save(URL url) {
+        int slot = slotOf(url.getShortUrl());
+        if (url.getId() == null) {
+            long id = router.nextId(slot);
+            router.writing(new int[]{slot}, () -> {
+                insert(router.ownerOf(slot), id, url, slot);
+                return null;
+            });
+            url.setId(id);
+            return url;
+        }
+        while (true) {
+            Optional<Located> stored = locate(url.getId());
+            int storedSlot = stored.map(Located::slot).orElse(slot);
+            boolean saved = router.writing(new int[]{storedSlot, slot}, () -> {
+                Shard target = router.ownerOf(slot);
+                if (stored.isEmpty()) {
+                    insert(target, url.getId(), url, slot);
+                    return true;
+                }
+                Shard current = stored.get().shard();
+                if (router.ownerOf(storedSlot) != current) {
+                    // The slot moved in the meantime.
+                    return false;
+                }
+                if (current == target) {
+                    current.getJdbcTemplate().update(
+                            "update urls set long_url = ?, short_url = ?, username = ?, redirect_type = ?, "
+                                    + "cache_max_age = ?, modified_at = ?, slot = ? where id = ?",
+                            url.getLongUrl(), url.getShortUrl(), url.getUsername(),
+                            url.getRedirectType() == null ? null : url.getRedirectType().name(), url.getCacheMaxAge(),
+                            url.getModifiedAt(), slot, url.getId());
+                } else {
+                    // Inserting first, so a taken short URL leaves the URL where it is.
+                    insert(target, url.getId(), url, slot);
+                    current.getJdbcTemplate().update("delete from urls where id = ?", url.getId());
+                }
+                return true;
+            });
+            if (saved) {
+                return url;
+            }
+        }
+    }
+
+    @Override
+    public List<URL> saveAll(List<URL> urls) {
+        int[] slots = new int[urls.size()];
+        long[] ids = new long[urls.size()];
+        for (int i = 0; i < urls.size(); i++) {
+            slots[i] = slotOf(urls.get(i).getShortUrl());
+            ids[i] = router.nextId(slots[i]);
+        }
+        router.writing(slots, () -> {
+            Map<Shard, List<Object[]>> rowsByShard = new LinkedHashMap<>();
+            for (int i = 0; i < urls.size(); i++) {
+                URL url = urls.get(i);
+                rowsByShard.computeIfAbsent(router.ownerOf(slots[i]), shard -> new ArrayList<>())
+                        .add(values(ids[i], url, slots[i]));
+            }
+            return router.inTransactions(List.copyOf(rowsByShard.keySet()), () -> {
+                rowsByShard.forEach((shard, rows) -> shard.getJdbcTemplate().batchUpdate(INSERT_SQL, rows));
+                return null;
+            });
+        });
+        for (int i = 0; i < urls.size(); i++) {
+            urls.get(i).setId(ids[i]);
+        }
+        return urls;
+    }
+
+    private record Located(Shard shard, int slot) {
+    }
+
+    /**
+     * Find the shard holding a URL, asking the shard its ID points to first.
+     */
+    private Optional<Located> locate(long id) {
+        return findRowById(id).map(found -> new Located(router.ownerOf(found.slot()), found.slot()));
+    }
+
+    private Optional<SlottedURL> findRowById(long id) {
+        Shard likely = router.ownerOf(HashRing.slotOf(id));
+        Optional<SlottedURL> found = findRowById(likely, id);
+        if (found.isPresent()) {
+            return found;
+        }
+        return router.scatter(shard -> shard == likely ? Optional.<SlottedURL>empty() : findRowById(shard, id))
+                .stream()
+                .flatMap(Optional::stream)
+                .findFirst();
+    }
+
+    private Optional<SlottedURL> findRowById(Shard shard, long id) {
+        return shard.getJdbcTemplate().query(SELECT_SQL + " where id = ?", URL_MAPPER, id).stream()
+                .filter(row -> owns(shard, row))
+                .findFirst();
+    }
+
+    @Override
+    public Optional<URL> findById(long id) {
+        return findRowById(id).map(SlottedURL::url);
+    }
+
+    @Override
+    public Optional<URL> findByShortUrl(String shortUrl) {
+        Shard shard = router.ownerOf(slotOf(shortUrl));
+        return shard.getJdbcTemplate().query(SELECT_SQL + " where short_url = ?", URL_MAPPER, shortUrl).stream()
+                .map(SlottedURL::url)
+                .findFirst();
+    }
+
+    @Override
+    public List<URL> findByShortUrls(Collection<String> shortUrls) {
+        Map<Shard, List<String>> byShard = new LinkedHashMap<>();
+        for (String shortUrl : shortUrls) {
+            byShard.computeIfAbsent(router.ownerOf(slotOf(shortUrl)), shard -> new ArrayList<>()).add(shortUrl);
+        }
+        List<URL> found = new ArrayList<>(shortUrls.size());
+        byShard.forEach((shard, all) -> {
+            for (int from = 0; from < all.size(); from += LOOKUP_CHUNK_SIZE) {
+                List<String> chunk = all.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, all.size()));
+                String sql = SELECT_SQL + " where short_url in (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+                shard.getJdbcTemplate().query(sql, URL_MAPPER, chunk.toArray()).forEach(row -> found.add(row.url()));
+            }
+        });
+        return found;
+    }
+
+    @Override
+    public List<URL> findByUsername(String username) {
+        List<URL> merged = new ArrayList<>();
+        router.scatter(shard -> ownedRows(shard, shard.getJdbcTemplate().query(
+                        SELECT_SQL + " where username = ? order by id", URL_MAPPER, username)))
+                .forEach(merged::addAll);
+        merged.sort(BY_ID);
+        return merged;
+    }
+
+    private List<URL> ownedRows(Shard shard, List<SlottedURL> rows) {
+        List<URL> owned = new ArrayList<>(rows.size());
+        for (SlottedURL row : rows) {
+            if (owns(shard, row)) {
+                owned.add(row.url());
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * The URLs one shard returned for a page
+     *
+     * @param owned the URLs of slots the shard owns
+     * @param full whether the shard returned as many rows as asked for, so it may hold more
+     * @param lastId the last ID the shard returned
+     */
+    private record ShardPage(List<URL> owned, boolean full, long lastId) {
+    }
+
+    /**
+     * Every shard returns up to the limit; the merged page can only go as far as the lowest
+     * last ID of the shards which returned a full page, as those may hold more URLs below the
+     * IDs the others returned. Pages cut short this way are filled up with another round.
+     */
+    @Override
+    public List<URL> findByUsername(String username, long afterId, int limit) {
+        List<URL> page = new ArrayList<>(limit);
+        long after = afterId;
+        while (page.size() < limit) {
+            int wanted = limit - page.size();
+            long from = after;
+            List<ShardPage> results = router.scatter(shard -> {
+                List<SlottedURL> rows = shard.getJdbcTemplate().query(
+                        SELECT_SQL + " where username = ? and id > ? order by id limit ?", URL_MAPPER, username, from, wanted);
+                return new ShardPage(ownedRows(shard, rows), rows.size() == wanted,
+                        rows.isEmpty() ? from : rows.get(rows.size() - 1).url().getId());
+            });
+            long bound = results.stream().filter(ShardPage::full).mapToLong(ShardPage::lastId).min().orElse(Long.MAX_VALUE);
+            List<URL> merged = new ArrayList<>();
+            for (ShardPage result : results) {
+                for (URL url : result.owned()) {
+                    if (url.getId() <= bound) {
+                        merged.add(url);
+                    }
+                }
+            }
+            merged.sort(BY_ID);
+            page.addAll(merged.subList(0, Math.min(merged.size(), wanted)));
+            if (bound == Long.MAX_VALUE) {
+                break;
+            }
+            // Every shard has returned all its URLs up to the bound.
+            after = bound;
+        }
+        return page;
+    }
+
+    @Override
+    public void forEachOfUser(String username, Consumer<URL> action) {
+        List<URL> page = findByUsername(username, 0, LISTING_CHUNK_SIZE);
+        while (!page.isEmpty()) {
+            page.forEach(action);
+            page = page.size() < LISTING_CHUNK_SIZE
+                    ? List.of()
+                    : findByUsername(username, page.get(page.size() - 1).getId(), LISTING_CHUNK_SIZE);
+        }
+    }
+
+    @Override
+    public long countByUsername(String username) {
+        return router.scatter(shard -> shard.getJdbcTemplate().queryForObject(
+                        "select count(*) from urls where username = ?", Long.class, username))
+                .stream()
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    @Override
+    public void deleteById(long id) {
+        while (true) {
+            Optional<Located> stored = locate(id);
+            if (stored.isEmpty()) {
+                return;
+            }
+            int slot = stored.get().slot();
+            boolean deleted = router.writing(new int[]{slot}, () -> {
+                if (router.ownerOf(slot) != stored.get().shard()) {
+                    return false;
+                }
+                Shard shard = stored.get().shard();
+                // The stats table has no foreign key to the urls table.
+                shard.getTransactionTemplate().executeWithoutResult(status -> {
+                    shard.getJdbcTemplate().update("delete from stats where short_url = ?", id);
+                    shard.getJdbcTemplate().update("delete from urls where id = ?", id);
+                });
+                return true;
+            });
+            if (deleted) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long count() {
+        return router.scatter(shard -> shard.getJdbcTemplate().queryForObject("select count(*) from urls", Long.class))
+                .stream()
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    @Override
+    public void forEach(Consumer<URL> action) {
+        for (Shard shard : router.getShards()) {
+            long after = 0;
+            List<SlottedURL> page;
+            do {
+                page = shard.getJdbcTemplate().query(SELECT_SQL + " where id > ? order by id limit ?", URL_MAPPER,
+                        after, STREAM_CHUNK_SIZE);
+                for (SlottedURL row : page) {
+                    if (owns(shard, row)) {
+                        action.accept(row.url());
+                    }
+                }
+                if (!page.isEmpty()) {
+                    after = page.get(page.size() - 1).url().getId();
+                }
+            } while (page.size() == STREAM_CHUNK_SIZE);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.twodigits.urlshortener.shard;
+
+import io.twodigits.urlshortener.config.ShardingProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Spreads URLs and their clicks over the shards when {@code urlshortener.storage.engine}
+ * is {@code sharded}. The shards' datasources are no beans, so the main datasource keeps
+ * serving JPA and everything else.
+ */
+@Configuration
+@ConditionalOnProperty(name = "urlshortener.storage.engine", havingValue = "sharded")
+public class ShardingConfig {
+
+    /**
+     * Closed when the context shuts down, which closes the connections to the shards.
+     */
+    @Bean
+    public ShardRouter shardRouter(ShardingProperties properties, JdbcTemplate jdbcTemplate,
+                                   ExecutionThreads executionThreads) {
+        return new ShardRouter(properties, jdbcTemplate, executionThreads);
+    }
+
+    @Bean
+    public ShardedURLStorage shardedURLStorage(ShardRouter shardRouter) {
+        return new ShardedURLStorage(shardRouter);
+    }
+
+    /**
+     * Primary, so it is injected wherever a ClickStore is asked for, although the stats
+     * table repository is one as well. Only if the clicks are stored in the database;
+     * the click log keeps them on the local disk.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "urlshortener.stats.store.engine", havingValue = "database", matchIfMissing = true)
+    public ShardedClickStore shardedClickStore(ShardRouter shardRouter) {
+        return new ShardedClickStore(shardRouter);
+    }
+}
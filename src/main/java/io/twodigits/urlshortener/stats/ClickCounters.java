@@ -0,0 +1,272 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.config.ClickRollupProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickBucket;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.ClickGranularity;
+import io.twodigits.urlshortener.repo.ClickRollupJdbcRepo;
+import io.twodigits.urlshortener.repo.ClickRollupJdbcRepo.BucketDelta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Pre-aggregated click counters.
+ * <p>
+ * Every click increments a per-URL total and one bucket per {@link ClickGranularity}.
+ * The increments go to {@link LongAdder}s, which spread contention over striped cells,
+ * and are periodically merged into the click_total and click_rollup tables. Reads
+ * combine the stored values with the increments not yet flushed, so they never have
+ * to look at the raw stats table. A flush drains the increments and merges them under
+ * a write lock, so a read never sees a drained increment before it has been stored.
+ * <p>
+ * Counters which received no clicks since the last flush are removed and marked as retired.
+ * A click which incremented a counter while it was removed finds the mark afterwards and
+ * moves whatever the flush has not drained to a new counter.
+ */
+@Slf4j
+@Component
+public class ClickCounters implements ClickListener, SmartLifecycle {
+
+    private static final ClickGranularity[] GRANULARITIES = ClickGranularity.values();
+
+    private final ClickRollupJdbcRepo clickRollupJdbcRepo;
+
+    private final ClickRollupProperties properties;
+
+    private final ExecutionThreads executionThreads;
+
+    private final ConcurrentHashMap<Long, PendingClicks> pendingTotals = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<BucketKey, PendingClicks> pendingBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * Held for reading by lookups and for writing while a flush moves increments into the tables.
+     */
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    private ScheduledExecutorService flusher;
+
+    private volatile boolean running;
+
+    private record BucketKey(long urlId, ClickGranularity granularity, long bucketStart) {
+    }
+
+    private static final class PendingClicks {
+
+        private final LongAdder clicks = new LongAdder();
+
+        /**
+         * Set after the counter has been removed, before the flush drains it for the last time
+         */
+        private volatile boolean retired;
+    }
+
+    @Autowired
+    public ClickCounters(ClickRollupJdbcRepo clickRollupJdbcRepo, ClickRollupProperties properties,
+                         ExecutionThreads executionThreads) {
+        this.clickRollupJdbcRepo = clickRollupJdbcRepo;
+        this.properties = properties;
+        this.executionThreads = executionThreads;
+    }
+
+    @Override
+    public void onClick(ClickEvent event) {
+        long urlId = event.getUrlId();
+        add(pendingTotals, urlId, 1);
+        for (ClickGranularity granularity : GRANULARITIES) {
+            BucketKey key = new BucketKey(urlId, granularity, granularity.bucketStart(event.getAccessTime()));
+            add(pendingBuckets, key, 1);
+        }
+    }
+
+    private static <K> void add(ConcurrentHashMap<K, PendingClicks> pending, K key, long clicks) {
+        long remaining = clicks;
+        while (remaining != 0) {
+            PendingClicks counter = pending.computeIfAbsent(key, k -> new PendingClicks());
+            counter.clicks.add(remaining);
+            if (!counter.retired) {
+                return;
+            }
+            // Removed by a flush, which may have drained it before the clicks were added.
+            remaining = counter.clicks.sumThenReset();
+        }
+    }
+
+    /**
+     * @param urlId
+     * @return the number of clicks a URL received since it has been created
+     */
+    public long getTotal(long urlId) {
+        flushLock.readLock().lock();
+        try {
+            PendingClicks pending = pendingTotals.get(urlId);
+            return clickRollupJdbcRepo.findTotal(urlId) + (pending == null ? 0 : pending.clicks.sum());
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the clicks of a URL per bucket within a time range. Only buckets with
+     * at least one click are returned.
+     *
+     * @param urlId
+     * @param granularity
+     * @param from
+     * @param to
+     * @return the buckets in ascending order
+     */
+    public List<ClickBucket> getBuckets(long urlId, ClickGranularity granularity, Instant from, Instant to) {
+        flushLock.readLock().lock();
+        try {
+            return findBuckets(urlId, granularity, from, to);
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    private List<ClickBucket> findBuckets(long urlId, ClickGranularity granularity, Instant from, Instant to) {
+        long fromBucket = granularity.bucketStart(from.toEpochMilli());
+        long toBucket = granularity.bucketStart(to.toEpochMilli());
+        TreeMap<Long, Long> buckets = clickRollupJdbcRepo.findBuckets(urlId, granularity, fromBucket, toBucket);
+
+        // Clicks are stamped on arrival, so only the latest buckets can still have unflushed increments.
+        long currentBucket = granularity.bucketStart(System.currentTimeMillis());
+        long firstPending = Math.max(fromBucket, currentBucket - granularity.getMillis());
+        long lastPending = Math.min(toBucket, currentBucket);
+        for (long bucket = firstPending; bucket <= lastPending; bucket += granularity.getMillis()) {
+            PendingClicks pending = pendingBuckets.get(new BucketKey(urlId, granularity, bucket));
+            long clicks = pending == null ? 0 : pending.clicks.sum();
+            if (clicks > 0) {
+                buckets.merge(bucket, clicks, Long::sum);
+            }
+        }
+
+        List<ClickBucket> result = new ArrayList<>(buckets.size());
+        buckets.forEach((start, clicks) -> result.add(new ClickBucket(Instant.ofEpochMilli(start), clicks)));
+        return result;
+    }
+
+    /**
+     * Merge all pending increments into the rollup tables.
+     */
+    public synchronized void flush() {
+        flushLock.writeLock().lock();
+        try {
+            merge();
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    private void merge() {
+        Map<Long, Long> totals = new HashMap<>();
+        pendingTotals.forEach((urlId, counter) -> {
+            long clicks = counter.clicks.sumThenReset();
+            if (clicks == 0 && pendingTotals.remove(urlId, counter)) {
+                clicks = retire(counter);
+            }
+            if (clicks > 0) {
+                totals.put(urlId, clicks);
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        List<BucketDelta> buckets = new ArrayList<>();
+        pendingBuckets.forEach((key, counter) -> {
+            long clicks = counter.clicks.sumThenReset();
+            if (key.bucketStart() < key.granularity().bucketStart(now) && pendingBuckets.remove(key, counter)) {
+                clicks += retire(counter);
+            }
+            if (clicks > 0) {
+                buckets.add(new BucketDelta(key.urlId(), key.granularity(), key.bucketStart(), clicks));
+            }
+        });
+
+        try {
+            if (!totals.isEmpty()) {
+                clickRollupJdbcRepo.mergeTotals(totals);
+            }
+        } catch (RuntimeException e) {
+            totals.forEach((urlId, clicks) -> add(pendingTotals, urlId, clicks));
+            buckets.forEach(this::restore);
+            throw e;
+        }
+        try {
+            if (!buckets.isEmpty()) {
+                clickRollupJdbcRepo.mergeBuckets(buckets);
+            }
+        } catch (RuntimeException e) {
+            buckets.forEach(this::restore);
+            throw e;
+        }
+    }
+
+    /**
+     * Mark a removed counter as retired and drain it. Every increment either happened before the
+     * mark and is drained here, or sees the mark and moves itself to a new counter.
+     *
+     * @return the clicks added since the counter was last drained
+     */
+    private static long retire(PendingClicks counter) {
+        counter.retired = true;
+        return counter.clicks.sumThenReset();
+    }
+
+    /**
+     * Put the clicks of a bucket which could not be written back into the pending counters.
+     */
+    private void restore(BucketDelta delta) {
+        add(pendingBuckets, new BucketKey(delta.urlId(), delta.granularity(), delta.bucketStart()), delta.clicks());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Failed to flush click counters", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        long interval = properties.getFlushInterval().toMillis();
+        flusher = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("click-counter-flusher"));
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
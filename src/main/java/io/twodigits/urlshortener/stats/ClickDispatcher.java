@@ -0,0 +1,39 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Hands each click to all registered {@link ClickListener}s. A failing listener
+ * never fails the redirect.
+ */
+@Slf4j
+@Component
+public class ClickDispatcher {
+
+    private final ClickListener[] listeners;
+
+    @Autowired
+    public ClickDispatcher(List<ClickListener> listeners) {
+        this.listeners = listeners.toArray(new ClickListener[0]);
+    }
+
+    /**
+     * Pass a click to every listener.
+     *
+     * @param event
+     */
+    public void dispatch(ClickEvent event) {
+        for (ClickListener listener : listeners) {
+            try {
+                listener.onClick(event);
+            } catch (RuntimeException e) {
+                log.warn("Click listener {} failed", listener.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
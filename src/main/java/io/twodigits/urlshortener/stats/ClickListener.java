@@ -0,0 +1,19 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+
+/**
+ * Receives every access to a short URL on the redirect path.
+ * <p>
+ * Implementations are called on the request thread, so they must not block.
+ */
+public interface ClickListener {
+
+    /**
+     * Handle an access to a short URL.
+     *
+     * @param event
+     */
+    void onClick(ClickEvent event);
+
+}
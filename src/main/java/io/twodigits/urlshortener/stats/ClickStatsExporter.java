@@ -0,0 +1,126 @@
+package io.twodigits.urlshortener.stats;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.twodigits.urlshortener.model.ExportFormat;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.wire.WireFormat;
+import io.twodigits.urlshortener.wire.WireFormats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the raw access statistics of a URL to a stream row by row, as they are read
+ * from the {@link ClickStore}.
+ */
+@Component
+public class ClickStatsExporter {
+
+    private static final String CSV_HEADER = "id,accessTime,userAgent,referrer,clientIp\n";
+
+    private final ClickStore clickStore;
+
+    private final WireFormats wireFormats;
+
+    @Autowired
+    public ClickStatsExporter(ClickStore clickStore, WireFormats wireFormats) {
+        this.clickStore = clickStore;
+        this.wireFormats = wireFormats;
+    }
+
+    /**
+     * Write all access statistics of a URL.
+     *
+     * @param urlId
+     * @param format
+     * @param out the stream to write to, left open
+     * @throws IOException
+     */
+    public void export(long urlId, ExportFormat format, OutputStream out) throws IOException {
+        try {
+            switch (format) {
+                case NDJSON -> exportSequence(urlId, WireFormat.JSON, out);
+                case CSV -> exportCsv(urlId, out);
+                case CBOR -> exportSequence(urlId, WireFormat.CBOR, out);
+                case SMILE -> exportSequence(urlId, WireFormat.SMILE, out);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write one value per row through a single generator, so Smile writes its header once and
+     * refers back to the field names of earlier rows. JSON rows end with a newline.
+     */
+    private void exportSequence(long urlId, WireFormat format, OutputStream out) throws IOException {
+        ObjectMapper mapper = wireFormats.mapperFor(format);
+        JsonGenerator generator = mapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        boolean newlines = format == WireFormat.JSON;
+        if (newlines) {
+            generator.setRootValueSeparator(null);
+        }
+        ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        clickStore.stream(urlId, row -> {
+            try {
+                writer.writeValue(generator, row);
+                if (newlines) {
+                    generator.writeRaw('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        generator.close();
+    }
+
+    private void exportCsv(long urlId, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        clickStore.stream(urlId, row -> {
+            try {
+                writeCsvRow(writer, row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    private static void writeCsvRow(Writer writer, URLStatsView row) throws IOException {
+        writer.write(String.valueOf(row.getId()));
+        writer.write(',');
+        writer.write(row.getAccessTime() == null ? "" : row.getAccessTime().toString());
+        writer.write(',');
+        writeCsvField(writer, row.getUserAgent());
+        writer.write(',');
+        writeCsvField(writer, row.getReferrer());
+        writer.write(',');
+        writeCsvField(writer, row.getClientIp());
+        writer.write('\n');
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
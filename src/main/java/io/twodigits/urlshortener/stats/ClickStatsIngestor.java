@@ -0,0 +1,226 @@
+package io.twodigits.urlshortener.stats;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.twodigits.urlshortener.config.ClickIngestionProperties;
+import io.twodigits.urlshortener.config.ClickIngestionProperties.OverflowPolicy;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes clicks off the redirect path.
+ * <p>
+ * Clicks are put into a bounded queue and a single background writer drains it
+ * into batch inserts of the {@link ClickStore}, so a redirect never waits for it. What
+ * happens when the queue is full is decided by the configured {@link OverflowPolicy};
+ * on event loop threads, which must never block, BLOCK behaves like DROP.
+ * On a graceful shutdown the writer drains the queue before the store goes away; clicks
+ * arriving after that are dropped when the queue is full, as nobody will empty it.
+ */
+@Slf4j
+@Component
+public class ClickStatsIngestor implements ClickListener, SmartLifecycle {
+
+    /**
+     * How long a blocked enqueue waits before it checks again whether the writer has stopped
+     */
+    private static final long BLOCK_RECHECK_MILLIS = 100;
+
+    private final ClickStore clickStore;
+
+    private final ClickIngestionProperties properties;
+
+    private final ExecutionThreads executionThreads;
+
+    private final BlockingQueue<ClickEvent> queue;
+
+    private final Timer flushTimer;
+
+    private final Counter writtenCounter;
+
+    private final Counter droppedCounter;
+
+    private final Counter failedCounter;
+
+    private final int sampleThreshold;
+
+    private volatile boolean running;
+
+    private volatile boolean stopped;
+
+    private Thread writer;
+
+    @Autowired
+    public ClickStatsIngestor(ClickStore clickStore, ClickIngestionProperties properties,
+                              ExecutionThreads executionThreads, MeterRegistry registry) {
+        this.clickStore = clickStore;
+        this.properties = properties;
+        this.executionThreads = executionThreads;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.sampleThreshold = (int) (properties.getQueueCapacity() * properties.getSampleThreshold());
+
+        Gauge.builder("urlshortener.stats.queue.depth", queue, BlockingQueue::size)
+                .description("Clicks waiting to be written")
+                .register(registry);
+        this.flushTimer = Timer.builder("urlshortener.stats.flush")
+                .description("Time taken to write one batch of clicks")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.writtenCounter = Counter.builder("urlshortener.stats.written").register(registry);
+        this.droppedCounter = Counter.builder("urlshortener.stats.dropped").register(registry);
+        this.failedCounter = Counter.builder("urlshortener.stats.failed").register(registry);
+    }
+
+    /**
+     * Queue a click for writing.
+     *
+     * @param event
+     * @return false if the click was discarded by the overflow policy
+     */
+    public boolean enqueue(ClickEvent event) {
+        boolean accepted = switch (properties.getOverflowPolicy()) {
+            case BLOCK -> Schedulers.isInNonBlockingThread() ? queue.offer(event) : put(event);
+            case DROP -> queue.offer(event);
+            case SAMPLE -> (queue.size() < sampleThreshold
+                    || ThreadLocalRandom.current().nextInt(properties.getSampleRate()) == 0)
+                    && queue.offer(event);
+        };
+        if (!accepted) {
+            droppedCounter.increment();
+        }
+        return accepted;
+    }
+
+    @Override
+    public void onClick(ClickEvent event) {
+        enqueue(event);
+    }
+
+    /**
+     * @return the number of clicks waiting to be written
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private boolean put(ClickEvent event) {
+        try {
+            while (!stopped) {
+                if (queue.offer(event, BLOCK_RECHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return queue.offer(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void start() {
+        stopped = false;
+        running = true;
+        writer = executionThreads.threadFactory("click-stats-writer").newThread(this::drainLoop);
+        writer.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        stopped = true;
+        try {
+            writer.join(properties.getShutdownTimeout().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("{} clicks were not written before shutdown", queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void drainLoop() {
+        int batchSize = properties.getBatchSize();
+        long flushIntervalNanos = properties.getFlushInterval().toNanos();
+        List<ClickEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ClickEvent first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    ClickEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                log.error("Failed to write {} clicks", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write a batch of clicks. If the batch is rejected, e.g. because one of the rows
+     * violates a constraint, the clicks are written one by one so that only the
+     * offending rows are lost.
+     */
+    void flush(List<ClickEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            clickStore.batchInsert(batch);
+            writtenCounter.increment(batch.size());
+        } catch (DataAccessException e) {
+            for (ClickEvent event : batch) {
+                try {
+                    clickStore.insert(event);
+                    writtenCounter.increment();
+                } catch (DataAccessException rowFailure) {
+                    failedCounter.increment();
+                    log.debug("Dropping click for URL {}", event.getUrlId(), rowFailure);
+                }
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URLStatsView;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Holds the raw clicks of all URLs.
+ * <p>
+ * Rows are identified by an ID which increases with every click stored and are always
+ * returned ordered by access time and ID.
+ */
+public interface ClickStore {
+
+    /**
+     * Store a list of clicks at once.
+     *
+     * @param events
+     */
+    void batchInsert(List<ClickEvent> events);
+
+    /**
+     * Store a single click.
+     *
+     * @param event
+     */
+    void insert(ClickEvent event);
+
+    /**
+     * @param urlId
+     * @return all clicks of a URL
+     */
+    List<URLStatsView> findAll(long urlId);
+
+    /**
+     * Get the clicks of a URL starting after a given click.
+     *
+     * @param urlId
+     * @param afterTime access time of the last click already seen, null for the first page
+     * @param afterId ID of the last click already seen
+     * @param limit the maximum number of clicks
+     * @return the clicks of the page
+     */
+    List<URLStatsView> findPage(long urlId, LocalDateTime afterTime, long afterId, int limit);
+
+    /**
+     * Pass every click of a URL to a consumer.
+     *
+     * @param urlId
+     * @param consumer
+     */
+    void stream(long urlId, Consumer<URLStatsView> consumer);
+
+}
@@ -0,0 +1,86 @@
+package io.twodigits.urlshortener.stats;
+
+import java.util.Arrays;
+
+/**
+ * A count-min sketch estimating how often each key has been added.
+ * <p>
+ * Every key maps to one counter per row; its estimate is the smallest of them, which is
+ * never below the true count and, with a probability of 1 - e<sup>-depth</sup>, at most
+ * e / width of the total count above it. Not thread-safe.
+ */
+final class CountMinSketch {
+
+    private final long[][] rows;
+
+    private final int mask;
+
+    CountMinSketch(int width, int depth) {
+        int size = Integer.highestOneBit(Math.max(width, 2) - 1) << 1;
+        this.rows = new long[depth][size];
+        this.mask = size - 1;
+    }
+
+    private static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * The counter of a key in a row, by double hashing.
+     */
+    private int index(long hash, int row) {
+        return (int) ((hash + row * (hash >>> 32 | 1)) & mask);
+    }
+
+    /**
+     * @param key
+     * @param count
+     * @return the estimated count of the key afterwards
+     */
+    long add(long key, long count) {
+        long hash = mix(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < rows.length; row++) {
+            int index = index(hash, row);
+            rows[row][index] += count;
+            estimate = Math.min(estimate, rows[row][index]);
+        }
+        return estimate;
+    }
+
+    /**
+     * @param key
+     * @return the estimated count of the key
+     */
+    long estimate(long key) {
+        long hash = mix(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < rows.length; row++) {
+            estimate = Math.min(estimate, rows[row][index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Take the counts of another sketch of the same size off this one.
+     *
+     * @param other a sketch whose counts have all been added to this one as well
+     */
+    void subtract(CountMinSketch other) {
+        for (int row = 0; row < rows.length; row++) {
+            long[] counters = rows[row];
+            long[] others = other.rows[row];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] -= others[i];
+            }
+        }
+    }
+
+    void clear() {
+        for (long[] row : rows) {
+            Arrays.fill(row, 0);
+        }
+    }
+}
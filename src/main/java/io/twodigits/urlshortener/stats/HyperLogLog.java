@@ -0,0 +1,154 @@
+package io.twodigits.urlshortener.stats;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct 64-bit hashes offered to it.
+ * <p>
+ * The sketch has 2<sup>precision</sup> one-byte registers, so its size does not depend on
+ * the number of values offered. The relative standard error of an estimate is
+ * 1.04 / sqrt(2<sup>precision</sup>). Two sketches of the same precision are merged by
+ * taking the maximum of each register; merging is commutative and idempotent, so sketches
+ * can be combined across time ranges and nodes in any order and any number of times.
+ * <p>
+ * Offering is thread-safe and lock-free.
+ */
+public final class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+
+    public static final int MAX_PRECISION = 16;
+
+    private static final VarHandle REGISTERS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final int precision;
+
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("The precision has to be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * @param registers the registers of a sketch as returned by {@link #toByteArray()}
+     * @return the sketch
+     * @throws IllegalArgumentException if the number of registers is no supported power of two
+     */
+    public static HyperLogLog fromByteArray(byte[] registers) {
+        int precision = Integer.numberOfTrailingZeros(registers.length);
+        if (Integer.bitCount(registers.length) != 1) {
+            throw new IllegalArgumentException("Not a sketch: " + registers.length + " registers");
+        }
+        HyperLogLog sketch = new HyperLogLog(precision);
+        System.arraycopy(registers, 0, sketch.registers, 0, registers.length);
+        return sketch;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return the relative standard error of the estimates of a sketch of this precision
+     */
+    public double getStandardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /**
+     * Add a hash to the sketch. The hash has to be uniformly distributed over all 64 bits.
+     *
+     * @param hash
+     * @return whether a register changed; if not, the estimate is unchanged as well
+     */
+    public boolean offer(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The guard bit caps the rank when all remaining bits are zero.
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        return raise(index, rank);
+    }
+
+    private boolean raise(int index, byte value) {
+        byte current = (byte) REGISTERS.getVolatile(registers, index);
+        while (current < value) {
+            if (REGISTERS.compareAndSet(registers, index, current, value)) {
+                return true;
+            }
+            current = (byte) REGISTERS.getVolatile(registers, index);
+        }
+        return false;
+    }
+
+    /**
+     * Merge another sketch into this one.
+     *
+     * @param other a sketch of the same precision
+     * @throws IllegalArgumentException if the precisions differ
+     */
+    public void merge(HyperLogLog other) {
+        merge(other.registers);
+    }
+
+    /**
+     * Merge the registers of another sketch into this one.
+     *
+     * @param other registers as returned by {@link #toByteArray()}
+     * @throws IllegalArgumentException if the number of registers differs
+     */
+    public void merge(byte[] other) {
+        if (other.length != registers.length) {
+            throw new IllegalArgumentException("Cannot merge a sketch of " + other.length + " registers into one of "
+                    + registers.length);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            raise(i, other[i]);
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct hashes offered
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            byte register = (byte) REGISTERS.getVolatile(registers, i);
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        // Small cardinalities are estimated far better by counting the empty registers.
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+
+    /**
+     * @return a copy of the registers
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[registers.length];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = (byte) REGISTERS.getVolatile(registers, i);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,142 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.model.TrendingLink;
+import io.twodigits.urlshortener.model.TrendingWindow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The most clicked links within a sliding {@link TrendingWindow}.
+ * <p>
+ * Clicks are counted in one {@link CountMinSketch} per slot of the window and in one for the
+ * whole window, from which the counts of a slot are taken off once it falls out. The links
+ * with the highest estimates are kept in a min-heap of bounded capacity: a clicked link
+ * enters it when its estimate exceeds the smallest one, and all estimates are refreshed
+ * whenever the window moves on. Not thread-safe.
+ */
+final class SlidingTopK {
+
+    private final TrendingWindow window;
+
+    private final int capacity;
+
+    private final CountMinSketch[] slots;
+
+    private final CountMinSketch total;
+
+    private final Map<Long, Candidate> candidates = new HashMap<>();
+
+    private final PriorityQueue<Candidate> heap = new PriorityQueue<>(Comparator.comparingLong(c -> c.clicks));
+
+    /**
+     * The absolute number of the current slot
+     */
+    private long currentSlot;
+
+    private static final class Candidate {
+
+        private final long urlId;
+
+        private final String shortUrl;
+
+        private long clicks;
+
+        private Candidate(long urlId, String shortUrl, long clicks) {
+            this.urlId = urlId;
+            this.shortUrl = shortUrl;
+            this.clicks = clicks;
+        }
+    }
+
+    SlidingTopK(TrendingWindow window, int capacity, int width, int depth, long now) {
+        this.window = window;
+        this.capacity = capacity;
+        this.slots = new CountMinSketch[window.getSlots()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new CountMinSketch(width, depth);
+        }
+        this.total = new CountMinSketch(width, depth);
+        this.currentSlot = Math.floorDiv(now, window.getSlotMillis());
+    }
+
+    /**
+     * Count a click.
+     *
+     * @param urlId
+     * @param shortUrl
+     * @param accessTime when the click happened in milliseconds since the epoch
+     */
+    void add(long urlId, String shortUrl, long accessTime) {
+        // Clicks stamped ahead of the current slot are counted in it.
+        long slot = Math.min(Math.floorDiv(accessTime, window.getSlotMillis()), currentSlot);
+        if (slot <= currentSlot - slots.length) {
+            return;
+        }
+        slots[(int) Math.floorMod(slot, (long) slots.length)].add(urlId, 1);
+        long clicks = total.add(urlId, 1);
+
+        Candidate candidate = candidates.get(urlId);
+        if (candidate != null) {
+            heap.remove(candidate);
+            candidate.clicks = clicks;
+            heap.add(candidate);
+        } else if (candidates.size() < capacity) {
+            offer(new Candidate(urlId, shortUrl, clicks));
+        } else if (clicks > heap.peek().clicks) {
+            candidates.remove(heap.poll().urlId);
+            offer(new Candidate(urlId, shortUrl, clicks));
+        }
+    }
+
+    private void offer(Candidate candidate) {
+        candidates.put(candidate.urlId, candidate);
+        heap.add(candidate);
+    }
+
+    /**
+     * Move the window on to a point in time, dropping the slots which fall out of it.
+     *
+     * @param now milliseconds since the epoch
+     * @return whether the window moved
+     */
+    boolean advance(long now) {
+        long slot = Math.floorDiv(now, window.getSlotMillis());
+        if (slot <= currentSlot) {
+            return false;
+        }
+        // No more than all slots have to be cleared, however long nothing happened.
+        for (long expired = Math.max(currentSlot + 1, slot - slots.length + 1); expired <= slot; expired++) {
+            CountMinSketch sketch = slots[(int) Math.floorMod(expired, (long) slots.length)];
+            total.subtract(sketch);
+            sketch.clear();
+        }
+        currentSlot = slot;
+
+        heap.clear();
+        candidates.values().removeIf(candidate -> {
+            candidate.clicks = total.estimate(candidate.urlId);
+            return candidate.clicks == 0;
+        });
+        heap.addAll(candidates.values());
+        return true;
+    }
+
+    /**
+     * @return the ranked links, most clicked first
+     */
+    List<TrendingLink> top() {
+        List<Candidate> ranked = new ArrayList<>(candidates.values());
+        ranked.sort(Comparator.comparingLong((Candidate c) -> c.clicks).reversed()
+                .thenComparing(c -> c.shortUrl));
+        List<TrendingLink> links = new ArrayList<>(ranked.size());
+        for (Candidate candidate : ranked) {
+            links.add(new TrendingLink(candidate.shortUrl, candidate.clicks));
+        }
+        return links;
+    }
+}
@@ -0,0 +1,50 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.model.URLStatsView;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * The position after the last row of a stats page. Rows are ordered by access time
+ * and ID, so the next page starts right after this pair without an offset scan.
+ */
+@Value
+public class StatsCursor {
+
+    LocalDateTime accessTime;
+
+    long id;
+
+    public static StatsCursor after(URLStatsView row) {
+        return new StatsCursor(row.getAccessTime(), row.getId());
+    }
+
+    /**
+     * @return an opaque, URL-safe representation of the cursor
+     */
+    public String encode() {
+        String raw = accessTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse a cursor returned by {@link #encode()}.
+     *
+     * @param cursor
+     * @return the cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static StatsCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new StatsCursor(LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded buffer many threads hand clicks to and a single thread drains.
+ * <p>
+ * The buffer is split into stripes and each thread offers to the stripe its ID maps to,
+ * so threads only compete for a slot with the few others sharing their stripe. A thread
+ * which loses the race or finds its stripe full tries the next stripes, and drops the
+ * click once those are taken as well instead of waiting.
+ */
+final class StripedClickBuffer {
+
+    /**
+     * The number of stripes a click is offered to before it is dropped
+     */
+    private static final int ATTEMPTS = 3;
+
+    /**
+     * Returned by {@link #offer(ClickEvent)} for a dropped click
+     */
+    static final int DROPPED = -1;
+
+    private final Stripe[] stripes;
+
+    private final int stripeMask;
+
+    private final int size;
+
+    private static final class Stripe {
+
+        private final AtomicReferenceArray<ClickEvent> slots;
+
+        private final AtomicLong tail = new AtomicLong();
+
+        /**
+         * Only written by the draining thread
+         */
+        private volatile long head;
+
+        private Stripe(int size) {
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+    }
+
+    /**
+     * @param stripes the number of stripes; rounded up to a power of two
+     * @param size the number of clicks per stripe; rounded up to a power of two
+     */
+    StripedClickBuffer(int stripes, int size) {
+        int stripeCount = Integer.highestOneBit(Math.max(stripes, 2) - 1) << 1;
+        this.size = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(this.size);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    private static int mix(long threadId) {
+        long hash = threadId * 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Add a click without blocking.
+     *
+     * @param event
+     * @return the number of clicks in the stripe it has been added to, or {@link #DROPPED}
+     */
+    int offer(ClickEvent event) {
+        int index = mix(Thread.currentThread().getId());
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            Stripe stripe = stripes[(index + attempt) & stripeMask];
+            long tail = stripe.tail.get();
+            long used = tail - stripe.head;
+            if (used < size && stripe.tail.compareAndSet(tail, tail + 1)) {
+                stripe.slots.lazySet((int) (tail & (size - 1)), event);
+                return (int) used + 1;
+            }
+        }
+        return DROPPED;
+    }
+
+    /**
+     * @return the number of clicks a stripe holds at most
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Pass all clicks whose slot has been written to a consumer. Must only be called by one
+     * thread at a time.
+     *
+     * @param consumer
+     * @return the number of clicks drained
+     */
+    int drainTo(Consumer<ClickEvent> consumer) {
+        int drained = 0;
+        for (Stripe stripe : stripes) {
+            long head = stripe.head;
+            long tail = stripe.tail.get();
+            while (head < tail) {
+                int index = (int) (head & (size - 1));
+                ClickEvent event = stripe.slots.get(index);
+                if (event == null) {
+                    // Claimed but not written yet; picked up by the next drain.
+                    break;
+                }
+                stripe.slots.lazySet(index, null);
+                consumer.accept(event);
+                head++;
+                drained++;
+            }
+            stripe.head = head;
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,154 @@
+package io.twodigits.urlshortener.stats;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.twodigits.urlshortener.config.TrendingProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.TrendingLink;
+import io.twodigits.urlshortener.model.TrendingWindow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The most clicked links of the last {@link TrendingWindow}s.
+ * <p>
+ * The redirect path only hands each click to a {@link StripedClickBuffer}, which never blocks
+ * and spreads the threads over independent stripes. A single drainer thread owns the
+ * count-min sketches and heaps of all windows: it drains the buffer periodically, or as soon
+ * as a stripe is half full, and publishes the rankings for readers to pick up.
+ */
+@Slf4j
+@Component
+public class TrendingTracker implements ClickListener, SmartLifecycle {
+
+    private static final TrendingWindow[] WINDOWS = TrendingWindow.values();
+
+    private final TrendingProperties properties;
+
+    private final ExecutionThreads executionThreads;
+
+    private final StripedClickBuffer buffer;
+
+    private final Map<TrendingWindow, SlidingTopK> windows = new EnumMap<>(TrendingWindow.class);
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private final Counter dropped;
+
+    private volatile Map<TrendingWindow, List<TrendingLink>> rankings;
+
+    private ScheduledExecutorService drainer;
+
+    private volatile boolean running;
+
+    @Autowired
+    public TrendingTracker(TrendingProperties properties, ExecutionThreads executionThreads, MeterRegistry registry) {
+        this.properties = properties;
+        this.executionThreads = executionThreads;
+        this.buffer = new StripedClickBuffer(4 * Runtime.getRuntime().availableProcessors(), properties.getBufferSize());
+        long now = System.currentTimeMillis();
+        Map<TrendingWindow, List<TrendingLink>> empty = new EnumMap<>(TrendingWindow.class);
+        for (TrendingWindow window : WINDOWS) {
+            windows.put(window, new SlidingTopK(window, properties.getCapacity(), properties.getSketchWidth(),
+                    properties.getSketchDepth(), now));
+            empty.put(window, List.of());
+        }
+        this.rankings = empty;
+        this.dropped = Counter.builder("urlshortener.trending.dropped")
+                .description("Clicks left out of the trending links because the buffer was full")
+                .register(registry);
+    }
+
+    @Override
+    public void onClick(ClickEvent event) {
+        int used = buffer.offer(event);
+        if (used == StripedClickBuffer.DROPPED) {
+            dropped.increment();
+        } else if (used >= buffer.getSize() / 2 && running && drainScheduled.compareAndSet(false, true)) {
+            try {
+                drainer.execute(this::drainQuietly);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Get the most clicked links of a window as of the last drain.
+     *
+     * @param window
+     * @param limit the number of links; at most the configured capacity are ranked
+     * @return the links, most clicked first
+     */
+    public List<TrendingLink> getTop(TrendingWindow window, int limit) {
+        List<TrendingLink> ranking = rankings.get(window);
+        return ranking.subList(0, Math.min(Math.max(limit, 0), ranking.size()));
+    }
+
+    /**
+     * Count all buffered clicks, move the windows on to the current time and publish the
+     * new rankings.
+     */
+    public synchronized void drain() {
+        drainScheduled.set(false);
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        for (SlidingTopK topK : windows.values()) {
+            changed |= topK.advance(now);
+        }
+        changed |= buffer.drainTo(event -> {
+            for (SlidingTopK topK : windows.values()) {
+                topK.add(event.getUrlId(), event.getShortUrl(), event.getAccessTime());
+            }
+        }) > 0;
+        if (changed) {
+            Map<TrendingWindow, List<TrendingLink>> updated = new EnumMap<>(TrendingWindow.class);
+            windows.forEach((window, topK) -> updated.put(window, List.copyOf(topK.top())));
+            rankings = updated;
+        }
+    }
+
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            log.error("Failed to drain trending clicks", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        long interval = properties.getDrainInterval().toMillis();
+        drainer = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("trending-drainer"));
+        drainer.scheduleWithFixedDelay(this::drainQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        drainer.shutdown();
+        try {
+            drainer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
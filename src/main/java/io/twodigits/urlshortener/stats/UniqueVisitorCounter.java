@@ -0,0 +1,270 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.config.UniqueVisitorProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.ClickGranularity;
+import io.twodigits.urlshortener.model.VisitorSketch;
+import io.twodigits.urlshortener.repo.VisitorSketchJdbcRepo;
+import io.twodigits.urlshortener.repo.VisitorSketchJdbcRepo.SketchDelta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Approximate unique visitor counts.
+ * <p>
+ * Every click offers the hash of its client IP and user agent to two {@link HyperLogLog}
+ * sketches of its URL: one for the day of the click and one since the URL has been created.
+ * Sketches whose registers changed are periodically merged into the visitor_sketch table;
+ * as merging is idempotent, a sketch stays in memory and is merged again after further
+ * changes, and sketches which did not change since the last flush are dropped. Offers do
+ * not lock: a flush marks a sketch as dropped before it checks for changes, and an offer
+ * which finds the mark afterwards offers its hash again to the sketch replacing it, which
+ * is harmless as offering a hash twice changes nothing. Reads merge the stored sketches with
+ * the ones in memory, so any range of days and any number of nodes are combined without
+ * looking at the raw clicks.
+ */
+@Slf4j
+@Component
+public class UniqueVisitorCounter implements ClickListener, SmartLifecycle {
+
+    private static final long DAY_MILLIS = ClickGranularity.DAY.getMillis();
+
+    private final VisitorSketchJdbcRepo visitorSketchJdbcRepo;
+
+    private final UniqueVisitorProperties properties;
+
+    private final ExecutionThreads executionThreads;
+
+    private final ConcurrentHashMap<SketchKey, PendingSketch> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    private volatile boolean running;
+
+    private record SketchKey(long urlId, long dayStart) {
+    }
+
+    private static final class PendingSketch {
+
+        private final HyperLogLog sketch;
+
+        private final AtomicBoolean changed = new AtomicBoolean();
+
+        /**
+         * Set by a flush before it checks whether the sketch changed, and left set if it drops it
+         */
+        private volatile boolean dropped;
+
+        private PendingSketch(int precision) {
+            this.sketch = new HyperLogLog(precision);
+        }
+
+        void offer(long hash) {
+            if (sketch.offer(hash)) {
+                changed.set(true);
+            }
+        }
+    }
+
+    @Autowired
+    public UniqueVisitorCounter(VisitorSketchJdbcRepo visitorSketchJdbcRepo, UniqueVisitorProperties properties,
+                                ExecutionThreads executionThreads) {
+        this.visitorSketchJdbcRepo = visitorSketchJdbcRepo;
+        this.properties = properties;
+        this.executionThreads = executionThreads;
+        // Fails on startup rather than on the first click.
+        new HyperLogLog(properties.getPrecision());
+    }
+
+    @Override
+    public void onClick(ClickEvent event) {
+        long hash = hash(event.getClientIp(), event.getUserAgent());
+        long dayStart = ClickGranularity.DAY.bucketStart(event.getAccessTime());
+        offer(new SketchKey(event.getUrlId(), dayStart), hash);
+        offer(new SketchKey(event.getUrlId(), VisitorSketch.ALL_TIME), hash);
+    }
+
+    /**
+     * FNV-1a over the characters of the visitor, followed by the murmur3 finalizer, so that all
+     * 64 bits are well mixed without allocating a hasher per click.
+     */
+    private static long hash(String clientIp, String userAgent) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hash(hash, String.valueOf(clientIp));
+        // A zero character in between, so that "ab" and "c" differ from "a" and "bc".
+        hash *= 0x100000001b3L;
+        hash = hash(hash, String.valueOf(userAgent));
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void offer(SketchKey key, long hash) {
+        PendingSketch sketch = pending.get(key);
+        if (sketch == null) {
+            sketch = pending.computeIfAbsent(key, k -> new PendingSketch(properties.getPrecision()));
+        }
+        sketch.offer(hash);
+        while (sketch.dropped) {
+            // A flush may have dropped the sketch without seeing this offer.
+            sketch = pending.computeIfAbsent(key, k -> new PendingSketch(properties.getPrecision()));
+            sketch.offer(hash);
+        }
+    }
+
+    /**
+     * @return the relative standard error of all estimates
+     */
+    public double getStandardError() {
+        return new HyperLogLog(properties.getPrecision()).getStandardError();
+    }
+
+    /**
+     * @param urlId
+     * @return the estimated number of distinct visitors of a URL since it has been created
+     */
+    public long estimate(long urlId) {
+        return estimate(urlId, VisitorSketch.ALL_TIME, VisitorSketch.ALL_TIME);
+    }
+
+    /**
+     * @param urlId
+     * @param from the first day (UTC)
+     * @param to the last day (UTC)
+     * @return the estimated number of distinct visitors of a URL within a range of days
+     * @throws IllegalArgumentException if the range is empty or longer than the configured maximum
+     */
+    public long estimate(long urlId, LocalDate from, LocalDate to) {
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        if (days < 1 || days > properties.getMaxDays()) {
+            throw new IllegalArgumentException("The range has to span 1 to " + properties.getMaxDays() + " days");
+        }
+        return estimate(urlId, from.toEpochDay() * DAY_MILLIS, to.toEpochDay() * DAY_MILLIS);
+    }
+
+    private long estimate(long urlId, long fromDay, long toDay) {
+        HyperLogLog union = new HyperLogLog(properties.getPrecision());
+        for (byte[] registers : visitorSketchJdbcRepo.findRegisters(urlId, fromDay, toDay)) {
+            union.merge(registers);
+        }
+        if (fromDay == VisitorSketch.ALL_TIME) {
+            mergePending(union, new SketchKey(urlId, VisitorSketch.ALL_TIME));
+        } else {
+            for (long day = fromDay; day <= toDay; day += DAY_MILLIS) {
+                mergePending(union, new SketchKey(urlId, day));
+            }
+        }
+        return union.estimate();
+    }
+
+    private void mergePending(HyperLogLog union, SketchKey key) {
+        PendingSketch sketch = pending.get(key);
+        if (sketch != null) {
+            union.merge(sketch.sketch);
+        }
+    }
+
+    /**
+     * Merge all sketches which changed since the last flush into the visitor_sketch table
+     * and drop the ones which did not.
+     */
+    public synchronized void flush() {
+        List<SketchDelta> deltas = new ArrayList<>();
+        List<PendingSketch> flushed = new ArrayList<>();
+        pending.forEach((key, sketch) -> {
+            if (sketch.changed.getAndSet(false)) {
+                deltas.add(new SketchDelta(key.urlId(), key.dayStart(), sketch.sketch.toByteArray()));
+                flushed.add(sketch);
+            } else {
+                pending.computeIfPresent(key, (k, current) -> {
+                    // Marked first, so an offer which changes it is either seen here or sees the mark.
+                    current.dropped = true;
+                    if (current.changed.get()) {
+                        current.dropped = false;
+                        return current;
+                    }
+                    return null;
+                });
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            visitorSketchJdbcRepo.merge(deltas);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < deltas.size(); i++) {
+                SketchDelta delta = deltas.get(i);
+                PendingSketch flushedSketch = flushed.get(i);
+                pending.compute(new SketchKey(delta.urlId(), delta.dayStart()), (key, sketch) -> {
+                    if (sketch == null) {
+                        sketch = new PendingSketch(properties.getPrecision());
+                    }
+                    if (sketch != flushedSketch) {
+                        sketch.sketch.merge(delta.registers());
+                    }
+                    sketch.changed.set(true);
+                    return sketch;
+                });
+            }
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Failed to flush visitor sketches", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        long interval = properties.getFlushInterval().toMillis();
+        flusher = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("visitor-sketch-flusher"));
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
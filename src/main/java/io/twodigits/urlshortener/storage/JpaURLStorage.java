@@ -0,0 +1,149 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.repo.URLBatchRepo;
+import io.twodigits.urlshortener.repo.URLRepo;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Stores URLs in the urls table. Single URLs go through {@link URLRepo}, lists through the JDBC
+ * batches of {@link URLBatchRepo}; bulk reads bypass the persistence context. The listings of a user
+ * are served from the index on username and ID. The stats table has no foreign key to the urls
+ * table, so the clicks of a URL are deleted along with it.
+ */
+public class JpaURLStorage implements URLStorage {
+
+    private static final String SELECT_SQL =
+            "select id, long_url, short_url, username, redirect_type, cache_max_age, modified_at from urls";
+
+    private static final RowMapper<URL> URL_MAPPER = (rs, rowNum) -> {
+        String redirectType = rs.getString(5);
+        return new URL(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                redirectType == null ? null : RedirectType.valueOf(redirectType),
+                rs.getObject(6, Integer.class), rs.getObject(7, Long.class));
+    };
+
+    /**
+     * The number of short URLs looked up with one query
+     */
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
+    /**
+     * The number of URLs read with one query while streaming URLs. The streams are read in
+     * pages by ID rather than through a cursor, as H2 materializes a whole result before
+     * returning its first row whatever the fetch size.
+     */
+    private static final int STREAM_CHUNK_SIZE = 1_000;
+
+    private final URLRepo urlRepo;
+
+    private final URLBatchRepo urlBatchRepo;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public JpaURLStorage(URLRepo urlRepo, URLBatchRepo urlBatchRepo, JdbcTemplate jdbcTemplate,
+                         TransactionTemplate transactionTemplate) {
+        this.urlRepo = urlRepo;
+        this.urlBatchRepo = urlBatchRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public URL save(URL url) {
+        return urlRepo.save(url);
+    }
+
+    @Override
+    public List<URL> saveAll(List<URL> urls) {
+        return urlBatchRepo.insertAll(urls);
+    }
+
+    @Override
+    public Optional<URL> findById(long id) {
+        return urlRepo.findById(id);
+    }
+
+    @Override
+    public Optional<URL> findByShortUrl(String shortUrl) {
+        return urlRepo.findByShortUrl(shortUrl);
+    }
+
+    @Override
+    public List<URL> findByShortUrls(Collection<String> shortUrls) {
+        List<String> all = List.copyOf(shortUrls);
+        List<URL> found = new ArrayList<>(all.size());
+        for (int from = 0; from < all.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = all.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, all.size()));
+            String sql = SELECT_SQL + " where short_url in (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            found.addAll(jdbcTemplate.query(sql, URL_MAPPER, chunk.toArray()));
+        }
+        return found;
+    }
+
+    @Override
+    public List<URL> findByUsername(String username) {
+        return urlRepo.findByUsername(username);
+    }
+
+    @Override
+    public List<URL> findByUsername(String username, long afterId, int limit) {
+        return jdbcTemplate.query(SELECT_SQL + " where username = ? and id > ? order by id limit ?", URL_MAPPER,
+                username, afterId, limit);
+    }
+
+    @Override
+    public void forEachOfUser(String username, Consumer<URL> action) {
+        List<URL> page = findByUsername(username, 0, STREAM_CHUNK_SIZE);
+        while (!page.isEmpty()) {
+            page.forEach(action);
+            page = page.size() < STREAM_CHUNK_SIZE
+                    ? List.of()
+                    : findByUsername(username, page.get(page.size() - 1).getId(), STREAM_CHUNK_SIZE);
+        }
+    }
+
+    @Override
+    public long countByUsername(String username) {
+        return jdbcTemplate.queryForObject("select count(*) from urls where username = ?", Long.class, username);
+    }
+
+    @Override
+    public void deleteById(long id) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("delete from stats where short_url = ?", id);
+            urlRepo.deleteById(id);
+        });
+    }
+
+    @Override
+    public long count() {
+        return jdbcTemplate.queryForObject("select count(*) from urls", Long.class);
+    }
+
+    @Override
+    public void forEach(Consumer<URL> action) {
+        long after = 0;
+        List<URL> page;
+        do {
+            page = jdbcTemplate.query(SELECT_SQL + " where id > ? order by id limit ?", URL_MAPPER,
+                    after, STREAM_CHUNK_SIZE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == STREAM_CHUNK_SIZE);
+    }
+}
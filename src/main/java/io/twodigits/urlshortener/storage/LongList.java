@@ -0,0 +1,64 @@
+package io.twodigits.urlshortener.storage;
+
+import java.util.Arrays;
+
+/**
+ * A sorted set of longs in a growable array, without boxing.
+ */
+final class LongList {
+
+    private long[] values = new long[4];
+
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    long get(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param value
+     * @return the index of the first value greater than the given one, or the size if there is none
+     */
+    int indexAfter(long value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * @param value
+     * @return false if the value was present already
+     */
+    boolean add(long value) {
+        // IDs are mostly assigned in ascending order, so appending is the common case.
+        int index = size == 0 || values[size - 1] < value ? -size - 1 : Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param value
+     * @return false if the value was not present
+     */
+    boolean remove(long value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+}
@@ -0,0 +1,138 @@
+package io.twodigits.urlshortener.storage;
+
+import java.util.function.Consumer;
+
+/**
+ * An open-addressing hash map from positive long keys to values, without boxing the keys.
+ * Removal shifts the following entries back instead of leaving tombstones.
+ */
+final class LongObjectHashMap<V> {
+
+    private static final long FREE = 0;
+
+    private long[] keys;
+
+    private Object[] values;
+
+    private int mask;
+
+    private int size;
+
+    LongObjectHashMap(int expectedSize) {
+        int capacity = tableSize(expectedSize);
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) {
+                return (V) values[slot];
+            }
+            if (current == FREE) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return the previous value, or null
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Keys must be positive: " + key);
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length * 3 / 4) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value, or null
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int slot = slot(key);
+        while (keys[slot] != key) {
+            if (keys[slot] == FREE) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+        V removed = (V) values[slot];
+        // Move back every following entry of the cluster which would not be found past the gap.
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<V> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                action.accept((V) values[slot]);
+            }
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    static int tableSize(int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,553 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.config.StorageProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.URL;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A storage engine which holds all URLs in memory, for nodes which run without a relational database.
+ * <p>
+ * URLs are kept as immutable records in a map keyed by the primitive ID. Short URLs map to IDs
+ * without boxing, each user has a sorted array of the IDs of their URLs, and usernames are
+ * interned so that a user with many URLs holds the name once. Reads share a lock, writes are
+ * serialized.
+ * <p>
+ * Every change is appended to an {@link OperationLog} before it is applied. Periodically, and on
+ * close, the log is rotated and a snapshot of all URLs and of the next ID is written, after which the
+ * older logs are deleted. On open, the snapshot is loaded and the logs written since are replayed.
+ */
+@Slf4j
+public class MemoryURLStorage implements URLStorage, Closeable {
+
+    static final String SNAPSHOT_FILE = "snapshot.dat";
+
+    private static final Pattern LOG_FILE = Pattern.compile("oplog-(\\d+)\\.log");
+
+    private static final int MAGIC = 0x55524c53;
+
+    private static final int VERSION = 3;
+
+    /**
+     * The number of URLs of a user copied under one read lock while streaming them
+     */
+    private static final int LISTING_CHUNK_SIZE = 1_000;
+
+    private final Path directory;
+
+    private final StampedLock lock = new StampedLock();
+
+    private final LongObjectHashMap<StoredURL> urlsById;
+
+    private final ObjectLongHashMap<String> idsByShortUrl;
+
+    private final Map<String, LongList> idsByUsername = new HashMap<>();
+
+    private final Map<String, String> usernames = new HashMap<>();
+
+    /**
+     * The ID of the next new URL. It is never lowered, so the ID of a deleted URL is not handed out
+     * again; the snapshot records it and replaying the logged URLs raises it.
+     */
+    private long nextId = 1;
+
+    /**
+     * The generation of the current log; the snapshot holds all changes of older generations
+     */
+    private long generation;
+
+    private OperationLog operationLog;
+
+    private ScheduledExecutorService scheduler;
+
+    private MemoryURLStorage(Path directory, int initialCapacity) {
+        this.directory = directory;
+        this.urlsById = new LongObjectHashMap<>(initialCapacity);
+        this.idsByShortUrl = new ObjectLongHashMap<>(initialCapacity);
+    }
+
+    /**
+     * Load the URLs from the directory and start writing snapshots.
+     *
+     * @param properties
+     * @param executionThreads
+     * @return the open engine
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static MemoryURLStorage open(StorageProperties.Memory properties, ExecutionThreads executionThreads)
+            throws IOException {
+        MemoryURLStorage storage = new MemoryURLStorage(properties.getDirectory(), properties.getInitialCapacity());
+        storage.recover();
+        storage.scheduler = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("url-store-snapshot"));
+        long snapshotInterval = properties.getSnapshotInterval().toMillis();
+        storage.scheduler.scheduleWithFixedDelay(storage::snapshotQuietly, snapshotInterval, snapshotInterval,
+                TimeUnit.MILLISECONDS);
+        long syncInterval = properties.getSyncInterval().toMillis();
+        storage.scheduler.scheduleWithFixedDelay(storage::syncQuietly, syncInterval, syncInterval,
+                TimeUnit.MILLISECONDS);
+        return storage;
+    }
+
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            generation = readSnapshot(snapshot);
+        }
+        long changes = 0;
+        long lastGeneration = generation;
+        OperationLog.Handler handler = new OperationLog.Handler() {
+            @Override
+            public void put(StoredURL url) {
+                apply(url);
+            }
+
+            @Override
+            public void delete(long id) {
+                unapply(id);
+            }
+        };
+        for (Map.Entry<Long, Path> log : logFiles().entrySet()) {
+            if (log.getKey() >= generation) {
+                changes += OperationLog.replay(log.getValue(), handler);
+                lastGeneration = log.getKey();
+            }
+        }
+        generation = lastGeneration + 1;
+        operationLog = OperationLog.open(logFile(generation));
+        log.info("Loaded {} URLs from {} after replaying {} changes in {} ms", urlsById.size(), directory, changes,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Override
+    public URL save(URL url) {
+        long stamp = lock.writeLock();
+        try {
+            long id = url.getId() == null ? nextId : url.getId();
+            checkShortUrl(url.getShortUrl(), id);
+            StoredURL stored = new StoredURL(id, url);
+            try {
+                operationLog.put(stored);
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Failed to log URL " + id, e);
+            }
+            apply(stored);
+            url.setId(id);
+            return url;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<URL> saveAll(List<URL> urls) {
+        long stamp = lock.writeLock();
+        try {
+            List<StoredURL> stored = new ArrayList<>(urls.size());
+            Set<String> shortUrls = new HashSet<>();
+            long id = nextId;
+            for (URL url : urls) {
+                checkShortUrl(url.getShortUrl(), id);
+                if (url.getShortUrl() != null && !shortUrls.add(url.getShortUrl())) {
+                    throw new DataIntegrityViolationException("Short URL " + url.getShortUrl() + " is taken");
+                }
+                stored.add(new StoredURL(id++, url));
+            }
+            try {
+                operationLog.putAll(stored);
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Failed to log " + urls.size() + " URLs", e);
+            }
+            for (int i = 0; i < stored.size(); i++) {
+                apply(stored.get(i));
+                urls.get(i).setId(stored.get(i).id());
+            }
+            return urls;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Optional<URL> findById(long id) {
+        long stamp = lock.readLock();
+        try {
+            return Optional.ofNullable(urlsById.get(id)).map(StoredURL::toURL);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Optional<URL> findByShortUrl(String shortUrl) {
+        if (shortUrl == null) {
+            return Optional.empty();
+        }
+        long stamp = lock.readLock();
+        try {
+            long id = idsByShortUrl.get(shortUrl);
+            return id == ObjectLongHashMap.MISSING ? Optional.empty() : Optional.of(urlsById.get(id).toURL());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<URL> findByShortUrls(Collection<String> shortUrls) {
+        List<URL> found = new ArrayList<>(shortUrls.size());
+        long stamp = lock.readLock();
+        try {
+            for (String shortUrl : shortUrls) {
+                long id = shortUrl == null ? ObjectLongHashMap.MISSING : idsByShortUrl.get(shortUrl);
+                if (id != ObjectLongHashMap.MISSING) {
+                    found.add(urlsById.get(id).toURL());
+                }
+            }
+            return found;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<URL> findByUsername(String username) {
+        long stamp = lock.readLock();
+        try {
+            LongList ids = idsByUsername.get(username);
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+            List<URL> found = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                found.add(urlsById.get(ids.get(i)).toURL());
+            }
+            return found;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<URL> findByUsername(String username, long afterId, int limit) {
+        long stamp = lock.readLock();
+        try {
+            LongList ids = idsByUsername.get(username);
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+            int from = ids.indexAfter(afterId);
+            int to = (int) Math.min(ids.size(), (long) from + limit);
+            List<URL> found = new ArrayList<>(Math.max(to - from, 0));
+            for (int i = from; i < to; i++) {
+                found.add(urlsById.get(ids.get(i)).toURL());
+            }
+            return found;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void forEachOfUser(String username, Consumer<URL> action) {
+        // Page by page, so writers are not held up while the action runs.
+        List<URL> page = findByUsername(username, 0, LISTING_CHUNK_SIZE);
+        while (!page.isEmpty()) {
+            page.forEach(action);
+            page = page.size() < LISTING_CHUNK_SIZE
+                    ? List.of()
+                    : findByUsername(username, page.get(page.size() - 1).getId(), LISTING_CHUNK_SIZE);
+        }
+    }
+
+    @Override
+    public long countByUsername(String username) {
+        long stamp = lock.readLock();
+        try {
+            LongList ids = idsByUsername.get(username);
+            return ids == null ? 0 : ids.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void deleteById(long id) {
+        long stamp = lock.writeLock();
+        try {
+            if (urlsById.get(id) == null) {
+                return;
+            }
+            try {
+                operationLog.delete(id);
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Failed to log deletion of URL " + id, e);
+            }
+            unapply(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long count() {
+        long stamp = lock.readLock();
+        try {
+            return urlsById.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<URL> action) {
+        for (StoredURL url : copyAll()) {
+            action.accept(url.toURL());
+        }
+    }
+
+    /**
+     * Write a snapshot of all URLs and delete the logs it makes obsolete.
+     */
+    public synchronized void snapshot() throws IOException {
+        long start = System.nanoTime();
+        List<StoredURL> urls;
+        long snapshotGeneration;
+        long snapshotNextId;
+        long stamp = lock.writeLock();
+        try {
+            operationLog.close();
+            snapshotGeneration = ++generation;
+            operationLog = OperationLog.open(logFile(snapshotGeneration));
+            urls = copyAllLocked();
+            snapshotNextId = nextId;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        writeSnapshot(snapshotGeneration, snapshotNextId, urls);
+        for (Map.Entry<Long, Path> log : logFiles().entrySet()) {
+            if (log.getKey() < snapshotGeneration) {
+                Files.deleteIfExists(log.getValue());
+            }
+        }
+        log.info("Wrote snapshot of {} URLs in {} ms", urls.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        snapshot();
+        long stamp = lock.writeLock();
+        try {
+            operationLog.close();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to write URL snapshot, changes are kept in the operation log", e);
+        }
+    }
+
+    private void syncQuietly() {
+        OperationLog current = operationLog;
+        try {
+            current.sync();
+        } catch (ClosedChannelException e) {
+            // Rotated by a snapshot in the meantime, which forced it on close.
+        } catch (IOException e) {
+            log.warn("Failed to sync the operation log", e);
+        }
+    }
+
+    private void checkShortUrl(String shortUrl, long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("IDs must be positive: " + id);
+        }
+        if (shortUrl != null) {
+            long owner = idsByShortUrl.get(shortUrl);
+            if (owner != ObjectLongHashMap.MISSING && owner != id) {
+                throw new DataIntegrityViolationException("Short URL " + shortUrl + " is taken");
+            }
+        }
+    }
+
+    private String intern(String username) {
+        if (username == null) {
+            return null;
+        }
+        String canonical = usernames.putIfAbsent(username, username);
+        return canonical == null ? username : canonical;
+    }
+
+    /**
+     * Add or replace a URL in the maps; the caller holds the write lock or is recovering.
+     */
+    private void apply(StoredURL url) {
+        String username = intern(url.username());
+        if (username != url.username()) {
+            url = url.withUsername(username);
+        }
+        StoredURL previous = urlsById.put(url.id(), url);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (url.shortUrl() != null) {
+            idsByShortUrl.put(url.shortUrl(), url.id());
+        }
+        if (username != null) {
+            idsByUsername.computeIfAbsent(username, u -> new LongList()).add(url.id());
+        }
+        nextId = Math.max(nextId, url.id() + 1);
+    }
+
+    private void unapply(long id) {
+        StoredURL removed = urlsById.remove(id);
+        if (removed != null) {
+            unindex(removed);
+        }
+    }
+
+    private void unindex(StoredURL url) {
+        if (url.shortUrl() != null) {
+            idsByShortUrl.remove(url.shortUrl());
+        }
+        if (url.username() != null) {
+            LongList ids = idsByUsername.get(url.username());
+            if (ids != null && ids.remove(url.id()) && ids.size() == 0) {
+                idsByUsername.remove(url.username());
+                usernames.remove(url.username());
+            }
+        }
+    }
+
+    private List<StoredURL> copyAll() {
+        long stamp = lock.readLock();
+        try {
+            return copyAllLocked();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private List<StoredURL> copyAllLocked() {
+        List<StoredURL> urls = new ArrayList<>(urlsById.size());
+        urlsById.forEachValue(urls::add);
+        return urls;
+    }
+
+    private Path logFile(long logGeneration) {
+        return directory.resolve("oplog-" + logGeneration + ".log");
+    }
+
+    /**
+     * @return the log files in the directory by generation, oldest first
+     */
+    private Map<Long, Path> logFiles() throws IOException {
+        Map<Long, Path> logs = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    logs.put(Long.parseLong(matcher.group(1)), file);
+                }
+            });
+        }
+        return logs;
+    }
+
+    private void writeSnapshot(long snapshotGeneration, long snapshotNextId, List<StoredURL> urls) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshotGeneration);
+            out.writeLong(snapshotNextId);
+            out.writeInt(urls.size());
+            for (StoredURL url : urls) {
+                url.writeTo(out);
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the generation of the first log not contained in the snapshot
+     */
+    private long readSnapshot(Path snapshot) throws IOException {
+        try (InputStream file = Files.newInputStream(snapshot)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != VERSION) {
+                throw new IOException(snapshot + " is not a URL snapshot of version " + VERSION);
+            }
+            long snapshotGeneration = in.readLong();
+            nextId = Math.max(nextId, in.readLong());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                apply(StoredURL.readFrom(in));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new IOException(snapshot + " is damaged");
+            }
+            return snapshotGeneration;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.twodigits.urlshortener.storage;
+
+/**
+ * An open-addressing hash map from keys to long values, without boxing the values.
+ * Removal shifts the following entries back instead of leaving tombstones.
+ */
+final class ObjectLongHashMap<K> {
+
+    static final long MISSING = Long.MIN_VALUE;
+
+    private Object[] keys;
+
+    private long[] values;
+
+    private int mask;
+
+    private int size;
+
+    ObjectLongHashMap(int expectedSize) {
+        int capacity = LongObjectHashMap.tableSize(expectedSize);
+        keys = new Object[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the value, or {@link #MISSING}
+     */
+    long get(K key) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            Object current = keys[slot];
+            if (current == null) {
+                return MISSING;
+            }
+            if (current.equals(key)) {
+                return values[slot];
+            }
+        }
+    }
+
+    /**
+     * @return the previous value, or {@link #MISSING}
+     */
+    long put(K key, long value) {
+        int slot = slot(key);
+        while (keys[slot] != null) {
+            if (keys[slot].equals(key)) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length * 3 / 4) {
+            resize();
+        }
+        return MISSING;
+    }
+
+    /**
+     * @return the removed value, or {@link #MISSING}
+     */
+    long remove(K key) {
+        int slot = slot(key);
+        while (!key.equals(keys[slot])) {
+            if (keys[slot] == null) {
+                return MISSING;
+            }
+            slot = (slot + 1) & mask;
+        }
+        long removed = values[slot];
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = null;
+        size--;
+        return removed;
+    }
+
+    private void resize() {
+        Object[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private int slot(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,201 @@
+package io.twodigits.urlshortener.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of changes made to the memory engine since its last snapshot.
+ * <p>
+ * Every change is one frame of its length, a CRC32 and the operation, written with a single
+ * call, so a frame is either complete or missing its tail. Replaying stops at the first frame
+ * which is incomplete or fails its checksum and cuts the file there.
+ */
+@Slf4j
+final class OperationLog implements Closeable {
+
+    interface Handler {
+
+        void put(StoredURL url);
+
+        void delete(long id);
+    }
+
+    private static final byte DELETE = 2;
+
+    private static final byte PUT = 4;
+
+    private static final byte PUT_ALL = 5;
+
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    private static final int MAX_FRAME_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+    private final DataOutputStream out = new DataOutputStream(buffer);
+
+    private final CRC32 crc = new CRC32();
+
+    private OperationLog(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Open a log for appending, creating it if it does not exist.
+     *
+     * @param file
+     * @return the log
+     */
+    static OperationLog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        return new OperationLog(channel);
+    }
+
+    void put(StoredURL url) throws IOException {
+        begin(PUT);
+        url.writeTo(out);
+        commit();
+    }
+
+    /**
+     * Append a list of URLs as one frame, so that either all of them or none are replayed.
+     *
+     * @param urls
+     */
+    void putAll(List<StoredURL> urls) throws IOException {
+        begin(PUT_ALL);
+        out.writeInt(urls.size());
+        for (StoredURL url : urls) {
+            url.writeTo(out);
+        }
+        commit();
+    }
+
+    void delete(long id) throws IOException {
+        begin(DELETE);
+        out.writeLong(id);
+        commit();
+    }
+
+    /**
+     * Force the appended changes to disk.
+     */
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void begin(byte operation) throws IOException {
+        buffer.reset();
+        out.writeLong(0);
+        out.writeByte(operation);
+    }
+
+    private void commit() throws IOException {
+        byte[] frame = buffer.toByteArray();
+        int length = frame.length - FRAME_HEADER_SIZE;
+        crc.reset();
+        crc.update(frame, FRAME_HEADER_SIZE, length);
+        ByteBuffer bytes = ByteBuffer.wrap(frame);
+        bytes.putInt(0, length);
+        bytes.putInt(4, (int) crc.getValue());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Apply every complete change of a log to a handler.
+     *
+     * @param file
+     * @param handler
+     * @return the number of changes applied
+     */
+    static long replay(Path file, Handler handler) throws IOException {
+        long valid = 0;
+        long changes = 0;
+        CRC32 checksum = new CRC32();
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_FRAME_SIZE) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                int expected;
+                try {
+                    expected = in.readInt();
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(payload);
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                changes += apply(payload, handler);
+                valid += FRAME_HEADER_SIZE + length;
+            }
+        }
+        long size = Files.size(file);
+        if (valid < size) {
+            log.warn("Cutting {} bytes of incomplete changes off {}", size - valid, file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return changes;
+    }
+
+    private static int apply(byte[] payload, Handler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte operation = in.readByte();
+        switch (operation) {
+            case PUT -> handler.put(StoredURL.readFrom(in));
+            case DELETE -> handler.delete(in.readLong());
+            case PUT_ALL -> {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    handler.put(StoredURL.readFrom(in));
+                }
+                return count;
+            }
+            default -> throw new IOException("Unknown operation " + operation);
+        }
+        return 1;
+    }
+}
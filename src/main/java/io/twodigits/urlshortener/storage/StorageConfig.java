@@ -0,0 +1,38 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.config.StorageProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.repo.URLBatchRepo;
+import io.twodigits.urlshortener.repo.URLRepo;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+
+/**
+ * Selects the {@link URLStorage} engine with {@code urlshortener.storage.engine}.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "urlshortener.storage.engine", havingValue = "jpa", matchIfMissing = true)
+    public URLStorage jpaURLStorage(URLRepo urlRepo, URLBatchRepo urlBatchRepo, JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager) {
+        return new JpaURLStorage(urlRepo, urlBatchRepo, jdbcTemplate, new TransactionTemplate(transactionManager));
+    }
+
+    /**
+     * Closed when the context shuts down, which writes a final snapshot.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "urlshortener.storage.engine", havingValue = "memory")
+    public MemoryURLStorage memoryURLStorage(StorageProperties properties, ExecutionThreads executionThreads)
+            throws IOException {
+        return MemoryURLStorage.open(properties.getMemory(), executionThreads);
+    }
+}
@@ -0,0 +1,90 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The immutable form in which the memory engine holds a URL, and its binary encoding
+ * in the snapshot and the operation log. Strings are encoded with their length, the redirect
+ * status, the cache max age and the modification time with a marker for null.
+ */
+record StoredURL(long id, String longUrl, String shortUrl, String username,
+                 RedirectType redirectType, Integer cacheMaxAge, Long modifiedAt) {
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final int NULL_VALUE = -1;
+
+    StoredURL(long id, URL url) {
+        this(id, url.getLongUrl(), url.getShortUrl(), url.getUsername(), url.getRedirectType(), url.getCacheMaxAge(),
+                url.getModifiedAt());
+    }
+
+    StoredURL withUsername(String username) {
+        return new StoredURL(id, longUrl, shortUrl, username, redirectType, cacheMaxAge, modifiedAt);
+    }
+
+    URL toURL() {
+        return new URL(id, longUrl, shortUrl, username, redirectType, cacheMaxAge, modifiedAt);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(id);
+        writeString(out, longUrl);
+        writeString(out, shortUrl);
+        writeString(out, username);
+        out.writeShort(redirectType == null ? NULL_VALUE : redirectType.getStatus());
+        out.writeInt(cacheMaxAge == null ? NULL_VALUE : cacheMaxAge);
+        out.writeLong(modifiedAt == null ? NULL_VALUE : modifiedAt);
+    }
+
+    /**
+     * @param in
+     * @return the URL
+     */
+    static StoredURL readFrom(DataInput in) throws IOException {
+        long id = in.readLong();
+        String longUrl = readString(in);
+        String shortUrl = readString(in);
+        String username = readString(in);
+        short status = in.readShort();
+        int cacheMaxAge = in.readInt();
+        long modifiedAt = in.readLong();
+        RedirectType redirectType;
+        try {
+            redirectType = status == NULL_VALUE ? null : RedirectType.ofStatus(status);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return new StoredURL(id, longUrl, shortUrl, username, redirectType,
+                cacheMaxAge == NULL_VALUE ? null : cacheMaxAge, modifiedAt == NULL_VALUE ? null : modifiedAt);
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > 1 << 20) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
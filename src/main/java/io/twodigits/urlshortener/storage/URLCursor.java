@@ -0,0 +1,43 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.model.URL;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The position after the last URL of a page of a user's URLs. URLs are listed in the order
+ * of their IDs, so the next page starts right after this ID without an offset scan.
+ */
+@Value
+public class URLCursor {
+
+    long id;
+
+    public static URLCursor after(URL url) {
+        return new URLCursor(url.getId());
+    }
+
+    /**
+     * @return an opaque, URL-safe representation of the cursor
+     */
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse a cursor returned by {@link #encode()}.
+     *
+     * @param cursor
+     * @return the cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static URLCursor decode(String cursor) {
+        try {
+            return new URLCursor(Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
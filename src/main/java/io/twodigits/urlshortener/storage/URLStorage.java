@@ -0,0 +1,93 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.model.URL;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Where URLs are stored. The service and the components deriving data from the stored URLs
+ * only talk to this interface; the engine behind it is selected with
+ * {@code urlshortener.storage.engine}.
+ * <p>
+ * URLs returned by an engine are copies which the caller may keep or change; changes only
+ * take effect when the URL is saved again. A short URL which is already taken by another URL
+ * is rejected with a {@link org.springframework.dao.DataIntegrityViolationException}.
+ */
+public interface URLStorage {
+
+    /**
+     * Store a URL, assigning an ID if it has none.
+     *
+     * @param url
+     * @return the stored URL with its ID
+     */
+    URL save(URL url);
+
+    /**
+     * Store a list of new URLs, assigning their IDs. If any of them cannot be stored,
+     * none of them are.
+     *
+     * @param urls
+     * @return the stored URLs with their IDs
+     */
+    List<URL> saveAll(List<URL> urls);
+
+    Optional<URL> findById(long id);
+
+    Optional<URL> findByShortUrl(String shortUrl);
+
+    /**
+     * @param shortUrls
+     * @return the stored URLs among the short URLs, in no particular order
+     */
+    List<URL> findByShortUrls(Collection<String> shortUrls);
+
+    /**
+     * @param username
+     * @return the URLs of the user, ordered by ID
+     */
+    List<URL> findByUsername(String username);
+
+    /**
+     * Get a page of the URLs of a user. Pages are keyed by the last ID of the previous page,
+     * so fetching a page costs the same however far into the listing it is.
+     *
+     * @param username
+     * @param afterId the last ID of the previous page, 0 for the first page
+     * @param limit the maximum number of URLs
+     * @return the URLs of the user with an ID above afterId, ordered by ID
+     */
+    List<URL> findByUsername(String username, long afterId, int limit);
+
+    /**
+     * Pass the URLs of a user to an action in the order of their IDs, without holding all of
+     * them in memory at once.
+     *
+     * @param username
+     * @param action
+     */
+    void forEachOfUser(String username, Consumer<URL> action);
+
+    /**
+     * @param username
+     * @return the number of URLs of the user
+     */
+    long countByUsername(String username);
+
+    void deleteById(long id);
+
+    /**
+     * @return the number of stored URLs
+     */
+    long count();
+
+    /**
+     * Pass every stored URL to an action, without holding all of them in memory at once.
+     *
+     * @param action
+     */
+    void forEach(Consumer<URL> action);
+}
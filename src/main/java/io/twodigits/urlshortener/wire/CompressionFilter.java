@@ -0,0 +1,567 @@
+package io.twodigits.urlshortener.wire;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+import io.twodigits.urlshortener.config.CompressionProperties;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses responses with zstd or gzip, whichever of the two the client prefers; zstd when it
+ * likes both as much, since it compresses better at a lower cost.
+ * <p>
+ * The first {@link CompressionProperties#getMinResponseSize()} bytes of a response are held back,
+ * flushes included, so responses smaller than that are sent as they are and with their length.
+ * Larger responses are compressed as they are written, and a flush sends what was compressed so
+ * far, so streamed responses stay streamed. Responses which are already encoded, are partial or
+ * have a strong entity tag, which promises the bytes sent, are never compressed. Neither are
+ * responses written without blocking, as the encoders cannot wait for the container to be ready.
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+
+    private static final String RESPONSE_ATTRIBUTE = CompressionFilter.class.getName() + ".RESPONSE";
+
+    /**
+     * A content coding the filter can apply
+     */
+    enum Coding {
+        ZSTD("zstd"),
+        GZIP("gzip");
+
+        private final String token;
+
+        Coding(String token) {
+            this.token = token;
+        }
+
+        String getToken() {
+            return token;
+        }
+    }
+
+    private final List<MimeType> mimeTypes;
+
+    private final int minResponseSize;
+
+    private final int gzipLevel;
+
+    private final int zstdLevel;
+
+    private final boolean zstdAvailable;
+
+    public CompressionFilter(CompressionProperties properties) {
+        this.mimeTypes = properties.getMimeTypes().stream().map(MimeType::valueOf).toList();
+        this.minResponseSize = (int) Math.min(properties.getMinResponseSize().toBytes(), Integer.MAX_VALUE);
+        this.gzipLevel = properties.getGzipLevel();
+        this.zstdLevel = properties.getZstdLevel();
+        this.zstdAvailable = isZstdAvailable();
+    }
+
+    /**
+     * @return whether the native zstd library could be loaded on this platform
+     */
+    static boolean isZstdAvailable() {
+        try {
+            Native.load();
+            return true;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Streaming responses are written after the request has been handed off, and finished
+     * in the dispatch ending it.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return "HEAD".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        CompressingResponse compressing = (CompressingResponse) request.getAttribute(RESPONSE_ATTRIBUTE);
+        if (compressing == null) {
+            compressing = new CompressingResponse(response, negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING)));
+        }
+        try {
+            filterChain.doFilter(request, compressing);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.setAttribute(RESPONSE_ATTRIBUTE, compressing);
+            } else {
+                request.removeAttribute(RESPONSE_ATTRIBUTE);
+                compressing.finish();
+            }
+        }
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding header, null if there is none
+     * @return the coding to compress with, null to send the response as it is
+     */
+    Coding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double zstd = -1;
+        double gzip = -1;
+        double any = -1;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            switch (parts[0].trim().toLowerCase(Locale.ROOT)) {
+                case "zstd" -> zstd = quality;
+                case "gzip", "x-gzip" -> gzip = quality;
+                case "*" -> any = quality;
+                default -> {
+                }
+            }
+        }
+        zstd = zstdAvailable ? (zstd < 0 ? any : zstd) : 0;
+        gzip = gzip < 0 ? any : gzip;
+        if (zstd > 0 && zstd >= gzip) {
+            return Coding.ZSTD;
+        }
+        return gzip > 0 ? Coding.GZIP : null;
+    }
+
+    /**
+     * Holds back the start of the body until it knows whether to compress it.
+     */
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final Coding coding;
+
+        /**
+         * The start of the body, null once decided
+         */
+        private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        /**
+         * Where the body goes once decided
+         */
+        private OutputStream target;
+
+        private Sink sink;
+
+        private OutputStream encoder;
+
+        private long contentLength = -1;
+
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        /**
+         * The stream of the container once the body is written without blocking
+         */
+        private ServletOutputStream nonBlocking;
+
+        CompressingResponse(HttpServletResponse response, Coding coding) {
+            super(response);
+            this.coding = coding;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            return body();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(body(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private ServletOutputStream body() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        CompressingResponse.this.write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        CompressingResponse.this.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        CompressingResponse.this.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return nonBlocking == null || nonBlocking.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        try {
+                            writeWithoutBlocking(listener);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (target == null) {
+                contentLength = len;
+            } else if (encoder == null) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            flush();
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return target != null && super.isCommitted();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            discard();
+            target = null;
+            pending = new ByteArrayOutputStream();
+            contentLength = -1;
+            outputStream = null;
+            writer = null;
+            nonBlocking = null;
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (target == null) {
+                pending.reset();
+            } else if (encoder != null) {
+                discard();
+                startEncoder();
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            passThrough();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            passThrough();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            passThrough();
+            super.sendRedirect(location);
+        }
+
+        private void write(byte[] b, int off, int len) throws IOException {
+            if (target != null) {
+                target.write(b, off, len);
+                return;
+            }
+            pending.write(b, off, len);
+            if (pending.size() >= minResponseSize) {
+                decide(false);
+            }
+        }
+
+        private void flush() throws IOException {
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        /**
+         * Send the body written so far and all of the rest as it is, through the stream of the
+         * container, which calls the listener when it can be written to.
+         */
+        private void writeWithoutBlocking(WriteListener listener) throws IOException {
+            if (encoder != null) {
+                throw new IllegalStateException("A compressed body cannot be written without blocking");
+            }
+            if (target == null) {
+                if (isCompressible() && !varies()) {
+                    super.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                }
+                if (contentLength >= 0) {
+                    super.setContentLengthLong(contentLength);
+                }
+                target = super.getOutputStream();
+                // Written while still blocking, before the listener is set
+                pending.writeTo(target);
+                pending = null;
+            }
+            nonBlocking = super.getOutputStream();
+            nonBlocking.setWriteListener(listener);
+        }
+
+        /**
+         * Send the body written so far and all of the rest either compressed or as it is.
+         *
+         * @param complete whether the whole body has been written
+         */
+        private void decide(boolean complete) throws IOException {
+            long length = contentLength >= 0 ? contentLength : complete ? pending.size() : -1;
+            boolean compressible = isCompressible();
+            if (compressible && !varies()) {
+                super.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (compressible && coding != null && (length < 0 || length >= minResponseSize)) {
+                super.setHeader(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+                startEncoder();
+            } else {
+                if (length > 0 || contentLength >= 0) {
+                    super.setContentLengthLong(length);
+                }
+                target = super.getOutputStream();
+            }
+            pending.writeTo(target);
+            pending = null;
+        }
+
+        private boolean isCompressible() {
+            int status = getStatus();
+            if (status < 200 || status == SC_NO_CONTENT || status == SC_PARTIAL_CONTENT || status == SC_NOT_MODIFIED) {
+                return false;
+            }
+            if (getHeader(HttpHeaders.CONTENT_ENCODING) != null || getHeader(HttpHeaders.CONTENT_RANGE) != null) {
+                return false;
+            }
+            String eTag = getHeader(HttpHeaders.ETAG);
+            if (eTag != null && !eTag.startsWith("W/")) {
+                return false;
+            }
+            String contentType = getContentType();
+            if (contentType == null) {
+                return false;
+            }
+            try {
+                MimeType mimeType = MimeType.valueOf(contentType);
+                return mimeTypes.stream().anyMatch(mimeType::equalsTypeAndSubtype);
+            } catch (InvalidMimeTypeException e) {
+                return false;
+            }
+        }
+
+        private boolean varies() {
+            for (String vary : getHeaders(HttpHeaders.VARY)) {
+                for (String name : vary.split(",")) {
+                    if (name.trim().equals("*") || name.trim().equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void startEncoder() {
+            try {
+                sink = new Sink(super.getOutputStream());
+                encoder = switch (coding) {
+                    case ZSTD -> new ZstdOutputStream(sink, zstdLevel);
+                    case GZIP -> new GZIPOutputStream(sink, 8192, true) {
+                        {
+                            def.setLevel(gzipLevel);
+                        }
+                    };
+                };
+                target = encoder;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not start " + coding.getToken() + " compression", e);
+            }
+        }
+
+        /**
+         * Drop the body compressed so far and release the encoder.
+         */
+        private void discard() {
+            if (encoder == null) {
+                return;
+            }
+            sink.discard();
+            try {
+                encoder.close();
+            } catch (IOException ignored) {
+                // Nothing was written anywhere.
+            }
+            encoder = null;
+            sink = null;
+        }
+
+        /**
+         * Let an error or a redirect through as the servlet container writes it.
+         */
+        private void passThrough() throws IOException {
+            if (super.isCommitted()) {
+                return;
+            }
+            discard();
+            pending = null;
+            target = super.getOutputStream();
+        }
+
+        /**
+         * Send what is still held back and end the compressed body.
+         */
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                decide(true);
+            }
+            if (encoder != null) {
+                encoder.close();
+                encoder = null;
+            }
+        }
+    }
+
+    /**
+     * The stream an encoder writes to, which it may not close and which can be told to drop
+     * everything written to it.
+     */
+    private static final class Sink extends OutputStream {
+
+        private final OutputStream out;
+
+        private boolean discarding;
+
+        Sink(OutputStream out) {
+            this.out = out;
+        }
+
+        void discard() {
+            discarding = true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!discarding) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!discarding) {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!discarding) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            // The servlet container closes the response.
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.twodigits.urlshortener.wire;
+
+import org.springframework.http.MediaType;
+
+/**
+ * The encodings the web service reads and writes its data in.
+ * <p>
+ * CBOR and Smile carry the same data as JSON without repeating it as text: numbers are binary
+ * and Smile refers back to field names and short strings it has already written.
+ */
+public enum WireFormat {
+
+    JSON(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON),
+    CBOR(MediaType.APPLICATION_CBOR, new MediaType("application", "cbor-seq")),
+    SMILE(new MediaType("application", "x-jackson-smile"), new MediaType("application", "x-jackson-smile"));
+
+    private final MediaType mediaType;
+
+    private final MediaType sequenceMediaType;
+
+    WireFormat(MediaType mediaType, MediaType sequenceMediaType) {
+        this.mediaType = mediaType;
+        this.sequenceMediaType = sequenceMediaType;
+    }
+
+    /**
+     * @return the media type of a single value
+     */
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return the media type of a stream of values written one after another
+     */
+    public MediaType getSequenceMediaType() {
+        return sequenceMediaType;
+    }
+}
@@ -0,0 +1,42 @@
+package io.twodigits.urlshortener.wire;
+
+import io.twodigits.urlshortener.config.CompressionProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Lets every endpoint read and write the binary {@link WireFormat}s next to JSON, chosen by
+ * the Content-Type and Accept headers, and compresses responses.
+ * <p>
+ * The message converters replace the ones Spring MVC registers by itself, which would be
+ * configured apart from the application's JSON mapper.
+ */
+@Configuration
+public class WireFormatConfig {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(WireFormats wireFormats) {
+        return new MappingJackson2CborHttpMessageConverter(wireFormats.mapperFor(WireFormat.CBOR));
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(WireFormats wireFormats) {
+        return new MappingJackson2SmileHttpMessageConverter(wireFormats.mapperFor(WireFormat.SMILE));
+    }
+
+    /**
+     * Runs early, so what the later filters write is compressed as well.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "urlshortener.compression.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<CompressionFilter> compressionFilter(CompressionProperties properties) {
+        FilterRegistrationBean<CompressionFilter> registration = new FilterRegistrationBean<>(new CompressionFilter(properties));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+}
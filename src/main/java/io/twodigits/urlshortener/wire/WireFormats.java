@@ -0,0 +1,105 @@
+package io.twodigits.urlshortener.wire;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The object mappers of the {@link WireFormat}s and the choice between them.
+ * <p>
+ * The binary mappers are copies of the application's JSON mapper, so every format writes
+ * the same fields with the same modules and features.
+ */
+@Component
+public class WireFormats {
+
+    private final Map<WireFormat, ObjectMapper> mappers = new EnumMap<>(WireFormat.class);
+
+    @Autowired
+    public WireFormats(ObjectMapper objectMapper) {
+        mappers.put(WireFormat.JSON, objectMapper);
+        mappers.put(WireFormat.CBOR, objectMapper.copyWith(new CBORFactory()));
+        mappers.put(WireFormat.SMILE, objectMapper.copyWith(new SmileFactory()));
+    }
+
+    /**
+     * @param format
+     * @return the object mapper reading and writing the format
+     */
+    public ObjectMapper mapperFor(WireFormat format) {
+        return mappers.get(format);
+    }
+
+    /**
+     * Choose the format of a response by the Accept header of its request. The format with the
+     * highest quality wins, where the quality of a format is the one of the most specific media
+     * range including it; JSON wins ties.
+     *
+     * @param accept the Accept header, null if there is none
+     * @return the format to answer in, JSON if the client accepts none or the header is invalid
+     */
+    public WireFormat negotiate(String accept) {
+        if (!StringUtils.hasText(accept)) {
+            return WireFormat.JSON;
+        }
+        List<MediaType> ranges;
+        try {
+            ranges = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return WireFormat.JSON;
+        }
+        WireFormat best = WireFormat.JSON;
+        double bestQuality = 0;
+        for (WireFormat format : WireFormat.values()) {
+            double quality = qualityOf(format.getMediaType(), ranges);
+            if (quality > bestQuality) {
+                best = format;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param contentType the Content-Type header of a request, null if there is none
+     * @return the format of a request body holding a sequence of values, JSON unless it is a binary one
+     */
+    public WireFormat ofSequence(String contentType) {
+        if (StringUtils.hasText(contentType)) {
+            try {
+                MediaType mediaType = MediaType.parseMediaType(contentType);
+                for (WireFormat format : WireFormat.values()) {
+                    if (format.getSequenceMediaType().equalsTypeAndSubtype(mediaType)) {
+                        return format;
+                    }
+                }
+            } catch (InvalidMediaTypeException e) {
+                return WireFormat.JSON;
+            }
+        }
+        return WireFormat.JSON;
+    }
+
+    private static double qualityOf(MediaType mediaType, List<MediaType> ranges) {
+        MediaType match = null;
+        for (MediaType range : ranges) {
+            if (range.includes(mediaType) && (match == null || specificityOf(range) > specificityOf(match))) {
+                match = range;
+            }
+        }
+        return match == null ? 0 : match.getQualityValue();
+    }
+
+    private static int specificityOf(MediaType range) {
+        return range.isWildcardType() ? 0 : range.isWildcardSubtype() ? 1 : 2;
+    }
+}
@@ -0,0 +1,92 @@
+package io.twodigits.urlshortener.admission;
+
+import io.twodigits.urlshortener.config.AdmissionProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private AdaptiveConcurrencyLimit limit;
+
+    @BeforeEach
+    public void setUp() {
+        AdmissionProperties.Concurrency properties = new AdmissionProperties.Concurrency();
+        properties.setInitialLimit(20);
+        properties.setMinLimit(4);
+        properties.setMaxLimit(100);
+        limit = new AdaptiveConcurrencyLimit(properties);
+    }
+
+    /**
+     * Fills the limit and completes all requests with the given latency.
+     */
+    private void window(long latencyNanos) {
+        int admitted = 0;
+        while (limit.tryAcquire()) {
+            admitted++;
+        }
+        for (int i = 0; i < admitted; i++) {
+            limit.release(latencyNanos);
+        }
+        limit.adjust();
+    }
+
+    @Test
+    void tryAcquire_RejectsBeyondLimit() {
+        // WHEN
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+
+        // THEN
+        assertFalse(limit.tryAcquire());
+        limit.release(FAST);
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    void adjust_GrowsWhileLatencyHolds() {
+        // WHEN
+        for (int i = 0; i < 20; i++) {
+            window(FAST);
+        }
+
+        // THEN
+        assertTrue(limit.getLimit() > 20, "limit " + limit.getLimit());
+    }
+
+    @Test
+    void adjust_ShrinksWhenLatencyGrows() {
+        // GIVEN
+        window(FAST);
+        int before = limit.getLimit();
+
+        // WHEN
+        for (int i = 0; i < 20; i++) {
+            window(FAST * 10);
+        }
+
+        // THEN
+        assertTrue(limit.getLimit() < before, "limit " + limit.getLimit());
+        assertTrue(limit.getLimit() >= 4);
+    }
+
+    @Test
+    void adjust_DoesNotGrowWhenLimitIsNotReached() {
+        // WHEN only a single request is ever in flight
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(FAST);
+            limit.adjust();
+        }
+
+        // THEN
+        assertEquals(20, limit.getLimit());
+    }
+}
@@ -0,0 +1,90 @@
+package io.twodigits.urlshortener.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketsTest {
+
+    @Test
+    void tryAcquire_AdmitsBurstThenRate() throws InterruptedException {
+        // GIVEN
+        TokenBuckets buckets = new TokenBuckets(1024, 10, 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, buckets.tryAcquire("10.0.0.1"));
+        }
+
+        // WHEN
+        long wait = buckets.tryAcquire("10.0.0.1");
+        Thread.sleep(wait / 1_000_000 + 1);
+
+        // THEN
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100), "wait " + wait);
+        assertEquals(0, buckets.tryAcquire("10.0.0.1"));
+        assertEquals(0, buckets.tryAcquire("10.0.0.2"));
+    }
+
+    @Test
+    void tryAcquire_ChargesEveryTokenOfABatch() {
+        // GIVEN a rate too low to refill during the test
+        TokenBuckets buckets = new TokenBuckets(1024, 0.001, 5);
+
+        // WHEN a batch twice the burst is taken from a full bucket
+        long batch = buckets.tryAcquire("10.0.0.1", 10);
+
+        // THEN the bucket stays empty until the whole batch is paid for
+        assertEquals(0, batch);
+        long wait = buckets.tryAcquire("10.0.0.1");
+        assertTrue(wait > TimeUnit.SECONDS.toNanos(5_000), "wait " + wait);
+        assertEquals(0, buckets.tryAcquire("10.0.0.2"));
+        assertTrue(buckets.tryAcquire("10.0.0.2", 5) > 0);
+        assertEquals(0, buckets.tryAcquire("10.0.0.2", 4));
+    }
+
+    @Test
+    void release_GivesBackTokensOfARequestTurnedAway() {
+        // GIVEN a rate too low to refill during the test
+        TokenBuckets buckets = new TokenBuckets(1024, 0.001, 5);
+        assertEquals(0, buckets.tryAcquire("Kathy", 3));
+
+        // WHEN
+        buckets.release("Kathy", 3);
+
+        // THEN the whole burst is available again
+        assertEquals(0, buckets.tryAcquire("Kathy", 5));
+        assertTrue(buckets.tryAcquire("Kathy") > 0);
+    }
+
+    @Test
+    void tryAcquire_NeverAdmitsMoreThanBurstConcurrently() throws Exception {
+        // GIVEN a rate too low to refill while the threads run
+        TokenBuckets buckets = new TokenBuckets(16, 0.001, 100);
+        AtomicInteger admitted = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+
+        // WHEN
+        Future<?>[] futures = new Future<?>[8];
+        for (int t = 0; t < futures.length; t++) {
+            futures[t] = threads.submit(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    if (buckets.tryAcquire("campaign") == 0) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        threads.shutdown();
+
+        // THEN
+        assertEquals(100, admitted.get());
+    }
+}
@@ -0,0 +1,58 @@
+package io.twodigits.urlshortener.cache;
+
+import io.twodigits.urlshortener.config.RedirectCacheProperties;
+import io.twodigits.urlshortener.model.URL;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedirectCacheTest {
+
+    private final RedirectCache redirectCache = new RedirectCache(new RedirectCacheProperties());
+
+    private static URL url(String shortUrl, String longUrl) {
+        URL url = new URL();
+        url.setId(1L);
+        url.setShortUrl(shortUrl);
+        url.setLongUrl(longUrl);
+        return url;
+    }
+
+    @Test
+    void putIfAbsent_StoresStateUnchangedSinceStamp() {
+        // GIVEN
+        long stamp = redirectCache.stamp("abc");
+
+        // WHEN
+        redirectCache.putIfAbsent(url("abc", "https://example.com/read"), stamp);
+
+        // THEN
+        assertEquals("https://example.com/read", redirectCache.getIfPresent("abc").map(URL::getLongUrl).orElse(null));
+    }
+
+    @Test
+    void putIfAbsent_SkipsStateInvalidatedWhileRead() {
+        // GIVEN
+        long stamp = redirectCache.stamp("abc");
+        redirectCache.invalidate("abc");
+
+        // WHEN
+        redirectCache.putIfAbsent(url("abc", "https://example.com/deleted"), stamp);
+
+        // THEN
+        assertTrue(redirectCache.getIfPresent("abc").isEmpty());
+    }
+
+    @Test
+    void putIfAbsent_KeepsStateChangedWhileRead() {
+        // GIVEN
+        long stamp = redirectCache.stamp("abc");
+        redirectCache.put(url("abc", "https://example.com/new"));
+
+        // WHEN
+        redirectCache.putIfAbsent(url("abc", "https://example.com/old"), stamp);
+
+        // THEN
+        assertEquals("https://example.com/new", redirectCache.getIfPresent("abc").map(URL::getLongUrl).orElse(null));
+    }
+}
@@ -0,0 +1,131 @@
+package io.twodigits.urlshortener.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.RedirectCacheProperties;
+import io.twodigits.urlshortener.config.WarmStartProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.repo.URLRepo;
+import io.twodigits.urlshortener.storage.URLStorage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = "urlshortener.warm-start.file=target/warm-start/redirect-cache.snapshot")
+class RedirectCacheWarmerTest {
+
+    @Autowired
+    private RedirectCacheWarmer redirectCacheWarmer;
+
+    @Autowired
+    private RedirectCache redirectCache;
+
+    @Autowired
+    private URLRepo urlRepo;
+
+    private URL store(String shortUrl) {
+        URL url = new URL();
+        url.setLongUrl("https://reddit.com/" + shortUrl);
+        url.setShortUrl(shortUrl);
+        return urlRepo.save(url);
+    }
+
+    @Test
+    void load_RestoresSnapshotOfStoredLinks() throws IOException {
+        // GIVEN
+        URL kept = store("warmKept");
+        URL deleted = store("warmDeleted");
+        redirectCache.put(kept);
+        redirectCache.put(deleted);
+        assertTrue(redirectCacheWarmer.snapshot() >= 2);
+        urlRepo.delete(deleted);
+        redirectCache.invalidate("warmKept");
+        redirectCache.invalidate("warmDeleted");
+
+        // WHEN
+        redirectCacheWarmer.load();
+
+        // THEN
+        assertEquals(kept.getLongUrl(), redirectCache.getIfPresent("warmKept").orElseThrow().getLongUrl());
+        assertTrue(redirectCache.getIfPresent("warmDeleted").isEmpty());
+        assertEquals(Status.UP, redirectCacheWarmer.health().getStatus());
+    }
+
+    @Test
+    void load_KeepsLinksCachedSinceTheStart() throws IOException {
+        // GIVEN
+        URL url = store("warmChanged");
+        redirectCache.put(url);
+        assertTrue(redirectCacheWarmer.snapshot() >= 1);
+        // Changed after the load has read the stored state.
+        url.setLongUrl("https://reddit.com/changed");
+        redirectCache.put(url);
+
+        // WHEN
+        redirectCacheWarmer.load();
+
+        // THEN
+        assertEquals("https://reddit.com/changed", redirectCache.getIfPresent("warmChanged").orElseThrow().getLongUrl());
+    }
+
+    @Test
+    void load_SkipsLinksDeletedWhileTheyAreRead() throws Exception {
+        // GIVEN
+        URL url = new URL();
+        url.setId(1L);
+        url.setShortUrl("warmRaced");
+        url.setLongUrl("https://reddit.com/raced");
+        WarmStartProperties properties = new WarmStartProperties();
+        properties.setFile(Path.of("target", "warm-start", "raced.snapshot"));
+        new RedirectCacheSnapshot(Instant.now(), List.of(url)).write(properties.getFile());
+        RedirectCache cache = new RedirectCache(new RedirectCacheProperties());
+        URLStorage urlStorage = mock(URLStorage.class);
+        when(urlStorage.findByShortUrls(anyCollection())).thenAnswer(invocation -> {
+            // Deleted after the storage has returned it.
+            cache.invalidate("warmRaced");
+            return List.of(url);
+        });
+        RedirectCacheWarmer warmer = new RedirectCacheWarmer(cache, urlStorage, properties,
+                new ExecutionThreads(new ExecutionProperties()), new SimpleMeterRegistry());
+
+        // WHEN
+        warmer.start();
+        for (int i = 0; i < 100 && warmer.isLoading(); i++) {
+            Thread.sleep(50);
+        }
+        warmer.stop();
+
+        // THEN
+        assertFalse(warmer.isLoading());
+        assertTrue(cache.getIfPresent("warmRaced").isEmpty());
+    }
+
+    @Test
+    void read_RejectsDamagedSnapshot() throws IOException {
+        // GIVEN
+        Path file = Path.of("target", "warm-start", "damaged.snapshot");
+        URL url = new URL();
+        url.setId(1L);
+        url.setShortUrl("abc");
+        url.setLongUrl("https://reddit.com");
+        new RedirectCacheSnapshot(Instant.now(), List.of(url)).write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 10] ^= 1;
+        Files.write(file, bytes);
+
+        // WHEN / THEN
+        assertThrows(IOException.class, () -> RedirectCacheSnapshot.read(file));
+    }
+}
@@ -0,0 +1,47 @@
+package io.twodigits.urlshortener.cache;
+
+import io.twodigits.urlshortener.config.UserCountCacheProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserUrlCountsTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final UserUrlCounts userUrlCounts = new UserUrlCounts(new UserCountCacheProperties(), nanos::get);
+
+    @Test
+    void add_DoesNotExtendLifetimeOfCount() {
+        // GIVEN
+        AtomicLong loads = new AtomicLong();
+        userUrlCounts.get("kathy", user -> loads.incrementAndGet() * 10);
+
+        // WHEN the user keeps creating URLs until the count has been cached longer than its lifetime
+        for (int minute = 0; minute < 11; minute++) {
+            nanos.addAndGet(Duration.ofMinutes(1).toNanos());
+            userUrlCounts.add("kathy", 1);
+        }
+
+        // THEN
+        assertEquals(20, userUrlCounts.get("kathy", user -> loads.incrementAndGet() * 10));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void add_ChangesCachedCountOnly() {
+        // GIVEN
+        userUrlCounts.get("kathy", user -> 3);
+
+        // WHEN
+        userUrlCounts.add("kathy", -1);
+        userUrlCounts.add("bob", 1);
+
+        // THEN
+        assertEquals(2, userUrlCounts.get("kathy", user -> 99));
+        assertEquals(7, userUrlCounts.get("bob", user -> 7));
+    }
+}
@@ -0,0 +1,249 @@
+package io.twodigits.urlshortener.clicklog;
+
+import io.twodigits.urlshortener.config.ClickStoreProperties;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URLStatsView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedClickLogTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private final ExecutionThreads executionThreads = new ExecutionThreads(new ExecutionProperties());
+
+    private ClickStoreProperties.Log properties;
+
+    private SegmentedClickLog clickLog;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        properties = new ClickStoreProperties.Log();
+        properties.setDirectory(directory);
+        properties.setSegmentSize(DataSize.ofBytes(1024));
+        properties.setCompactionInterval(Duration.ofHours(1));
+        clickLog = SegmentedClickLog.open(properties, executionThreads);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        clickLog.close();
+    }
+
+    private static ClickEvent click(long urlId, long second, String userAgent) {
+        return new ClickEvent(urlId, "short" + urlId, START + second * 1000, userAgent, null, "127.0.0.1");
+    }
+
+    /**
+     * Appends 100 batches of three clicks, two of URL 1 and one of URL 2, with access times
+     * running backwards, so the log order is not the access order.
+     */
+    private void appendClicks() {
+        for (int i = 0; i < 100; i++) {
+            clickLog.batchInsert(List.of(click(1, 100 - i, "agent" + i % 3), click(2, i, "agent"), click(1, 100 - i, null)));
+        }
+    }
+
+    /**
+     * Appends a batch of clicks of URL 99 larger than a segment, so the clicks appended
+     * before are sealed and folded by the next compaction.
+     */
+    private void sealActiveSegment() {
+        List<ClickEvent> clicks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            clicks.add(new ClickEvent(99, "short99", System.currentTimeMillis(), "filler", null, "127.0.0.1"));
+        }
+        clickLog.batchInsert(clicks);
+    }
+
+    private static List<Long> ids(List<URLStatsView> views) {
+        return views.stream().map(URLStatsView::getId).toList();
+    }
+
+    @Test
+    void findAll_ReturnsClicksOfUrlOrderedByAccessTime() {
+        // GIVEN
+        appendClicks();
+
+        // WHEN
+        List<URLStatsView> views = clickLog.findAll(1);
+
+        // THEN
+        assertEquals(200, views.size());
+        for (int i = 1; i < views.size(); i++) {
+            URLStatsView previous = views.get(i - 1);
+            URLStatsView current = views.get(i);
+            assertTrue(previous.getAccessTime().isBefore(current.getAccessTime())
+                    || previous.getAccessTime().equals(current.getAccessTime()) && previous.getId() < current.getId());
+        }
+        assertEquals(100, clickLog.findAll(2).size());
+        assertTrue(clickLog.findAll(3).isEmpty());
+    }
+
+    @Test
+    void findPage_WalksAllClicksOnce() {
+        // GIVEN
+        appendClicks();
+        List<URLStatsView> seen = new ArrayList<>();
+
+        // WHEN
+        List<URLStatsView> page = clickLog.findPage(1, null, 0, 30);
+        while (!page.isEmpty()) {
+            seen.addAll(page);
+            URLStatsView last = page.get(page.size() - 1);
+            page = clickLog.findPage(1, last.getAccessTime(), last.getId(), 30);
+        }
+
+        // THEN
+        assertEquals(ids(clickLog.findAll(1)), ids(seen));
+    }
+
+    @Test
+    void findPage_WalksCompactedAndAppendedClicksOnce() throws IOException {
+        // GIVEN
+        appendClicks();
+        clickLog.compact();
+        appendClicks();
+        clickLog.compact();
+        appendClicks();
+        List<URLStatsView> seen = new ArrayList<>();
+
+        // WHEN
+        List<URLStatsView> page = clickLog.findPage(1, null, 0, 70);
+        while (!page.isEmpty()) {
+            seen.addAll(page);
+            URLStatsView last = page.get(page.size() - 1);
+            page = clickLog.findPage(1, last.getAccessTime(), last.getId(), 70);
+        }
+        List<URLStatsView> streamed = new ArrayList<>();
+        clickLog.stream(1, streamed::add);
+
+        // THEN
+        assertEquals(600, seen.size());
+        assertEquals(ids(clickLog.findAll(1)), ids(seen));
+        assertEquals(seen, streamed);
+    }
+
+    @Test
+    void compact_MergesCompactedSegmentsOfPastPeriods() throws IOException {
+        // GIVEN
+        long now = System.currentTimeMillis();
+        appendClicks();
+        clickLog.batchInsert(List.of(new ClickEvent(3, "short3", now, "current", null, "127.0.0.1")));
+        sealActiveSegment();
+        clickLog.compact();
+        appendClicks();
+        clickLog.batchInsert(List.of(new ClickEvent(3, "short3", now, "current", null, "127.0.0.1")));
+        sealActiveSegment();
+        List<URLStatsView> before = clickLog.findAll(1);
+
+        // WHEN
+        clickLog.compact();
+
+        // THEN
+        // One segment for the past period and two for the ongoing one
+        assertEquals(3, clickLog.getCompactedSegmentCount());
+        assertEquals(before, clickLog.findAll(1));
+        assertEquals(2, clickLog.findAll(3).size());
+    }
+
+    @Test
+    void compact_DropsClicksOlderThanRetention() throws IOException {
+        // GIVEN
+        clickLog.close();
+        properties.setRetention(Duration.ofDays(30));
+        clickLog = SegmentedClickLog.open(properties, executionThreads);
+        long now = System.currentTimeMillis();
+        appendClicks();
+        clickLog.batchInsert(List.of(new ClickEvent(1, "short1", now, "recent", null, "127.0.0.1")));
+        appendClicks();
+        sealActiveSegment();
+
+        // WHEN
+        clickLog.compact();
+
+        // THEN
+        assertEquals(List.of("recent"), clickLog.findAll(1).stream().map(URLStatsView::getUserAgent).toList());
+        assertTrue(clickLog.findAll(2).isEmpty());
+        assertEquals(1, clickLog.getCompactedSegmentCount());
+    }
+
+    @Test
+    void compact_KeepsAllClicks() throws IOException {
+        // GIVEN
+        appendClicks();
+        List<URLStatsView> before = clickLog.findAll(1);
+        assertTrue(clickLog.getSealedSegmentCount() > 1);
+
+        // WHEN
+        boolean compacted = clickLog.compact();
+        clickLog.batchInsert(List.of(click(1, 0, "late")));
+
+        // THEN
+        assertTrue(compacted);
+        assertEquals(0, clickLog.getSealedSegmentCount());
+        List<URLStatsView> after = clickLog.findAll(1);
+        assertEquals(before, after.subList(1, after.size()));
+        assertEquals("late", after.get(0).getUserAgent());
+        assertFalse(clickLog.compact());
+    }
+
+    @Test
+    void open_RecoversCompactedAndAppendedClicks() throws IOException {
+        // GIVEN
+        appendClicks();
+        clickLog.compact();
+        appendClicks();
+        List<URLStatsView> before = clickLog.findAll(1);
+        clickLog.close();
+
+        // WHEN
+        clickLog = SegmentedClickLog.open(properties, executionThreads);
+        clickLog.insert(click(1, 1000, "after restart"));
+
+        // THEN
+        List<URLStatsView> after = clickLog.findAll(1);
+        assertEquals(before, after.subList(0, before.size()));
+        assertTrue(after.get(before.size()).getId() > before.stream().mapToLong(URLStatsView::getId).max().orElseThrow());
+    }
+
+    @Test
+    void open_CutsOffIncompleteLastFrame() throws IOException {
+        // GIVEN
+        clickLog.batchInsert(List.of(click(1, 1, "first"), click(1, 2, "second")));
+        clickLog.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.getFileName().toString().startsWith("segment-")).findFirst().orElseThrow();
+        }
+        // A frame header promising more bytes than were written before the crash
+        Files.write(segment, new byte[]{0, 0, 1, 0, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        // WHEN
+        clickLog = SegmentedClickLog.open(properties, executionThreads);
+        clickLog.insert(click(1, 3, "third"));
+
+        // THEN
+        assertEquals(List.of("first", "second", "third"),
+                clickLog.findAll(1).stream().map(URLStatsView::getUserAgent).toList());
+    }
+}
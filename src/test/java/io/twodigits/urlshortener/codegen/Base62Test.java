@@ -0,0 +1,34 @@
+package io.twodigits.urlshortener.codegen;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Base62Test {
+
+    @Test
+    void encode() {
+        assertEquals("0", Base62.encode(0));
+        assertEquals("z", Base62.encode(61));
+        assertEquals("10", Base62.encode(62));
+        assertEquals("AzL8n0Y58m7", Base62.encode(Long.MAX_VALUE));
+    }
+
+    @Test
+    void decode_ReversesEncode() {
+        for (long value : new long[]{0, 1, 61, 62, 3843, 1_000_000_007L, Long.MAX_VALUE}) {
+            assertEquals(value, Base62.decode(Base62.encode(value)));
+        }
+    }
+
+    @Test
+    void decode_RejectsInvalidDigits() {
+        assertThrows(IllegalArgumentException.class, () -> Base62.decode("ab-c"));
+        assertThrows(IllegalArgumentException.class, () -> Base62.decode(""));
+    }
+
+    @Test
+    void encode_RejectsNegativeValues() {
+        assertThrows(IllegalArgumentException.class, () -> Base62.encode(-1));
+    }
+}
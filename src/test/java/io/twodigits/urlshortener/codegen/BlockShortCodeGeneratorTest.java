@@ -0,0 +1,89 @@
+package io.twodigits.urlshortener.codegen;
+
+import io.twodigits.urlshortener.config.ShortCodeProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BlockShortCodeGeneratorTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    private BlockShortCodeGenerator generator;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1L, 2L, 3L);
+        ShortCodeProperties properties = new ShortCodeProperties();
+        properties.setBlockSize(10);
+        generator = new BlockShortCodeGenerator(jdbcTemplate, properties, shortUrl -> false);
+    }
+
+    @Test
+    void nextId_LeasesOneBlockPerBlockSizeIds() {
+        // WHEN
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            ids.add(generator.nextId());
+        }
+
+        // THEN
+        assertEquals(25, ids.size());
+        assertTrue(ids.contains(10L));
+        assertTrue(ids.contains(34L));
+        verify(jdbcTemplate, times(3)).queryForObject(anyString(), eq(Long.class));
+    }
+
+    @Test
+    void generate_RendersIdInBase62() {
+        // WHEN
+        String shortUrl = generator.generate("https://reddit.com", 0);
+
+        // THEN
+        assertEquals("A", shortUrl);
+    }
+
+    @Test
+    void generate_SkipsReservedPaths() {
+        // GIVEN
+        reset(jdbcTemplate);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(266L);
+        for (long id = 2660; id < 2668; id++) {
+            assertEquals(id, generator.nextId());
+        }
+
+        // WHEN
+        String shortUrl = generator.generate("https://reddit.com", 0);
+
+        // THEN
+        assertEquals(2668, Base62.decode("h2"));
+        assertEquals(Base62.encode(2669), shortUrl);
+    }
+
+    @Test
+    void generate_SkipsTakenShortUrlsAndBlocks() {
+        // GIVEN
+        ShortCodeProperties properties = new ShortCodeProperties();
+        properties.setBlockSize(10);
+        Set<String> taken = Set.of(Base62.encode(19), Base62.encode(20), Base62.encode(21));
+        generator = new BlockShortCodeGenerator(jdbcTemplate, properties, taken::contains);
+
+        // WHEN
+        String first = generator.generate("https://reddit.com", 0);
+        String second = generator.generate("https://reddit.com", 0);
+
+        // THEN
+        assertEquals(Base62.encode(22), first);
+        assertEquals(Base62.encode(23), second);
+        verify(jdbcTemplate, times(2)).queryForObject(anyString(), eq(Long.class));
+    }
+}
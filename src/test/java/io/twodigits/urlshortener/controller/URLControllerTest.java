@@ -1,24 +1,54 @@
 package io.twodigits.urlshortener.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import io.twodigits.urlshortener.admission.AdmissionControl;
+import io.twodigits.urlshortener.admission.AdmissionControl.Route;
+import io.twodigits.urlshortener.config.RedirectProperties;
+import io.twodigits.urlshortener.model.BatchItemResult;
+import io.twodigits.urlshortener.model.ClickCount;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.ExportFormat;
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.TrendingLink;
+import io.twodigits.urlshortener.model.TrendingWindow;
 import io.twodigits.urlshortener.model.URL;
 import io.twodigits.urlshortener.model.URLDto;
-import io.twodigits.urlshortener.model.URLStats;
+import io.twodigits.urlshortener.model.URLPage;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.model.UniqueVisitors;
+import io.twodigits.urlshortener.service.RedirectPolicy;
 import io.twodigits.urlshortener.service.URLShortenerService;
+import io.twodigits.urlshortener.wire.WireFormat;
+import io.twodigits.urlshortener.wire.WireFormats;
 import jakarta.servlet.http.HttpServletRequest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 import java.util.Collections;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,6 +57,20 @@ class URLControllerTest {
     @Mock
     private URLShortenerService urlShortenerService;
 
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private WireFormats wireFormats = new WireFormats(objectMapper);
+
+    /**
+     * Admits every request unless stubbed otherwise.
+     */
+    @Mock
+    private AdmissionControl admissionControl;
+
+    @Spy
+    private RedirectPolicy redirectPolicy = new RedirectPolicy(new RedirectProperties());
+
     @InjectMocks
     private URLController urlController;
 
@@ -40,6 +84,7 @@ class URLControllerTest {
         url.setLongUrl("https://reddit.com");
         url.setShortUrl("short123");
         url.setUsername("Kathy");
+        url.setModifiedAt(1_700_000_000_000L);
 
         request = mock(HttpServletRequest.class);
     }
@@ -50,38 +95,122 @@ class URLControllerTest {
         when(urlShortenerService.getLongUrlByShortUrl("short123")).thenReturn(Optional.of(url));
 
         //WHEN
-        Optional<URL> result = urlController.getLongUrlByShortUrl("short123");
+        ResponseEntity<URL> result = urlController.getLongUrlByShortUrl("short123", request);
 
         //THEN
-        assertTrue(result.isPresent());
-        assertEquals("https://reddit.com", result.get().getLongUrl());
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("https://reddit.com", result.getBody().getLongUrl());
+        assertEquals("W/\"1-1700000000000\"", result.getHeaders().getETag());
+        assertEquals(1_700_000_000_000L, result.getHeaders().getLastModified());
+        assertEquals(List.of(HttpHeaders.ACCEPT), result.getHeaders().getVary());
+    }
+
+    @Test
+    void GetLongUrlByShortUrl_NotModified() {
+        //GIVEN
+        when(urlShortenerService.getLongUrlByShortUrl("short123")).thenReturn(Optional.of(url));
+        MockHttpServletRequest conditional = new MockHttpServletRequest();
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, "\"0-0\", W/\"1-1700000000000\"");
+
+        //WHEN
+        ResponseEntity<URL> result = urlController.getLongUrlByShortUrl("short123", conditional);
+
+        //THEN
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertNull(result.getBody());
+        assertEquals("W/\"1-1700000000000\"", result.getHeaders().getETag());
+    }
+
+    @Test
+    void GetLongUrlByShortUrl_ChangedSinceETag() {
+        //GIVEN
+        url.setModifiedAt(1_700_000_000_001L);
+        when(urlShortenerService.getLongUrlByShortUrl("short123")).thenReturn(Optional.of(url));
+        MockHttpServletRequest conditional = new MockHttpServletRequest();
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, "\"1-1700000000000\"");
+
+        //WHEN
+        ResponseEntity<URL> result = urlController.getLongUrlByShortUrl("short123", conditional);
+
+        //THEN
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(url, result.getBody());
+    }
+
+    @Test
+    void GetUrlsByUser() throws Exception {
+        //GIVEN
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        doAnswer(invocation -> {
+            invocation.<Consumer<URL>>getArgument(1).accept(url);
+            return null;
+        }).when(urlShortenerService).forEachURLOfUser(eq("Kathy"), any());
+
+        //WHEN
+        urlController.getUrlsByUser("Kathy", null, response);
+
+        //THEN
+        URL[] urls = objectMapper.readValue(response.getContentAsString(), URL[].class);
+        assertEquals(1, urls.length);
+        assertEquals("Kathy", urls[0].getUsername());
+    }
+
+    @Test
+    void GetUrlsByUser_Cbor() throws Exception {
+        //GIVEN
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        doAnswer(invocation -> {
+            invocation.<Consumer<URL>>getArgument(1).accept(url);
+            return null;
+        }).when(urlShortenerService).forEachURLOfUser(eq("Kathy"), any());
+
+        //WHEN
+        urlController.getUrlsByUser("Kathy", "application/json;q=0.5, application/cbor", response);
+
+        //THEN
+        assertEquals("application/cbor", response.getContentType());
+        URL[] urls = wireFormats.mapperFor(WireFormat.CBOR).readValue(response.getContentAsByteArray(), URL[].class);
+        assertArrayEquals(new URL[]{url}, urls);
+    }
+
+    @Test
+    void GetUrlsByUser_UserDoesntExist() throws Exception {
+        //GIVEN
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //WHEN
+        urlController.getUrlsByUser("Stranger", null, response);
+
+        //THEN
+        assertEquals("[]", response.getContentAsString());
+        verify(urlShortenerService).forEachURLOfUser(eq("Stranger"), any());
     }
 
     @Test
-    void GetUrlsByUser() {
+    void GetUrlsByUserPage() {
         //GIVEN
-        when(urlShortenerService.listURLsOfUser("Kathy")).thenReturn(Collections.singletonList(url));
+        URLPage page = new URLPage("Kathy", List.of(url), 3, "next");
+        when(urlShortenerService.getURLsOfUserPage("Kathy", null, 1_000)).thenReturn(page);
 
         //WHEN
-        List<URL> urls = urlController.getUrlsByUser("Kathy");
+        ResponseEntity<?> response = urlController.getUrlsByUserPage("Kathy", null, 5_000);
 
         //THEN
-        assertNotNull(urls);
-        assertFalse(urls.isEmpty());
-        assertEquals("Kathy", urls.get(0).getUsername());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(page, response.getBody());
     }
 
     @Test
-    void GetUrlsByUser_UserDoesntExist() {
+    void GetUrlsByUserPage_InvalidCursor() {
         //GIVEN
-        when(urlShortenerService.listURLsOfUser("Stranger")).thenReturn(Collections.emptyList());
+        when(urlShortenerService.getURLsOfUserPage("Kathy", "broken", 100))
+                .thenThrow(new IllegalArgumentException("Invalid cursor: broken"));
 
         //WHEN
-        List<URL> urls = urlController.getUrlsByUser("Stranger");
+        ResponseEntity<?> response = urlController.getUrlsByUserPage("Kathy", "broken", 100);
 
         //THEN
-        assertNotNull(urls);
-        assertTrue(urls.isEmpty());
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
     }
 
     @Test
@@ -90,24 +219,40 @@ class URLControllerTest {
         when(urlShortenerService.getURLById("1")).thenReturn(Optional.of(url));
 
         //WHEN
-        Optional<URL> result = urlController.getUrlById("1");
+        ResponseEntity<URL> result = urlController.getUrlById("1", request);
 
         //THEN
-        assertTrue(result.isPresent());
-        assertEquals("https://reddit.com", result.get().getLongUrl());
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("https://reddit.com", result.getBody().getLongUrl());
 
     }
 
+    @Test
+    void GetUrlById_NotModifiedSince() {
+        //GIVEN
+        when(urlShortenerService.getURLById("1")).thenReturn(Optional.of(url));
+        MockHttpServletRequest conditional = new MockHttpServletRequest();
+        conditional.addHeader(HttpHeaders.IF_MODIFIED_SINCE, 1_700_000_000_000L);
+
+        //WHEN
+        ResponseEntity<URL> result = urlController.getUrlById("1", conditional);
+
+        //THEN
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertNull(result.getBody());
+    }
+
     @Test
     void GetUrlById_IdDoesntExist() {
         //GIVEN
         when(urlShortenerService.getURLById("991")).thenReturn(Optional.empty());
 
         //WHEN
-        Optional<URL> result = urlController.getUrlById("991");
+        ResponseEntity<URL> result = urlController.getUrlById("991", request);
 
         //THEN
-        assertFalse(result.isPresent());
+        assertNull(result.getBody());
+        assertNull(result.getHeaders().getETag());
     }
 
     @Test
@@ -158,6 +303,55 @@ class URLControllerTest {
         //THEN
         assertEquals(HttpStatus.FOUND, response.getStatusCode());
         assertEquals("https://reddit.com", response.getHeaders().getLocation().toString());
+        assertEquals("no-cache", response.getHeaders().getCacheControl());
+        verify(urlShortenerService).recordURLAccess(any(ClickEvent.class));
+        verify(urlShortenerService, never()).saveURLAccessStatistic(any());
+    }
+
+    @Test
+    void UrlRedirect_LinkRedirectType() {
+        //GIVEN
+        url.setRedirectType(RedirectType.PERMANENT_REDIRECT);
+        url.setCacheMaxAge(3600);
+        when(urlShortenerService.getEncodedUrl("short123")).thenReturn(Optional.of(url));
+
+        //WHEN
+        ResponseEntity<?> response = urlController.urlRedirect("short123", request);
+
+        //THEN
+        assertEquals(HttpStatus.PERMANENT_REDIRECT, response.getStatusCode());
+        assertEquals("https://reddit.com", response.getHeaders().getLocation().toString());
+        assertEquals("max-age=3600, public", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    void UrlRedirect_RateLimited() {
+        //GIVEN
+        when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+        when(admissionControl.tryAcquireClient(Route.REDIRECT, "10.0.0.1")).thenReturn(10_000_000L);
+
+        //WHEN
+        ResponseEntity<?> response = urlController.urlRedirect("short123", request);
+
+        //THEN
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("1", response.getHeaders().getFirst("Retry-After"));
+        verifyNoInteractions(urlShortenerService);
+        verify(admissionControl, never()).enter(any());
+    }
+
+    @Test
+    void UrlRedirect_Overloaded() {
+        //GIVEN
+        when(admissionControl.enter(Route.REDIRECT)).thenReturn(AdmissionControl.REJECTED);
+
+        //WHEN
+        ResponseEntity<?> response = urlController.urlRedirect("short123", request);
+
+        //THEN
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        verifyNoInteractions(urlShortenerService);
+        verify(admissionControl, never()).exit(any(), anyLong());
     }
 
     @Test
@@ -171,21 +365,186 @@ class URLControllerTest {
         //THEN
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
         assertEquals("URL not found", response.getBody());
+        verify(urlShortenerService, never()).recordURLAccess(any());
     }
 
     @Test
     void GetUrlStats() {
         //GIVEN
+        when(urlShortenerService.getEncodedUrl("short123")).thenReturn(Optional.of(url));
+        when(urlShortenerService.getClickCount("short123")).thenReturn(Optional.of(new ClickCount("short123", 1)));
         when(urlShortenerService.getURLAccessStatisticsByShortUrl("short123"))
-                .thenReturn(Collections.singletonList(new URLStats()));
+                .thenReturn(Optional.of(new StatsPage("short123",
+                        Collections.singletonList(new URLStatsView(1L, null, null, null, null)), null)));
+
+        //WHEN
+        ResponseEntity<StatsPage> stats = urlController.getUrlStatistics("short123", request);
+
+        //THEN
+        assertEquals(HttpStatus.OK, stats.getStatusCode());
+        assertEquals("short123", stats.getBody().getShortUrl());
+        assertFalse(stats.getBody().getItems().isEmpty());
+        assertEquals("W/\"1-1700000000000-1\"", stats.getHeaders().getETag());
+
+    }
+
+    @Test
+    void GetUrlStats_NotFound() {
+        //GIVEN
+        when(urlShortenerService.getEncodedUrl("short123")).thenReturn(Optional.empty());
+
+        //WHEN
+        ResponseEntity<StatsPage> stats = urlController.getUrlStatistics("short123", request);
+
+        //THEN
+        assertEquals(HttpStatus.NOT_FOUND, stats.getStatusCode());
+        assertNull(stats.getBody());
+    }
+
+    @Test
+    void GetUrlStats_NotModified() {
+        //GIVEN
+        when(urlShortenerService.getEncodedUrl("short123")).thenReturn(Optional.of(url));
+        when(urlShortenerService.getClickCount("short123")).thenReturn(Optional.of(new ClickCount("short123", 1)));
+        MockHttpServletRequest conditional = new MockHttpServletRequest();
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"1-1700000000000-1\"");
+
+        //WHEN
+        ResponseEntity<StatsPage> stats = urlController.getUrlStatistics("short123", conditional);
+
+        //THEN
+        assertEquals(HttpStatus.NOT_MODIFIED, stats.getStatusCode());
+        assertNull(stats.getBody());
+        verify(urlShortenerService, never()).getURLAccessStatisticsByShortUrl(any());
+    }
+
+    @Test
+    void GetUrlStats_ClicksNotStoredYet() {
+        //GIVEN
+        when(urlShortenerService.getEncodedUrl("short123")).thenReturn(Optional.of(url));
+        when(urlShortenerService.getClickCount("short123")).thenReturn(Optional.of(new ClickCount("short123", 2)));
+        when(urlShortenerService.getURLAccessStatisticsByShortUrl("short123"))
+                .thenReturn(Optional.of(new StatsPage("short123",
+                        Collections.singletonList(new URLStatsView(1L, null, null, null, null)), null)));
+
+        //WHEN
+        ResponseEntity<StatsPage> stats = urlController.getUrlStatistics("short123", request);
+
+        //THEN
+        assertEquals(HttpStatus.OK, stats.getStatusCode());
+        assertEquals(1, stats.getBody().getItems().size());
+        assertEquals("W/\"1-1700000000000-r1-1\"", stats.getHeaders().getETag());
+    }
+
+    @Test
+    void GetUrlStats_NotModifiedAfterRetention() {
+        //GIVEN
+        when(urlShortenerService.getEncodedUrl("short123")).thenReturn(Optional.of(url));
+        when(urlShortenerService.getClickCount("short123")).thenReturn(Optional.of(new ClickCount("short123", 5)));
+        when(urlShortenerService.getURLAccessStatisticsByShortUrl("short123"))
+                .thenReturn(Optional.of(new StatsPage("short123",
+                        Collections.singletonList(new URLStatsView(7L, null, null, null, null)), null)));
+        MockHttpServletRequest conditional = new MockHttpServletRequest();
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"1-1700000000000-r1-7\"");
+
+        //WHEN
+        ResponseEntity<StatsPage> stats = urlController.getUrlStatistics("short123", conditional);
+
+        //THEN
+        assertEquals(HttpStatus.NOT_MODIFIED, stats.getStatusCode());
+        assertNull(stats.getBody());
+    }
+
+    @Test
+    void GetUrlStatisticsPage_InvalidCursor() {
+        //GIVEN
+        when(urlShortenerService.getURLAccessStatisticsPage("short123", "broken", 100))
+                .thenThrow(new IllegalArgumentException("Invalid cursor: broken"));
+
+        //WHEN
+        ResponseEntity<?> response = urlController.getUrlStatisticsPage("short123", "broken", 100);
+
+        //THEN
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void ExportUrlStatistics_NotFound() {
+        //GIVEN
+        when(urlShortenerService.getEncodedUrl("short123")).thenReturn(Optional.empty());
+
+        //WHEN
+        ResponseEntity<?> response = urlController.exportUrlStatistics("short123", ExportFormat.CSV);
+
+        //THEN
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void GetUrlClickCount() {
+        //GIVEN
+        when(urlShortenerService.getClickCount("short123")).thenReturn(Optional.of(new ClickCount("short123", 3)));
+
+        //WHEN
+        ResponseEntity<ClickCount> count = urlController.getUrlClickCount("short123");
+
+        //THEN
+        assertEquals(HttpStatus.OK, count.getStatusCode());
+        assertEquals(3, count.getBody().getClicks());
+    }
+
+    @Test
+    void GetUrlClickCount_NotFound() {
+        //GIVEN
+        when(urlShortenerService.getClickCount("short123")).thenReturn(Optional.empty());
+
+        //WHEN
+        ResponseEntity<ClickCount> count = urlController.getUrlClickCount("short123");
+
+        //THEN
+        assertEquals(HttpStatus.NOT_FOUND, count.getStatusCode());
+    }
+
+    @Test
+    void GetUrlUniqueVisitors() {
+        //GIVEN
+        LocalDate day = LocalDate.of(2023, 11, 1);
+        UniqueVisitors uniques = new UniqueVisitors("short123", day, day, 100, 0.01625, 97, 104);
+        when(urlShortenerService.getUniqueVisitors("short123", day, null)).thenReturn(Optional.of(uniques));
+
+        //WHEN
+        ResponseEntity<?> response = urlController.getUrlUniqueVisitors("short123", day, null);
+
+        //THEN
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(uniques, response.getBody());
+    }
+
+    @Test
+    void GetUrlUniqueVisitors_InvalidRange() {
+        //GIVEN
+        LocalDate day = LocalDate.of(2023, 11, 1);
+        when(urlShortenerService.getUniqueVisitors("short123", day, day.minusDays(1)))
+                .thenThrow(new IllegalArgumentException("The range has to span 1 to 366 days"));
 
         //WHEN
-        List<URLStats> stats = urlController.getUrlStatistics("short123");
+        ResponseEntity<?> response = urlController.getUrlUniqueVisitors("short123", day, day.minusDays(1));
 
         //THEN
-        assertNotNull(stats);
-        assertFalse(stats.isEmpty());
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void GetTrendingUrls() {
+        //GIVEN
+        List<TrendingLink> trending = List.of(new TrendingLink("short123", 42), new TrendingLink("short456", 7));
+        when(urlShortenerService.getTrendingUrls(TrendingWindow.ONE_HOUR, 2)).thenReturn(trending);
+
+        //WHEN
+        List<TrendingLink> links = urlController.getTrendingUrls(TrendingWindow.ONE_HOUR, 2);
 
+        //THEN
+        assertEquals(trending, links);
     }
 
     @Test
@@ -197,11 +556,218 @@ class URLControllerTest {
         when(urlShortenerService.generateShortUrl(urlDto)).thenReturn(Optional.of(url));
 
         //WHEN
-        Optional<URL> result = urlController.generateShortUrl(urlDto);
+        ResponseEntity<?> response = urlController.generateShortUrl(urlDto, request);
 
         //THEN
-        assertTrue(result.isPresent());
-        assertEquals("https://reddit.com", result.get().getLongUrl());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("https://reddit.com", ((URL) response.getBody()).getLongUrl());
+        verify(admissionControl).exit(eq(Route.GENERATE), anyLong());
+    }
+
+    @Test
+    void GenerateShortUrl_UserRateLimited() {
+        //GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://reddit.com");
+        urlDto.setUsername("Kathy");
+        when(admissionControl.tryAcquireUser(Route.GENERATE, "Kathy")).thenReturn(1_500_000_000L);
+
+        //WHEN
+        ResponseEntity<?> response = urlController.generateShortUrl(urlDto, request);
+
+        //THEN
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst("Retry-After"));
+        verifyNoInteractions(urlShortenerService);
+        verify(admissionControl, never()).tryAcquireClient(any(), any());
+        verify(admissionControl, never()).releaseUser(any(), anyInt());
+    }
+
+    @Test
+    void GenerateShortUrl_ClientRateLimitedGivesBackUserToken() {
+        //GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://reddit.com");
+        urlDto.setUsername("Kathy");
+        when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+        when(admissionControl.tryAcquireClient(Route.GENERATE, "10.0.0.1")).thenReturn(1_500_000_000L);
+
+        //WHEN
+        ResponseEntity<?> response = urlController.generateShortUrl(urlDto, request);
+
+        //THEN
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        verifyNoInteractions(urlShortenerService);
+        verify(admissionControl).releaseUser("Kathy", 1);
+    }
+
+    @Test
+    void GenerateShortUrls() {
+        //GIVEN
+        URLDto first = new URLDto();
+        first.setUrl("https://reddit.com");
+        first.setUsername("Kathy");
+        URLDto second = new URLDto();
+        second.setUrl("https://news.ycombinator.com");
+        second.setUsername("Kathy");
+        when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+        when(urlShortenerService.generateShortUrls(List.of(first, second))).thenReturn(List.of(
+                BatchItemResult.created(0, url), BatchItemResult.created(1, url)));
+
+        //WHEN
+        ResponseEntity<?> response = urlController.generateShortUrls(List.of(first, second), request);
+
+        //THEN
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(admissionControl).tryAcquireUser(Route.GENERATE, "Kathy", 2);
+        verify(admissionControl).tryAcquireClient(Route.GENERATE, "10.0.0.1", 2);
+        verify(admissionControl).exit(eq(Route.BATCH), anyLong());
+    }
+
+    @Test
+    void GenerateShortUrls_RateLimited() {
+        //GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://reddit.com");
+        urlDto.setUsername("Kathy");
+        when(admissionControl.tryAcquireUser(Route.GENERATE, "Kathy", 1)).thenReturn(1_500_000_000L);
+
+        //WHEN
+        ResponseEntity<?> response = urlController.generateShortUrls(List.of(urlDto), request);
+
+        //THEN
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        verifyNoInteractions(urlShortenerService);
+        verify(admissionControl, never()).enter(any());
+    }
+
+    @Test
+    void GenerateShortUrls_ClientRateLimitedGivesBackUserTokens() {
+        //GIVEN
+        URLDto first = new URLDto();
+        first.setUrl("https://reddit.com");
+        first.setUsername("Kathy");
+        URLDto second = new URLDto();
+        second.setUrl("https://news.ycombinator.com");
+        second.setUsername("Kathy");
+        when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+        when(admissionControl.tryAcquireClient(Route.GENERATE, "10.0.0.1", 2)).thenReturn(1_500_000_000L);
+
+        //WHEN
+        ResponseEntity<?> response = urlController.generateShortUrls(List.of(first, second), request);
+
+        //THEN
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        verifyNoInteractions(urlShortenerService);
+        verify(admissionControl).releaseUser("Kathy", 2);
+    }
+
+    @Test
+    void GenerateShortUrls_Overloaded() {
+        //GIVEN
+        when(admissionControl.enter(Route.BATCH)).thenReturn(AdmissionControl.REJECTED);
+
+        //WHEN
+        ResponseEntity<?> response = urlController.generateShortUrls(List.of(new URLDto()), request);
+
+        //THEN
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        verifyNoInteractions(urlShortenerService);
+    }
+
+    @Test
+    void GenerateShortUrlsFromStream() throws Exception {
+        //GIVEN
+        MockHttpServletRequest streamRequest = new MockHttpServletRequest();
+        streamRequest.setContent(("{\"url\":\"https://reddit.com\",\"username\":\"Kathy\"}\n" +
+                "{\"url\":\"\",\"username\":\"Kathy\"}\n").getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        when(urlShortenerService.generateShortUrls(anyList())).thenReturn(List.of(
+                BatchItemResult.created(0, url), BatchItemResult.rejected(1)));
+
+        //WHEN
+        urlController.generateShortUrlsFromStream(streamRequest, response);
+
+        //THEN
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"status\":\"CREATED\""));
+        assertTrue(lines[1].contains("\"status\":\"REJECTED\""));
+        verify(urlShortenerService, times(1)).generateShortUrls(anyList());
+    }
+
+    @Test
+    void GenerateShortUrlsFromStream_RateLimited() throws Exception {
+        //GIVEN
+        MockHttpServletRequest streamRequest = new MockHttpServletRequest();
+        streamRequest.setRemoteAddr("10.0.0.1");
+        streamRequest.setContent(("{\"url\":\"https://reddit.com\",\"username\":\"Kathy\"}\n" +
+                "{\"url\":\"https://news.ycombinator.com\",\"username\":\"Kathy\"}\n").getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        when(admissionControl.tryAcquireClient(Route.GENERATE, "10.0.0.1", 2)).thenReturn(1_500_000_000L);
+
+        //WHEN
+        urlController.generateShortUrlsFromStream(streamRequest, response);
+
+        //THEN
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"index\":0") && lines[0].contains("\"status\":\"RATE_LIMITED\""));
+        assertTrue(lines[1].contains("\"index\":1") && lines[1].contains("\"status\":\"RATE_LIMITED\""));
+        verifyNoInteractions(urlShortenerService);
+        verify(admissionControl).exit(eq(Route.BATCH), anyLong());
+    }
+
+    @Test
+    void GenerateShortUrlsFromStream_Overloaded() throws Exception {
+        //GIVEN
+        MockHttpServletRequest streamRequest = new MockHttpServletRequest();
+        streamRequest.setContent("{\"url\":\"https://reddit.com\"}\n".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        when(admissionControl.enter(Route.BATCH)).thenReturn(AdmissionControl.REJECTED);
+
+        //WHEN
+        urlController.generateShortUrlsFromStream(streamRequest, response);
+
+        //THEN
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER));
+        verifyNoInteractions(urlShortenerService);
+    }
+
+    @Test
+    void GenerateShortUrlsFromStream_CborSequence() throws Exception {
+        //GIVEN
+        ObjectMapper cbor = wireFormats.mapperFor(WireFormat.CBOR);
+        URLDto first = new URLDto();
+        first.setUrl("https://reddit.com");
+        URLDto second = new URLDto();
+        second.setUrl("");
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (SequenceWriter items = cbor.writer().writeValues(content)) {
+            items.write(first);
+            items.write(second);
+        }
+        MockHttpServletRequest streamRequest = new MockHttpServletRequest();
+        streamRequest.setContentType("application/cbor-seq");
+        streamRequest.setContent(content.toByteArray());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        when(urlShortenerService.generateShortUrls(anyList())).thenAnswer(invocation -> {
+            assertEquals(List.of(first, second), invocation.getArgument(0));
+            return List.of(BatchItemResult.created(0, url), BatchItemResult.rejected(1));
+        });
+
+        //WHEN
+        urlController.generateShortUrlsFromStream(streamRequest, response);
+
+        //THEN
+        assertEquals("application/cbor-seq", response.getContentType());
+        List<JsonNode> results = cbor.readerFor(JsonNode.class)
+                .<JsonNode>readValues(response.getContentAsByteArray()).readAll();
+        assertEquals(2, results.size());
+        assertEquals("CREATED", results.get(0).get("status").asText());
+        assertEquals("REJECTED", results.get(1).get("status").asText());
+        verify(urlShortenerService, times(1)).generateShortUrls(anyList());
     }
 
     @Test
@@ -0,0 +1,63 @@
+package io.twodigits.urlshortener.execution;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConcurrencyLimitedDataSourceTest {
+
+    private DataSource target;
+
+    private ConcurrencyLimitedDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        target = mock(DataSource.class);
+        when(target.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        dataSource = new ConcurrencyLimitedDataSource(target, 2, Duration.ofMillis(50));
+    }
+
+    @Test
+    void getConnection_FailsFastWhenLimitReached() throws SQLException {
+        // GIVEN
+        dataSource.getConnection();
+        dataSource.getConnection();
+
+        // WHEN / THEN
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        verify(target, times(2)).getConnection();
+    }
+
+    @Test
+    void close_ReturnsPermitOnce() throws SQLException {
+        // GIVEN
+        Connection connection = dataSource.getConnection();
+
+        // WHEN
+        connection.close();
+        connection.close();
+
+        // THEN
+        assertEquals(2, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void getConnection_ReturnsPermitWhenPoolFails() throws SQLException {
+        // GIVEN
+        when(target.getConnection()).thenThrow(new SQLException("pool exhausted"));
+
+        // WHEN
+        assertThrows(SQLException.class, dataSource::getConnection);
+
+        // THEN
+        assertEquals(2, dataSource.getAvailablePermits());
+    }
+}
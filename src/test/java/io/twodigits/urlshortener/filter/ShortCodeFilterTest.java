@@ -0,0 +1,120 @@
+package io.twodigits.urlshortener.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.ShortCodeFilterProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.repo.URLRepo;
+import io.twodigits.urlshortener.storage.URLStorage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+class ShortCodeFilterTest {
+
+    @Autowired
+    private ShortCodeFilter shortCodeFilter;
+
+    @Autowired
+    private URLRepo urlRepo;
+
+    private URL store(String shortUrl) {
+        URL url = new URL();
+        url.setLongUrl("https://reddit.com/" + shortUrl);
+        url.setShortUrl(shortUrl);
+        return urlRepo.save(url);
+    }
+
+    @Test
+    void rebuild_ContainsStoredShortUrls() {
+        // GIVEN
+        store("filterStored1");
+        store("filterStored2");
+
+        // WHEN
+        shortCodeFilter.rebuild();
+
+        // THEN
+        assertTrue(shortCodeFilter.mightContain("filterStored1"));
+        assertTrue(shortCodeFilter.mightContain("filterStored2"));
+        assertFalse(shortCodeFilter.mightContain("filterNeverStored"));
+    }
+
+    @Test
+    void put_AddsShortUrlAfterRebuild() {
+        // GIVEN
+        shortCodeFilter.rebuild();
+
+        // WHEN
+        shortCodeFilter.put("filterAddedLater");
+
+        // THEN
+        assertTrue(shortCodeFilter.mightContain("filterAddedLater"));
+    }
+
+    @Test
+    void put_KeepsShortUrlsAddedWhileRebuilding() throws Exception {
+        // GIVEN
+        List<String> stored = new CopyOnWriteArrayList<>();
+        URLStorage urlStorage = mock(URLStorage.class);
+        when(urlStorage.count()).thenAnswer(invocation -> (long) stored.size());
+        doAnswer(invocation -> {
+            Consumer<URL> action = invocation.getArgument(0);
+            for (String shortUrl : stored) {
+                URL url = new URL();
+                url.setShortUrl(shortUrl);
+                action.accept(url);
+            }
+            return null;
+        }).when(urlStorage).forEach(any());
+        ShortCodeFilterProperties properties = new ShortCodeFilterProperties();
+        properties.setExpectedInsertions(100_000);
+        ShortCodeFilter filter = new ShortCodeFilter(urlStorage, properties,
+                new ExecutionThreads(new ExecutionProperties()), new SimpleMeterRegistry());
+        filter.rebuild();
+
+        // WHEN
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread rebuilder = new Thread(() -> {
+            while (writing.get()) {
+                filter.rebuild();
+            }
+        });
+        rebuilder.start();
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    String shortUrl = "w" + writer + "-" + i;
+                    stored.add(shortUrl);
+                    filter.put(shortUrl);
+                }
+            });
+            writers.add(thread);
+            thread.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        rebuilder.join();
+
+        // THEN
+        for (String shortUrl : stored) {
+            assertTrue(filter.mightContain(shortUrl), shortUrl);
+        }
+    }
+}
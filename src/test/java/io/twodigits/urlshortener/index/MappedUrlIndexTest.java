@@ -0,0 +1,148 @@
+package io.twodigits.urlshortener.index;
+
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedUrlIndexTest {
+
+    private static final int REGION_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private static URL url(long id, String shortUrl) {
+        URL url = new URL();
+        url.setId(id);
+        url.setShortUrl(shortUrl);
+        url.setLongUrl("https://reddit.com/" + shortUrl);
+        url.setUsername(id % 2 == 0 ? "Kathy" : null);
+        if (id % 3 == 2) {
+            url.setRedirectType(RedirectType.TEMPORARY_REDIRECT);
+            url.setCacheMaxAge(300);
+            url.setModifiedAt(1_700_000_000_000L + id);
+        }
+        return url;
+    }
+
+    @Test
+    void get_ReturnsStoredUrl() throws IOException {
+        // GIVEN
+        try (MappedUrlIndex index = MappedUrlIndex.create(directory, 16, REGION_SIZE, 0.7)) {
+            index.put(url(2, "abc"));
+
+            // WHEN
+            URL actual = index.get("abc");
+
+            // THEN
+            assertEquals(url(2, "abc"), actual);
+            assertNull(index.get("abd"));
+            assertEquals(1, index.size());
+        }
+    }
+
+    @Test
+    void remove_HidesUrl() throws IOException {
+        // GIVEN
+        try (MappedUrlIndex index = MappedUrlIndex.create(directory, 16, REGION_SIZE, 0.7)) {
+            index.put(url(1, "abc"));
+
+            // WHEN
+            boolean removed = index.remove("abc");
+
+            // THEN
+            assertTrue(removed);
+            assertNull(index.get("abc"));
+            assertEquals(0, index.size());
+            assertFalse(index.remove("abc"));
+        }
+    }
+
+    @Test
+    void put_GrowsBeyondInitialCapacity() throws IOException {
+        // GIVEN
+        try (MappedUrlIndex index = MappedUrlIndex.create(directory, 16, REGION_SIZE, 0.7)) {
+
+            // WHEN
+            for (int i = 0; i < 10_000; i++) {
+                index.put(url(i, "s" + i));
+            }
+
+            // THEN
+            assertEquals(10_000, index.size());
+            assertTrue(index.capacity() >= 10_000 / 0.7);
+            for (int i = 0; i < 10_000; i++) {
+                assertEquals(url(i, "s" + i), index.get("s" + i));
+            }
+        }
+    }
+
+    @Test
+    void put_RejectsNewShortUrlsWhenFull() throws IOException {
+        // GIVEN
+        try (MappedUrlIndex index = MappedUrlIndex.create(directory, 16, REGION_SIZE, 1.0)) {
+            for (int i = 0; i < 16; i++) {
+                assertTrue(index.put(url(i, "s" + i)));
+            }
+
+            // WHEN
+            boolean added = index.put(url(16, "s16"));
+            boolean replaced = index.put(url(17, "s3"));
+
+            // THEN
+            assertFalse(added);
+            assertTrue(replaced);
+            assertNull(index.get("s16"));
+            assertEquals(16, index.size());
+            assertEquals(url(17, "s3"), index.get("s3"));
+            for (int i = 0; i < 16; i++) {
+                if (i != 3) {
+                    assertEquals(url(i, "s" + i), index.get("s" + i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void open_KeepsEntriesOfCleanlyClosedIndex() throws IOException {
+        // GIVEN
+        try (MappedUrlIndex index = MappedUrlIndex.create(directory, 16, REGION_SIZE, 0.7)) {
+            for (int i = 0; i < 100; i++) {
+                index.put(url(i, "s" + i));
+            }
+            index.remove("s7");
+        }
+
+        // WHEN
+        try (MappedUrlIndex reopened = MappedUrlIndex.open(directory, 0.7)) {
+
+            // THEN
+            assertEquals(99, reopened.size());
+            assertEquals(url(42, "s42"), reopened.get("s42"));
+            assertNull(reopened.get("s7"));
+        }
+    }
+
+    @Test
+    void open_RejectsIndexWhichWasNotClosed() throws IOException {
+        // GIVEN
+        MappedUrlIndex index = MappedUrlIndex.create(directory, 16, REGION_SIZE, 0.7);
+        index.put(url(1, "abc"));
+
+        // WHEN / THEN
+        assertThrows(CorruptIndexException.class, () -> MappedUrlIndex.open(directory, 0.7));
+        index.close();
+    }
+
+    @Test
+    void open_FailsWithoutIndex() {
+        assertThrows(NoSuchFileException.class, () -> MappedUrlIndex.open(directory, 0.7));
+    }
+}
@@ -0,0 +1,115 @@
+package io.twodigits.urlshortener.index;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.UrlIndexProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.storage.URLStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UrlIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private final URLStorage urlStorage = mock(URLStorage.class);
+
+    private UrlIndex urlIndex;
+
+    private static URL url(long id, String shortUrl, String longUrl) {
+        URL url = new URL();
+        url.setId(id);
+        url.setShortUrl(shortUrl);
+        url.setLongUrl(longUrl);
+        return url;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        UrlIndexProperties properties = new UrlIndexProperties();
+        properties.setDirectory(directory);
+        properties.setInitialCapacity(16);
+        properties.setDataRegionSize(DataSize.ofKilobytes(4));
+        urlIndex = new UrlIndex(urlStorage, properties, new ExecutionThreads(new ExecutionProperties()),
+                new SimpleMeterRegistry());
+        // The index is disabled, so starting it only lets the rebuild below run.
+        urlIndex.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        urlIndex.stop();
+    }
+
+    @Test
+    void rebuild_KeepsChangesMadeWhileItRuns() throws Exception {
+        // GIVEN
+        doAnswer(invocation -> {
+            Consumer<URL> action = invocation.getArgument(0);
+            // Stored and deleted while the rebuild reads the older state.
+            urlIndex.put(url(1, "abc", "https://example.com/new"));
+            urlIndex.remove("def");
+            action.accept(url(1, "abc", "https://example.com/old"));
+            action.accept(url(2, "def", "https://example.com/deleted"));
+            action.accept(url(3, "ghi", "https://example.com/kept"));
+            return null;
+        }).when(urlStorage).forEach(any());
+
+        // WHEN
+        urlIndex.rebuild();
+
+        // THEN
+        assertEquals("https://example.com/new", urlIndex.get("abc").map(URL::getLongUrl).orElse(null));
+        assertTrue(urlIndex.get("def").isEmpty());
+        assertEquals("https://example.com/kept", urlIndex.get("ghi").map(URL::getLongUrl).orElse(null));
+    }
+
+    @Test
+    void put_KeepsUrlsStoredWhileRebuildPublishes() throws Exception {
+        // GIVEN
+        List<URL> stored = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            Consumer<URL> action = invocation.getArgument(0);
+            stored.forEach(action);
+            return null;
+        }).when(urlStorage).forEach(any());
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    URL url = url(writer * 1000L + i, "w" + writer + "-" + i, "https://example.com/" + i);
+                    stored.add(url);
+                    urlIndex.put(url);
+                }
+            }));
+        }
+
+        // WHEN
+        writers.forEach(Thread::start);
+        urlIndex.rebuild();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        // THEN
+        for (URL url : stored) {
+            assertTrue(urlIndex.get(url.getShortUrl()).isPresent(), url.getShortUrl());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package io.twodigits.urlshortener.invalidation;
+
+import io.twodigits.urlshortener.UrlShortenerApplication;
+import io.twodigits.urlshortener.cache.RedirectCache;
+import io.twodigits.urlshortener.index.UrlIndex;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.model.UrlChange;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs three nodes on one in-memory database, each with its own caches, and checks that
+ * what one node changes is seen by the others. The last node resolves short URLs through
+ * its own URL index.
+ */
+class InvalidationBusIntegrationTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    private static final String database = "jdbc:h2:mem:invalidation-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+
+    @TempDir
+    static Path directory;
+
+    @BeforeAll
+    static void startNodes() {
+        for (int i = 0; i < 3; i++) {
+            nodes.add(startNode(i));
+        }
+    }
+
+    private static ConfigurableApplicationContext startNode(int node) {
+        return new SpringApplicationBuilder(UrlShortenerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + database,
+                        "--spring.jpa.show-sql=false",
+                        "--spring.main.banner-mode=off",
+                        "--urlshortener.warm-start.enabled=false",
+                        "--urlshortener.invalidation.enabled=true",
+                        "--urlshortener.invalidation.cursor-file=" + directory.resolve("node-" + node + ".cursor"),
+                        "--urlshortener.index.enabled=" + (node == 2),
+                        "--urlshortener.index.directory=" + directory.resolve("url-index-" + node));
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    private static URLShortenerService service(int node) {
+        return nodes.get(node).getBean(URLShortenerService.class);
+    }
+
+    private static URL generate(String url) {
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl(url);
+        urlDto.setUsername("Kathy");
+        return service(0).generateShortUrl(urlDto).orElseThrow();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long start = System.nanoTime();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() - start < TIMEOUT.toNanos(), "Condition not met within " + TIMEOUT);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void deleteOnOneNode_EvictsOnPeers() throws InterruptedException {
+        // GIVEN
+        URL url = generate("https://reddit.com/deleted");
+        String shortUrl = url.getShortUrl();
+        // The peers' filters learn about the new short URL through the bus as well.
+        await(() -> service(1).getEncodedUrl(shortUrl).isPresent() && service(2).getEncodedUrl(shortUrl).isPresent());
+        assertTrue(nodes.get(1).getBean(RedirectCache.class).getIfPresent(shortUrl).isPresent());
+        assertTrue(nodes.get(2).getBean(RedirectCache.class).getIfPresent(shortUrl).isPresent());
+
+        // WHEN
+        service(0).deleteUrlById(String.valueOf(url.getId()));
+
+        // THEN
+        await(() -> nodes.get(1).getBean(RedirectCache.class).getIfPresent(shortUrl).isEmpty()
+                && nodes.get(2).getBean(RedirectCache.class).getIfPresent(shortUrl).isEmpty());
+        assertFalse(service(1).getEncodedUrl(shortUrl).isPresent());
+        assertFalse(service(2).getEncodedUrl(shortUrl).isPresent());
+    }
+
+    @Test
+    void updateOnOneNode_PeersResolveNewState() throws InterruptedException {
+        // GIVEN
+        URL url = generate("https://reddit.com/before");
+        await(() -> service(1).getEncodedUrl(url.getShortUrl()).isPresent());
+
+        // WHEN
+        url.setLongUrl("https://reddit.com/after");
+        service(0).saveShortUrl(url);
+
+        // THEN
+        await(() -> service(1).getEncodedUrl(url.getShortUrl())
+                .map(resolved -> "https://reddit.com/after".equals(resolved.getLongUrl()))
+                .orElse(false));
+    }
+
+    @Test
+    void restartedNode_ReplaysChangesPublishedWhileDown() throws InterruptedException {
+        // GIVEN a short URL held by the URL index of the last node
+        URL url = generate("https://reddit.com/replayed-before");
+        await(() -> nodes.get(2).getBean(UrlIndex.class).isAvailable());
+        await(() -> service(2).getEncodedUrl(url.getShortUrl()).isPresent());
+        nodes.get(2).close();
+
+        // WHEN it changes while the node is down
+        url.setLongUrl("https://reddit.com/replayed-after");
+        service(0).saveShortUrl(url);
+        nodes.set(2, startNode(2));
+
+        // THEN
+        assertTrue(nodes.get(2).getBean(UrlIndex.class).isAvailable());
+        assertEquals("https://reddit.com/replayed-after",
+                service(2).getEncodedUrl(url.getShortUrl()).map(URL::getLongUrl).orElse(null));
+    }
+
+    @Test
+    void repeatedChanges_AreCoalesced() {
+        // GIVEN
+        URL url = generate("https://reddit.com/coalesced");
+        InvalidationBus bus = nodes.get(0).getBean(InvalidationBus.class);
+
+        // WHEN
+        bus.transactionally(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                bus.publish(UrlChange.Kind.CHANGED, url);
+            }
+            return null;
+        });
+
+        // THEN
+        assertEquals(1, countChanges(url, "CHANGED"));
+    }
+
+    @Test
+    void rolledBackWrite_PublishesNothing() {
+        // GIVEN
+        URL url = generate("https://reddit.com/rolled-back");
+        InvalidationBus bus = nodes.get(0).getBean(InvalidationBus.class);
+
+        // WHEN
+        assertThrows(IllegalStateException.class, () -> bus.transactionally(() -> {
+            bus.publish(UrlChange.Kind.CHANGED, url);
+            throw new IllegalStateException("Write failed");
+        }));
+
+        // THEN
+        assertEquals(0, countChanges(url, "CHANGED"));
+        assertEquals(1, countChanges(url, "CREATED"));
+    }
+
+    private static int countChanges(URL url, String kind) {
+        return nodes.get(0).getBean(JdbcTemplate.class).queryForObject(
+                "select count(*) from url_change where short_url = ? and kind = ?", Integer.class,
+                url.getShortUrl(), kind);
+    }
+}
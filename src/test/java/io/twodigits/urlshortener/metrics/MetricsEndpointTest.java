@@ -0,0 +1,66 @@
+package io.twodigits.urlshortener.metrics;
+
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@AutoConfigureObservability
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class MetricsEndpointTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private URLShortenerService urlShortenerService;
+
+    @Test
+    void prometheus_ExposesEndpointServiceAndQueryMetrics() {
+        // GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://metrics.example.com");
+        URL url = urlShortenerService.generateShortUrl(urlDto).orElseThrow();
+        restTemplate.getForEntity("/findurl/" + url.getShortUrl(), String.class);
+        restTemplate.getForEntity("/url/" + url.getId(), String.class);
+
+        // WHEN
+        ResponseEntity<String> response = restTemplate.getForEntity("/actuator/prometheus", String.class);
+
+        // THEN
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String body = response.getBody();
+        assertNotNull(body);
+        assertTrue(body.contains("http_server_requests_seconds_bucket{"));
+        assertTrue(body.contains("urlshortener_service_seconds_count{"));
+        assertTrue(body.contains("method=\"getLongUrlByShortUrl\""));
+        assertTrue(body.contains("urlshortener_db_queries_count{uri=\"/url/{id}\""));
+        assertTrue(body.contains("cache_gets_total{cache=\"redirect\""));
+        assertTrue(body.contains("urlshortener_filter_passed_total"));
+        assertTrue(body.contains("urlshortener_stats_flush_seconds"));
+    }
+
+    @Test
+    void queryCounter_CountsStatementsOfARequest() {
+        // GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://queries.example.com");
+        URL url = urlShortenerService.generateShortUrl(urlDto).orElseThrow();
+
+        // WHEN
+        QueryCounter.start();
+        urlShortenerService.getURLById(String.valueOf(url.getId()));
+        int queries = QueryCounter.stop();
+
+        // THEN
+        assertEquals(1, queries);
+    }
+}
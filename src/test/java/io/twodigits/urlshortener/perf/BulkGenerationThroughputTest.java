@@ -0,0 +1,63 @@
+package io.twodigits.urlshortener.perf;
+
+import io.twodigits.urlshortener.model.BatchItemResult;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the throughput of generating URLs one by one with the batch path.
+ * Run with {@code mvn test -Pperf -Dperf.items=50000}.
+ */
+@Tag("perf")
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+class BulkGenerationThroughputTest {
+
+    private static final int ITEMS = Integer.getInteger("perf.items", 20_000);
+
+    @Autowired
+    private URLShortenerService urlShortenerService;
+
+    private static List<URLDto> campaign(String name) {
+        List<URLDto> urlDtos = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            URLDto urlDto = new URLDto();
+            urlDto.setUrl("https://example.com/" + name + "/" + i);
+            urlDto.setUsername("campaign");
+            urlDtos.add(urlDto);
+        }
+        return urlDtos;
+    }
+
+    @Test
+    void compareSingleAndBatchGeneration() {
+        // GIVEN
+        List<URLDto> warmup = campaign("warmup").subList(0, Math.min(2_000, ITEMS));
+        warmup.forEach(urlShortenerService::generateShortUrl);
+        urlShortenerService.generateShortUrls(warmup);
+        List<URLDto> single = campaign("single");
+        List<URLDto> batch = campaign("batch");
+
+        // WHEN
+        long singleStart = System.nanoTime();
+        single.forEach(urlShortenerService::generateShortUrl);
+        long singleNanos = System.nanoTime() - singleStart;
+
+        long batchStart = System.nanoTime();
+        List<BatchItemResult> results = urlShortenerService.generateShortUrls(batch);
+        long batchNanos = System.nanoTime() - batchStart;
+
+        // THEN
+        assertTrue(results.stream().allMatch(r -> r.getStatus() == BatchItemResult.Status.CREATED));
+        System.out.printf("Generated %d URLs: single %.0f URLs/s, batch %.0f URLs/s (%.1fx)%n",
+                ITEMS, ITEMS / (singleNanos / 1e9), ITEMS / (batchNanos / 1e9), (double) singleNanos / batchNanos);
+    }
+}
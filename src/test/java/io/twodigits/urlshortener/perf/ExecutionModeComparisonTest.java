@@ -0,0 +1,93 @@
+package io.twodigits.urlshortener.perf;
+
+import io.twodigits.urlshortener.UrlShortenerApplication;
+import io.twodigits.urlshortener.execution.VirtualThreads;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares throughput and latency of the PLATFORM and VIRTUAL execution modes under the
+ * same fixed concurrency. Redirects of existing links are mixed with generate calls, so
+ * both the cache and the database paths are exercised.
+ * Run with {@code mvn test -Pperf -Dtest=ExecutionModeComparisonTest}.
+ */
+@Tag("perf")
+class ExecutionModeComparisonTest {
+
+    private static final int CONCURRENCY = Integer.getInteger("perf.concurrency", 400);
+
+    private static final Duration DURATION = Duration.ofSeconds(Integer.getInteger("perf.seconds", 15));
+
+    private static final int LINKS = 1_000;
+
+    @Test
+    void compareExecutionModes() throws Exception {
+        assumeTrue(VirtualThreads.isSupported(), "Java " + Runtime.version().feature() + " has no virtual threads");
+        LoadDriver.Result platform = run("platform");
+        LoadDriver.Result virtual = run("virtual");
+        System.out.printf("PLATFORM %s%nVIRTUAL  %s%n", platform, virtual);
+        assertServed(platform);
+        assertServed(virtual);
+    }
+
+    /**
+     * Fail when a mode served nothing or answered more than one in a hundred requests with an error.
+     */
+    private static void assertServed(LoadDriver.Result result) {
+        assertTrue(result.requests() > 0, result.toString());
+        assertTrue(result.errors() * 100 <= result.requests(), result.toString());
+    }
+
+    private static LoadDriver.Result run(String mode) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(UrlShortenerApplication.class)
+                .run("--server.port=0",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.datasource.url=jdbc:h2:mem:execution-" + mode,
+                        "--urlshortener.execution.mode=" + mode,
+                        // Measures the service itself, not how much of the load is shed.
+                        "--urlshortener.admission.enabled=false")) {
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            String base = "http://localhost:" + port;
+            HttpClient client = LoadDriver.client();
+
+            StringBuilder batch = new StringBuilder("[");
+            for (int i = 0; i < LINKS; i++) {
+                batch.append(i == 0 ? "" : ",").append("{\"url\":\"https://example.com/").append(i).append("\",\"username\":\"perf\"}");
+            }
+            HttpResponse<String> created = client.send(HttpRequest.newBuilder(URI.create(base + "/generate/batch"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(batch.append(']').toString()))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, created.statusCode());
+            String[] codes = created.body().split("\"shortUrl\":\"");
+            String[] shortUrls = new String[codes.length - 1];
+            for (int i = 1; i < codes.length; i++) {
+                shortUrls[i - 1] = codes[i].substring(0, codes[i].indexOf('"'));
+            }
+
+            return LoadDriver.closedLoop(client, CONCURRENCY, DURATION, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                if (random.nextInt(10) == 0) {
+                    return HttpRequest.newBuilder(URI.create(base + "/generate"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"url\":\"https://example.com/load\",\"username\":\"perf\"}"))
+                            .build();
+                }
+                return HttpRequest.newBuilder(URI.create(base + "/" + shortUrls[random.nextInt(shortUrls.length)])).GET().build();
+            });
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package io.twodigits.urlshortener.perf;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Drives a weighted mix of HTTP requests against a running instance and records a latency
+ * histogram per operation.
+ * <ul>
+ *     <li>Closed loop: a fixed number of clients, each sending its next request as soon as the
+ *     previous one has been answered. A slow response holds back the requests that would have been
+ *     sent meanwhile, so the histograms are corrected for coordinated omission with the median
+ *     response time as the expected interval between requests.</li>
+ *     <li>Open loop: requests are sent at a fixed rate, whether or not earlier ones have been answered.
+ *     Latency is measured from the time a request was due, so falling behind shows up in the
+ *     histogram instead of being hidden by a lower send rate.</li>
+ * </ul>
+ */
+final class LoadDriver {
+
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private LoadDriver() {
+    }
+
+    /**
+     * One kind of request of a mix.
+     *
+     * @param name the name the results are reported under
+     * @param weight the share of this operation relative to the other operations of the mix
+     * @param request creates the next request to send
+     */
+    record Operation(String name, int weight, Supplier<HttpRequest> request) {
+    }
+
+    record Result(long requests, long errors, Duration duration, Histogram latency) {
+
+        double throughput() {
+            return requests / (duration.toNanos() / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8.0f req/s, errors %d, p50 %6.2f ms, p99 %7.2f ms, max %7.2f ms",
+                    throughput(), errors,
+                    latency.getValueAtPercentile(50) / 1e6,
+                    latency.getValueAtPercentile(99) / 1e6,
+                    latency.getMaxValue() / 1e6);
+        }
+    }
+
+    /**
+     * The results of a run.
+     *
+     * @param operations the result per operation, in the order of the mix
+     * @param total the result over all operations
+     */
+    record Report(Map<String, Result> operations, Result total) {
+    }
+
+    static HttpClient client() {
+        return HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * Run a closed-loop test with a single kind of request.
+     *
+     * @param client
+     * @param concurrency the number of clients
+     * @param duration how long requests are sent
+     * @param requests creates the next request to send
+     * @return throughput and latency over all requests
+     */
+    static Result closedLoop(HttpClient client, int concurrency, Duration duration, Supplier<HttpRequest> requests)
+            throws InterruptedException {
+        return closedLoop(client, concurrency, duration, List.of(new Operation("all", 1, requests))).total();
+    }
+
+    /**
+     * Run a closed-loop test.
+     *
+     * @param client
+     * @param concurrency the number of clients
+     * @param duration how long requests are sent
+     * @param mix the operations to send
+     * @return throughput and corrected latency per operation
+     */
+    static Report closedLoop(HttpClient client, int concurrency, Duration duration, List<Operation> mix)
+            throws InterruptedException {
+        Recorders recorders = new Recorders(mix);
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Thread> clients = new ArrayList<>(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    int operation = recorders.pick();
+                    long sent = System.nanoTime();
+                    boolean failed;
+                    try {
+                        HttpResponse<Void> response = client.send(mix.get(operation).request().get(),
+                                HttpResponse.BodyHandlers.discarding());
+                        failed = response.statusCode() >= 400;
+                    } catch (Exception e) {
+                        failed = true;
+                    }
+                    recorders.record(operation, System.nanoTime() - sent, failed);
+                }
+            }, "load-client-" + i);
+            thread.start();
+            clients.add(thread);
+        }
+        for (Thread thread : clients) {
+            thread.join(duration.plus(DRAIN_TIMEOUT).toMillis());
+        }
+        return recorders.report(Duration.ofNanos(System.nanoTime() - start), true);
+    }
+
+    /**
+     * Run an open-loop test.
+     *
+     * @param client
+     * @param rate the number of requests sent per second
+     * @param duration how long requests are sent
+     * @param mix the operations to send
+     * @return throughput and latency per operation, measured from the time each request was due
+     */
+    static Report openLoop(HttpClient client, int rate, Duration duration, List<Operation> mix) {
+        Recorders recorders = new Recorders(mix);
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long count = duration.toNanos() / interval;
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        long start = System.nanoTime();
+        for (long i = 0; i < count; i++) {
+            long due = start + i * interval;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int operation = recorders.pick();
+            pending.add(client.sendAsync(mix.get(operation).request().get(), HttpResponse.BodyHandlers.discarding())
+                    .handle((response, error) -> {
+                        recorders.record(operation, System.nanoTime() - due, error != null || response.statusCode() >= 400);
+                        return null;
+                    }));
+            if (pending.size() >= rate) {
+                pending.removeIf(CompletableFuture::isDone);
+            }
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+                    .get(DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // requests still outstanding are missing from the histograms and reported by the caller as lost
+        }
+        return recorders.report(Duration.ofNanos(System.nanoTime() - start), false);
+    }
+
+    private static final class Recorders {
+
+        private final List<Operation> mix;
+
+        private final int[] cumulativeWeights;
+
+        private final Recorder[] latencies;
+
+        private final LongAdder[] counts;
+
+        private final LongAdder[] errors;
+
+        Recorders(List<Operation> mix) {
+            this.mix = mix;
+            this.cumulativeWeights = new int[mix.size()];
+            this.latencies = new Recorder[mix.size()];
+            this.counts = new LongAdder[mix.size()];
+            this.errors = new LongAdder[mix.size()];
+            int sum = 0;
+            for (int i = 0; i < mix.size(); i++) {
+                sum += mix.get(i).weight();
+                cumulativeWeights[i] = sum;
+                latencies[i] = new Recorder(3);
+                counts[i] = new LongAdder();
+                errors[i] = new LongAdder();
+            }
+        }
+
+        int pick() {
+            int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        void record(int operation, long latencyNanos, boolean failed) {
+            latencies[operation].recordValue(latencyNanos);
+            counts[operation].increment();
+            if (failed) {
+                errors[operation].increment();
+            }
+        }
+
+        Report report(Duration duration, boolean correctForCoordinatedOmission) {
+            Histogram[] histograms = new Histogram[mix.size()];
+            Histogram all = new Histogram(3);
+            for (int i = 0; i < mix.size(); i++) {
+                histograms[i] = latencies[i].getIntervalHistogram();
+                all.add(histograms[i]);
+            }
+            long expectedInterval = all.getTotalCount() == 0 ? 0 : all.getValueAtPercentile(50);
+            Map<String, Result> results = new LinkedHashMap<>();
+            Histogram total = new Histogram(3);
+            long totalErrors = 0;
+            for (int i = 0; i < mix.size(); i++) {
+                Histogram latency = correctForCoordinatedOmission && expectedInterval > 0
+                        ? histograms[i].copyCorrectedForCoordinatedOmission(expectedInterval)
+                        : histograms[i];
+                total.add(latency);
+                totalErrors += errors[i].sum();
+                results.put(mix.get(i).name(), new Result(counts[i].sum(), errors[i].sum(), duration, latency));
+            }
+            long requests = results.values().stream().mapToLong(Result::requests).sum();
+            return new Report(results, new Result(requests, totalErrors, duration, total));
+        }
+    }
+}
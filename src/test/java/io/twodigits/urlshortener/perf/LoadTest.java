@@ -0,0 +1,172 @@
+package io.twodigits.urlshortener.perf;
+
+import io.twodigits.urlshortener.model.BatchItemResult;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * End-to-end load test of the HTTP API on a random port.
+ * <p>
+ * The mix of generate, redirect, stats and user listing requests is set with
+ * {@code -Dperf.mix=generate=5,redirect=80,stats=5,urlsby=10}; redirects and stats requests pick
+ * links from a Zipf distribution ({@code -Dperf.zipf}). {@code -Dperf.loop=closed|open|both} selects
+ * fixed concurrency ({@code -Dperf.concurrency}), a fixed arrival rate ({@code -Dperf.rate}) or both.
+ * <p>
+ * Per operation, the percentile distribution is written to {@code target/load/<loop>-<operation>.hgrm}
+ * and a summary line to {@code target/load/summary.csv}; latencies are in milliseconds.
+ * Admission control is off, since all requests come from one client IP.
+ * Run with {@code mvn test -Pperf -Dtest=LoadTest}.
+ */
+@Tag("perf")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.jpa.show-sql=false", "urlshortener.admission.enabled=false"})
+class LoadTest {
+
+    private static final int LINKS = Integer.getInteger("perf.links", 10_000);
+
+    private static final int USERS = Integer.getInteger("perf.users", 100);
+
+    private static final double ZIPF_EXPONENT = Double.parseDouble(System.getProperty("perf.zipf", "1.0"));
+
+    private static final String MIX = System.getProperty("perf.mix", "generate=5,redirect=80,stats=5,urlsby=10");
+
+    private static final String LOOP = System.getProperty("perf.loop", "both");
+
+    private static final int CONCURRENCY = Integer.getInteger("perf.concurrency", 64);
+
+    private static final int RATE = Integer.getInteger("perf.rate", 500);
+
+    private static final Duration DURATION = Duration.ofSeconds(Integer.getInteger("perf.seconds", 30));
+
+    private static final Duration WARMUP = Duration.ofSeconds(Integer.getInteger("perf.warmup", 5));
+
+    private static final Path OUTPUT = Path.of("target", "load");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private URLShortenerService urlShortenerService;
+
+    private HttpClient client;
+
+    private String[] shortUrls;
+
+    private ZipfDistribution popularity;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        client = LoadDriver.client();
+        List<URLDto> urlDtos = new ArrayList<>(LINKS);
+        for (int i = 0; i < LINKS; i++) {
+            urlDtos.add(dto("https://example.com/" + i, "user" + (i % USERS)));
+        }
+        shortUrls = urlShortenerService.generateShortUrls(urlDtos).stream()
+                .map(BatchItemResult::getUrl)
+                .map(URL::getShortUrl)
+                .toArray(String[]::new);
+        popularity = new ZipfDistribution(shortUrls.length, ZIPF_EXPONENT);
+        Files.createDirectories(OUTPUT);
+    }
+
+    private static URLDto dto(String longUrl, String username) {
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl(longUrl);
+        urlDto.setUsername(username);
+        return urlDto;
+    }
+
+    @Test
+    void runLoad() throws Exception {
+        List<LoadDriver.Operation> mix = mix();
+        if (!LOOP.equals("open")) {
+            LoadDriver.closedLoop(client, CONCURRENCY, WARMUP, mix);
+            report("closed", LoadDriver.closedLoop(client, CONCURRENCY, DURATION, mix));
+        }
+        if (!LOOP.equals("closed")) {
+            LoadDriver.openLoop(client, RATE, WARMUP, mix);
+            report("open", LoadDriver.openLoop(client, RATE, DURATION, mix));
+        }
+    }
+
+    private List<LoadDriver.Operation> mix() {
+        String base = "http://localhost:" + port;
+        List<LoadDriver.Operation> mix = new ArrayList<>();
+        for (String entry : MIX.split(",")) {
+            String[] parts = entry.split("=");
+            String name = parts[0].trim();
+            int weight = Integer.parseInt(parts[1].trim());
+            mix.add(new LoadDriver.Operation(name, weight, switch (name) {
+                case "generate" -> () -> HttpRequest.newBuilder(URI.create(base + "/generate"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"url\":\"https://example.com/new/"
+                                + ThreadLocalRandom.current().nextLong() + "\",\"username\":\"user"
+                                + ThreadLocalRandom.current().nextInt(USERS) + "\"}"))
+                        .build();
+                case "redirect" -> () -> HttpRequest.newBuilder(URI.create(base + "/" + popularLink())).build();
+                case "stats" -> () -> HttpRequest.newBuilder(URI.create(base + "/stats/" + popularLink())).build();
+                case "urlsby" -> () -> HttpRequest.newBuilder(URI.create(base + "/urlsby/user"
+                        + ThreadLocalRandom.current().nextInt(USERS))).build();
+                default -> throw new IllegalArgumentException("Unknown operation " + name);
+            }));
+        }
+        return mix;
+    }
+
+    private String popularLink() {
+        return shortUrls[popularity.sample()];
+    }
+
+    private void report(String loop, LoadDriver.Report report) throws IOException {
+        Path summary = OUTPUT.resolve("summary.csv");
+        boolean header = !Files.exists(summary);
+        try (PrintStream csv = new PrintStream(Files.newOutputStream(summary,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (header) {
+                csv.println("loop,operation,requests,errors,throughput,p50,p90,p99,p999,max");
+            }
+            for (Map.Entry<String, LoadDriver.Result> entry : report.operations().entrySet()) {
+                write(loop, entry.getKey(), entry.getValue(), csv);
+            }
+            write(loop, "total", report.total(), csv);
+        }
+        assertTrue(report.total().requests() > 0);
+    }
+
+    private static void write(String loop, String operation, LoadDriver.Result result, PrintStream csv) throws IOException {
+        try (PrintStream hgrm = new PrintStream(Files.newOutputStream(OUTPUT.resolve(loop + "-" + operation + ".hgrm")))) {
+            result.latency().outputPercentileDistribution(hgrm, 1e6);
+        }
+        csv.printf("%s,%s,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f%n", loop, operation, result.requests(), result.errors(),
+                result.throughput(),
+                result.latency().getValueAtPercentile(50) / 1e6,
+                result.latency().getValueAtPercentile(90) / 1e6,
+                result.latency().getValueAtPercentile(99) / 1e6,
+                result.latency().getValueAtPercentile(99.9) / 1e6,
+                result.latency().getMaxValue() / 1e6);
+        System.out.printf("%-6s %-8s %s%n", loop, operation, result);
+    }
+}
@@ -0,0 +1,101 @@
+package io.twodigits.urlshortener.perf;
+
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.reactive.ReactiveServer;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Holds a large number of slow clients on the reactive redirect endpoint: every client sends
+ * the first half of its request and stalls. A regular redirect must still be answered quickly,
+ * and the server must not have started a thread per connection.
+ * The number of connections is set with {@code -Dperf.connections}; each one needs two file
+ * descriptors in this JVM.
+ */
+@Tag("perf")
+@SpringBootTest(properties = {
+        "spring.jpa.show-sql=false",
+        "urlshortener.reactive.enabled=true",
+        "urlshortener.reactive.port=0"})
+class ReactiveSlowClientsTest {
+
+    private static final int CONNECTIONS = Integer.getInteger("perf.connections", 5_000);
+
+    @Autowired
+    private ReactiveServer reactiveServer;
+
+    @Autowired
+    private URLShortenerService urlShortenerService;
+
+    @Test
+    void holdSlowClients() throws Exception {
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://example.com/slow");
+        URL url = urlShortenerService.generateShortUrl(urlDto).orElseThrow();
+        InetSocketAddress address = new InetSocketAddress("localhost", reactiveServer.getPort());
+        byte[] head = ("GET /" + url.getShortUrl() + " HTTP/1.1\r\nHost: localhost\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = "\r\n".getBytes(StandardCharsets.US_ASCII);
+
+        int threadsBefore = Thread.activeCount();
+        List<SocketChannel> clients = new ArrayList<>(CONNECTIONS);
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < CONNECTIONS; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.write(ByteBuffer.wrap(head));
+                clients.add(channel);
+            }
+            System.out.printf("Opened %d stalled connections in %d ms%n", CONNECTIONS, (System.nanoTime() - start) / 1_000_000);
+
+            HttpClient client = LoadDriver.client();
+            HttpRequest redirect = HttpRequest.newBuilder(URI.create("http://localhost:" + reactiveServer.getPort() + "/" + url.getShortUrl())).build();
+            long sent = System.nanoTime();
+            HttpResponse<Void> response = client.send(redirect, HttpResponse.BodyHandlers.discarding());
+            System.out.printf("Redirect next to %d stalled connections took %.2f ms, %d threads were started%n",
+                    CONNECTIONS, (System.nanoTime() - sent) / 1e6, Thread.activeCount() - threadsBefore);
+            assertEquals(302, response.statusCode());
+
+            start = System.nanoTime();
+            for (SocketChannel channel : clients) {
+                channel.write(ByteBuffer.wrap(tail));
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            int redirected = 0;
+            for (SocketChannel channel : clients) {
+                buffer.clear();
+                channel.read(buffer);
+                if (new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).startsWith("HTTP/1.1 302")) {
+                    redirected++;
+                }
+            }
+            System.out.printf("Completed %d stalled requests in %d ms%n", redirected, (System.nanoTime() - start) / 1_000_000);
+            assertEquals(CONNECTIONS, redirected);
+        } finally {
+            for (SocketChannel channel : clients) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // the result has already been measured
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package io.twodigits.urlshortener.perf;
+
+import io.twodigits.urlshortener.UrlShortenerApplication;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures what the redirect cache snapshot buys after a restart.
+ * <p>
+ * A first instance on a file-based H2 database creates the links and serves Zipf-distributed
+ * redirects until its cache is hot, then shuts down and leaves the snapshot behind. The same
+ * database is then started cold, with the warm start disabled, and warm. For both, the time until
+ * the readiness probe is green and the redirect p99 of consecutive one-second windows are printed;
+ * the time to steady state is the first window whose p99 is within 50% of the last one.
+ * Run with {@code mvn test -Pperf -Dtest=WarmStartTest}.
+ */
+@Tag("perf")
+class WarmStartTest {
+
+    private static final int LINKS = Integer.getInteger("perf.links", 20_000);
+
+    private static final double ZIPF_EXPONENT = Double.parseDouble(System.getProperty("perf.zipf", "1.0"));
+
+    private static final int CONCURRENCY = Integer.getInteger("perf.concurrency", 32);
+
+    private static final int WINDOWS = Integer.getInteger("perf.windows", 10);
+
+    private static final Duration WINDOW = Duration.ofSeconds(1);
+
+    private static final Path DIRECTORY = Path.of("target", "warm-start-perf");
+
+    private final ZipfDistribution popularity = new ZipfDistribution(LINKS, ZIPF_EXPONENT);
+
+    @Test
+    void compareColdAndWarmStart() throws Exception {
+        FileSystemUtils.deleteRecursively(DIRECTORY);
+        String[] shortUrls;
+        try (ConfigurableApplicationContext context = start(true)) {
+            shortUrls = seed(context.getBean(URLShortenerService.class));
+            for (int i = 0; i < 5; i++) {
+                redirects(context, shortUrls);
+            }
+        }
+
+        long[] cold = measure(false, shortUrls);
+        long[] warm = measure(true, shortUrls);
+        System.out.printf("COLD ready in %d ms, steady after %d s%nWARM ready in %d ms, steady after %d s%n",
+                cold[0], cold[1], warm[0], warm[1]);
+    }
+
+    /**
+     * @return the time until ready in milliseconds and the number of windows until steady state
+     */
+    private long[] measure(boolean warmStart, String[] shortUrls) throws Exception {
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext context = start(warmStart)) {
+            awaitReadiness(context);
+            long readyMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+            List<Double> p99s = new ArrayList<>(WINDOWS);
+            for (int window = 0; window < WINDOWS; window++) {
+                p99s.add(redirects(context, shortUrls).latency().getValueAtPercentile(99) / 1e6);
+            }
+            System.out.printf("%s p99 per second (ms): %s%n", warmStart ? "WARM" : "COLD", p99s);
+            double steady = p99s.get(p99s.size() - 1);
+            int steadyAfter = 0;
+            while (steadyAfter < p99s.size() && p99s.get(steadyAfter) > steady * 1.5) {
+                steadyAfter++;
+            }
+            return new long[]{readyMillis, steadyAfter};
+        }
+    }
+
+    private static ConfigurableApplicationContext start(boolean warmStart) {
+        return new SpringApplicationBuilder(UrlShortenerApplication.class)
+                .run("--server.port=0",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.datasource.url=jdbc:h2:file:./" + DIRECTORY.resolve("db"),
+                        "--urlshortener.warm-start.enabled=" + warmStart,
+                        "--urlshortener.warm-start.file=" + DIRECTORY.resolve("redirect-cache.snapshot"));
+    }
+
+    private static String[] seed(URLShortenerService service) {
+        List<URLDto> urlDtos = new ArrayList<>(LINKS);
+        for (int i = 0; i < LINKS; i++) {
+            URLDto urlDto = new URLDto();
+            urlDto.setUrl("https://example.com/" + i);
+            urlDtos.add(urlDto);
+        }
+        return service.generateShortUrls(urlDtos).stream()
+                .map(result -> result.getUrl().getShortUrl())
+                .toArray(String[]::new);
+    }
+
+    private static void awaitReadiness(ConfigurableApplicationContext context) throws IOException, InterruptedException {
+        HttpClient client = LoadDriver.client();
+        HttpRequest readiness = HttpRequest.newBuilder(URI.create(base(context) + "/actuator/health/readiness")).build();
+        while (client.send(readiness, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+            Thread.sleep(10);
+        }
+    }
+
+    private LoadDriver.Result redirects(ConfigurableApplicationContext context, String[] shortUrls)
+            throws InterruptedException {
+        String base = base(context);
+        LoadDriver.Result result = LoadDriver.closedLoop(LoadDriver.client(), CONCURRENCY, WINDOW,
+                () -> HttpRequest.newBuilder(URI.create(base + "/" + shortUrls[popularity.sample()])).GET().build());
+        assertEquals(0, result.errors());
+        return result;
+    }
+
+    private static String base(ConfigurableApplicationContext context) {
+        return "http://localhost:" + ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+    }
+}
@@ -0,0 +1,141 @@
+package io.twodigits.urlshortener.perf;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.ExportFormat;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import io.twodigits.urlshortener.stats.ClickStore;
+import io.twodigits.urlshortener.wire.WireFormat;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the payload size and the response time of the stats of one link in each wire
+ * format, as sent without compression, with gzip and with zstd.
+ * <p>
+ * The link gets clicks with a realistic mix of user agents, referrers, client addresses and
+ * access times. Its full stats page is fetched with each Accept header and its streamed export
+ * in each export format; every combination is fetched a few times and the mean time printed
+ * next to the number of bytes on the wire. The encoding cost alone is measured by
+ * {@code WireFormatBenchmark}. Run with {@code mvn test -Pperf -Dtest=WireFormatSizeTest}.
+ */
+@Tag("perf")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class WireFormatSizeTest {
+
+    private static final int CLICKS = Integer.getInteger("perf.clicks", 10_000);
+
+    private static final int ROUNDS = Integer.getInteger("perf.rounds", 20);
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/119.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.1 Safari/605.1.15",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_1 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.1 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:119.0) Gecko/20100101 Firefox/119.0",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/119.0.6045.66 Mobile Safari/537.36",
+            "Twitterbot/1.0",
+            "Slackbot-LinkExpanding 1.0 (+https://api.slack.com/robots)",
+            "curl/8.4.0"};
+
+    private static final String[] REFERRERS = {
+            null, null, "https://www.google.com/", "https://t.co/", "https://news.ycombinator.com/",
+            "https://www.reddit.com/r/programming/comments/17v2x0k/", "https://www.linkedin.com/feed/"};
+
+    private static final String[] CODINGS = {"identity", "gzip", "zstd"};
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private URLShortenerService urlShortenerService;
+
+    @Autowired
+    private ClickStore clickStore;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private double jsonBytes;
+
+    private URL seed() {
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://example.com/blog/2023/11/compact-wire-formats");
+        URL url = urlShortenerService.generateShortUrl(urlDto).orElseThrow();
+        Random random = new Random(42);
+        long accessTime = 1_700_000_000_000L;
+        List<ClickEvent> clicks = new ArrayList<>(CLICKS);
+        for (int i = 0; i < CLICKS; i++) {
+            accessTime += random.nextInt(60_000);
+            clicks.add(new ClickEvent(url.getId(), url.getShortUrl(), accessTime,
+                    USER_AGENTS[(int) Math.min(USER_AGENTS.length - 1, Math.abs(random.nextGaussian()) * 3)],
+                    REFERRERS[random.nextInt(REFERRERS.length)],
+                    random.nextInt(4) == 0
+                            ? "2001:db8:" + Integer.toHexString(random.nextInt(65536)) + "::" + Integer.toHexString(random.nextInt(65536))
+                            : random.nextInt(224) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256)));
+        }
+        clickStore.batchInsert(clicks);
+        return url;
+    }
+
+    /**
+     * @return the number of bytes on the wire and the mean response time in milliseconds
+     */
+    private double[] fetch(String path, String accept, String coding) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Accept", accept)
+                .header("Accept-Encoding", coding)
+                .build();
+        long bytes = 0;
+        long start = 0;
+        for (int round = -ROUNDS / 4; round < ROUNDS; round++) {
+            if (round == 0) {
+                start = System.nanoTime();
+            }
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, response.statusCode());
+            assertEquals(coding.equals("identity") ? "" : coding, response.headers().firstValue("Content-Encoding").orElse(""));
+            bytes = response.body().length;
+        }
+        return new double[]{bytes, (System.nanoTime() - start) / 1e6 / ROUNDS};
+    }
+
+    /**
+     * Print the bytes and times of one endpoint, the bytes also as share of the uncompressed JSON stats.
+     */
+    private void print(String name, String path, String accept) throws Exception {
+        StringBuilder line = new StringBuilder(String.format("%-14s", name));
+        for (String coding : CODINGS) {
+            double[] result = fetch(path, accept, coding);
+            if (jsonBytes == 0) {
+                jsonBytes = result[0];
+            }
+            line.append(String.format(" | %-8s %9.0f B %5.1f%% %7.2f ms", coding, result[0], 100 * result[0] / jsonBytes, result[1]));
+        }
+        System.out.println(line);
+    }
+
+    @Test
+    void compareWireFormats() throws Exception {
+        URL url = seed();
+        System.out.printf("Stats of %d clicks, mean of %d requests%n", CLICKS, ROUNDS);
+        for (WireFormat format : WireFormat.values()) {
+            print("stats " + format, "/stats/" + url.getShortUrl(), format.getMediaType().toString());
+        }
+        for (ExportFormat format : ExportFormat.values()) {
+            print("export " + format, "/stats/" + url.getShortUrl() + "/export?format=" + format, "*/*");
+        }
+    }
+}
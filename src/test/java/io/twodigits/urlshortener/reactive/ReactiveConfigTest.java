@@ -0,0 +1,28 @@
+package io.twodigits.urlshortener.reactive;
+
+import io.twodigits.urlshortener.config.ClickStoreProperties;
+import io.twodigits.urlshortener.config.ReactiveProperties;
+import io.twodigits.urlshortener.config.StorageProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveConfigTest {
+
+    private final ReactiveConfig config = new ReactiveConfig();
+
+    @Test
+    void reactiveDatabase_RefusesEnginesOutsideTheDatabase() {
+        // GIVEN
+        StorageProperties memory = new StorageProperties();
+        memory.setEngine(StorageProperties.Engine.MEMORY);
+        ClickStoreProperties log = new ClickStoreProperties();
+        log.setEngine(ClickStoreProperties.Engine.LOG);
+
+        // WHEN / THEN
+        assertThrows(IllegalStateException.class,
+                () -> config.reactiveDatabase(new ReactiveProperties(), memory, new ClickStoreProperties()));
+        assertThrows(IllegalStateException.class,
+                () -> config.reactiveDatabase(new ReactiveProperties(), new StorageProperties(), log));
+    }
+}
@@ -0,0 +1,151 @@
+package io.twodigits.urlshortener.reactive;
+
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"urlshortener.reactive.enabled=true", "urlshortener.reactive.port=0"})
+class ReactiveURLHandlerTest {
+
+    @Autowired
+    private ReactiveServer reactiveServer;
+
+    @Autowired
+    private URLShortenerService urlShortenerService;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    public void setUp() {
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:" + reactiveServer.getPort()).build();
+    }
+
+    private static URLDto dto(String longUrl, String username) {
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl(longUrl);
+        urlDto.setUsername(username);
+        return urlDto;
+    }
+
+    private URL generate(String longUrl) {
+        URL url = client.post().uri("/generate")
+                .bodyValue(dto(longUrl, "reactive"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(URL.class)
+                .returnResult().getResponseBody();
+        assertNotNull(url);
+        return url;
+    }
+
+    @Test
+    void generate_ThenRedirect() {
+        // GIVEN
+        URL url = generate("https://reactive.example.com/a");
+
+        // WHEN / THEN
+        client.get().uri("/" + url.getShortUrl())
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.FOUND)
+                .expectHeader().location("https://reactive.example.com/a");
+        assertEquals(Long.valueOf(url.getId()), urlShortenerService.getEncodedUrl(url.getShortUrl()).map(URL::getId).orElse(null));
+    }
+
+    @Test
+    void generate_DoesNotReuseIdsOfTheServletStack() {
+        // GIVEN
+        URL servlet = urlShortenerService.generateShortUrl(dto("https://servlet.example.com", "servlet")).orElseThrow();
+
+        // WHEN
+        URL reactive = generate("https://reactive.example.com/b");
+
+        // THEN
+        assertNotEquals(servlet.getId(), reactive.getId());
+        assertNotEquals(servlet.getShortUrl(), reactive.getShortUrl());
+    }
+
+    @Test
+    void generate_CountsUrlOfUser() {
+        // GIVEN
+        long before = urlShortenerService.countURLsOfUser("reactive");
+
+        // WHEN
+        URL url = generate("https://reactive.example.com/e");
+
+        // THEN
+        assertEquals(before + 1, urlShortenerService.countURLsOfUser("reactive"));
+        assertEquals(url.getLongUrl(), urlShortenerService.getURLById(String.valueOf(url.getId())).map(URL::getLongUrl).orElse(null));
+    }
+
+    @Test
+    void redirect_UnknownShortUrl_ReturnsNotFound() {
+        client.get().uri("/doesNotExist")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void redirect_LongUrlWhichIsNoValidUri_PassesItOn() {
+        // GIVEN
+        URL url = generate("https://reactive.example.com/{not a uri}");
+
+        // WHEN / THEN
+        client.get().uri("/" + url.getShortUrl())
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.FOUND)
+                .expectHeader().valueEquals("Location", "https://reactive.example.com/{not a uri}");
+    }
+
+    @Test
+    void stats_UnknownShortUrl_ReturnsNotFound() {
+        client.get().uri("/stats/doesNotExist")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void stats_StreamsRecordedClicks() throws InterruptedException {
+        // GIVEN
+        URL url = generate("https://reactive.example.com/c");
+        client.get().uri("/" + url.getShortUrl()).exchange().expectStatus().isEqualTo(HttpStatus.FOUND);
+        client.get().uri("/" + url.getShortUrl()).exchange().expectStatus().isEqualTo(HttpStatus.FOUND);
+
+        // WHEN
+        List<Map> stats = List.of();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (stats.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            stats = client.get().uri("/stats/" + url.getShortUrl())
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBodyList(Map.class)
+                    .returnResult().getResponseBody();
+        }
+
+        // THEN
+        assertEquals(2, stats.size());
+        assertNotNull(stats.get(0).get("accessTime"));
+    }
+
+    @Test
+    void statsPage_InvalidCursor_ReturnsBadRequest() {
+        // GIVEN
+        URL url = generate("https://reactive.example.com/d");
+
+        // WHEN / THEN
+        client.get().uri("/stats/" + url.getShortUrl() + "/page?cursor=%%%")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
@@ -0,0 +1,74 @@
+package io.twodigits.urlshortener.repo;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLStatsView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class URLRepoTest {
+
+    @Autowired
+    private URLRepo urlRepo;
+
+    @Autowired
+    private URLStatsRepo urlStatsRepo;
+
+    @Autowired
+    private URLStatsJdbcRepo urlStatsJdbcRepo;
+
+    private URL url;
+
+    @BeforeEach
+    public void setUp() {
+        url = new URL();
+        url.setLongUrl("https://reddit.com");
+        url.setShortUrl("projection" + System.nanoTime());
+        url.setUsername("projection" + System.nanoTime());
+        url = urlRepo.save(url);
+    }
+
+    @Test
+    void findByShortUrl_ReturnsUnmanagedCopy() {
+        // WHEN
+        URL found = urlRepo.findByShortUrl(url.getShortUrl()).orElseThrow();
+        found.setLongUrl("https://changed.example.com");
+
+        // THEN
+        assertEquals(url.getId(), found.getId());
+        assertEquals(url.getUsername(), found.getUsername());
+        assertEquals("https://reddit.com", urlRepo.findByShortUrl(url.getShortUrl()).orElseThrow().getLongUrl());
+    }
+
+    @Test
+    void findByUsername_ReturnsUrlsOfUser() {
+        // WHEN
+        List<URL> found = urlRepo.findByUsername(url.getUsername());
+
+        // THEN
+        assertEquals(List.of(url), found);
+    }
+
+    @Test
+    void findViewsByUrlId_ReturnsRowsInOrder() {
+        // GIVEN
+        urlStatsJdbcRepo.batchInsert(List.of(
+                new ClickEvent(url.getId(), url.getShortUrl(), 2_000L, "second", null, "127.0.0.1"),
+                new ClickEvent(url.getId(), url.getShortUrl(), 1_000L, "first", null, "127.0.0.1")));
+
+        // WHEN
+        List<URLStatsView> views = urlStatsRepo.findViewsByUrlId(url.getId());
+
+        // THEN
+        assertEquals(2, views.size());
+        assertEquals("first", views.get(0).getUserAgent());
+        assertEquals("second", views.get(1).getUserAgent());
+    }
+}
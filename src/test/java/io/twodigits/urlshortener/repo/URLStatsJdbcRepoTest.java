@@ -0,0 +1,79 @@
+package io.twodigits.urlshortener.repo;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLStatsView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class URLStatsJdbcRepoTest {
+
+    @Autowired
+    private URLRepo urlRepo;
+
+    @Autowired
+    private URLStatsJdbcRepo urlStatsJdbcRepo;
+
+    private URL url;
+
+    @BeforeEach
+    public void setUp() {
+        url = new URL();
+        url.setLongUrl("https://reddit.com");
+        url.setShortUrl("stats" + System.nanoTime());
+        url.setUsername("Kathy");
+        url = urlRepo.save(url);
+
+        long start = 1_700_000_000_000L;
+        List<ClickEvent> events = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            // Pairs of clicks share an access time, so the ID has to break the tie.
+            events.add(new ClickEvent(url.getId(), url.getShortUrl(), start + (i / 2) * 1000L, "agent" + i, null, "127.0.0.1"));
+        }
+        urlStatsJdbcRepo.batchInsert(events);
+    }
+
+    @Test
+    void findPage_WalksAllRowsOnceInOrder() {
+        // GIVEN
+        List<URLStatsView> seen = new ArrayList<>();
+        List<URLStatsView> page = urlStatsJdbcRepo.findPage(url.getId(), null, 0, 10);
+
+        // WHEN
+        while (!page.isEmpty()) {
+            seen.addAll(page);
+            URLStatsView last = page.get(page.size() - 1);
+            page = urlStatsJdbcRepo.findPage(url.getId(), last.getAccessTime(), last.getId(), 10);
+        }
+
+        // THEN
+        assertEquals(25, seen.size());
+        for (int i = 1; i < seen.size(); i++) {
+            URLStatsView previous = seen.get(i - 1);
+            URLStatsView current = seen.get(i);
+            assertTrue(previous.getAccessTime().isBefore(current.getAccessTime())
+                    || previous.getAccessTime().equals(current.getAccessTime()) && previous.getId() < current.getId());
+        }
+    }
+
+    @Test
+    void stream_VisitsEveryRow() {
+        // GIVEN
+        List<URLStatsView> rows = new ArrayList<>();
+
+        // WHEN
+        urlStatsJdbcRepo.stream(url.getId(), rows::add);
+
+        // THEN
+        assertEquals(25, rows.size());
+        assertEquals("agent0", rows.get(0).getUserAgent());
+    }
+}
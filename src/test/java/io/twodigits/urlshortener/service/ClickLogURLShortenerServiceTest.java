@@ -0,0 +1,11 @@
+package io.twodigits.urlshortener.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = {
+        "urlshortener.stats.store.engine=log",
+        // Clicks refer to URLs by ID, which start over with the database on every run.
+        "urlshortener.stats.store.log.directory=target/click-log-test/${random.uuid}"
+})
+class ClickLogURLShortenerServiceTest extends URLShortenerServiceContractTest {
+}
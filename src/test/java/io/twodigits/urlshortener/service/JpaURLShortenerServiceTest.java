@@ -0,0 +1,7 @@
+package io.twodigits.urlshortener.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "urlshortener.storage.engine=jpa")
+class JpaURLShortenerServiceTest extends URLShortenerServiceContractTest {
+}
@@ -0,0 +1,12 @@
+package io.twodigits.urlshortener.service;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = {
+        "urlshortener.storage.engine=memory",
+        "urlshortener.storage.memory.directory=target/url-store-test",
+        // The engine numbers URLs independently, keep its statistics apart from the JPA tests' ones.
+        "spring.datasource.url=jdbc:h2:mem:memory-storage-test"
+})
+class MemoryURLShortenerServiceTest extends URLShortenerServiceContractTest {
+}
@@ -0,0 +1,156 @@
+package io.twodigits.urlshortener.service;
+
+import io.twodigits.urlshortener.model.BatchItemResult;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.model.URLStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the service against a real storage engine; subclasses select the engine.
+ */
+abstract class URLShortenerServiceContractTest {
+
+    @Autowired
+    private URLShortenerService urlShortenerService;
+
+    private static URLDto urlDto(String url, String username) {
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl(url);
+        urlDto.setUsername(username);
+        return urlDto;
+    }
+
+    private URL generate(String username) {
+        return urlShortenerService.generateShortUrl(urlDto("https://reddit.com/" + System.nanoTime(), username))
+                .orElseThrow();
+    }
+
+    @Test
+    void generateShortUrl_IsResolvable() {
+        // WHEN
+        URL url = generate("Kathy");
+
+        // THEN
+        assertEquals(url.getLongUrl(), urlShortenerService.getEncodedUrl(url.getShortUrl()).orElseThrow().getLongUrl());
+        assertEquals(url.getShortUrl(), urlShortenerService.getURLById(String.valueOf(url.getId())).orElseThrow().getShortUrl());
+    }
+
+    @Test
+    void listURLsOfUser_ReturnsUrlsOfUserOnly() {
+        // GIVEN
+        String username = "user" + System.nanoTime();
+        URL first = generate(username);
+        URL second = generate(username);
+        generate("Stranger");
+
+        // WHEN
+        List<URL> urls = urlShortenerService.listURLsOfUser(username);
+
+        // THEN
+        assertEquals(List.of(first.getId(), second.getId()), urls.stream().map(URL::getId).toList());
+    }
+
+    @Test
+    void getURLOfUserById_ChecksOwner() {
+        // GIVEN
+        URL url = generate("Kathy");
+        String id = String.valueOf(url.getId());
+
+        // WHEN / THEN
+        assertTrue(urlShortenerService.getURLOfUserById("Kathy", id).isPresent());
+        assertTrue(urlShortenerService.getURLOfUserById("Stranger", id).isEmpty());
+        assertTrue(urlShortenerService.getURLById("not-a-number").isEmpty());
+    }
+
+    @Test
+    void deleteUrlOfUserById_OnlyDeletesOwnUrl() {
+        // GIVEN
+        URL url = generate("Kathy");
+        String id = String.valueOf(url.getId());
+
+        // WHEN
+        urlShortenerService.deleteUrlOfUserById("Stranger", id);
+        boolean keptForStranger = urlShortenerService.getURLById(id).isPresent();
+        urlShortenerService.deleteUrlOfUserById("Kathy", id);
+
+        // THEN
+        assertTrue(keptForStranger);
+        assertTrue(urlShortenerService.getURLById(id).isEmpty());
+        assertTrue(urlShortenerService.getEncodedUrl(url.getShortUrl()).isEmpty());
+    }
+
+    @Test
+    void deleteUrlById_RemovesUrl() {
+        // GIVEN
+        URL url = generate(null);
+
+        // WHEN
+        urlShortenerService.deleteUrlById(String.valueOf(url.getId()));
+
+        // THEN
+        assertTrue(urlShortenerService.getEncodedUrl(url.getShortUrl()).isEmpty());
+    }
+
+    @Test
+    void saveShortUrl_RejectsTakenShortUrl() {
+        // GIVEN
+        URL url = generate("Kathy");
+        URL duplicate = new URL(null, "https://other.example.com", url.getShortUrl(), "Stranger");
+
+        // WHEN / THEN
+        assertThrows(DataIntegrityViolationException.class, () -> urlShortenerService.saveShortUrl(duplicate));
+        assertEquals(url.getLongUrl(), urlShortenerService.getEncodedUrl(url.getShortUrl()).orElseThrow().getLongUrl());
+    }
+
+    @Test
+    void generateShortUrls_StoresBatch() {
+        // GIVEN
+        List<URLDto> urlDtos = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            urlDtos.add(urlDto("https://batch.example.com/" + System.nanoTime() + "/" + i, "Kathy"));
+        }
+        urlDtos.add(urlDto(" ", "Kathy"));
+
+        // WHEN
+        List<BatchItemResult> results = urlShortenerService.generateShortUrls(urlDtos);
+
+        // THEN
+        assertEquals(BatchItemResult.Status.REJECTED, results.get(10).getStatus());
+        for (int i = 0; i < 10; i++) {
+            URL url = results.get(i).getUrl();
+            assertEquals(BatchItemResult.Status.CREATED, results.get(i).getStatus());
+            assertEquals(urlDtos.get(i).getUrl(), urlShortenerService.getEncodedUrl(url.getShortUrl()).orElseThrow().getLongUrl());
+        }
+    }
+
+    @Test
+    void getURLAccessStatisticsByShortUrl_ReturnsStoredStatistics() {
+        // GIVEN
+        URL url = generate("Kathy");
+        URLStats stats = new URLStats();
+        stats.setUrl(url);
+        stats.setAccessTime(LocalDateTime.now());
+        stats.setUserAgent("agent");
+        urlShortenerService.saveURLAccessStatistic(stats);
+
+        // WHEN
+        Optional<StatsPage> page = urlShortenerService.getURLAccessStatisticsByShortUrl(url.getShortUrl());
+
+        // THEN
+        assertEquals(1, page.orElseThrow().getItems().size());
+        assertEquals("agent", page.get().getItems().get(0).getUserAgent());
+        assertEquals(1, urlShortenerService.getClickCount(url.getShortUrl()).orElseThrow().getClicks());
+        assertTrue(urlShortenerService.getURLAccessStatisticsByShortUrl("unknown" + System.nanoTime()).isEmpty());
+    }
+}
@@ -1,46 +1,183 @@
 package io.twodigits.urlshortener.service;
 
+import io.twodigits.urlshortener.cache.RedirectCache;
+import io.twodigits.urlshortener.cache.UserUrlCounts;
+import io.twodigits.urlshortener.codegen.HashShortCodeGenerator;
+import io.twodigits.urlshortener.codegen.ShortCodeGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.twodigits.urlshortener.config.RedirectCacheProperties;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.ShortCodeFilterProperties;
+import io.twodigits.urlshortener.config.UserCountCacheProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.filter.ShortCodeFilter;
+import io.twodigits.urlshortener.index.UrlIndex;
+import io.twodigits.urlshortener.invalidation.InvalidationBus;
+import io.twodigits.urlshortener.model.BatchItemResult;
+import io.twodigits.urlshortener.model.ClickCount;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.RedirectType;
 import io.twodigits.urlshortener.model.URL;
 import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.model.URLPage;
 import io.twodigits.urlshortener.model.URLStats;
-import io.twodigits.urlshortener.repo.URLRepo;
-import io.twodigits.urlshortener.repo.URLStatsRepo;
+import io.twodigits.urlshortener.model.UrlChange;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.model.UniqueVisitors;
+import io.twodigits.urlshortener.stats.ClickCounters;
+import io.twodigits.urlshortener.stats.ClickDispatcher;
+import io.twodigits.urlshortener.stats.ClickStatsExporter;
+import io.twodigits.urlshortener.stats.ClickStore;
+import io.twodigits.urlshortener.stats.StatsCursor;
+import io.twodigits.urlshortener.stats.TrendingTracker;
+import io.twodigits.urlshortener.stats.UniqueVisitorCounter;
+import io.twodigits.urlshortener.storage.URLCursor;
+import io.twodigits.urlshortener.storage.URLStorage;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest
 class URLShortenerServiceImplTest {
 
     @Mock
-    private URLRepo urlRepo;
+    private URLStorage urlStorage;
 
     @Mock
-    private URLStatsRepo urlStatsRepo;
+    private ClickStore clickStore;
+
+    @Mock
+    private ClickDispatcher clickDispatcher;
+
+    @Mock
+    private ClickCounters clickCounters;
+
+    @Mock
+    private ClickStatsExporter clickStatsExporter;
+
+    @Mock
+    private UrlIndex urlIndex;
+
+    @Mock
+    private UniqueVisitorCounter uniqueVisitorCounter;
+
+    @Mock
+    private TrendingTracker trendingTracker;
+
+    @Mock
+    private InvalidationBus invalidationBus;
+
+    @Spy
+    private ShortCodeGenerator shortCodeGenerator = new HashShortCodeGenerator();
+
+    /**
+     * Never built, so it lets every short URL pass unless stubbed otherwise.
+     */
+    @Spy
+    private ShortCodeFilter shortCodeFilter = new ShortCodeFilter(
+            mock(URLStorage.class), new ShortCodeFilterProperties(),
+            new ExecutionThreads(new ExecutionProperties()), new SimpleMeterRegistry());
+
+    @Spy
+    private RedirectCache redirectCache = new RedirectCache(new RedirectCacheProperties());
+
+    @Spy
+    private UserUrlCounts userUrlCounts = new UserUrlCounts(new UserCountCacheProperties());
 
     @InjectMocks
     private URLShortenerServiceImpl urlShortenerService;
 
+    /**
+     * Writes run as they are, outside a transaction.
+     */
+    @BeforeEach
+    void runWritesDirectly() {
+        when(invalidationBus.transactionally(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+    }
+
     @Test
     void listURLsOfUser() {
         // GIVEN
         String username = "Kathy";
         List<URL> expectedUrls = Collections.emptyList();
-        when(urlRepo.findByUsername(username)).thenReturn(expectedUrls);
+        when(urlStorage.findByUsername(username)).thenReturn(expectedUrls);
 
         // WHEN
         List<URL> actualUrls = urlShortenerService.listURLsOfUser(username);
 
         // THEN
         assertSame(expectedUrls, actualUrls);
-        verify(urlRepo).findByUsername(username);
+        verify(urlStorage).findByUsername(username);
+    }
+
+    @Test
+    void getURLsOfUserPage_FullPageHasNextCursor() {
+        // GIVEN
+        List<URL> urls = List.of(new URL(3L, "https://reddit.com", "short3", "Kathy"),
+                new URL(5L, "https://reddit.com", "short5", "Kathy"));
+        when(urlStorage.findByUsername("Kathy", 2L, 2)).thenReturn(urls);
+        when(urlStorage.countByUsername("Kathy")).thenReturn(7L);
+
+        // WHEN
+        URLPage page = urlShortenerService.getURLsOfUserPage("Kathy", new URLCursor(2L).encode(), 2);
+        urlShortenerService.getURLsOfUserPage("Kathy", null, 2);
+
+        // THEN
+        assertEquals(urls, page.getItems());
+        assertEquals(7L, page.getTotal());
+        assertEquals(5L, URLCursor.decode(page.getNextCursor()).getId());
+        verify(urlStorage).findByUsername("Kathy", 0L, 2);
+        verify(urlStorage, times(1)).countByUsername("Kathy");
+    }
+
+    @Test
+    void getURLsOfUserPage_InvalidCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> urlShortenerService.getURLsOfUserPage("Kathy", "not-a-cursor", 10));
+    }
+
+    @Test
+    void countURLsOfUser_FollowsCreatedAndDeletedUrls() {
+        // GIVEN
+        when(urlStorage.countByUsername("Kathy")).thenReturn(4L);
+        when(urlStorage.save(any(URL.class))).thenAnswer(invocation -> {
+            URL url = invocation.getArgument(0);
+            url.setId(9L);
+            return url;
+        });
+        when(urlStorage.findById(9L)).thenReturn(Optional.of(new URL(9L, "https://reddit.com", "short9", "Kathy")));
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://reddit.com");
+        urlDto.setUsername("Kathy");
+        long before = urlShortenerService.countURLsOfUser("Kathy");
+
+        // WHEN
+        urlShortenerService.generateShortUrl(urlDto);
+        urlShortenerService.generateShortUrl(urlDto);
+        long afterCreate = urlShortenerService.countURLsOfUser("Kathy");
+        urlShortenerService.deleteUrlOfUserById("Kathy", "9");
+        long afterDelete = urlShortenerService.countURLsOfUser("Kathy");
+
+        // THEN
+        assertEquals(4L, before);
+        assertEquals(6L, afterCreate);
+        assertEquals(5L, afterDelete);
+        verify(urlStorage, times(1)).countByUsername("Kathy");
     }
 
     @Test
@@ -48,14 +185,14 @@ class URLShortenerServiceImplTest {
         // GIVEN
         String shortUrl = "short123";
         Optional<URL> expectedUrl = Optional.empty();
-        when(urlRepo.findByShortUrl(shortUrl)).thenReturn(expectedUrl);
+        when(urlStorage.findByShortUrl(shortUrl)).thenReturn(expectedUrl);
 
         // WHEN
         Optional<URL> actualUrl = urlShortenerService.getLongUrlByShortUrl(shortUrl);
 
         // THEN
         assertEquals(expectedUrl, actualUrl);
-        verify(urlRepo).findByShortUrl(shortUrl);
+        verify(urlStorage).findByShortUrl(shortUrl);
     }
 
     @Test
@@ -67,7 +204,7 @@ class URLShortenerServiceImplTest {
         URL expectedUrl = new URL();
         expectedUrl.setLongUrl(urlDto.getUrl());
         expectedUrl.setUsername(urlDto.getUsername());
-        when(urlRepo.save(any(URL.class))).thenReturn(expectedUrl);
+        when(urlStorage.save(any(URL.class))).thenReturn(expectedUrl);
 
         // WHEN
         Optional<URL> actualUrl = urlShortenerService.generateShortUrl(urlDto);
@@ -75,7 +212,84 @@ class URLShortenerServiceImplTest {
         // THEN
         assertTrue(actualUrl.isPresent());
         assertEquals(expectedUrl, actualUrl.get());
-        verify(urlRepo).save(any(URL.class));
+        verify(urlStorage).save(any(URL.class));
+    }
+
+    @Test
+    void generateShortUrl_RetriesOnCollision() {
+        // GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://reddit.com");
+        urlDto.setUsername("Kathy");
+        when(urlStorage.save(any(URL.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate short URL"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // WHEN
+        Optional<URL> actualUrl = urlShortenerService.generateShortUrl(urlDto);
+
+        // THEN
+        assertTrue(actualUrl.isPresent());
+        assertEquals(shortCodeGenerator.generate("https://reddit.com", 1), actualUrl.get().getShortUrl());
+        verify(urlStorage, times(2)).save(any(URL.class));
+    }
+
+    @Test
+    void generateShortUrl_GivesUpAfterRepeatedCollisions() {
+        // GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://reddit.com");
+        when(urlStorage.save(any(URL.class))).thenThrow(new DataIntegrityViolationException("duplicate short URL"));
+
+        // WHEN
+        Optional<URL> actualUrl = urlShortenerService.generateShortUrl(urlDto);
+
+        // THEN
+        assertFalse(actualUrl.isPresent());
+        verify(urlStorage, times(5)).save(any(URL.class));
+    }
+
+    @Test
+    void generateShortUrls_StoresValidItemsInOneBatch() {
+        // GIVEN
+        URLDto valid = new URLDto();
+        valid.setUrl("https://reddit.com");
+        valid.setUsername("Kathy");
+        URLDto empty = new URLDto();
+        empty.setUrl("");
+        when(urlStorage.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // WHEN
+        List<BatchItemResult> results = urlShortenerService.generateShortUrls(List.of(valid, empty, valid));
+
+        // THEN
+        assertEquals(3, results.size());
+        assertEquals(BatchItemResult.Status.CREATED, results.get(0).getStatus());
+        assertEquals(BatchItemResult.Status.REJECTED, results.get(1).getStatus());
+        assertEquals(2, results.get(2).getIndex());
+        assertEquals("https://reddit.com", results.get(2).getUrl().getLongUrl());
+        verify(urlStorage, times(1)).saveAll(anyList());
+        verify(urlStorage, never()).save(any());
+    }
+
+    @Test
+    void generateShortUrls_FallsBackToSingleInsertsOnCollision() {
+        // GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://reddit.com");
+        when(urlStorage.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("duplicate short URL"));
+        when(urlStorage.save(any(URL.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0))
+                .thenThrow(new DataIntegrityViolationException("duplicate short URL"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // WHEN
+        List<BatchItemResult> results = urlShortenerService.generateShortUrls(List.of(urlDto, urlDto));
+
+        // THEN
+        assertEquals(BatchItemResult.Status.CREATED, results.get(0).getStatus());
+        assertEquals(BatchItemResult.Status.CREATED, results.get(1).getStatus());
+        assertNotEquals(results.get(0).getUrl().getShortUrl(), results.get(1).getUrl().getShortUrl());
     }
 
     @Test
@@ -90,21 +304,71 @@ class URLShortenerServiceImplTest {
 
         // THEN
         assertFalse(actualUrl.isPresent());
-        verifyNoInteractions(urlRepo);
+        verifyNoInteractions(urlStorage);
+    }
+
+    @Test
+    void generateShortUrl_KeepsRedirectSettings() {
+        // GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://reddit.com");
+        urlDto.setRedirectType(RedirectType.MOVED_PERMANENTLY);
+        urlDto.setCacheMaxAge(86_400);
+        when(urlStorage.save(any(URL.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // WHEN
+        Optional<URL> actualUrl = urlShortenerService.generateShortUrl(urlDto);
+
+        // THEN
+        assertEquals(RedirectType.MOVED_PERMANENTLY, actualUrl.orElseThrow().getRedirectType());
+        assertEquals(86_400, actualUrl.get().getCacheMaxAge());
+        assertNotNull(actualUrl.get().getModifiedAt());
+    }
+
+    @Test
+    void generateShortUrl_WithNegativeCacheMaxAge() {
+        // GIVEN
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://reddit.com");
+        urlDto.setCacheMaxAge(-1);
+
+        // WHEN
+        Optional<URL> actualUrl = urlShortenerService.generateShortUrl(urlDto);
+
+        // THEN
+        assertFalse(actualUrl.isPresent());
+        verifyNoInteractions(urlStorage);
+    }
+
+    @Test
+    void saveShortUrl_ModificationTimeAlwaysGrows() {
+        // GIVEN
+        long future = System.currentTimeMillis() + 60_000;
+        URL stored = new URL(1L, "https://reddit.com", "short123", "Kathy");
+        stored.setModifiedAt(future);
+        when(urlStorage.findById(1L)).thenReturn(Optional.of(stored));
+        URL url = new URL(1L, "https://reddit.com/changed", "short123", "Kathy");
+        when(urlStorage.save(url)).thenReturn(url);
+
+        // WHEN
+        URL savedUrl = urlShortenerService.saveShortUrl(url);
+
+        // THEN
+        assertEquals(future + 1, savedUrl.getModifiedAt());
     }
 
     @Test
     void saveShortUrl() {
         // GIVEN
         URL url = new URL();
-        when(urlRepo.save(url)).thenReturn(url);
+        when(urlStorage.save(url)).thenReturn(url);
 
         // WHEN
         URL savedUrl = urlShortenerService.saveShortUrl(url);
 
         // THEN
         assertSame(url, savedUrl);
-        verify(urlRepo).save(url);
+        verify(urlStorage).save(url);
     }
 
     @Test
@@ -112,14 +376,137 @@ class URLShortenerServiceImplTest {
         // GIVEN
         String url = "short123";
         Optional<URL> expectedUrl = Optional.empty();
-        when(urlRepo.findByShortUrl(url)).thenReturn(expectedUrl);
+        when(urlStorage.findByShortUrl(url)).thenReturn(expectedUrl);
 
         // WHEN
         Optional<URL> actualUrl = urlShortenerService.getEncodedUrl(url);
 
         // THEN
         assertEquals(expectedUrl, actualUrl);
-        verify(urlRepo).findByShortUrl(url);
+        verify(urlStorage).findByShortUrl(url);
+    }
+
+    @Test
+    void getEncodedUrl_ServedFromCacheOnSecondLookup() {
+        // GIVEN
+        String shortUrl = "short123";
+        URL url = new URL();
+        url.setShortUrl(shortUrl);
+        url.setLongUrl("https://reddit.com");
+        when(urlStorage.findByShortUrl(shortUrl)).thenReturn(Optional.of(url));
+
+        // WHEN
+        urlShortenerService.getEncodedUrl(shortUrl);
+        Optional<URL> actualUrl = urlShortenerService.getEncodedUrl(shortUrl);
+
+        // THEN
+        assertTrue(actualUrl.isPresent());
+        assertEquals("https://reddit.com", actualUrl.get().getLongUrl());
+        verify(urlStorage, times(1)).findByShortUrl(shortUrl);
+    }
+
+    @Test
+    void getEncodedUrl_ServedFromIndex() {
+        // GIVEN
+        String shortUrl = "short123";
+        URL url = new URL();
+        url.setShortUrl(shortUrl);
+        url.setLongUrl("https://reddit.com");
+        when(urlIndex.get(shortUrl)).thenReturn(Optional.of(url));
+
+        // WHEN
+        Optional<URL> actualUrl = urlShortenerService.getEncodedUrl(shortUrl);
+
+        // THEN
+        assertTrue(actualUrl.isPresent());
+        assertEquals("https://reddit.com", actualUrl.get().getLongUrl());
+        verify(urlStorage, never()).findByShortUrl(shortUrl);
+    }
+
+    @Test
+    void saveShortUrl_UpdatesCache() {
+        // GIVEN
+        URL url = new URL();
+        url.setShortUrl("short123");
+        url.setLongUrl("https://reddit.com");
+        when(urlStorage.save(url)).thenReturn(url);
+
+        // WHEN
+        urlShortenerService.saveShortUrl(url);
+        Optional<URL> actualUrl = urlShortenerService.getEncodedUrl("short123");
+
+        // THEN
+        assertTrue(actualUrl.isPresent());
+        verify(urlStorage, never()).findByShortUrl(any());
+    }
+
+    @Test
+    void deleteUrlById_InvalidatesCache() {
+        // GIVEN
+        String id = "1";
+        URL url = new URL();
+        url.setShortUrl("short123");
+        url.setLongUrl("https://reddit.com");
+        when(urlStorage.findByShortUrl("short123")).thenReturn(Optional.of(url));
+        when(urlStorage.findById(1L)).thenReturn(Optional.of(url));
+        urlShortenerService.getEncodedUrl("short123");
+
+        // WHEN
+        urlShortenerService.deleteUrlById(id);
+        when(urlStorage.findByShortUrl("short123")).thenReturn(Optional.empty());
+        Optional<URL> actualUrl = urlShortenerService.getEncodedUrl("short123");
+
+        // THEN
+        assertFalse(actualUrl.isPresent());
+        verify(redirectCache).invalidate("short123");
+        verify(invalidationBus).publish(UrlChange.Kind.CHANGED, url);
+    }
+
+    @Test
+    void saveShortUrl_ChangedShortUrlEvictsAndPublishesPrevious() {
+        // GIVEN
+        URL previous = new URL(1L, "https://reddit.com", "short123", "Kathy");
+        URL updated = new URL(1L, "https://reddit.com", "short456", "Kathy");
+        when(urlStorage.findByShortUrl("short123")).thenReturn(Optional.of(previous));
+        when(urlStorage.findById(1L)).thenReturn(Optional.of(previous));
+        when(urlStorage.save(updated)).thenReturn(updated);
+        urlShortenerService.getEncodedUrl("short123");
+
+        // WHEN
+        urlShortenerService.saveShortUrl(updated);
+
+        // THEN
+        assertFalse(redirectCache.getIfPresent("short123").isPresent());
+        verify(urlIndex).remove("short123");
+        verify(invalidationBus).publish(UrlChange.Kind.CHANGED, previous);
+        verify(invalidationBus).publish(UrlChange.Kind.CREATED, updated);
+    }
+
+    @Test
+    void getEncodedUrl_FilteredShortUrlSkipsRepo() {
+        // GIVEN
+        doReturn(false).when(shortCodeFilter).mightContain("unknown");
+
+        // WHEN
+        Optional<URL> actualUrl = urlShortenerService.getEncodedUrl("unknown");
+
+        // THEN
+        assertFalse(actualUrl.isPresent());
+        verifyNoInteractions(urlStorage);
+    }
+
+    @Test
+    void saveShortUrl_AddsShortUrlToFilter() {
+        // GIVEN
+        URL url = new URL();
+        url.setShortUrl("short123");
+        when(urlStorage.save(url)).thenReturn(url);
+
+        // WHEN
+        urlShortenerService.saveShortUrl(url);
+
+        // THEN
+        verify(shortCodeFilter).put("short123");
     }
 
     @Test
@@ -127,14 +514,14 @@ class URLShortenerServiceImplTest {
         // GIVEN
         String user = "Kathy";
         String id = "1";
-        when(urlRepo.findById(id)).thenReturn(Optional.empty());
+        when(urlStorage.findById(1L)).thenReturn(Optional.empty());
 
         // WHEN
         Optional<URL> actualUrl = urlShortenerService.getURLOfUserById(user, id);
 
         // THEN
         assertFalse(actualUrl.isPresent());
-        verify(urlRepo).findById(id);
+        verify(urlStorage).findById(1L);
     }
 
     @Test
@@ -144,14 +531,14 @@ class URLShortenerServiceImplTest {
         String id = "1";
         URL url = new URL();
         url.setUsername("otherUser");
-        when(urlRepo.findById(id)).thenReturn(Optional.of(url));
+        when(urlStorage.findById(1L)).thenReturn(Optional.of(url));
 
         // WHEN
         Optional<URL> actualUrl = urlShortenerService.getURLOfUserById(user, id);
 
         // THEN
         assertFalse(actualUrl.isPresent());
-        verify(urlRepo).findById(id);
+        verify(urlStorage).findById(1L);
     }
 
     @Test
@@ -161,7 +548,7 @@ class URLShortenerServiceImplTest {
         String id = "1";
         URL url = new URL();
         url.setUsername(user);
-        when(urlRepo.findById(id)).thenReturn(Optional.of(url));
+        when(urlStorage.findById(1L)).thenReturn(Optional.of(url));
 
         // WHEN
         Optional<URL> actualUrl = urlShortenerService.getURLOfUserById(user, id);
@@ -169,7 +556,7 @@ class URLShortenerServiceImplTest {
         // THEN
         assertTrue(actualUrl.isPresent());
         assertSame(url, actualUrl.get());
-        verify(urlRepo).findById(id);
+        verify(urlStorage).findById(1L);
     }
 
     @Test
@@ -177,14 +564,14 @@ class URLShortenerServiceImplTest {
         // GIVEN
         String id = "1";
         Optional<URL> expectedUrl = Optional.empty();
-        when(urlRepo.findById(id)).thenReturn(expectedUrl);
+        when(urlStorage.findById(1L)).thenReturn(expectedUrl);
 
         // WHEN
         Optional<URL> actualUrl = urlShortenerService.getURLById(id);
 
         // THEN
         assertEquals(expectedUrl, actualUrl);
-        verify(urlRepo).findById(id);
+        verify(urlStorage).findById(1L);
     }
 
     @Test
@@ -194,13 +581,13 @@ class URLShortenerServiceImplTest {
         String id = "1";
         URL url = new URL();
         url.setUsername("otherUser");
-        when(urlRepo.findById(id)).thenReturn(Optional.of(url));
+        when(urlStorage.findById(1L)).thenReturn(Optional.of(url));
 
         // WHEN
         urlShortenerService.deleteUrlOfUserById(user, id);
 
         // THEN
-        verify(urlRepo, never()).deleteById(any());
+        verify(urlStorage, never()).deleteById(anyLong());
         // Additional assertion based on console output or logging if available
     }
 
@@ -211,13 +598,13 @@ class URLShortenerServiceImplTest {
         String id = "1";
         URL url = new URL();
         url.setUsername(user);
-        when(urlRepo.findById(id)).thenReturn(Optional.of(url));
+        when(urlStorage.findById(1L)).thenReturn(Optional.of(url));
 
         // WHEN
         urlShortenerService.deleteUrlOfUserById(user, id);
 
         // THEN
-        verify(urlRepo).deleteById(id);
+        verify(urlStorage).deleteById(1L);
         // Additional assertion based on console output or logging if available
     }
 
@@ -230,36 +617,168 @@ class URLShortenerServiceImplTest {
         urlShortenerService.deleteUrlById(id);
 
         // THEN
-        verify(urlRepo).deleteById(id);
+        verify(urlStorage).deleteById(1L);
     }
 
     @Test
     void saveURLAccessStatistic() {
         // GIVEN
         URLStats stats = new URLStats();
-        when(urlStatsRepo.save(stats)).thenReturn(stats);
+        stats.setUrl(new URL(7L, "https://reddit.com", "short123", "Kathy"));
+        stats.setAccessTime(LocalDateTime.of(2023, 11, 1, 12, 0));
+        stats.setUserAgent("agent");
 
         // WHEN
         URLStats savedStats = urlShortenerService.saveURLAccessStatistic(stats);
 
         // THEN
         assertSame(stats, savedStats);
-        verify(urlStatsRepo).save(stats);
+        verify(clickStore).insert(ClickEvent.of(stats));
+        verify(clickCounters).onClick(ClickEvent.of(stats));
     }
 
     @Test
-    void getURLAccessStatistics() {
+    void recordURLAccess() {
+        // GIVEN
+        ClickEvent event = new ClickEvent(1L, "short123", System.currentTimeMillis(), "agent", null, "127.0.0.1");
+
+        // WHEN
+        urlShortenerService.recordURLAccess(event);
+
+        // THEN
+        verify(clickDispatcher).dispatch(event);
+        verifyNoInteractions(clickStore);
+    }
+
+    @Test
+    void getURLAccessStatisticsPage_FullPageHasNextCursor() {
+        // GIVEN
+        URL url = new URL();
+        url.setId(7L);
+        url.setShortUrl("short123");
+        LocalDateTime accessTime = LocalDateTime.of(2023, 11, 1, 12, 0);
+        List<URLStatsView> rows = List.of(
+                new URLStatsView(1L, accessTime, "agent", null, "127.0.0.1"),
+                new URLStatsView(2L, accessTime, "agent", null, "127.0.0.1"));
+        when(urlStorage.findByShortUrl("short123")).thenReturn(Optional.of(url));
+        when(clickStore.findPage(7L, accessTime, 0L, 2)).thenReturn(rows);
+        String cursor = new StatsCursor(accessTime, 0L).encode();
+
+        // WHEN
+        Optional<StatsPage> page = urlShortenerService.getURLAccessStatisticsPage("short123", cursor, 2);
+
+        // THEN
+        assertTrue(page.isPresent());
+        assertEquals(rows, page.get().getItems());
+        assertEquals(new StatsCursor(accessTime, 2L), StatsCursor.decode(page.get().getNextCursor()));
+    }
+
+    @Test
+    void getURLAccessStatisticsPage_LastPageHasNoCursor() {
+        // GIVEN
+        URL url = new URL();
+        url.setId(7L);
+        url.setShortUrl("short123");
+        when(urlStorage.findByShortUrl("short123")).thenReturn(Optional.of(url));
+        when(clickStore.findPage(7L, null, 0L, 10)).thenReturn(Collections.emptyList());
+
+        // WHEN
+        Optional<StatsPage> page = urlShortenerService.getURLAccessStatisticsPage("short123", null, 10);
+
+        // THEN
+        assertTrue(page.isPresent());
+        assertNull(page.get().getNextCursor());
+    }
+
+    @Test
+    void getURLAccessStatisticsPage_InvalidCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> urlShortenerService.getURLAccessStatisticsPage("short123", "not-a-cursor", 10));
+    }
+
+    @Test
+    void getClickCount() {
         // GIVEN
         URL url = new URL();
-        List<URLStats> expectedStats = Collections.emptyList();
-        when(urlStatsRepo.findByUrl(url)).thenReturn(expectedStats);
+        url.setId(7L);
+        url.setShortUrl("short123");
+        when(urlStorage.findByShortUrl("short123")).thenReturn(Optional.of(url));
+        when(clickCounters.getTotal(7L)).thenReturn(42L);
+
+        // WHEN
+        Optional<ClickCount> count = urlShortenerService.getClickCount("short123");
+
+        // THEN
+        assertTrue(count.isPresent());
+        assertEquals(42L, count.get().getClicks());
+        verifyNoInteractions(clickStore);
+    }
+
+    @Test
+    void getClickCount_UnknownShortUrl() {
+        // GIVEN
+        when(urlStorage.findByShortUrl("unknown")).thenReturn(Optional.empty());
+
+        // WHEN
+        Optional<ClickCount> count = urlShortenerService.getClickCount("unknown");
+
+        // THEN
+        assertFalse(count.isPresent());
+        verifyNoInteractions(clickCounters);
+    }
+
+    @Test
+    void getUniqueVisitors() {
+        // GIVEN
+        URL url = new URL(7L, "https://reddit.com", "short123", "Kathy");
+        LocalDate day = LocalDate.of(2023, 11, 1);
+        when(urlStorage.findByShortUrl("short123")).thenReturn(Optional.of(url));
+        when(uniqueVisitorCounter.estimate(7L, day, day)).thenReturn(1000L);
+        when(uniqueVisitorCounter.getStandardError()).thenReturn(0.01);
+
+        // WHEN
+        Optional<UniqueVisitors> uniques = urlShortenerService.getUniqueVisitors("short123", day, day);
+
+        // THEN
+        assertTrue(uniques.isPresent());
+        assertEquals(1000L, uniques.get().getEstimate());
+        assertEquals(980L, uniques.get().getLowerBound());
+        assertEquals(1020L, uniques.get().getUpperBound());
+        assertEquals(day, uniques.get().getFrom());
+    }
+
+    @Test
+    void getUniqueVisitors_AllTime() {
+        // GIVEN
+        URL url = new URL(7L, "https://reddit.com", "short123", "Kathy");
+        when(urlStorage.findByShortUrl("short123")).thenReturn(Optional.of(url));
+        when(uniqueVisitorCounter.estimate(7L)).thenReturn(0L);
+
+        // WHEN
+        Optional<UniqueVisitors> uniques = urlShortenerService.getUniqueVisitors("short123", null, null);
+
+        // THEN
+        assertTrue(uniques.isPresent());
+        assertEquals(0L, uniques.get().getLowerBound());
+        assertNull(uniques.get().getFrom());
+        verify(uniqueVisitorCounter, never()).estimate(anyLong(), any(), any());
+    }
+
+    @Test
+    void getURLAccessStatistics() {
+        // GIVEN
+        URL url = new URL(7L, "https://reddit.com", "short123", "Kathy");
+        LocalDateTime accessTime = LocalDateTime.of(2023, 11, 1, 12, 0);
+        when(clickStore.findAll(7L)).thenReturn(List.of(new URLStatsView(1L, accessTime, "agent", null, "127.0.0.1")));
 
         // WHEN
         List<URLStats> actualStats = urlShortenerService.getURLAccessStatistics(url);
 
         // THEN
-        assertSame(expectedStats, actualStats);
-        verify(urlStatsRepo).findByUrl(url);
+        assertEquals(1, actualStats.size());
+        assertSame(url, actualStats.get(0).getUrl());
+        assertEquals(accessTime, actualStats.get(0).getAccessTime());
+        assertEquals("agent", actualStats.get(0).getUserAgent());
     }
 
     @Test
@@ -267,14 +786,32 @@ class URLShortenerServiceImplTest {
         // GIVEN
         String shortUrl = "short123";
         Optional<URL> urlOpt = Optional.empty();
-        when(urlRepo.findByShortUrl(shortUrl)).thenReturn(urlOpt);
+        when(urlStorage.findByShortUrl(shortUrl)).thenReturn(urlOpt);
+
+        // WHEN
+        Optional<StatsPage> actualStats = urlShortenerService.getURLAccessStatisticsByShortUrl(shortUrl);
+
+        // THEN
+        assertFalse(actualStats.isPresent());
+        verify(urlStorage).findByShortUrl(shortUrl);
+        verifyNoInteractions(clickStore);
+    }
+
+    @Test
+    void getURLAccessStatisticsByShortUrl_ReferencesUrlOnce() {
+        // GIVEN
+        URL url = new URL(7L, "https://reddit.com", "short123", "Kathy");
+        List<URLStatsView> rows = List.of(new URLStatsView(1L, null, "agent", null, null));
+        when(urlStorage.findByShortUrl("short123")).thenReturn(Optional.of(url));
+        when(clickStore.findAll(7L)).thenReturn(rows);
 
         // WHEN
-        List<URLStats> actualStats = urlShortenerService.getURLAccessStatisticsByShortUrl(shortUrl);
+        Optional<StatsPage> actualStats = urlShortenerService.getURLAccessStatisticsByShortUrl("short123");
 
         // THEN
-        assertNotNull(actualStats);
-        assertEquals(0, actualStats.size());
-        verify(urlRepo).findByShortUrl(shortUrl);
+        assertTrue(actualStats.isPresent());
+        assertEquals("short123", actualStats.get().getShortUrl());
+        assertEquals(rows, actualStats.get().getItems());
+        assertNull(actualStats.get().getNextCursor());
     }
 }
@@ -0,0 +1,293 @@
+package io.twodigits.urlshortener.shard;
+
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.ShardingProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URL;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRouterTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private String prefix;
+
+    private ShardingProperties properties;
+
+    private JdbcTemplate main;
+
+    private ShardRouter router;
+
+    private ShardedURLStorage storage;
+
+    private ShardedClickStore clickStore;
+
+    @BeforeEach
+    public void setUp() {
+        prefix = "jdbc:h2:mem:router-" + UUID.randomUUID();
+        properties = new ShardingProperties();
+        properties.setShards(new ArrayList<>(List.of(shard(0), shard(1))));
+        properties.setMaxPoolSize(4);
+        properties.setMoveBatchSize(100);
+        properties.setMoveGracePeriod(Duration.ofMillis(50));
+        main = new JdbcTemplate(new DriverManagerDataSource(prefix + "-main;DB_CLOSE_DELAY=-1"));
+        router = open();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        router.close();
+    }
+
+    private ShardingProperties.Shard shard(int index) {
+        ShardingProperties.Shard shard = new ShardingProperties.Shard();
+        shard.setName("shard" + index);
+        shard.setUrl(prefix + "-" + index + ";DB_CLOSE_DELAY=-1");
+        return shard;
+    }
+
+    private ShardRouter open() {
+        ShardRouter opened = new ShardRouter(properties, main, new ExecutionThreads(new ExecutionProperties()));
+        storage = new ShardedURLStorage(opened);
+        clickStore = new ShardedClickStore(opened);
+        return opened;
+    }
+
+    private List<URL> saveUrls(int count) {
+        List<URL> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            urls.add(new URL(null, "https://reddit.com/" + i, "code" + i, "user" + i % 7));
+        }
+        storage.saveAll(urls);
+        List<ClickEvent> clicks = new ArrayList<>();
+        for (URL url : urls) {
+            for (int i = 0; i < 3; i++) {
+                clicks.add(new ClickEvent(url.getId(), url.getShortUrl(), START + i * 1000, "agent" + i, null, "127.0.0.1"));
+            }
+        }
+        clickStore.batchInsert(clicks);
+        return urls;
+    }
+
+    private static long rows(Shard shard, String table) {
+        return shard.getJdbcTemplate().queryForObject("select count(*) from " + table, Long.class);
+    }
+
+    @Test
+    void addShard_MovesSlotsToNewShardOnly() {
+        // GIVEN
+        List<URL> urls = saveUrls(2_000);
+        Shard[] before = new Shard[HashRing.SLOTS];
+        for (int slot = 0; slot < HashRing.SLOTS; slot++) {
+            before[slot] = router.ownerOf(slot);
+        }
+
+        // WHEN
+        int moved = router.addShard(shard(2));
+
+        // THEN
+        Map<String, Integer> slotCounts = router.getSlotCounts();
+        assertEquals(moved, slotCounts.get("shard2"));
+        assertTrue(moved > HashRing.SLOTS / 5 && moved < HashRing.SLOTS / 2, "Moved " + moved + " slots");
+        for (int slot = 0; slot < HashRing.SLOTS; slot++) {
+            Shard owner = router.ownerOf(slot);
+            assertTrue(owner == before[slot] || owner.getName().equals("shard2"));
+        }
+        assertTrue(router.isBalanced());
+        long urlRows = 0;
+        long clickRows = 0;
+        for (Shard shard : router.getShards()) {
+            urlRows += rows(shard, "urls");
+            clickRows += rows(shard, "stats");
+        }
+        assertEquals(urls.size(), urlRows);
+        assertEquals(urls.size() * 3L, clickRows);
+        for (URL url : urls) {
+            assertEquals(url, storage.findByShortUrl(url.getShortUrl()).orElseThrow());
+            assertEquals(url, storage.findById(url.getId()).orElseThrow());
+            assertEquals(3, clickStore.findAll(url.getId()).size());
+        }
+        assertEquals(urls.stream().filter(url -> url.getUsername().equals("user3")).toList(), storage.findByUsername("user3"));
+    }
+
+    @Test
+    void addShard_KeepsServingWhileSlotsMove() throws InterruptedException {
+        // GIVEN
+        List<URL> urls = saveUrls(1_000);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<URL> written = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; !stop.get(); i++) {
+                    written.add(storage.save(new URL(null, "https://reddit.com/during" + i, "during" + i, "writer")));
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; !stop.get(); i++) {
+                    URL url = urls.get(i % urls.size());
+                    if (storage.findByShortUrl(url.getShortUrl()).isEmpty()) {
+                        throw new AssertionError(url.getShortUrl() + " not found");
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+        reader.start();
+
+        // WHEN
+        router.addShard(shard(2));
+        stop.set(true);
+        writer.join();
+        reader.join();
+
+        // THEN
+        assertNull(failure.get());
+        for (URL url : written) {
+            assertEquals(url, storage.findByShortUrl(url.getShortUrl()).orElseThrow());
+        }
+        assertEquals(urls.size() + written.size(), storage.count());
+        assertEquals(written, storage.findByUsername("writer"));
+    }
+
+    @Test
+    void addShard_KeepsWritesOfOtherNodeWhileSlotsMove() throws InterruptedException {
+        // GIVEN a second node writing, which only learns about the moves from the fences
+        saveUrls(1_000);
+        ShardingProperties otherProperties = new ShardingProperties();
+        otherProperties.setShards(List.of(shard(0), shard(1), shard(2)));
+        ShardRouter other = new ShardRouter(otherProperties, main, new ExecutionThreads(new ExecutionProperties()));
+        ShardedURLStorage otherStorage = new ShardedURLStorage(other);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<URL> written = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; !stop.get(); i++) {
+                    written.add(otherStorage.save(new URL(null, "https://reddit.com/other" + i, "other" + i, "other")));
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        try {
+            writer.start();
+
+            // WHEN
+            router.addShard(shard(2));
+            stop.set(true);
+            writer.join();
+
+            // THEN
+            assertNull(failure.get());
+            assertFalse(written.isEmpty());
+            for (URL url : written) {
+                assertEquals(url, storage.findByShortUrl(url.getShortUrl()).orElseThrow());
+            }
+            assertEquals(written, storage.findByUsername("other"));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    void writing_ReopensSlotLeftFencedByInterruptedMove() {
+        // GIVEN
+        properties.setRebalanceLease(Duration.ofMillis(100));
+        int slot = HashRing.slotOf("fenced");
+        Shard owner = router.ownerOf(slot);
+        owner.setFence(slot, true);
+
+        // WHEN
+        URL saved = storage.save(new URL(null, "https://reddit.com/fenced", "fenced", "user"));
+
+        // THEN
+        assertEquals(saved, storage.findByShortUrl("fenced").orElseThrow());
+        assertSame(owner, router.ownerOf(slot));
+        assertFalse(owner.getJdbcTemplate().queryForObject("select moved from slot_fence where slot = ?", Boolean.class, slot));
+    }
+
+    @Test
+    void refreshOwners_FollowsSlotsMovedByOtherNode() {
+        // GIVEN a second node knowing the new shard before the first one adds it
+        List<URL> urls = saveUrls(500);
+        ShardingProperties otherProperties = new ShardingProperties();
+        otherProperties.setShards(List.of(shard(0), shard(1), shard(2)));
+        ShardRouter other = new ShardRouter(otherProperties, main, new ExecutionThreads(new ExecutionProperties()));
+        ShardedURLStorage otherStorage = new ShardedURLStorage(other);
+        try {
+            int moved = router.addShard(shard(2));
+
+            // WHEN
+            int refreshed = other.refreshOwners();
+
+            // THEN
+            assertEquals(moved, refreshed);
+            assertEquals(router.getSlotCounts(), other.getSlotCounts());
+            assertEquals(0, other.rebalance());
+            assertEquals(0, other.refreshOwners());
+            for (URL url : urls) {
+                assertEquals(url, otherStorage.findById(url.getId()).orElseThrow());
+            }
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    void rebalance_WaitsForLeaseOfOtherNode() {
+        // GIVEN
+        saveUrls(100);
+        main.update("update shard_rebalance_lease set holder = 'other', expires_at = ?", System.currentTimeMillis() + 60_000);
+
+        // WHEN
+        int movedWhileLeased = router.addShard(shard(2));
+        main.update("update shard_rebalance_lease set holder = null, expires_at = 0");
+        int moved = router.rebalance();
+
+        // THEN
+        assertEquals(0, movedWhileLeased);
+        assertTrue(moved > 0);
+        assertTrue(router.isBalanced());
+        assertNull(main.queryForObject("select holder from shard_rebalance_lease", String.class));
+    }
+
+    @Test
+    void open_KeepsSlotsOfAddedShard() {
+        // GIVEN
+        List<URL> urls = saveUrls(100);
+        router.addShard(shard(2));
+        router.close();
+        properties.getShards().add(shard(2));
+
+        // WHEN
+        router = open();
+
+        // THEN
+        assertTrue(router.isBalanced());
+        for (URL url : urls) {
+            assertEquals(url, storage.findById(url.getId()).orElseThrow());
+        }
+    }
+}
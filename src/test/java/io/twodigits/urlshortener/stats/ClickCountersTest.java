@@ -0,0 +1,161 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.config.ClickRollupProperties;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickBucket;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.ClickGranularity;
+import io.twodigits.urlshortener.repo.ClickRollupJdbcRepo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+class ClickCountersTest {
+
+    @Autowired
+    private ClickCounters clickCounters;
+
+    private static ClickEvent click(long urlId, long accessTime) {
+        return new ClickEvent(urlId, "short" + urlId, accessTime, "agent", null, "127.0.0.1");
+    }
+
+    @Test
+    void getTotal_CombinesFlushedAndPendingClicks() {
+        // GIVEN
+        long now = System.currentTimeMillis();
+        clickCounters.onClick(click(1001, now));
+        clickCounters.onClick(click(1001, now));
+        clickCounters.flush();
+        clickCounters.onClick(click(1001, now));
+
+        // WHEN
+        long total = clickCounters.getTotal(1001);
+
+        // THEN
+        assertEquals(3, total);
+    }
+
+    @Test
+    void getBuckets_ReturnsClicksPerBucketWithinRange() {
+        // GIVEN
+        Instant now = Instant.now();
+        long twoHoursAgo = now.minus(Duration.ofHours(2)).toEpochMilli();
+        clickCounters.onClick(click(1002, twoHoursAgo));
+        clickCounters.onClick(click(1002, twoHoursAgo));
+        clickCounters.onClick(click(1002, now.minus(Duration.ofDays(3)).toEpochMilli()));
+        clickCounters.flush();
+        clickCounters.onClick(click(1002, now.toEpochMilli()));
+
+        // WHEN
+        List<ClickBucket> buckets = clickCounters.getBuckets(1002, ClickGranularity.HOUR,
+                now.minus(Duration.ofDays(1)), now);
+
+        // THEN
+        assertEquals(2, buckets.size());
+        assertEquals(ClickGranularity.HOUR.bucketStart(twoHoursAgo), buckets.get(0).getBucketStart().toEpochMilli());
+        assertEquals(2, buckets.get(0).getClicks());
+        assertEquals(1, buckets.get(1).getClicks());
+    }
+
+    @Test
+    void flush_IsIdempotentWithoutNewClicks() {
+        // GIVEN
+        clickCounters.onClick(click(1003, System.currentTimeMillis()));
+        clickCounters.flush();
+
+        // WHEN
+        clickCounters.flush();
+
+        // THEN
+        assertEquals(1, clickCounters.getTotal(1003));
+    }
+
+    @Test
+    void getTotal_CountsClicksWhoseFlushIsInProgress() throws Exception {
+        // GIVEN
+        ClickRollupJdbcRepo repo = mock(ClickRollupJdbcRepo.class);
+        AtomicLong stored = new AtomicLong();
+        CountDownLatch merging = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        when(repo.findTotal(1004)).thenAnswer(invocation -> stored.get());
+        doAnswer(invocation -> {
+            merging.countDown();
+            commit.await();
+            stored.addAndGet(invocation.<Map<Long, Long>>getArgument(0).get(1004L));
+            return null;
+        }).when(repo).mergeTotals(anyMap());
+        ClickCounters counters = new ClickCounters(repo, new ClickRollupProperties(),
+                new ExecutionThreads(new ExecutionProperties()));
+        counters.onClick(click(1004, System.currentTimeMillis()));
+        counters.onClick(click(1004, System.currentTimeMillis()));
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(counters::flush);
+        assertTrue(merging.await(5, TimeUnit.SECONDS));
+
+        // WHEN
+        CompletableFuture<Long> total = CompletableFuture.supplyAsync(() -> counters.getTotal(1004));
+        Thread.sleep(50);
+        commit.countDown();
+
+        // THEN
+        assertEquals(2, total.get(5, TimeUnit.SECONDS));
+        flush.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void flush_KeepsClicksRacingWithRemovalOfIdleCounters() throws Exception {
+        // GIVEN
+        ClickRollupJdbcRepo repo = mock(ClickRollupJdbcRepo.class);
+        AtomicLong stored = new AtomicLong();
+        doAnswer(invocation -> {
+            invocation.<Map<Long, Long>>getArgument(0).values().forEach(stored::addAndGet);
+            return null;
+        }).when(repo).mergeTotals(anyMap());
+        ClickCounters counters = new ClickCounters(repo, new ClickRollupProperties(),
+                new ExecutionThreads(new ExecutionProperties()));
+        AtomicBoolean clicking = new AtomicBoolean(true);
+        Thread flusher = new Thread(() -> {
+            while (clicking.get()) {
+                counters.flush();
+            }
+        });
+        flusher.start();
+
+        // WHEN clicks on many URLs, so most counters are idle and removed between them
+        List<Thread> clickers = new ArrayList<>();
+        for (int c = 0; c < 4; c++) {
+            Thread clicker = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    counters.onClick(click(2000 + i % 64, System.currentTimeMillis()));
+                }
+            });
+            clickers.add(clicker);
+            clicker.start();
+        }
+        for (Thread clicker : clickers) {
+            clicker.join();
+        }
+        clicking.set(false);
+        flusher.join();
+        counters.flush();
+
+        // THEN
+        assertEquals(80_000, stored.get());
+    }
+}
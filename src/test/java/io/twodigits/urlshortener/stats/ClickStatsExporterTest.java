@@ -0,0 +1,73 @@
+package io.twodigits.urlshortener.stats;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.twodigits.urlshortener.model.ExportFormat;
+import io.twodigits.urlshortener.model.URLStatsView;
+import io.twodigits.urlshortener.wire.WireFormat;
+import io.twodigits.urlshortener.wire.WireFormats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ClickStatsExporterTest {
+
+    private final ClickStore clickStore = mock(ClickStore.class);
+
+    private final WireFormats wireFormats = new WireFormats(new ObjectMapper().registerModule(new JavaTimeModule()));
+
+    private final ClickStatsExporter exporter = new ClickStatsExporter(clickStore, wireFormats);
+
+    private final List<URLStatsView> rows = List.of(
+            new URLStatsView(1L, LocalDateTime.of(2023, 11, 14, 22, 13, 20), "Mozilla/5.0", null, "10.0.0.1"),
+            new URLStatsView(2L, LocalDateTime.of(2023, 11, 14, 22, 13, 21), "curl/8.4.0", "https://example.com", "10.0.0.2"));
+
+    @BeforeEach
+    public void setUp() {
+        doAnswer(invocation -> {
+            rows.forEach(invocation.<Consumer<URLStatsView>>getArgument(1));
+            return null;
+        }).when(clickStore).stream(eq(1L), any());
+    }
+
+    @Test
+    void export_WritesOneJsonRowPerLine() throws Exception {
+        // GIVEN
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // WHEN
+        exporter.export(1L, ExportFormat.NDJSON, out);
+
+        // THEN
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("curl/8.4.0", wireFormats.mapperFor(WireFormat.JSON).readTree(lines[1]).get("userAgent").asText());
+    }
+
+    @Test
+    void export_WritesBinarySequences() throws Exception {
+        ObjectMapper json = wireFormats.mapperFor(WireFormat.JSON);
+        for (ExportFormat format : List.of(ExportFormat.CBOR, ExportFormat.SMILE)) {
+            // GIVEN
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ObjectMapper mapper = wireFormats.mapperFor(WireFormat.valueOf(format.name()));
+
+            // WHEN
+            exporter.export(1L, format, out);
+
+            // THEN
+            List<JsonNode> exported = mapper.readerFor(JsonNode.class).<JsonNode>readValues(out.toByteArray()).readAll();
+            assertEquals(json.writeValueAsString(rows), json.writeValueAsString(exported), format.name());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.twodigits.urlshortener.stats;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.twodigits.urlshortener.config.ClickIngestionProperties;
+import io.twodigits.urlshortener.config.ClickIngestionProperties.OverflowPolicy;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ClickStatsIngestorTest {
+
+    private final ClickStore clickStore = mock(ClickStore.class);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ClickStatsIngestor ingestor(OverflowPolicy policy, int capacity) {
+        ClickIngestionProperties properties = new ClickIngestionProperties();
+        properties.setOverflowPolicy(policy);
+        properties.setQueueCapacity(capacity);
+        properties.setBatchSize(10);
+        properties.setFlushInterval(Duration.ofMillis(20));
+        return new ClickStatsIngestor(clickStore, properties, new ExecutionThreads(new ExecutionProperties()), registry);
+    }
+
+    private static ClickEvent click(long urlId) {
+        return new ClickEvent(urlId, "short" + urlId, System.currentTimeMillis(), "agent", null, "127.0.0.1");
+    }
+
+    @Test
+    void enqueue_DropPolicyDiscardsWhenFull() {
+        // GIVEN
+        ClickStatsIngestor ingestor = ingestor(OverflowPolicy.DROP, 2);
+
+        // WHEN
+        boolean first = ingestor.enqueue(click(1));
+        boolean second = ingestor.enqueue(click(2));
+        boolean third = ingestor.enqueue(click(3));
+
+        // THEN
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(third);
+        assertEquals(2, ingestor.getQueueDepth());
+        assertEquals(1.0, registry.get("urlshortener.stats.dropped").counter().count());
+    }
+
+    @Test
+    void enqueue_SamplePolicyKeepsQueueBelowCapacity() {
+        // GIVEN
+        ClickStatsIngestor ingestor = ingestor(OverflowPolicy.SAMPLE, 100);
+
+        // WHEN
+        for (int i = 0; i < 1_000; i++) {
+            ingestor.enqueue(click(i));
+        }
+
+        // THEN
+        assertTrue(ingestor.getQueueDepth() <= 100);
+        assertTrue(registry.get("urlshortener.stats.dropped").counter().count() > 0);
+    }
+
+    @Test
+    void stop_DrainsQueueInBatches() {
+        // GIVEN
+        ClickStatsIngestor ingestor = ingestor(OverflowPolicy.BLOCK, 100);
+        for (int i = 0; i < 25; i++) {
+            ingestor.enqueue(click(i));
+        }
+
+        // WHEN
+        ingestor.start();
+        ingestor.stop();
+
+        // THEN
+        assertEquals(0, ingestor.getQueueDepth());
+        assertEquals(25.0, registry.get("urlshortener.stats.written").counter().count());
+        verify(clickStore, atLeast(3)).batchInsert(anyList());
+    }
+
+    @Test
+    void enqueue_BlockPolicyDropsWhenFullAfterStop() {
+        // GIVEN
+        ClickStatsIngestor ingestor = ingestor(OverflowPolicy.BLOCK, 1);
+        ingestor.start();
+        ingestor.stop();
+        ingestor.enqueue(click(1));
+
+        // WHEN
+        boolean accepted = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> ingestor.enqueue(click(2)));
+
+        // THEN
+        assertFalse(accepted);
+        assertEquals(1, ingestor.getQueueDepth());
+        assertEquals(1.0, registry.get("urlshortener.stats.dropped").counter().count());
+    }
+
+    @Test
+    void flush_FallsBackToSingleInsertsWhenBatchFails() {
+        // GIVEN
+        ClickStatsIngestor ingestor = ingestor(OverflowPolicy.BLOCK, 100);
+        ClickEvent valid = click(1);
+        ClickEvent orphaned = click(2);
+        doThrow(new DataIntegrityViolationException("fk")).when(clickStore).batchInsert(anyList());
+        doThrow(new DataIntegrityViolationException("fk")).when(clickStore).insert(orphaned);
+
+        // WHEN
+        ingestor.flush(List.of(valid, orphaned));
+
+        // THEN
+        verify(clickStore).insert(valid);
+        assertEquals(1.0, registry.get("urlshortener.stats.written").counter().count());
+        assertEquals(1.0, registry.get("urlshortener.stats.failed").counter().count());
+    }
+}
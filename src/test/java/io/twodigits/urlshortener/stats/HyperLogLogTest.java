@@ -0,0 +1,80 @@
+package io.twodigits.urlshortener.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    private static void offer(HyperLogLog sketch, long seed, int count) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < count; i++) {
+            sketch.offer(random.nextLong());
+        }
+    }
+
+    private static void assertWithinThreeStandardErrors(long expected, HyperLogLog sketch) {
+        double error = Math.abs(sketch.estimate() - expected) / (double) expected;
+        assertTrue(error < 3 * sketch.getStandardError(), "estimate " + sketch.estimate() + " for " + expected);
+    }
+
+    @Test
+    void estimate_IsWithinErrorBound() {
+        for (int count : new int[]{10, 1_000, 100_000, 1_000_000}) {
+            // GIVEN
+            HyperLogLog sketch = new HyperLogLog(12);
+
+            // WHEN
+            offer(sketch, count, count);
+
+            // THEN
+            assertWithinThreeStandardErrors(count, sketch);
+        }
+    }
+
+    @Test
+    void offer_IgnoresRepeatedValues() {
+        // GIVEN
+        HyperLogLog sketch = new HyperLogLog(12);
+        offer(sketch, 1, 1_000);
+        long estimate = sketch.estimate();
+
+        // WHEN
+        SplittableRandom random = new SplittableRandom(1);
+        boolean changed = false;
+        for (int i = 0; i < 1_000; i++) {
+            changed |= sketch.offer(random.nextLong());
+        }
+
+        // THEN
+        assertFalse(changed);
+        assertEquals(estimate, sketch.estimate());
+    }
+
+    @Test
+    void merge_EstimatesUnion() {
+        // GIVEN
+        HyperLogLog first = new HyperLogLog(12);
+        HyperLogLog second = new HyperLogLog(12);
+        offer(first, 1, 50_000);
+        offer(second, 2, 50_000);
+        // Overlaps with the first sketch
+        offer(second, 1, 25_000);
+
+        // WHEN
+        HyperLogLog union = HyperLogLog.fromByteArray(first.toByteArray());
+        union.merge(second.toByteArray());
+        union.merge(second);
+
+        // THEN
+        assertWithinThreeStandardErrors(100_000, union);
+    }
+
+    @Test
+    void merge_RejectsOtherPrecision() {
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(12).merge(new HyperLogLog(10)));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromByteArray(new byte[100]));
+    }
+}
@@ -0,0 +1,100 @@
+package io.twodigits.urlshortener.stats;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.TrendingProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.TrendingLink;
+import io.twodigits.urlshortener.model.TrendingWindow;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrendingTrackerTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private static ClickEvent click(long urlId, long accessTime) {
+        return new ClickEvent(urlId, "short" + urlId, accessTime, "agent", null, "127.0.0.1");
+    }
+
+    @Test
+    void getTop_RanksLinksClickedConcurrently() throws Exception {
+        // GIVEN link n is clicked 100 * n times, spread over eight threads
+        TrendingProperties properties = new TrendingProperties();
+        properties.setCapacity(5);
+        // Large enough to hold all clicks between two drains
+        properties.setBufferSize(1 << 16);
+        TrendingTracker tracker = new TrendingTracker(properties,
+                new ExecutionThreads(new ExecutionProperties()), new SimpleMeterRegistry());
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<?>> clicking = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            clicking.add(threads.submit(() -> {
+                for (long urlId = 1; urlId <= 20; urlId++) {
+                    for (int i = 0; i < 100 * urlId / 8; i++) {
+                        tracker.onClick(click(urlId, System.currentTimeMillis()));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : clicking) {
+            future.get();
+        }
+        threads.shutdown();
+
+        // WHEN
+        tracker.drain();
+        List<TrendingLink> top = tracker.getTop(TrendingWindow.FIVE_MINUTES, 3);
+
+        // THEN
+        assertEquals(List.of("short20", "short19", "short18"), top.stream().map(TrendingLink::getShortUrl).toList());
+        assertEquals(8 * (2000 / 8), top.get(0).getClicks(), 20);
+        assertEquals(5, tracker.getTop(TrendingWindow.ONE_HOUR, 10).size());
+    }
+
+    @Test
+    void advance_DropsClicksOutsideWindow() {
+        // GIVEN link 1 is hot in the first minute, link 2 in the fourth
+        TrendingWindow window = TrendingWindow.FIVE_MINUTES;
+        SlidingTopK topK = new SlidingTopK(window, 10, 1024, 4, START);
+        for (int i = 0; i < 50; i++) {
+            topK.add(1, "short1", START);
+        }
+        topK.advance(START + 3 * 60_000);
+        for (int i = 0; i < 20; i++) {
+            topK.add(2, "short2", START + 3 * 60_000);
+        }
+        List<TrendingLink> both = topK.top();
+
+        // WHEN
+        topK.advance(START + 5 * 60_000 + window.getSlotMillis());
+
+        // THEN
+        assertEquals(List.of(new TrendingLink("short1", 50), new TrendingLink("short2", 20)), both);
+        assertEquals(List.of(new TrendingLink("short2", 20)), topK.top());
+    }
+
+    @Test
+    void add_ReplacesSmallestCandidateWhenFull() {
+        // GIVEN
+        SlidingTopK topK = new SlidingTopK(TrendingWindow.ONE_HOUR, 2, 1024, 4, START);
+        topK.add(1, "short1", START);
+        topK.add(2, "short2", START);
+        topK.add(2, "short2", START);
+
+        // WHEN link 3 overtakes link 1
+        topK.add(3, "short3", START);
+        topK.add(3, "short3", START);
+
+        // THEN
+        assertEquals(List.of(new TrendingLink("short2", 2), new TrendingLink("short3", 2)), topK.top());
+    }
+}
@@ -0,0 +1,107 @@
+package io.twodigits.urlshortener.stats;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class UniqueVisitorCounterTest {
+
+    private static final LocalDate DAY = LocalDate.of(2023, 11, 1);
+
+    @Autowired
+    private UniqueVisitorCounter uniqueVisitorCounter;
+
+    private static ClickEvent click(long urlId, LocalDate day, int visitor) {
+        long accessTime = day.atTime(12, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        return new ClickEvent(urlId, "short" + urlId, accessTime, "agent" + visitor % 2, null, "10.0." + visitor / 2 + ".1");
+    }
+
+    @Test
+    void estimate_CombinesDaysAndStoredAndPendingSketches() {
+        // GIVEN visitors 0-99 on the first day, 50-149 on the second, clicking twice each
+        for (int visitor = 0; visitor < 100; visitor++) {
+            uniqueVisitorCounter.onClick(click(2001, DAY, visitor));
+            uniqueVisitorCounter.onClick(click(2001, DAY, visitor));
+        }
+        uniqueVisitorCounter.flush();
+        for (int visitor = 50; visitor < 150; visitor++) {
+            uniqueVisitorCounter.onClick(click(2001, DAY.plusDays(1), visitor));
+        }
+
+        // WHEN
+        long firstDay = uniqueVisitorCounter.estimate(2001, DAY, DAY);
+        long bothDays = uniqueVisitorCounter.estimate(2001, DAY, DAY.plusDays(1));
+        long allTime = uniqueVisitorCounter.estimate(2001);
+        uniqueVisitorCounter.flush();
+        long allTimeFlushed = uniqueVisitorCounter.estimate(2001);
+
+        // THEN
+        assertEquals(100, firstDay, 3);
+        assertEquals(150, bothDays, 5);
+        assertEquals(bothDays, allTime);
+        assertEquals(allTime, allTimeFlushed);
+        assertEquals(0, uniqueVisitorCounter.estimate(2001, DAY.minusDays(1), DAY.minusDays(1)));
+    }
+
+    @Test
+    void flush_MergesWithSketchesOfOtherNodes() {
+        // GIVEN a sketch stored by another node, simulated by flushing and dropping this node's one
+        for (int visitor = 0; visitor < 100; visitor++) {
+            uniqueVisitorCounter.onClick(click(2002, DAY, visitor));
+        }
+        uniqueVisitorCounter.flush();
+        uniqueVisitorCounter.flush();
+
+        // WHEN
+        for (int visitor = 100; visitor < 200; visitor++) {
+            uniqueVisitorCounter.onClick(click(2002, DAY, visitor));
+        }
+        uniqueVisitorCounter.flush();
+
+        // THEN
+        assertEquals(200, uniqueVisitorCounter.estimate(2002), 6);
+    }
+
+    @Test
+    void flush_KeepsVisitorsOfferedWhileItDropsUnchangedSketches() throws Exception {
+        // GIVEN sketches of 500 URLs with one visitor, flushed, so the next flush drops them
+        for (long urlId = 3000; urlId < 3500; urlId++) {
+            uniqueVisitorCounter.onClick(click(urlId, DAY, 0));
+        }
+        uniqueVisitorCounter.flush();
+        AtomicBoolean clicking = new AtomicBoolean(true);
+        Thread flusher = new Thread(() -> {
+            while (clicking.get()) {
+                uniqueVisitorCounter.flush();
+            }
+        });
+        flusher.start();
+
+        // WHEN
+        for (long urlId = 3000; urlId < 3500; urlId++) {
+            uniqueVisitorCounter.onClick(click(urlId, DAY, 1));
+        }
+        clicking.set(false);
+        flusher.join();
+        uniqueVisitorCounter.flush();
+
+        // THEN
+        for (long urlId = 3000; urlId < 3500; urlId++) {
+            assertEquals(2, uniqueVisitorCounter.estimate(urlId, DAY, DAY), "URL " + urlId);
+        }
+    }
+
+    @Test
+    void estimate_RejectsInvalidRange() {
+        assertThrows(IllegalArgumentException.class, () -> uniqueVisitorCounter.estimate(2003, DAY, DAY.minusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> uniqueVisitorCounter.estimate(2003, DAY, DAY.plusYears(2)));
+    }
+}
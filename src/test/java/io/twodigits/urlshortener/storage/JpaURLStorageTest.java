@@ -0,0 +1,44 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.repo.URLStatsJdbcRepo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class JpaURLStorageTest extends URLStorageContractTest {
+
+    @Autowired
+    private URLStorage urlStorage;
+
+    @Autowired
+    private URLStatsJdbcRepo urlStatsJdbcRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    protected URLStorage storage() {
+        return urlStorage;
+    }
+
+    @Test
+    void deleteById_DeletesClicksOfUrl() {
+        // GIVEN
+        URL url = urlStorage.save(url(unique("clicked"), null));
+        urlStatsJdbcRepo.insert(new ClickEvent(url.getId(), url.getShortUrl(), System.currentTimeMillis(),
+                "agent", null, "127.0.0.1"));
+
+        // WHEN
+        urlStorage.deleteById(url.getId());
+
+        // THEN
+        assertTrue(urlStorage.findById(url.getId()).isEmpty());
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from stats where short_url = ?", Long.class, url.getId()));
+    }
+}
@@ -0,0 +1,157 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.StorageProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryURLStorageTest extends URLStorageContractTest {
+
+    @TempDir
+    Path directory;
+
+    private final ExecutionThreads executionThreads = new ExecutionThreads(new ExecutionProperties());
+
+    private StorageProperties.Memory properties;
+
+    private MemoryURLStorage storage;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        properties = new StorageProperties.Memory();
+        properties.setDirectory(directory);
+        properties.setInitialCapacity(16);
+        storage = MemoryURLStorage.open(properties, executionThreads);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        storage.close();
+    }
+
+    @Override
+    protected URLStorage storage() {
+        return storage;
+    }
+
+    @Test
+    void open_RestoresSnapshotAndLaterChanges() throws IOException {
+        // GIVEN
+        URL kept = url("kept", "Kathy");
+        kept.setRedirectType(RedirectType.MOVED_PERMANENTLY);
+        kept.setCacheMaxAge(60);
+        kept.setModifiedAt(1_700_000_000_000L);
+        storage.save(kept);
+        URL deleted = storage.save(url("deleted", "Kathy"));
+        storage.snapshot();
+        URL added = storage.save(url("added", "Kathy"));
+        storage.deleteById(deleted.getId());
+        storage.saveAll(List.of(url("batch1", null), url("batch2", null)));
+
+        // WHEN
+        properties.setDirectory(crashCopy());
+        try (MemoryURLStorage reopened = MemoryURLStorage.open(properties, executionThreads)) {
+
+            // THEN
+            assertEquals(4, reopened.count());
+            assertEquals(List.of(kept, added), reopened.findByUsername("Kathy"));
+            assertTrue(reopened.findById(deleted.getId()).isEmpty());
+            assertTrue(reopened.findByShortUrl("batch2").isPresent());
+            URL next = reopened.save(url("next", null));
+            assertTrue(next.getId() > added.getId());
+        }
+    }
+
+    @Test
+    void open_DoesNotReuseIdOfDeletedNewestUrl() throws IOException {
+        // GIVEN
+        storage.save(url("first", null));
+        URL newest = storage.save(url("newest", null));
+        storage.deleteById(newest.getId());
+        storage.snapshot();
+
+        // WHEN
+        properties.setDirectory(crashCopy());
+        try (MemoryURLStorage reopened = MemoryURLStorage.open(properties, executionThreads)) {
+
+            // THEN
+            assertTrue(reopened.save(url("next", null)).getId() > newest.getId());
+        }
+    }
+
+    @Test
+    void open_IgnoresIncompleteLastChange() throws IOException {
+        // GIVEN
+        storage.save(url("complete", null));
+        storage.save(url("incomplete", null));
+        Path copy = crashCopy();
+        Path log;
+        try (Stream<Path> files = Files.list(copy)) {
+            log = files.filter(file -> file.getFileName().toString().startsWith("oplog-")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        // WHEN
+        properties.setDirectory(copy);
+        try (MemoryURLStorage reopened = MemoryURLStorage.open(properties, executionThreads)) {
+
+            // THEN
+            assertTrue(reopened.findByShortUrl("complete").isPresent());
+            assertTrue(reopened.findByShortUrl("incomplete").isEmpty());
+        }
+    }
+
+    @Test
+    void open_RejectsSnapshotOfOtherVersion() throws IOException {
+        // GIVEN
+        Path old = Files.createDirectory(directory.resolve("old"));
+        try (OutputStream file = Files.newOutputStream(old.resolve(MemoryURLStorage.SNAPSHOT_FILE))) {
+            CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(0x55524c53);
+            out.writeInt(1);
+            out.writeLong(1);
+            out.writeInt(0);
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+        }
+
+        // WHEN / THEN
+        properties.setDirectory(old);
+        assertThrows(IOException.class, () -> MemoryURLStorage.open(properties, executionThreads));
+    }
+
+    /**
+     * Copy the files of the open engine, which leaves them as a crashed process would.
+     */
+    private Path crashCopy() throws IOException {
+        Path copy = Files.createDirectory(directory.resolve("copy"));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,50 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.config.ExecutionProperties;
+import io.twodigits.urlshortener.config.ShardingProperties;
+import io.twodigits.urlshortener.execution.ExecutionThreads;
+import io.twodigits.urlshortener.shard.ShardRouter;
+import io.twodigits.urlshortener.shard.ShardedURLStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+class ShardedURLStorageTest extends URLStorageContractTest {
+
+    private ShardRouter router;
+
+    private ShardedURLStorage storage;
+
+    @BeforeEach
+    public void setUp() {
+        String prefix = "jdbc:h2:mem:sharded-" + UUID.randomUUID();
+        ShardingProperties properties = new ShardingProperties();
+        List<ShardingProperties.Shard> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ShardingProperties.Shard shard = new ShardingProperties.Shard();
+            shard.setName("shard" + i);
+            shard.setUrl(prefix + "-" + i + ";DB_CLOSE_DELAY=-1");
+            shards.add(shard);
+        }
+        properties.setShards(shards);
+        properties.setMaxPoolSize(2);
+        JdbcTemplate main = new JdbcTemplate(new DriverManagerDataSource(prefix + "-main;DB_CLOSE_DELAY=-1"));
+        router = new ShardRouter(properties, main, new ExecutionThreads(new ExecutionProperties()));
+        storage = new ShardedURLStorage(router);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        router.close();
+    }
+
+    @Override
+    protected URLStorage storage() {
+        return storage;
+    }
+}
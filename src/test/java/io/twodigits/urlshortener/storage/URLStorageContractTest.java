@@ -0,0 +1,237 @@
+package io.twodigits.urlshortener.storage;
+
+import io.twodigits.urlshortener.model.RedirectType;
+import io.twodigits.urlshortener.model.URL;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The behaviour every {@link URLStorage} engine has to provide.
+ */
+abstract class URLStorageContractTest {
+
+    protected abstract URLStorage storage();
+
+    protected static String unique(String prefix) {
+        return prefix + System.nanoTime();
+    }
+
+    protected static URL url(String shortUrl, String username) {
+        return new URL(null, "https://reddit.com/" + shortUrl, shortUrl, username);
+    }
+
+    @Test
+    void save_AssignsIdAndMakesUrlFindable() {
+        // GIVEN
+        String shortUrl = unique("save");
+
+        // WHEN
+        URL saved = storage().save(url(shortUrl, "Kathy"));
+
+        // THEN
+        assertNotNull(saved.getId());
+        assertEquals(saved, storage().findById(saved.getId()).orElseThrow());
+        assertEquals(saved, storage().findByShortUrl(shortUrl).orElseThrow());
+    }
+
+    @Test
+    void save_KeepsRedirectSettingsAndModificationTime() {
+        // GIVEN
+        URL url = url(unique("settings"), "Kathy");
+        url.setRedirectType(RedirectType.PERMANENT_REDIRECT);
+        url.setCacheMaxAge(3600);
+        url.setModifiedAt(1_700_000_000_000L);
+        URL batched = url(unique("settingsBatch"), "Kathy");
+        batched.setRedirectType(RedirectType.TEMPORARY_REDIRECT);
+        batched.setModifiedAt(1_700_000_000_001L);
+
+        // WHEN
+        URL saved = storage().save(url);
+        storage().saveAll(new ArrayList<>(List.of(batched)));
+
+        // THEN
+        assertEquals(saved, storage().findById(saved.getId()).orElseThrow());
+        assertEquals(saved, storage().findByShortUrl(saved.getShortUrl()).orElseThrow());
+        assertEquals(batched, storage().findByShortUrls(List.of(batched.getShortUrl())).get(0));
+        saved.setRedirectType(null);
+        saved.setModifiedAt(1_700_000_000_002L);
+        storage().save(saved);
+        assertEquals(saved, storage().findById(saved.getId()).orElseThrow());
+    }
+
+    @Test
+    void save_RejectsTakenShortUrl() {
+        // GIVEN
+        String shortUrl = unique("taken");
+        storage().save(url(shortUrl, "Kathy"));
+
+        // WHEN / THEN
+        assertThrows(DataIntegrityViolationException.class, () -> storage().save(url(shortUrl, "Stranger")));
+    }
+
+    @Test
+    void save_UpdatesExistingUrl() {
+        // GIVEN
+        URL saved = storage().save(url(unique("update"), "Kathy"));
+        String newShortUrl = unique("updated");
+
+        // WHEN
+        storage().save(new URL(saved.getId(), "https://changed.example.com", newShortUrl, "Kathy"));
+
+        // THEN
+        assertEquals("https://changed.example.com", storage().findById(saved.getId()).orElseThrow().getLongUrl());
+        assertTrue(storage().findByShortUrl(saved.getShortUrl()).isEmpty());
+        assertTrue(storage().findByShortUrl(newShortUrl).isPresent());
+    }
+
+    @Test
+    void saveAll_StoresNoneIfOneShortUrlIsTaken() {
+        // GIVEN
+        String taken = unique("batchTaken");
+        storage().save(url(taken, null));
+        String free = unique("batchFree");
+        long count = storage().count();
+
+        // WHEN / THEN
+        assertThrows(DataIntegrityViolationException.class,
+                () -> storage().saveAll(new ArrayList<>(List.of(url(free, null), url(taken, null)))));
+        assertTrue(storage().findByShortUrl(free).isEmpty());
+        assertEquals(count, storage().count());
+    }
+
+    @Test
+    void saveAll_AssignsIds() {
+        // GIVEN
+        List<URL> urls = List.of(url(unique("batch1"), null), url(unique("batch2"), null));
+
+        // WHEN
+        List<URL> saved = storage().saveAll(urls);
+
+        // THEN
+        assertEquals(2, saved.size());
+        assertNotNull(saved.get(0).getId());
+        assertNotEquals(saved.get(0).getId(), saved.get(1).getId());
+        assertEquals(2, storage().findByShortUrls(List.of(urls.get(0).getShortUrl(), urls.get(1).getShortUrl(),
+                unique("missing"))).size());
+    }
+
+    @Test
+    void findByUsername_ReturnsUrlsOfUserOrderedById() {
+        // GIVEN
+        String username = unique("user");
+        URL first = storage().save(url(unique("user1"), username));
+        URL second = storage().save(url(unique("user2"), username));
+        storage().save(url(unique("other"), unique("otherUser")));
+
+        // WHEN
+        List<URL> found = storage().findByUsername(username);
+
+        // THEN
+        assertEquals(List.of(first, second), found);
+    }
+
+    @Test
+    void findByUsername_PagesThroughUrlsOfUser() {
+        // GIVEN
+        String username = unique("pager");
+        List<URL> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            saved.add(storage().save(url(unique("page" + i), username)));
+        }
+        storage().save(url(unique("otherPage"), unique("otherUser")));
+
+        // WHEN
+        List<URL> first = storage().findByUsername(username, 0, 2);
+        List<URL> second = storage().findByUsername(username, first.get(1).getId(), 2);
+        List<URL> last = storage().findByUsername(username, second.get(1).getId(), 2);
+
+        // THEN
+        assertEquals(saved.subList(0, 2), first);
+        assertEquals(saved.subList(2, 4), second);
+        assertEquals(saved.subList(4, 5), last);
+        assertTrue(storage().findByUsername(username, saved.get(4).getId(), 2).isEmpty());
+    }
+
+    @Test
+    void forEachOfUser_VisitsUrlsOfUserInIdOrder() {
+        // GIVEN
+        String username = unique("streamer");
+        URL first = storage().save(url(unique("stream1"), username));
+        URL second = storage().save(url(unique("stream2"), username));
+        storage().save(url(unique("otherStream"), unique("otherUser")));
+        List<URL> seen = new ArrayList<>();
+
+        // WHEN
+        storage().forEachOfUser(username, seen::add);
+
+        // THEN
+        assertEquals(List.of(first, second), seen);
+    }
+
+    @Test
+    void forEachOfUser_VisitsUrlsBeyondOneChunk() {
+        // GIVEN
+        String username = unique("bulkStreamer");
+        List<URL> urls = new ArrayList<>();
+        for (int i = 0; i < 2_100; i++) {
+            urls.add(url(unique("bulkStream" + i), username));
+        }
+        List<Long> saved = storage().saveAll(urls).stream().map(URL::getId).sorted().toList();
+        List<Long> seen = new ArrayList<>();
+
+        // WHEN
+        storage().forEachOfUser(username, url -> seen.add(url.getId()));
+
+        // THEN
+        assertEquals(saved, seen);
+    }
+
+    @Test
+    void countByUsername_CountsUrlsOfUser() {
+        // GIVEN
+        String username = unique("counted");
+        storage().save(url(unique("count1"), username));
+        URL deleted = storage().save(url(unique("count2"), username));
+        storage().deleteById(deleted.getId());
+
+        // WHEN / THEN
+        assertEquals(1, storage().countByUsername(username));
+        assertEquals(0, storage().countByUsername(unique("nobody")));
+    }
+
+    @Test
+    void deleteById_RemovesUrl() {
+        // GIVEN
+        String username = unique("deleter");
+        URL saved = storage().save(url(unique("delete"), username));
+
+        // WHEN
+        storage().deleteById(saved.getId());
+
+        // THEN
+        assertTrue(storage().findById(saved.getId()).isEmpty());
+        assertTrue(storage().findByShortUrl(saved.getShortUrl()).isEmpty());
+        assertTrue(storage().findByUsername(username).isEmpty());
+    }
+
+    @Test
+    void forEach_VisitsEveryUrl() {
+        // GIVEN
+        URL saved = storage().save(url(unique("each"), null));
+        Set<Long> seen = new HashSet<>();
+
+        // WHEN
+        storage().forEach(url -> seen.add(url.getId()));
+
+        // THEN
+        assertTrue(seen.contains(saved.getId()));
+        assertEquals(storage().count(), seen.size());
+    }
+}
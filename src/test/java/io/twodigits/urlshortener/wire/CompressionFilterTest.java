@@ -0,0 +1,235 @@
+package io.twodigits.urlshortener.wire;
+
+import com.github.luben.zstd.ZstdInputStream;
+import io.twodigits.urlshortener.config.CompressionProperties;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CompressionFilterTest {
+
+    private final CompressionFilter filter = new CompressionFilter(new CompressionProperties());
+
+    private static String body(int rows) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            body.append("{\"id\":").append(i).append(",\"userAgent\":\"Mozilla/5.0\",\"clientIp\":\"10.0.0.1\"}\n");
+        }
+        return body.toString();
+    }
+
+    private static MockHttpServletResponse filter(CompressionFilter filter, String acceptEncoding, FilterChain chain)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stats/short123/export");
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static FilterChain writing(String contentType, String body) {
+        return (request, response) -> {
+            response.setContentType(contentType);
+            response.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+        };
+    }
+
+    private static String decode(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void doFilter_CompressesWithZstdWhenPreferred() throws Exception {
+        assumeTrue(CompressionFilter.isZstdAvailable());
+        // GIVEN
+        String body = body(200);
+
+        // WHEN
+        MockHttpServletResponse response = filter(filter, "gzip, deflate, br, zstd", writing("application/x-ndjson", body));
+
+        // THEN
+        assertEquals("zstd", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+        assertNull(response.getHeader(HttpHeaders.CONTENT_LENGTH));
+        assertTrue(response.getContentAsByteArray().length < body.length() / 4);
+        assertEquals(body, decode(new ZstdInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    void doFilter_CompressesWithGzipWhenPreferred() throws Exception {
+        // GIVEN
+        String body = body(200);
+
+        // WHEN
+        MockHttpServletResponse response = filter(filter, "zstd;q=0.5, gzip", writing("application/json", body));
+
+        // THEN
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(body, decode(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    void doFilter_KeepsFlushedPartsDecodable() throws Exception {
+        // GIVEN
+        String first = body(100);
+        String second = body(3);
+
+        // WHEN
+        MockHttpServletResponse response = filter(filter, "gzip", (request, out) -> {
+            out.setContentType("application/x-ndjson");
+            out.getOutputStream().write(first.getBytes(StandardCharsets.UTF_8));
+            out.flushBuffer();
+            assertTrue(out.isCommitted());
+            out.getOutputStream().write(second.getBytes(StandardCharsets.UTF_8));
+        });
+
+        // THEN
+        assertEquals(first + second, decode(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    void doFilter_SendsSmallResponseAsItIs() throws Exception {
+        // GIVEN
+        String body = body(1);
+
+        // WHEN
+        MockHttpServletResponse response = filter(filter, "gzip, zstd", (request, out) -> {
+            out.setContentType("application/json");
+            out.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+            out.flushBuffer();
+        });
+
+        // THEN
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+        assertEquals(body.length(), response.getContentLength());
+        assertEquals(body, response.getContentAsString());
+    }
+
+    @Test
+    void doFilter_SendsUncompressibleResponseAsItIs() throws Exception {
+        // GIVEN
+        String body = body(200);
+
+        // WHEN
+        MockHttpServletResponse plain = filter(filter, "gzip", writing("text/plain", body));
+        MockHttpServletResponse strong = filter(filter, "gzip", (request, out) -> {
+            ((HttpServletResponse) out).setHeader(HttpHeaders.ETAG, "\"1\"");
+            writing("application/json", body).doFilter(request, out);
+        });
+        MockHttpServletResponse notAccepted = filter(filter, "gzip;q=0, identity", writing("application/json", body));
+
+        // THEN
+        for (MockHttpServletResponse response : new MockHttpServletResponse[]{plain, strong, notAccepted}) {
+            assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(body, response.getContentAsString());
+        }
+    }
+
+    @Test
+    void doFilter_DropsCompressedBodyOnReset() throws Exception {
+        // GIVEN
+        String body = body(200);
+
+        // WHEN
+        MockHttpServletResponse response = filter(filter, "gzip", (request, out) -> {
+            out.setContentType("application/json");
+            out.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+            out.reset();
+            out.setContentType("text/plain");
+            out.getWriter().write("Export failed");
+        });
+
+        // THEN
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("Export failed", response.getContentAsString());
+    }
+
+    @Test
+    void doFilter_PassesWriteListenerToContainerUncompressed() throws Exception {
+        // GIVEN a container stream which writes without blocking
+        String body = body(200);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        AtomicReference<WriteListener> registered = new AtomicReference<>();
+        MockHttpServletResponse response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {
+                        sent.write(b);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        registered.set(listener);
+                    }
+                };
+            }
+        };
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stats/short123/export");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+        // WHEN
+        filter.doFilter(request, response, (req, res) -> {
+            res.setContentType("application/json");
+            ServletOutputStream out = res.getOutputStream();
+            out.setWriteListener(new WriteListener() {
+                @Override
+                public void onWritePossible() throws IOException {
+                    if (out.isReady()) {
+                        out.write(body.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+            });
+        });
+        registered.get().onWritePossible();
+
+        // THEN
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+        assertEquals(body, sent.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void negotiate_WeighsQualities() {
+        assertEquals(CompressionFilter.Coding.GZIP, filter.negotiate("gzip"));
+        assertEquals(CompressionFilter.Coding.GZIP, filter.negotiate("zstd;q=0.4, gzip;q=0.5"));
+        assertNull(filter.negotiate("identity"));
+        assertNull(filter.negotiate("*;q=0"));
+        assertNull(filter.negotiate(null));
+        if (CompressionFilter.isZstdAvailable()) {
+            assertEquals(CompressionFilter.Coding.ZSTD, filter.negotiate("gzip, zstd"));
+            assertEquals(CompressionFilter.Coding.ZSTD, filter.negotiate("*"));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package io.twodigits.urlshortener.wire;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+import io.twodigits.urlshortener.model.ClickEvent;
+import io.twodigits.urlshortener.model.URL;
+import io.twodigits.urlshortener.model.URLDto;
+import io.twodigits.urlshortener.service.URLShortenerService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "urlshortener.stats.ingestion.flush-interval=10ms")
+class WireFormatEndpointTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private URLShortenerService urlShortenerService;
+
+    @Autowired
+    private WireFormats wireFormats;
+
+    private URL generate(String longUrl, String username) {
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl(longUrl);
+        urlDto.setUsername(username);
+        return urlShortenerService.generateShortUrl(urlDto).orElseThrow();
+    }
+
+    private ResponseEntity<byte[]> get(String path, String accept, String acceptEncoding) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT, accept);
+        if (acceptEncoding != null) {
+            headers.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return restTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+    }
+
+    private static byte[] decode(InputStream in) throws Exception {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void getUrlById_AnswersInAcceptedFormat() throws Exception {
+        // GIVEN
+        URL url = generate("https://cbor.example.com", "wire");
+
+        for (WireFormat format : WireFormat.values()) {
+            // WHEN
+            ResponseEntity<byte[]> response = get("/url/" + url.getId(), format.getMediaType().toString(), null);
+
+            // THEN
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertTrue(format.getMediaType().isCompatibleWith(response.getHeaders().getContentType()), format.name());
+            URL read = wireFormats.mapperFor(format).readValue(response.getBody(), URL.class);
+            assertEquals(url.getLongUrl(), read.getLongUrl());
+            assertTrue(response.getHeaders().getETag().startsWith("W/"));
+        }
+    }
+
+    @Test
+    void generateShortUrls_ReadsSmileBatch() throws Exception {
+        // GIVEN
+        ObjectMapper smile = wireFormats.mapperFor(WireFormat.SMILE);
+        URLDto urlDto = new URLDto();
+        urlDto.setUrl("https://smile.example.com");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(WireFormat.SMILE.getMediaType());
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+
+        // WHEN
+        ResponseEntity<String> response = restTemplate.postForEntity("/generate/batch",
+                new HttpEntity<>(smile.writeValueAsBytes(List.of(urlDto)), headers), String.class);
+
+        // THEN
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(response.getBody().contains("\"status\":\"CREATED\""));
+    }
+
+    @Test
+    void getUrlsByUser_CompressesLargeListing() throws Exception {
+        assumeTrue(CompressionFilter.isZstdAvailable());
+        // GIVEN
+        List<String> longUrls = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            longUrls.add(generate("https://zstd.example.com/articles/" + i, "zstd-user").getLongUrl());
+        }
+
+        // WHEN
+        ResponseEntity<byte[]> response = get("/urlsby/zstd-user", MediaType.APPLICATION_CBOR_VALUE, "gzip, zstd");
+
+        // THEN
+        assertEquals("zstd", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        byte[] cbor = decode(new ZstdInputStream(new ByteArrayInputStream(response.getBody())));
+        URL[] urls = wireFormats.mapperFor(WireFormat.CBOR).readValue(cbor, URL[].class);
+        assertEquals(longUrls, List.of(urls).stream().map(URL::getLongUrl).toList());
+    }
+
+    @Test
+    void exportUrlStatistics_CompressesStreamedExport() throws Exception {
+        // GIVEN
+        URL url = generate("https://export.example.com", "export-user");
+        for (int i = 0; i < 100; i++) {
+            urlShortenerService.recordURLAccess(new ClickEvent(url.getId(), url.getShortUrl(), System.currentTimeMillis(),
+                    "Mozilla/5.0 (X11; Linux x86_64) Firefox/119.0", "https://news.example.com/" + i, "10.0.0." + i));
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (urlShortenerService.getURLAccessStatisticsPage(url.getShortUrl(), null, 1_000).orElseThrow().getItems().size() < 100
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        // WHEN
+        ResponseEntity<byte[]> response = get("/stats/" + url.getShortUrl() + "/export?format=NDJSON", "*/*", "gzip");
+
+        // THEN
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        String ndjson = new String(decode(new GZIPInputStream(new ByteArrayInputStream(response.getBody()))), StandardCharsets.UTF_8);
+        String[] lines = ndjson.split("\n");
+        assertEquals(100, lines.length);
+        JsonNode last = wireFormats.mapperFor(WireFormat.JSON).readTree(lines[99]);
+        assertTrue(last.get("referrer").asText().startsWith("https://news.example.com/"));
+    }
+}
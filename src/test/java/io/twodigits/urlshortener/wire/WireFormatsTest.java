@@ -0,0 +1,70 @@
+package io.twodigits.urlshortener.wire;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.twodigits.urlshortener.model.StatsPage;
+import io.twodigits.urlshortener.model.URLStatsView;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireFormatsTest {
+
+    private final WireFormats wireFormats = new WireFormats(new ObjectMapper().registerModule(new JavaTimeModule()));
+
+    @Test
+    void negotiate_PicksHighestQuality() {
+        assertEquals(WireFormat.CBOR, wireFormats.negotiate("application/json;q=0.5, application/cbor"));
+        assertEquals(WireFormat.SMILE, wireFormats.negotiate("application/x-jackson-smile, */*;q=0.1"));
+    }
+
+    @Test
+    void negotiate_PrefersJsonOnTiesAndWildcards() {
+        assertEquals(WireFormat.JSON, wireFormats.negotiate("application/cbor, application/json"));
+        assertEquals(WireFormat.JSON, wireFormats.negotiate("*/*"));
+        assertEquals(WireFormat.JSON, wireFormats.negotiate("application/*"));
+    }
+
+    @Test
+    void negotiate_UsesMostSpecificRange() {
+        assertEquals(WireFormat.CBOR, wireFormats.negotiate("application/*;q=0.2, application/json;q=0.1"));
+        assertEquals(WireFormat.SMILE, wireFormats.negotiate("*/*, application/json;q=0, application/cbor;q=0"));
+    }
+
+    @Test
+    void negotiate_FallsBackToJson() {
+        assertEquals(WireFormat.JSON, wireFormats.negotiate(null));
+        assertEquals(WireFormat.JSON, wireFormats.negotiate("text/html"));
+        assertEquals(WireFormat.JSON, wireFormats.negotiate("not a media type;;"));
+    }
+
+    @Test
+    void ofSequence_MatchesSequenceMediaTypes() {
+        assertEquals(WireFormat.CBOR, wireFormats.ofSequence("application/cbor-seq"));
+        assertEquals(WireFormat.JSON, wireFormats.ofSequence("application/x-ndjson;charset=UTF-8"));
+        assertEquals(WireFormat.JSON, wireFormats.ofSequence(null));
+    }
+
+    @Test
+    void mapperFor_RoundTripsStatsInEveryFormat() throws Exception {
+        // GIVEN
+        StatsPage page = new StatsPage("short123", List.of(
+                new URLStatsView(1L, LocalDateTime.of(2023, 11, 14, 22, 13, 20), "Mozilla/5.0", null, "10.0.0.1"),
+                new URLStatsView(2L, LocalDateTime.of(2023, 11, 14, 22, 13, 21), "curl/8.4.0", "https://news.ycombinator.com", "10.0.0.2")),
+                "next");
+        byte[] json = wireFormats.mapperFor(WireFormat.JSON).writeValueAsBytes(page);
+
+        for (WireFormat format : WireFormat.values()) {
+            // WHEN
+            ObjectMapper mapper = wireFormats.mapperFor(format);
+            byte[] encoded = mapper.writeValueAsBytes(page);
+
+            // THEN
+            assertEquals(wireFormats.mapperFor(WireFormat.JSON).readTree(json), mapper.readTree(encoded), format.name());
+            assertTrue(encoded.length <= json.length, format.name());
+        }
+    }
+}